@@ -0,0 +1,71 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.util.types.BabbleOID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Making, formatting and parsing object ids
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BabbleOIDBenchmark {
+
+    private BabbleOID _oid;
+    private String _hex;
+
+    @Setup
+    public void setUp() {
+        _oid = new BabbleOID();
+        _hex = _oid.toString();
+    }
+
+    @Benchmark
+    public BabbleOID create() {
+        return new BabbleOID();
+    }
+
+    @Benchmark
+    public String format() {
+        return _oid.toString();
+    }
+
+    @Benchmark
+    public BabbleOID parse() throws MongoDBException {
+        return new BabbleOID(_hex);
+    }
+}
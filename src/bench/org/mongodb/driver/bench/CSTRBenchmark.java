@@ -0,0 +1,79 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.util.BSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Element names and namespaces - written and read for every field of every document
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSTRBenchmark {
+
+    @Param({"_id", "customer.address.street", "stra\u00dfe_\u540d\u524d", "org_mongo_driver_bench.a_collection_with_a_long_name"})
+    public String value;
+
+    private ByteBuffer _out;
+    private ByteBuffer _in;
+
+    @Setup
+    public void setUp() {
+        _out = ByteBuffer.allocate(1024);
+        _out.order(ByteOrder.LITTLE_ENDIAN);
+
+        _in = ByteBuffer.allocate(1024);
+        _in.order(ByteOrder.LITTLE_ENDIAN);
+        BSONObject.serializeCSTR(_in, value);
+        _in.flip();
+    }
+
+    @Benchmark
+    public int serializeCSTR() {
+        _out.clear();
+        return BSONObject.serializeCSTR(_out, value);
+    }
+
+    @Benchmark
+    public String deserializeCSTR() throws MongoDBException {
+        _in.rewind();
+        return BSONObject.deserializeCSTR(_in);
+    }
+}
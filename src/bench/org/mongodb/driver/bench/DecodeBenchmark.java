@@ -0,0 +1,99 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.LazyDoc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Decoding a document from a buffer, as a reply or a parsed selector
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param
+    public DocCorpus shape;
+
+    private ByteBuffer[] _bufs;
+    private int _next;
+    private String _lastKey;            // the field a lazy doc has to scan furthest for
+
+    @Setup
+    public void setUp() throws MongoDBException {
+        _bufs = shape.encoded();
+
+        for (String key : shape.docs()[0].keySet()) {
+            _lastKey = key;
+        }
+    }
+
+    private ByteBuffer next() {
+        ByteBuffer buf = _bufs[_next++ & (DocCorpus.SIZE - 1)];
+        buf.rewind();
+        return buf;
+    }
+
+    @Benchmark
+    public Doc deserializeObjectData() throws MongoDBException {
+        return BSONObject.deserializeObjectData(next());
+    }
+
+    @Benchmark
+    public Doc deserializePrimitiveArrays() throws MongoDBException {
+        return BSONObject.deserializeObjectData(next(), true);
+    }
+
+    @Benchmark
+    public Object eagerOneField() throws MongoDBException {
+        return BSONObject.deserializeObjectData(next()).get(_lastKey);
+    }
+
+    @Benchmark
+    public Object lazyOneField() throws MongoDBException {
+        return LazyDoc.readBatch(next(), 1).get(0).get(_lastKey);
+    }
+
+    @Benchmark
+    public MongoSelector deserializeSelector() throws MongoDBException {
+        return BSONObject.deserializeSelector(next());
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.types.BabbleOID;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *  Document shapes for the codec benchmarks, roughly what applications store.  Each
+ *  shape makes a set of documents from a fixed seed, so runs see the same data.
+ */
+public enum DocCorpus {
+
+    /**
+     *  a handful of scalar fields - a session or counter record
+     */
+    SMALL {
+        Doc create(Random r) {
+            Doc d = new Doc();
+            d.put("_id", new BabbleOID());
+            d.put("user", "user" + r.nextInt(100000));
+            d.put("count", r.nextInt(1000));
+            d.put("score", r.nextDouble() * 100);
+            d.put("active", r.nextBoolean());
+            return d;
+        }
+    },
+
+    /**
+     *  an order - nested customer and address, and an array of line item docs
+     */
+    ORDER {
+        Doc create(Random r) {
+            Doc address = new Doc();
+            address.put("street", r.nextInt(999) + " Main Street");
+            address.put("city", "Springfield");
+            address.put("zip", String.valueOf(10000 + r.nextInt(89999)));
+
+            Doc customer = new Doc();
+            customer.put("name", "Customer " + r.nextInt(100000));
+            customer.put("email", "c" + r.nextInt(100000) + "@example.com");
+            customer.put("address", address);
+
+            List<Doc> items = new ArrayList<Doc>();
+
+            for (int i = 0, n = 1 + r.nextInt(8); i < n; i++) {
+                Doc item = new Doc();
+                item.put("sku", "SKU-" + r.nextInt(10000));
+                item.put("qty", 1 + r.nextInt(5));
+                item.put("price", r.nextInt(10000) / 100.0);
+                items.add(item);
+            }
+
+            Doc d = new Doc();
+            d.put("_id", new BabbleOID());
+            d.put("placed", new Date(1262304000000L + r.nextInt(1000000000)));
+            d.put("status", "shipped");
+            d.put("customer", customer);
+            d.put("items", items);
+            return d;
+        }
+    },
+
+    /**
+     *  a log line - mostly short strings, a date and a few numbers
+     */
+    LOG {
+        Doc create(Random r) {
+            Doc d = new Doc();
+            d.put("ts", new Date(1262304000000L + r.nextInt(1000000000)));
+            d.put("host", "app" + r.nextInt(40) + ".example.com");
+            d.put("level", r.nextInt(10) == 0 ? "WARN" : "INFO");
+            d.put("thread", "worker-" + r.nextInt(64));
+            d.put("logger", "org.example.service.RequestHandler");
+            d.put("msg", "handled request " + Long.toHexString(r.nextLong()) + " in " + r.nextInt(500) + "ms");
+            d.put("status", 200);
+            d.put("bytes", r.nextInt(100000));
+            d.put("path", "/api/v1/items/" + r.nextInt(100000));
+            d.put("ua", "Mozilla/5.0 (X11; Linux x86_64)");
+            return d;
+        }
+    },
+
+    /**
+     *  fifty numeric fields - metrics or a wide row
+     */
+    WIDE {
+        Doc create(Random r) {
+            Doc d = new Doc();
+
+            for (int i = 0; i < 50; i++) {
+                if (i % 2 == 0) {
+                    d.put("m" + i, r.nextInt());
+                }
+                else {
+                    d.put("m" + i, r.nextDouble());
+                }
+            }
+            return d;
+        }
+    },
+
+    /**
+     *  an array of numbers and an array of strings
+     */
+    ARRAY {
+        Doc create(Random r) {
+            List<Integer> values = new ArrayList<Integer>();
+
+            for (int i = 0; i < 200; i++) {
+                values.add(r.nextInt());
+            }
+
+            List<String> tags = new ArrayList<String>();
+
+            for (int i = 0; i < 20; i++) {
+                tags.add("tag" + r.nextInt(1000));
+            }
+
+            Doc d = new Doc();
+            d.put("series", "s" + r.nextInt(1000));
+            d.put("values", values);
+            d.put("tags", tags);
+            return d;
+        }
+    },
+
+    /**
+     *  documents nested eight deep
+     */
+    NESTED {
+        Doc create(Random r) {
+            Doc d = new Doc("leaf", r.nextInt());
+
+            for (int i = 0; i < 8; i++) {
+                Doc parent = new Doc();
+                parent.put("level", i);
+                parent.put("name", "node" + r.nextInt(1000));
+                parent.put("child", d);
+                d = parent;
+            }
+            return d;
+        }
+    },
+
+    /**
+     *  longer text, with characters outside ASCII
+     */
+    TEXT {
+        Doc create(Random r) {
+            StringBuilder sb = new StringBuilder();
+
+            while (sb.length() < 2000) {
+                sb.append(WORDS[r.nextInt(WORDS.length)]).append(' ');
+            }
+
+            Doc d = new Doc();
+            d.put("title", WORDS[r.nextInt(WORDS.length)] + " " + WORDS[r.nextInt(WORDS.length)]);
+            d.put("body", sb.toString());
+            d.put("lang", "mixed");
+            return d;
+        }
+    };
+
+    private static final String[] WORDS = {
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+        "caf\u00e9", "na\u00efve", "stra\u00dfe", "r\u00e9sum\u00e9", "\u65e5\u672c\u8a9e", "\u0434\u0430\u043d\u043d\u044b\u0435", "\u03c0\u03b5\u03c1\u03b9\u03c3\u03c3\u03cc\u03c4\u03b5\u03c1\u03b1", "\u00fcn\u00efc\u00f6d\u00e9"
+    };
+
+    /**
+     *  number of documents made per shape, so a benchmark isn't measuring one hot document
+     */
+    public static final int SIZE = 64;
+
+    abstract Doc create(Random r);
+
+    /**
+     * @return SIZE documents of this shape
+     */
+    public Doc[] docs() {
+
+        Random r = new Random(ordinal());
+        Doc[] docs = new Doc[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            docs[i] = create(r);
+        }
+        return docs;
+    }
+
+    /**
+     * @return the documents of this shape, each encoded into its own little-endian buffer
+     * @throws MongoDBException if a document can't be encoded
+     */
+    public ByteBuffer[] encoded() throws MongoDBException {
+
+        Doc[] docs = docs();
+        ByteBuffer[] bufs = new ByteBuffer[docs.length];
+
+        for (int i = 0; i < docs.length; i++) {
+            BSONObject bo = new BSONObject();
+            bo.serialize(docs[i]);
+
+            bufs[i] = ByteBuffer.wrap(bo.toArray());
+            bufs[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return bufs;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.util.BSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Encoding a document into a buffer, as the messages do
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param
+    public DocCorpus shape;
+
+    private Doc[] _docs;
+    private ByteBuffer _buf;
+    private BSONObject _bo;
+    private int _next;
+
+    @Setup
+    public void setUp() {
+        _docs = shape.docs();
+        _buf = ByteBuffer.allocate(1024 * 1024);
+        _buf.order(ByteOrder.LITTLE_ENDIAN);
+        _bo = new BSONObject(_buf);
+    }
+
+    @Benchmark
+    public int serializeInBuffer() throws MongoDBException {
+
+        _buf.clear();
+        _bo.serializeInBuffer(_docs[_next++ & (DocCorpus.SIZE - 1)]);
+
+        return _buf.position();
+    }
+
+    /**
+     *  the same, with a new BSONObject each time, the way most callers use it
+     */
+    @Benchmark
+    public int serializeNewObject() throws MongoDBException {
+
+        _buf.clear();
+        new BSONObject(_buf).serializeInBuffer(_docs[_next++ & (DocCorpus.SIZE - 1)]);
+
+        return _buf.position();
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.StandInServer;
+import org.mongodb.driver.dyn.Collection;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.MongoOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  The driver end to end - encode, pool, socket, server, decode - against a stand-in
+ *  server on loopback, through both the typesafe and the dynamic API.  Reports
+ *  throughput and sampled latency, so run with -t to see how it holds up as callers
+ *  are added, or use ScalingBenchmark to step through thread counts.
+ *
+ *  The server doesn't keep what's inserted, so the write benchmarks can run for as
+ *  long as they like.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    static final String DB_NAME = "org_mongo_driver_bench";
+    static final int FIND_DOCS = 1000;
+    static final int ONE_DOCS = 10000;
+    static final int BATCH = 100;
+
+    /**
+     *  most connections the pool opens
+     */
+    @Param("10")
+    public int connections;
+
+    /**
+     *  latency the server adds to each reply
+     */
+    @Param("0")
+    public int latencyMicros;
+
+    private StandInServer _server;
+    private DB _db;
+    private org.mongodb.driver.dyn.DB _dynDB;
+
+    private DBCollection _find;
+    private DBCollection _one;
+    private DBCollection _insert;
+
+    private Collection _dynFind;
+    private Collection _dynOne;
+    private Collection _dynInsert;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        _server = new StandInServer();
+
+        MongoOptions options = new MongoOptions().setMaxConnections(connections);
+
+        _db = new Mongo("127.0.0.1", _server.getPort(), options).getDB(DB_NAME);
+        _dynDB = new org.mongodb.driver.dyn.Mongo("127.0.0.1", _server.getPort(), options).getDB(DB_NAME);
+
+        _find = _db.getCollection("find");
+        _one = _db.getCollection("one");
+        _insert = _db.getCollection("insert");
+
+        for (int i = 0; i < FIND_DOCS; i++) {
+            _find.insert(DocCorpus.SMALL.create(ThreadLocalRandom.current()).add("i", i));
+        }
+
+        for (int i = 0; i < ONE_DOCS; i++) {
+            _one.insert(new Doc("_id", i).add("name", "doc" + i).add("value", i * 0.5));
+        }
+
+        if (_find.getCount() != FIND_DOCS || _one.getCount() != ONE_DOCS) {
+            throw new IllegalStateException("stand-in server lost documents");
+        }
+
+        _dynFind = _dynDB.getCollection("find");
+        _dynOne = _dynDB.getCollection("one");
+        _dynInsert = _dynDB.getCollection("insert");
+
+        _server.setStoreInserts(false);
+        _server.setLatency(latencyMicros, TimeUnit.MICROSECONDS);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        _db.close();
+        _dynDB.close();
+        _server.close();
+    }
+
+    private static int nextId() {
+        return ThreadLocalRandom.current().nextInt(ONE_DOCS);
+    }
+
+    private static Doc newDoc() {
+        return DocCorpus.SMALL.create(ThreadLocalRandom.current());
+    }
+
+    @Benchmark
+    public Doc findOne() throws MongoDBException {
+        return _one.findOne(new MongoSelector("_id", nextId()));
+    }
+
+    @Benchmark
+    public int find() throws MongoDBException {
+
+        int n = 0;
+
+        for (Doc d : _find.find()) {
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public boolean insert() throws MongoDBException {
+        return _insert.insert(newDoc());
+    }
+
+    @Benchmark
+    public boolean insertBatch() throws MongoDBException {
+
+        Doc[] docs = new Doc[BATCH];
+
+        for (int i = 0; i < BATCH; i++) {
+            docs[i] = newDoc();
+        }
+        return _insert.insert(docs);
+    }
+
+    @Benchmark
+    public Object dynFindOne() throws MongoDBException {
+
+        Map<String, Object> sel = new HashMap<String, Object>();
+        sel.put("_id", nextId());
+
+        Iterator it = _dynOne.find(sel);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    @Benchmark
+    public int dynFind() throws MongoDBException {
+
+        int n = 0;
+
+        for (Iterator<Map> it = _dynFind.find(); it.hasNext(); it.next()) {
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public boolean dynInsert() throws MongoDBException {
+        return _dynInsert.insert(newDoc());
+    }
+
+    @Benchmark
+    public boolean dynInsertBatch() throws MongoDBException {
+
+        Map[] docs = new Map[BATCH];
+
+        for (int i = 0; i < BATCH; i++) {
+            docs[i] = newDoc();
+        }
+        return _dynInsert.insert(docs);
+    }
+}
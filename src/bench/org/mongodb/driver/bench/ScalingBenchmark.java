@@ -0,0 +1,132 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Runs the end to end benchmarks at 1, 2, 4 ... 64 threads and prints a table of
+ *  throughput and p50/p99/p999 latency for each, as a baseline for changes to the
+ *  driver's locking and pooling.
+ *
+ *  Arguments are an optional benchmark regexp (default all of EndToEndBenchmark) and
+ *  an optional comma-separated list of thread counts.  The connections and
+ *  latencyMicros system properties set the benchmark's params.
+ */
+public class ScalingBenchmark {
+
+    static final int[] DEFAULT_THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException {
+
+        String include = args.length > 0 ? args[0] : EndToEndBenchmark.class.getSimpleName();
+        int[] threads = args.length > 1 ? parseThreads(args[1]) : DEFAULT_THREADS;
+
+        // benchmark -> thread count -> row
+
+        Map<String, Map<Integer, Row>> table = new LinkedHashMap<String, Map<Integer, Row>>();
+
+        for (int t : threads) {
+
+            ChainedOptionsBuilder opts = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .param("connections", System.getProperty("connections", "10"))
+                    .param("latencyMicros", System.getProperty("latencyMicros", "0"));
+
+            Collection<RunResult> results = new Runner(opts.build()).run();
+
+            for (RunResult r : results) {
+
+                String name = r.getParams().getBenchmark();
+                name = name.substring(name.lastIndexOf('.') + 1);
+
+                Map<Integer, Row> rows = table.get(name);
+
+                if (rows == null) {
+                    rows = new LinkedHashMap<Integer, Row>();
+                    table.put(name, rows);
+                }
+
+                Row row = rows.get(t);
+
+                if (row == null) {
+                    row = new Row();
+                    rows.put(t, row);
+                }
+
+                Result primary = r.getPrimaryResult();
+
+                if (r.getParams().getMode() == Mode.Throughput) {
+                    row._opsPerSec = primary.getScore() * 1000000;
+                }
+                else {
+                    Statistics s = primary.getStatistics();
+                    row._p50 = s.getPercentile(50);
+                    row._p99 = s.getPercentile(99);
+                    row._p999 = s.getPercentile(99.9);
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-16s %8s %14s %12s %12s %12s%n", "benchmark", "threads", "ops/s", "p50 us", "p99 us", "p999 us");
+
+        for (Map.Entry<String, Map<Integer, Row>> e : table.entrySet()) {
+            for (Map.Entry<Integer, Row> r : e.getValue().entrySet()) {
+                Row row = r.getValue();
+                System.out.printf("%-16s %8d %14.0f %12.1f %12.1f %12.1f%n",
+                        e.getKey(), r.getKey(), row._opsPerSec, row._p50, row._p99, row._p999);
+            }
+        }
+    }
+
+    private static int[] parseThreads(String s) {
+
+        String[] ss = s.split(",");
+        int[] threads = new int[ss.length];
+
+        for (int i = 0; i < ss.length; i++) {
+            threads[i] = Integer.parseInt(ss[i].trim());
+        }
+        return threads;
+    }
+
+    private static class Row {
+        double _opsPerSec;
+        double _p50;
+        double _p99;
+        double _p999;
+    }
+}
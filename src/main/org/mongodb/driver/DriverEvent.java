@@ -0,0 +1,173 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver;
+
+import org.mongodb.driver.impl.msg.MessageType;
+
+/**
+ *  A message sent by the driver, as reported to a DriverEventListener.  Events are
+ *  unchanging, so listeners may keep them.
+ */
+public final class DriverEvent {
+
+    /**
+     *  Stage of the message the event reports
+     */
+    public enum Kind {
+        STARTED, SUCCEEDED, FAILED
+    }
+
+    private final Kind _kind;
+    private final int _requestID;
+    private final MessageType _operation;
+    private final String _dbName;
+    private final String _collection;
+    private final int _requestSize;
+    private final long _startNanos;
+
+    private final int _replySize;
+    private final int _documentsReturned;
+    private final long _elapsedNanos;
+    private final Throwable _failure;
+
+    /**
+     *  Creates the event for a message that's just been sent
+     *
+     * @param requestID id of the message
+     * @param operation type of message
+     * @param dbName database, or null if the message isn't for one
+     * @param collection collection, or null if the message isn't for one
+     * @param requestSize encoded size of the message in bytes
+     */
+    public DriverEvent(int requestID, MessageType operation, String dbName, String collection, int requestSize) {
+        this(Kind.STARTED, requestID, operation, dbName, collection, requestSize, System.nanoTime(), 0, 0, 0, null);
+    }
+
+    private DriverEvent(Kind kind, int requestID, MessageType operation, String dbName, String collection,
+                        int requestSize, long startNanos, int replySize, int documentsReturned,
+                        long elapsedNanos, Throwable failure) {
+        _kind = kind;
+        _requestID = requestID;
+        _operation = operation;
+        _dbName = dbName;
+        _collection = collection;
+        _requestSize = requestSize;
+        _startNanos = startNanos;
+        _replySize = replySize;
+        _documentsReturned = documentsReturned;
+        _elapsedNanos = elapsedNanos;
+        _failure = failure;
+    }
+
+    /**
+     *  Creates the event for this message having succeeded
+     *
+     * @param replySize size of the reply in bytes, 0 if there's none
+     * @param documentsReturned number of objects in the reply
+     * @return the event
+     */
+    public DriverEvent succeeded(int replySize, int documentsReturned) {
+        return new DriverEvent(Kind.SUCCEEDED, _requestID, _operation, _dbName, _collection, _requestSize,
+                _startNanos, replySize, documentsReturned, System.nanoTime() - _startNanos, null);
+    }
+
+    /**
+     *  Creates the event for this message having failed
+     *
+     * @param failure what went wrong
+     * @return the event
+     */
+    public DriverEvent failed(Throwable failure) {
+        return new DriverEvent(Kind.FAILED, _requestID, _operation, _dbName, _collection, _requestSize,
+                _startNanos, 0, 0, System.nanoTime() - _startNanos, failure);
+    }
+
+    public Kind getKind() {
+        return _kind;
+    }
+
+    public int getRequestID() {
+        return _requestID;
+    }
+
+    public MessageType getOperation() {
+        return _operation;
+    }
+
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    /**
+     * @return "db.collection", or null if the message isn't for a collection
+     */
+    public String getNamespace() {
+        return _collection == null ? null : _dbName + "." + _collection;
+    }
+
+    public int getRequestSize() {
+        return _requestSize;
+    }
+
+    public int getReplySize() {
+        return _replySize;
+    }
+
+    public int getDocumentsReturned() {
+        return _documentsReturned;
+    }
+
+    /**
+     * @return nanoseconds from the message being sent to this event, 0 for a STARTED event
+     */
+    public long getElapsedNanos() {
+        return _elapsedNanos;
+    }
+
+    /**
+     * @return cause of a FAILED event, otherwise null
+     */
+    public Throwable getFailure() {
+        return _failure;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        sb.append(_kind).append(' ').append(_operation);
+        sb.append(" id=").append(_requestID);
+        sb.append(" ns=").append(getNamespace());
+        sb.append(" size=").append(_requestSize);
+
+        if (_kind != Kind.STARTED) {
+            sb.append(" reply=").append(_replySize);
+            sb.append(" docs=").append(_documentsReturned);
+            sb.append(" elapsed=").append(_elapsedNanos).append("ns");
+        }
+
+        if (_failure != null) {
+            sb.append(" failure=").append(_failure);
+        }
+
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver;
+
+/**
+ *  Receives an event for every message the driver sends : one when it goes out, and one
+ *  when it succeeds or fails.  Register with Mongo.addEventListener().
+ *
+ *  Events are delivered in order on a single driver thread, never on the thread doing
+ *  the I/O, so a slow listener doesn't hold up the driver.  If listeners fall far enough
+ *  behind that the event queue fills, further events are dropped and counted rather than
+ *  waited for.  An exception thrown by a listener is ignored.
+ *
+ *  A message succeeds when its reply has been read, or for messages without a reply,
+ *  when it has been written.  Writes gathered by write coalescing succeed when they're
+ *  buffered.
+ */
+public interface DriverEventListener {
+
+    /**
+     * @param event a message has been sent.  Its reply and timing fields are 0
+     */
+    public void started(DriverEvent event);
+
+    /**
+     * @param event a message has had its reply, or been written if it has none
+     */
+    public void succeeded(DriverEvent event);
+
+    /**
+     * @param event a message couldn't be sent, or its reply couldn't be read or was an error
+     */
+    public void failed(DriverEvent event);
+}
@@ -0,0 +1,256 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver;
+
+import org.mongodb.driver.util.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  Latency histograms for the operations a driver sends, per type of operation and
+ *  per namespace.  Each Mongo has one, shared by all its databases.
+ *
+ *  The latency of an operation is the time the calling thread spends in it - for a
+ *  query, sending it and waiting for the first batch; for a getMore, waiting for the
+ *  batch, prefetched or not; for a write, handing it to the socket or the write buffer,
+ *  and for acknowledged writes, any getlasterror that falls due.  Waiting for a pooled
+ *  connection counts, so lock and pool contention show up here.  Failed operations
+ *  aren't recorded.
+ *
+ *  Recording takes no locks and, once a namespace has been seen, allocates nothing.
+ *  It can be turned off with setEnabled(false).
+ */
+public class DriverMetrics {
+
+    /**
+     *  Kinds of operation recorded
+     */
+    public enum Operation {
+        QUERY, GET_MORE, INSERT, UPDATE, REMOVE, COMMAND
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final LatencyHistogram[] _byOperation = newHistograms();
+
+    /*
+     *  db name -> collection name -> histograms, so recording needn't build the namespace
+     */
+    private final Map<String, Map<String, LatencyHistogram[]>> _byNamespace =
+            new ConcurrentHashMap<String, Map<String, LatencyHistogram[]>>();
+
+    private volatile boolean _enabled = true;
+    private volatile long _since = System.nanoTime();
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /**
+     *  Records an operation
+     *
+     * @param op kind of operation
+     * @param dbName database
+     * @param collection collection, or null if not known
+     * @param nanos latency in nanoseconds
+     */
+    public void record(Operation op, String dbName, String collection, long nanos) {
+
+        if (!_enabled) {
+            return;
+        }
+
+        _byOperation[op.ordinal()].record(nanos);
+
+        if (dbName != null && collection != null) {
+            histograms(dbName, collection)[op.ordinal()].record(nanos);
+        }
+    }
+
+    private LatencyHistogram[] histograms(String dbName, String collection) {
+
+        Map<String, LatencyHistogram[]> db = _byNamespace.get(dbName);
+
+        if (db == null) {
+            _byNamespace.putIfAbsent(dbName, new ConcurrentHashMap<String, LatencyHistogram[]>());
+            db = _byNamespace.get(dbName);
+        }
+
+        LatencyHistogram[] h = db.get(collection);
+
+        if (h == null) {
+            db.putIfAbsent(collection, newHistograms());
+            h = db.get(collection);
+        }
+
+        return h;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+
+        LatencyHistogram[] h = new LatencyHistogram[OPERATIONS.length];
+
+        for (int i = 0; i < h.length; i++) {
+            h[i] = new LatencyHistogram();
+        }
+        return h;
+    }
+
+    /**
+     * @return copy of the metrics recorded since the last reset
+     */
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     *  Takes a snapshot and starts over, for reporting by interval
+     *
+     * @return copy of the metrics recorded since the last reset
+     */
+    public Snapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    public void reset() {
+        snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean reset) {
+
+        long now = System.nanoTime();
+        long elapsed = now - _since;
+
+        if (reset) {
+            _since = now;
+        }
+
+        Map<Operation, LatencyHistogram.Snapshot> byOp = snapshot(_byOperation, reset);
+        Map<String, Map<Operation, LatencyHistogram.Snapshot>> byNs = new TreeMap<String, Map<Operation, LatencyHistogram.Snapshot>>();
+
+        for (Map.Entry<String, Map<String, LatencyHistogram[]>> db : _byNamespace.entrySet()) {
+            for (Map.Entry<String, LatencyHistogram[]> coll : db.getValue().entrySet()) {
+                byNs.put(db.getKey() + "." + coll.getKey(), snapshot(coll.getValue(), reset));
+            }
+        }
+
+        return new Snapshot(byOp, byNs, elapsed);
+    }
+
+    private static Map<Operation, LatencyHistogram.Snapshot> snapshot(LatencyHistogram[] h, boolean reset) {
+
+        Map<Operation, LatencyHistogram.Snapshot> m = new EnumMap<Operation, LatencyHistogram.Snapshot>(Operation.class);
+
+        for (Operation op : OPERATIONS) {
+            m.put(op, reset ? h[op.ordinal()].snapshotAndReset() : h[op.ordinal()].snapshot());
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    /**
+     *  Unchanging copy of the metrics at a point in time
+     */
+    public static class Snapshot {
+
+        private final Map<Operation, LatencyHistogram.Snapshot> _byOperation;
+        private final Map<String, Map<Operation, LatencyHistogram.Snapshot>> _byNamespace;
+        private final long _elapsedNanos;
+
+        Snapshot(Map<Operation, LatencyHistogram.Snapshot> byOperation,
+                 Map<String, Map<Operation, LatencyHistogram.Snapshot>> byNamespace, long elapsedNanos) {
+            _byOperation = byOperation;
+            _byNamespace = Collections.unmodifiableMap(byNamespace);
+            _elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @param op kind of operation
+         * @return latencies of that kind of operation, over all namespaces
+         */
+        public LatencyHistogram.Snapshot getLatency(Operation op) {
+            return _byOperation.get(op);
+        }
+
+        /**
+         * @param namespace database and collection, as "db.collection"
+         * @param op kind of operation
+         * @return latencies of that kind of operation on the namespace, or null if it's had none
+         */
+        public LatencyHistogram.Snapshot getLatency(String namespace, Operation op) {
+
+            Map<Operation, LatencyHistogram.Snapshot> m = _byNamespace.get(namespace);
+
+            return m == null ? null : m.get(op);
+        }
+
+        /**
+         * @return namespaces operated on, sorted
+         */
+        public Set<String> getNamespaces() {
+            return _byNamespace.keySet();
+        }
+
+        /**
+         * @param op kind of operation
+         * @return number of operations of that kind
+         */
+        public long getCount(Operation op) {
+            return _byOperation.get(op).getCount();
+        }
+
+        /**
+         * @param op kind of operation
+         * @return operations of that kind per second, since the metrics were created or last reset
+         */
+        public double getThroughput(Operation op) {
+            return _elapsedNanos <= 0 ? 0 : getCount(op) * 1e9 / _elapsedNanos;
+        }
+
+        /**
+         * @return nanoseconds the snapshot covers
+         */
+        public long getElapsedNanos() {
+            return _elapsedNanos;
+        }
+
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder();
+
+            for (Operation op : OPERATIONS) {
+                LatencyHistogram.Snapshot s = _byOperation.get(op);
+
+                if (s.getCount() > 0) {
+                    sb.append(op).append(" : ").append(Math.round(getThroughput(op))).append("/s ").append(s).append('\n');
+                }
+            }
+
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+/**
+ *  Thrown when the server reports that an acknowledged write failed.  With writes
+ *  acknowledged in batches this covers the whole batch : getpreverror reports an
+ *  error from any of the batch's writes, but not which one.
+ */
+public class MongoDBWriteException extends MongoDBException {
+
+    protected final String _error;
+
+    public MongoDBWriteException(String error) {
+        super("Write failed : " + error);
+        _error = error;
+    }
+
+    /**
+     * @return error reported by the server
+     */
+    public String getError() {
+        return _error;
+    }
+}
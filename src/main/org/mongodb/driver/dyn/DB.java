@@ -130,6 +130,14 @@ public interface DB {
 
     public void resetDBOptions();
 
+    /**
+     *  Sends any writes held back because write coalescing or batched acknowledgement
+     *  is on.  See DBOptions.
+     *
+     * @throws MongoDBException if the writes can't be sent, or the server reports an error
+     */
+    public void flush() throws MongoDBException;
+
     public void close() throws Exception;
 
    // DB.prototype.eval (and dbEval, which is same)
@@ -23,6 +23,7 @@ import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.MongoDBIOException;
 import org.mongodb.driver.dyn.impl.DynDBImpl;
 import org.mongodb.driver.impl.MongoImpl;
+import org.mongodb.driver.ts.options.MongoOptions;
 
 /**
  *  Mongo database server.  This is the top level class of the non-typesafe, dynamic driver.
@@ -44,6 +45,10 @@ public class Mongo extends MongoImpl {
         super(host, port);
     }
 
+    public Mongo(String host, int port, MongoOptions options) throws MongoDBException {
+        super(host, port, options);
+    }
+
     public DB getDB(String dbName) throws MongoDBException, MongoDBIOException {
 
         return new DynDBImpl(this, dbName);
@@ -115,6 +115,10 @@ public class DynDBImpl implements DB {
         _db.resetDBOptions();
     }
 
+    public void flush() throws MongoDBException {
+        _db.flush();
+    }
+
     public void close() throws Exception {
         _db.close();
     }
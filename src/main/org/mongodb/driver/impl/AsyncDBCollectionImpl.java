@@ -0,0 +1,350 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.AsyncDB;
+import org.mongodb.driver.ts.AsyncDBCollection;
+import org.mongodb.driver.ts.AsyncDBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.IndexInfo;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.DBCollectionOptions;
+import org.mongodb.driver.impl.msg.DBInsertMessage;
+import org.mongodb.driver.impl.msg.DBRemoveMessage;
+import org.mongodb.driver.impl.msg.DBUpdateMessage;
+import org.mongodb.driver.util.PKInjector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Implements the AsyncDBCollection interface.
+ */
+class AsyncDBCollectionImpl implements AsyncDBCollection {
+
+    protected final AsyncDBImpl _db;
+    protected final String _collection;
+    protected PKInjector _pkInjector = null;
+
+    protected AsyncDBCollectionImpl(AsyncDBImpl db, String collection) {
+        _db = db;
+        _collection = collection;
+    }
+
+    public CompletableFuture<AsyncDBCursor> find() {
+        return find(new DBQuery());
+    }
+
+    public CompletableFuture<AsyncDBCursor> find(Map selectorMap) {
+
+        try {
+            return find(new MongoSelector(selectorMap));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<AsyncDBCursor> find(MongoSelector selector) {
+        return find(new DBQuery(selector));
+    }
+
+    public CompletableFuture<AsyncDBCursor> find(DBQuery query) {
+        return _db.queryDB(_collection, query);
+    }
+
+    public CompletableFuture<AsyncDBCursor> find(String whereClause) {
+
+        try {
+            return find(new DBQuery(whereClause));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public Flow.Publisher<Doc> publish(DBQuery query) {
+        return publish(query, DBCursorPublisher.DEFAULT_MAX_BATCH);
+    }
+
+    public Flow.Publisher<Doc> publish(DBQuery query, int maxBatchSize) {
+        return new DBCursorPublisher(_db, _collection, query, maxBatchSize);
+    }
+
+    public Flow.Publisher<Doc> publish(DBQuery query, int maxBatchSize, Executor executor) {
+        return new DBCursorPublisher(_db, _collection, query, maxBatchSize, executor);
+    }
+
+    public CompletableFuture<Doc> findOne() {
+        return findOne(new DBQuery(new MongoSelector(), null, 0, 1));
+    }
+
+    public CompletableFuture<Doc> findOne(MongoSelector selector) {
+        return findOne(new DBQuery(selector, null, 0, 1));
+    }
+
+    public CompletableFuture<Doc> findOne(DBQuery query) {
+        return _db.queryOne(_collection, query);
+    }
+
+    public CompletableFuture<Boolean> insert(Map docMap) {
+        return insert(new Doc(docMap));
+    }
+
+    public CompletableFuture<Boolean> insert(Doc doc) {
+
+        try {
+            if (_pkInjector != null) {
+                _pkInjector.injectPK(doc);
+            }
+
+            return _db.sendWriteToDB(new DBInsertMessage(_db.getName(), _collection, doc));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> insert(Doc[] docs) {
+
+        try {
+            if (_pkInjector != null) {
+                for (Doc doc : docs) {
+                    _pkInjector.injectPK(doc);
+                }
+            }
+
+            List<DBInsertMessage> msgs = BulkInserter.encodeRange(_db.getName(), _collection, docs, 0, docs.length);
+
+            CompletableFuture<?>[] written = new CompletableFuture<?>[msgs.size()];
+
+            for (int i = 0; i < written.length; i++) {
+                written[i] = _db.sendWriteToDB(msgs.get(i));
+            }
+
+            return CompletableFuture.allOf(written).thenApply(v -> Boolean.TRUE);
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> clear() {
+        return remove(new MongoSelector());
+    }
+
+    public CompletableFuture<Boolean> remove(MongoSelector selector) {
+
+        try {
+            if (selector == null) {
+                throw new MongoDBException("Selector is null.");
+            }
+
+            return _db.sendWriteToDB(new DBRemoveMessage(_db.getName(), _collection, selector));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Doc> repsert(MongoSelector selector, final Doc obj) {
+
+        try {
+            return _db.sendWriteToDB(new DBUpdateMessage(_db.getName(), _collection, selector, obj, true))
+                    .thenApply(b -> obj);
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> replace(MongoSelector selector, Doc obj) {
+
+        try {
+            return _db.sendWriteToDB(new DBUpdateMessage(_db.getName(), _collection, selector, obj, false));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> modify(MongoSelector selector, Doc modifierObj) {
+
+        try {
+            if (modifierObj == null) {
+                throw new MongoDBException("no obj");
+            }
+
+            if (selector == null) {
+                throw new MongoDBException("no selector");
+            }
+
+            return _db.sendWriteToDB(new DBUpdateMessage(_db.getName(), _collection, selector, modifierObj, false));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> createIndex(IndexInfo info) {
+
+        Doc doc = new Doc();
+
+        doc.put("name", info.getIndexName());
+        doc.put("ns", _db.getName() + "." + _collection);
+
+        MongoSelector selector = new MongoSelector();
+
+        for (String s : info.getFields()) {
+            selector.put(s, 1);
+        }
+
+        doc.put("key", selector);
+
+        try {
+            return _db.sendWriteToDB(new DBInsertMessage(_db.getName(), DBImpl.SYSTEM_INDEX_COLLECTION, doc));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> dropIndex(String name) {
+
+        MongoSelector sel = new MongoSelector();
+
+        sel.put("deleteIndexes", _collection);
+        sel.put("index", name);
+
+        return _db.dbCommand(sel).thenApply(doc -> doc != null);
+    }
+
+    public CompletableFuture<Boolean> dropIndexes() {
+
+        return getIndexInformation().thenCompose(indexes -> {
+
+            List<CompletableFuture<Boolean>> drops = new ArrayList<CompletableFuture<Boolean>>();
+
+            for (IndexInfo ii : indexes) {
+                drops.add(dropIndex(ii.getIndexName()));
+            }
+
+            return CompletableFuture.allOf(drops.toArray(new CompletableFuture[drops.size()]));
+
+        }).thenApply(v -> Boolean.TRUE);
+    }
+
+    public CompletableFuture<List<IndexInfo>> getIndexInformation() {
+
+        // get the indexes only for the specified collection
+
+        DBQuery q;
+
+        try {
+            q = new DBQuery(new MongoSelector("ns", _db.getName() + "." + _collection));
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+
+        return _db.queryDB(DBImpl.SYSTEM_INDEX_COLLECTION, q)
+                .thenCompose(cursor -> AsyncDBImpl.drain(cursor, new ArrayList<Doc>()))
+                .thenApply(docs -> {
+                    List<IndexInfo> list = new ArrayList<IndexInfo>();
+
+                    try {
+                        for (Doc d : docs) {
+                            list.add(DBImpl.toIndexInfo(d, _db.getName(), _collection));
+                        }
+                    }
+                    catch (MongoDBException e) {
+                        throw new CompletionException(e);
+                    }
+
+                    return list;
+                });
+    }
+
+    public CompletableFuture<Integer> getCount() {
+        return getCount(new MongoSelector());
+    }
+
+    public CompletableFuture<Integer> getCount(MongoSelector selector) {
+
+        MongoSelector sel = new MongoSelector();
+
+        sel.put("count", _collection);
+        sel.put("query", selector);
+
+        return _db.dbCommand(sel).thenApply(doc -> {
+            try {
+                return DBImpl.countFromResult(doc);
+            }
+            catch (MongoDBException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<DBCollectionOptions> getOptions() {
+
+        MongoSelector sel;
+
+        try {
+            sel = new MongoSelector("name", _db.getName() + "." + _collection);
+        }
+        catch (MongoDBException e) {
+            return AsyncDBImpl.failed(e);
+        }
+
+        return _db.queryOne(DBImpl.SYSTEM_NAMESPACE_COLLECTION, new DBQuery(sel, null, 0, 1)).thenApply(doc -> {
+            try {
+                return DBCollectionImpl.toOptions(doc);
+            }
+            catch (MongoDBException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    public AsyncDB getDB() {
+        return _db;
+    }
+
+    public String getName() {
+        return _collection;
+    }
+
+    /**
+     *  Allows a PKInjector to be set for this collection
+     *
+     *  @param pki injector
+     */
+    public void setPKInjector(PKInjector pki) {
+        _pkInjector = pki;
+    }
+}
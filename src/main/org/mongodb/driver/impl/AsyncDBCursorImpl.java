@@ -0,0 +1,141 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.ts.AsyncDBCursor;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *   Client-side implementation of an asynchronous db-side cursor.  Each batch is a single
+ *   reply from the server : the first is the reply to the query, and each later one is
+ *   fetched with an OP_GET_MORE when asked for.
+ */
+class AsyncDBCursorImpl implements AsyncDBCursor {
+
+    protected final AsyncDBImpl _myDB;
+    protected final String _collection;
+
+    protected final int _hardLimit;     // number of objects requested as the limit
+    protected final int _batchSize;     // number of objects to ask for per OP_GET_MORE - 0 means let the db decide
+    protected int _objectsReturned;     // number of objects returned to the client app
+
+    protected List<Doc> _firstBatch;    // reply to the query, until handed out
+    protected volatile long _cursorID;
+    protected volatile boolean _closed = false;
+
+    AsyncDBCursorImpl(AsyncDBImpl db, String collection, DBQueryReplyMessage reply, int limit, int batchSize) {
+
+        _myDB = db;
+        _collection = collection;
+        _hardLimit = limit <= 0 ? 0 : limit;
+        _batchSize = batchSize;
+
+        _firstBatch = reply.getObjects();
+        _cursorID = reply.getCursorID();
+    }
+
+    public synchronized CompletableFuture<List<Doc>> nextBatch() {
+
+        if (_firstBatch != null) {
+            List<Doc> batch = _firstBatch;
+            _firstBatch = null;
+
+            return CompletableFuture.completedFuture(limit(batch));
+        }
+
+        if (!hasMore()) {
+            return CompletableFuture.completedFuture(Collections.<Doc>emptyList());
+        }
+
+        int n = _batchSize;
+
+        if (_hardLimit > 0 && (n <= 0 || n > _hardLimit - _objectsReturned)) {
+            n = _hardLimit - _objectsReturned;
+        }
+
+        return _myDB.getMore(_collection, _cursorID, n).thenApply(reply -> {
+            synchronized(this) {
+                _cursorID = reply.getCursorID();
+                return limit(reply.getObjects());
+            }
+        });
+    }
+
+    public synchronized boolean hasMore() {
+
+        if (_closed) {
+            return false;
+        }
+
+        return _firstBatch != null || (_cursorID != 0 && !limitReached());
+    }
+
+    public synchronized CompletableFuture<Void> close() {
+
+        _closed = true;
+        _firstBatch = null;
+
+        return killCursor();
+    }
+
+    /**
+     *  Trims a batch to the client's limit, and kills the server-side cursor once
+     *  the limit is reached
+     */
+    private List<Doc> limit(List<Doc> batch) {
+
+        if (_hardLimit > 0 && _objectsReturned + batch.size() > _hardLimit) {
+            batch = batch.subList(0, _hardLimit - _objectsReturned);
+        }
+
+        _objectsReturned += batch.size();
+
+        if (limitReached()) {
+            killCursor();
+        }
+
+        return batch;
+    }
+
+    private boolean limitReached() {
+        return _hardLimit > 0 && _objectsReturned >= _hardLimit;
+    }
+
+    private CompletableFuture<Void> killCursor() {
+
+        long id = _cursorID;
+        _cursorID = 0;
+
+        if (id == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return _myDB.killCursor(id);
+    }
+
+    public String toString() {
+        return "AsyncDBCursor : cursorID=[" + _cursorID + "] returned=[" + _objectsReturned + "]";
+    }
+}
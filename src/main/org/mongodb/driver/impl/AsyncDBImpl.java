@@ -0,0 +1,367 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.DriverMetrics;
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.AsyncDB;
+import org.mongodb.driver.ts.AsyncDBCollection;
+import org.mongodb.driver.ts.AsyncDBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.commands.DBCommand;
+import org.mongodb.driver.ts.options.DBCollectionOptions;
+import org.mongodb.driver.impl.connection.AsyncConnection;
+import org.mongodb.driver.impl.msg.DBGetMoreMessage;
+import org.mongodb.driver.impl.msg.DBKillCursorsMessage;
+import org.mongodb.driver.impl.msg.DBMessage;
+import org.mongodb.driver.impl.msg.DBQueryMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ *  Implementation of the AsyncDB class.  All operations are sent over the server's
+ *  multiplexed connection, and nothing here waits on the server.
+ */
+public class AsyncDBImpl implements AsyncDB {
+
+    protected final MongoImpl _myMongoServer;
+    protected final String _dbName;
+    protected final AsyncConnection _connection;
+
+    public AsyncDBImpl(MongoImpl mongo, AsyncConnection c, String dbName) throws MongoDBException {
+
+        DBImpl.checkDBName(dbName);
+
+        _myMongoServer = mongo;
+        _dbName = dbName;
+        _connection = c;
+
+        try {
+            _connection.connect();
+        }
+        catch (IOException e) {
+            throw new MongoDBException("Error connecting.", e);
+        }
+    }
+
+    public String getName() {
+        return _dbName;
+    }
+
+    public AsyncDBCollection getCollection(String name) {
+        return new AsyncDBCollectionImpl(this, name);
+    }
+
+    public CompletableFuture<AsyncDBCollection> createCollection(final String name, DBCollectionOptions options) {
+
+        /*
+         *  Note : the "create" entry must be first in the command
+         */
+        MongoSelector sel = new MongoSelector();
+        sel.put("create", name);
+
+        if (options != null) {
+            sel.add(options.getSelector());
+        }
+
+        return dbCommand(sel).thenApply(md -> {
+            if (!isOK(md)) {
+                throw new CompletionException(new MongoDBException("Error creating collection : " + md));
+            }
+            return getCollection(name);
+        });
+    }
+
+    public CompletableFuture<Boolean> dropCollection(final String name) {
+
+        /*
+         *  Mongo currently requires us to drop the indexes for the collection manually
+         */
+        return getCollection(name).dropIndexes()
+                .thenCompose(b -> {
+                    MongoSelector sel = new MongoSelector();
+                    sel.put("drop", name);
+                    return dbCommand(sel);
+                })
+                .thenApply(md -> isOK(md));
+    }
+
+    public CompletableFuture<List<String>> getCollectionNames() {
+
+        return queryDB(DBImpl.SYSTEM_NAMESPACE_COLLECTION, new DBQuery(new MongoSelector()))
+                .thenCompose(cursor -> drain(cursor, new ArrayList<Doc>()))
+                .thenApply(docs -> {
+                    List<String> list = new ArrayList<String>();
+
+                    for (Doc doc : docs) {
+                        String s = (String) doc.get("name");
+
+                        if (s != null && s.length() > 0) {
+                                // strip off db name
+                            if (s.startsWith(_dbName)) {
+                                s = s.substring(_dbName.length() + 1);
+                            }
+
+                            list.add(s);
+                        }
+                    }
+
+                    return list;
+                });
+    }
+
+    public CompletableFuture<Boolean> executeCommand(final DBCommand command) {
+
+        return dbCommand(command.getSelector()).thenApply(doc -> {
+            if (isOK(doc)) {
+                command.setResultDoc(doc);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public CompletableFuture<Doc> eval(String function, Object... args) {
+
+        MongoSelector cmd = new MongoSelector();
+        cmd.put("$eval", function);
+        cmd.put("args", args);
+
+        return dbCommand(cmd);
+    }
+
+    public void close() {
+        _connection.close();
+    }
+
+    /**
+     *  Sends a query, and completes with a cursor over the reply
+     *
+     * @param collection collection to query
+     * @param q query
+     * @return future for cursor
+     */
+    protected CompletableFuture<AsyncDBCursor> queryDB(final String collection, final DBQuery q) {
+
+        return sendQuery(collection, q, q.getBatchSize()).thenApply(reply ->
+                (AsyncDBCursor) new AsyncDBCursorImpl(this, collection, reply, q.getNumberToReturn(), q.getBatchSize()));
+    }
+
+    /**
+     *  Sends a query, and completes with the first document returned, or null if none
+     *
+     * @param collection collection to query
+     * @param q query
+     * @return future for document
+     */
+    protected CompletableFuture<Doc> queryOne(String collection, DBQuery q) {
+
+        return sendQuery(collection, q).thenApply(reply ->
+                reply.getObjects().isEmpty() ? null : reply.getObjects().get(0));
+    }
+
+    protected CompletableFuture<Doc> dbCommand(MongoSelector command) {
+        return queryOne(DBImpl.SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(command));
+    }
+
+    protected CompletableFuture<DBQueryReplyMessage> getMore(String collection, long cursorID) {
+        return getMore(collection, cursorID, 0);
+    }
+
+    /**
+     *  Asks for the next batch of a server-side cursor
+     *
+     * @param collection collection the cursor is over
+     * @param cursorID id of server-side cursor
+     * @param numberToReturn max number of objects to return.  0 leaves it up to the db
+     * @return future for the reply
+     */
+    protected CompletableFuture<DBQueryReplyMessage> getMore(String collection, long cursorID, int numberToReturn) {
+
+        long start = System.nanoTime();
+
+        try {
+            return timed(DriverMetrics.Operation.GET_MORE, collection, start,
+                    checked(requestTracked(new DBGetMoreMessage(_dbName, collection, cursorID, numberToReturn))));
+        }
+        catch (MongoDBException e) {
+            return failed(e);
+        }
+    }
+
+    protected CompletableFuture<Void> killCursor(long cursorID) {
+
+        try {
+            return sendTracked(new DBKillCursorsMessage(cursorID));
+        }
+        catch (MongoDBException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     *  Sends a message that has no reply
+     *
+     * @param msg message to send
+     * @return future for true once written
+     */
+    protected CompletableFuture<Boolean> sendWriteToDB(DBMessage msg) {
+
+        long start = System.nanoTime();
+
+        return timed(DBImpl.writeOperation(msg.getMessageType()), msg.getCollection(), start,
+                sendTracked(msg).thenApply(v -> Boolean.TRUE));
+    }
+
+    private CompletableFuture<DBQueryReplyMessage> sendQuery(String collection, DBQuery q) {
+        return sendQuery(collection, q, 0);
+    }
+
+    /**
+     *  Sends a query, asking for a first batch of at most batchSize objects
+     *
+     * @param collection collection to query
+     * @param q query
+     * @param batchSize max number of objects in the first reply.  0 leaves it up to the db
+     * @return future for the reply
+     */
+    protected CompletableFuture<DBQueryReplyMessage> sendQuery(String collection, DBQuery q, int batchSize) {
+
+        long start = System.nanoTime();
+        DriverMetrics.Operation op = DBImpl.SYSTEM_COMMAND_COLLECTION.equals(collection)
+                ? DriverMetrics.Operation.COMMAND : DriverMetrics.Operation.QUERY;
+
+        try {
+            return timed(op, collection, start,
+                    checked(requestTracked(new DBQueryMessage(_dbName, collection, q, batchSize))));
+        }
+        catch (MongoDBException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     *  Records the latency of an operation once its future completes successfully
+     *
+     * @param op kind of operation, or null to record nothing
+     * @param collection collection operated on
+     * @param start System.nanoTime() when the operation started
+     * @param f future for the operation
+     * @return the future
+     */
+    private <T> CompletableFuture<T> timed(final DriverMetrics.Operation op, final String collection,
+                                           final long start, CompletableFuture<T> f) {
+
+        if (op == null || _myMongoServer == null || !_myMongoServer.getMetrics().isEnabled()) {
+            return f;
+        }
+
+        final DriverMetrics metrics = _myMongoServer.getMetrics();
+
+        f.whenComplete((r, t) -> {
+            if (t == null) {
+                metrics.record(op, _dbName, collection, System.nanoTime() - start);
+            }
+        });
+
+        return f;
+    }
+
+    /**
+     *  Sends a message with a reply, telling the server's event listeners how it went
+     */
+    private CompletableFuture<DBQueryReplyMessage> requestTracked(DBMessage msg) {
+
+        if (_myMongoServer == null) {
+            return _connection.sendForReply(msg);
+        }
+
+        EventDispatcher events = _myMongoServer.getEventDispatcher();
+        return events.track(events.started(msg), _connection.sendForReply(msg));
+    }
+
+    /**
+     *  Sends a message with no reply, telling the server's event listeners how it went
+     */
+    private CompletableFuture<Void> sendTracked(DBMessage msg) {
+
+        if (_myMongoServer == null) {
+            return _connection.send(msg);
+        }
+
+        EventDispatcher events = _myMongoServer.getEventDispatcher();
+        return events.track(events.started(msg), _connection.send(msg));
+    }
+
+    private static CompletableFuture<DBQueryReplyMessage> checked(CompletableFuture<DBQueryReplyMessage> f) {
+
+        return f.thenApply(reply -> {
+            try {
+                DBCursorImpl.checkReply(reply);
+            }
+            catch (MongoDBException e) {
+                throw new CompletionException(e);
+            }
+            return reply;
+        });
+    }
+
+    /**
+     *  Reads the remainder of a cursor into a list
+     *
+     * @param cursor cursor to read
+     * @param list list to add to
+     * @return future for the list
+     */
+    static CompletableFuture<List<Doc>> drain(final AsyncDBCursor cursor, final List<Doc> list) {
+
+        return cursor.nextBatch().thenCompose(batch -> {
+            list.addAll(batch);
+
+            if (cursor.hasMore()) {
+                return drain(cursor, list);
+            }
+
+            return CompletableFuture.completedFuture(list);
+        });
+    }
+
+    static boolean isOK(Doc doc) {
+
+        Object o = (doc == null ? null : doc.get("ok"));
+
+        return o instanceof Number && ((Number) o).intValue() == 1;
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable t) {
+
+        CompletableFuture<T> f = new CompletableFuture<T>();
+        f.completeExceptionally(t);
+
+        return f;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *   Pool of direct buffers in a few fixed size classes, shared by every thread.  Message
+ *   encoding and reply decoding lease buffers with get() and hand them back with release().
+ *
+ *   Buffers are carved out of larger direct slabs, and the total size of the slabs is capped,
+ *   so the direct memory the driver uses doesn't depend on how many threads use it.  Once the
+ *   cap is reached and a class has nothing free, get() falls back to a heap buffer, as it does
+ *   for requests bigger than the largest class.  Heap buffers are dropped rather than pooled
+ *   when released.  getFallbackCount() tells how often the cap forced a heap buffer, so a
+ *   cap that's too small for the load shows up.
+ *
+ *   The free lists are lock-free deques, so leasing and releasing never block.  A buffer that
+ *   is never released is garbage collected as usual.  Every buffer carved from a slab keeps
+ *   the slab reachable, so once a slab's buffers have all been leaked and collected, the slab
+ *   goes too, and a cleaner takes it off the direct bytes counted against the cap.
+ */
+public class BufferPool {
+
+    static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+
+    public static final int MAX_POOLED_SIZE = SIZE_CLASSES[SIZE_CLASSES.length - 1];
+
+    public static final long DEFAULT_MAX_DIRECT_BYTES = 64L * 1024 * 1024;
+
+    static final int SLAB_SIZE = 256 * 1024;            // smaller classes are carved from slabs this big
+
+    private static final BufferPool _shared = new BufferPool(DEFAULT_MAX_DIRECT_BYTES);
+
+    /*
+     *  hands back the reservation of slabs that have been collected
+     */
+    private static final Cleaner _cleaner = Cleaner.create();
+
+    private final Deque<ByteBuffer>[] _free;       // most recently released first, while still warm
+    private final AtomicLong _directBytes = new AtomicLong(0);
+    private final AtomicLong _fallbacks = new AtomicLong(0);
+    private final long _maxDirectBytes;
+
+    /**
+     * @param maxDirectBytes most direct memory the pool will allocate, in total
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxDirectBytes) {
+
+        if (maxDirectBytes < 0) {
+            throw new IllegalArgumentException("maxDirectBytes must be >= 0");
+        }
+
+        _maxDirectBytes = maxDirectBytes;
+        _free = new Deque[SIZE_CLASSES.length];
+
+        for (int i = 0; i < _free.length; i++) {
+            _free[i] = new ConcurrentLinkedDeque<ByteBuffer>();
+        }
+    }
+
+    /**
+     * @return the pool shared by the driver
+     */
+    public static BufferPool getShared() {
+        return _shared;
+    }
+
+    /**
+     *  Leases a cleared, little-endian buffer of at least the given size.  The buffer is
+     *  direct unless it's too big to pool or the pool has reached its limit.
+     *
+     * @param size number of bytes needed
+     * @return buffer with capacity of at least size
+     */
+    public ByteBuffer get(int size) {
+
+        int c = classFor(size);
+
+        if (c < 0) {
+            return allocateHeap(size);
+        }
+
+        ByteBuffer buf = _free[c].poll();
+
+        if (buf == null) {
+            buf = carve(c);
+        }
+
+        buf.clear();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buf;
+    }
+
+    /**
+     *  Returns a buffer obtained from get().  The caller must not use it afterwards, and
+     *  must release it only once.
+     *
+     * @param buf buffer to return
+     */
+    public void release(ByteBuffer buf) {
+
+        if (buf == null || !buf.isDirect()) {
+            return;
+        }
+
+        int c = classFor(buf.capacity());
+
+        if (c < 0 || SIZE_CLASSES[c] != buf.capacity()) {
+            return;
+        }
+
+        _free[c].push(buf);
+    }
+
+    /**
+     * @return direct memory allocated by the pool so far, in bytes
+     */
+    public long getDirectBytes() {
+        return _directBytes.get();
+    }
+
+    public long getMaxDirectBytes() {
+        return _maxDirectBytes;
+    }
+
+    /**
+     * @return number of heap buffers handed out because the pool had reached its limit.
+     *         Requests too big to pool aren't counted.
+     */
+    public long getFallbackCount() {
+        return _fallbacks.get();
+    }
+
+    /**
+     * @param size number of bytes needed
+     * @return index of the smallest class that holds size, or -1 if too big to pool
+     */
+    static int classFor(int size) {
+
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     *  Allocates a new slab and slices it into buffers of a class, freeing all but one.  If
+     *  the slab would take the pool over its limit, hands out a heap buffer instead.
+     */
+    private ByteBuffer carve(int c) {
+
+        int size = SIZE_CLASSES[c];
+        int slabSize = Math.max(size, SLAB_SIZE);
+
+        if (!reserve(slabSize)) {
+            _fallbacks.incrementAndGet();
+            return allocateHeap(size);
+        }
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+
+        final AtomicLong directBytes = _directBytes;
+        _cleaner.register(slab, () -> directBytes.addAndGet(-slabSize));
+
+        for (int pos = size; pos < slabSize; pos += size) {
+            slab.limit(pos + size);
+            slab.position(pos);
+            _free[c].offer(slab.slice());
+        }
+
+        slab.position(0);
+        slab.limit(size);
+
+        return slab.slice();
+    }
+
+    private boolean reserve(int n) {
+
+        while (true) {
+            long cur = _directBytes.get();
+
+            if (cur + n > _maxDirectBytes) {
+                return false;
+            }
+
+            if (_directBytes.compareAndSet(cur, cur + n)) {
+                return true;
+            }
+        }
+    }
+
+    private static ByteBuffer allocateHeap(int size) {
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buf;
+    }
+}
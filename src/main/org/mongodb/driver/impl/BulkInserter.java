@@ -0,0 +1,290 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.MongoDBIOException;
+import org.mongodb.driver.MongoDBWriteException;
+import org.mongodb.driver.impl.msg.DBInsertMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+import org.mongodb.driver.ts.BulkInsertResult;
+import org.mongodb.driver.ts.Doc;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *   Sends a large array of documents as a run of insert messages of about MESSAGE_SIZE
+ *   each.  The array is cut into ranges which are encoded in parallel on a shared pool of
+ *   encoder threads, while the calling thread writes the finished messages back to back,
+ *   in order, on one channel.
+ *
+ *   If the database's writes are acknowledged, the run starts with a reseterror and ends
+ *   with a getpreverror, so an error from any of its messages is reported.  Over a
+ *   multiplexed connection, where other threads' messages share the socket, each message
+ *   is followed by a getlasterror of its own instead, and the replies are checked at the end.
+ *
+ *   Ranges are sized from the average encoded size of the documents seen so far, so that
+ *   each range makes about one message, and only a few ranges are encoded ahead of the
+ *   writer so memory use doesn't grow with the size of the array.
+ */
+class BulkInserter {
+
+    static final int MESSAGE_SIZE = BufferPool.MAX_POOLED_SIZE;     // keeps the message buffers pooled
+    static final int INITIAL_RANGE = 64;
+    static final int MAX_RANGE = 1024 * 64;
+
+    private static final int ENCODERS = Runtime.getRuntime().availableProcessors();
+    private static final int WINDOW = 2 * ENCODERS;                   // ranges encoded ahead of the writer
+
+    private static final ExecutorService _encoderExecutor = Executors.newFixedThreadPool(ENCODERS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mongo-encode");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final DBImpl _db;
+    private final String _dbName;
+    private final String _collection;
+
+    BulkInserter(DBImpl db, String dbName, String collection) {
+        _db = db;
+        _dbName = dbName;
+        _collection = collection;
+    }
+
+    BulkInsertResult insert(Doc[] docs) throws MongoDBException {
+
+        long start = System.nanoTime();
+
+        _db.flush();         // anything held back by write coalescing goes first
+
+        Deque<Future<List<DBInsertMessage>>> inflight = new ArrayDeque<Future<List<DBInsertMessage>>>();
+
+        int next = 0;
+        int range = INITIAL_RANGE;
+        int docCount = 0;
+        int msgCount = 0;
+        long bytes = 0;
+
+        SocketChannel sc = null;
+        DriverEvent reset = null;
+        Queue<CompletableFuture<DBQueryReplyMessage>> acks = null;
+        boolean ok = false;
+
+        try {
+            if (_db._asyncConnection == null) {
+                sc = _db.leaseChannel();
+
+                if (_db.isAcknowledged()) {
+                    reset = _db.beginRun(sc);
+                }
+            }
+            else if (_db._writeConcern.isAcknowledged()) {
+                acks = new ArrayDeque<CompletableFuture<DBQueryReplyMessage>>();
+            }
+
+            while (next < docs.length || !inflight.isEmpty()) {
+
+                while (inflight.size() < WINDOW && next < docs.length) {
+                    int end = (int) Math.min(docs.length, (long) next + range);
+                    inflight.add(_encoderExecutor.submit(encode(docs, next, end)));
+                    next = end;
+                }
+
+                List<DBInsertMessage> msgs = await(inflight.poll());
+
+                try {
+                    for (DBInsertMessage msg : msgs) {
+                        docCount += msg.getObjectCount();
+                        bytes += msg.getMessageLength();
+                        msgCount++;
+
+                        write(sc, msg, acks);
+                    }
+                }
+                finally {
+                    release(msgs);      // no-op for the ones written, which release themselves
+                }
+
+                range = (int) Math.max(1, Math.min(MAX_RANGE, MESSAGE_SIZE * (long) docCount / bytes));
+            }
+
+            if (acks != null) {
+                DBImpl.awaitAcknowledgements(acks);
+            }
+
+            if (sc != null && _db.isAcknowledged()) {
+                try {
+                    _db.acknowledgeRun(sc, reset);
+                }
+                catch (MongoDBWriteException e) {
+                    ok = true;          // the channel's fine, it was the writes that failed
+                    throw e;
+                }
+            }
+
+            ok = true;
+        }
+        catch (IOException e) {
+            throw new MongoDBIOException("IO Error : ", e);
+        }
+        finally {
+            if (!ok) {
+                discard(inflight);
+            }
+
+            if (sc != null) {
+                _db.releaseChannel(sc, ok);
+            }
+        }
+
+        return new BulkInsertResult(docCount, msgCount, bytes, System.nanoTime() - start);
+    }
+
+    private Callable<List<DBInsertMessage>> encode(final Doc[] docs, final int from, final int to) {
+
+        return new Callable<List<DBInsertMessage>>() {
+            public List<DBInsertMessage> call() throws MongoDBException {
+                return encodeRange(_dbName, _collection, docs, from, to);
+            }
+        };
+    }
+
+    /**
+     *  Encodes docs[from..to) as insert messages of about MESSAGE_SIZE each
+     *
+     * @param dbName name of database
+     * @param collection name of collection
+     * @param docs documents to insert
+     * @param from index of first document
+     * @param to index after last document
+     * @return the messages, in order
+     * @throws MongoDBException if a document can't be encoded, in which case nothing is left leased
+     */
+    static List<DBInsertMessage> encodeRange(String dbName, String collection, Doc[] docs, int from, int to) throws MongoDBException {
+
+        List<DBInsertMessage> msgs = new ArrayList<DBInsertMessage>();
+        boolean done = false;
+
+        try {
+            int i = from;
+
+            while (i < to) {
+                DBInsertMessage msg = new DBInsertMessage(dbName, collection, docs, i, to, MESSAGE_SIZE);
+                msgs.add(msg);
+                i += msg.getObjectCount();
+            }
+            done = true;
+        }
+        finally {
+            if (!done) {
+                release(msgs);
+            }
+        }
+
+        return msgs;
+    }
+
+    /**
+     * @param sc channel to write on, or null for the multiplexed connection
+     * @param acks where to put the message's acknowledgement, or null if it's not acknowledged
+     */
+    private void write(SocketChannel sc, DBInsertMessage msg, Queue<CompletableFuture<DBQueryReplyMessage>> acks)
+            throws IOException, MongoDBException {
+
+        if (acks != null) {
+            acks.add(_db.sendAcknowledged(msg));
+        }
+        else if (sc == null) {
+            _db.sendAsync(msg);
+        }
+        else {
+            _db.writeMessage(sc, msg);
+        }
+    }
+
+    private static List<DBInsertMessage> await(Future<List<DBInsertMessage>> f) throws MongoDBException {
+
+        try {
+            return f.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoDBException("Interrupted waiting for insert encoding", e);
+        }
+        catch (ExecutionException e) {
+
+            Throwable t = e.getCause();
+
+            if (t instanceof MongoDBException) {
+                throw (MongoDBException) t;
+            }
+
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+
+            throw new MongoDBException("Error encoding insert : ", t);
+        }
+    }
+
+    /**
+     *  Waits out the ranges still being encoded after a failure, and releases their messages
+     */
+    private static void discard(Deque<Future<List<DBInsertMessage>>> inflight) {
+
+        Future<List<DBInsertMessage>> f;
+
+        while ((f = inflight.poll()) != null) {
+            try {
+                release(f.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                // released by the encoder
+            }
+        }
+    }
+
+    static void release(List<DBInsertMessage> msgs) {
+        for (DBInsertMessage msg : msgs) {
+            msg.release();
+        }
+    }
+}
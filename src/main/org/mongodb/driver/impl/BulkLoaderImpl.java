@@ -0,0 +1,394 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.MongoDBIOException;
+import org.mongodb.driver.MongoDBWriteException;
+import org.mongodb.driver.impl.msg.DBInsertMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+import org.mongodb.driver.ts.BulkInsertResult;
+import org.mongodb.driver.ts.BulkLoader;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.util.PKInjector;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ *   Loads a document source of any length.  The calling thread reads batches from the source,
+ *   encoding is done on the common fork/join pool, and writer threads, each holding a channel
+ *   of its own, drain the encoded batches from a queue.  A permit is taken for each batch
+ *   before it's read and given back once it's written, which bounds the documents in memory.
+ *
+ *   If the database's writes are acknowledged, each writer starts with a reseterror on its
+ *   channel and ends with a getpreverror, so an error from any message it wrote is reported.
+ *   Over a multiplexed connection each message gets a getlasterror of its own, and a writer
+ *   checks the replies when it's done.
+ *
+ *   Batch sizes follow the average encoded document size, aiming at one message per batch.
+ *   After a failure the source is no longer read, batches already read are released unwritten,
+ *   and load() throws the first failure once the writers are done.
+ */
+class BulkLoaderImpl implements BulkLoader {
+
+    private static final List<DBInsertMessage> END = new ArrayList<DBInsertMessage>();     // tells a writer to stop
+
+    private static final ExecutorService _writerExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mongo-bulk-writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final DBImpl _db;
+    private final String _dbName;
+    private final String _collection;
+    private final PKInjector _pkInjector;
+
+    private int _writers = DEFAULT_WRITERS;
+    private int _maxPendingBatches = 2 * Runtime.getRuntime().availableProcessors();
+
+    BulkLoaderImpl(DBImpl db, String dbName, String collection, PKInjector pki) {
+        _db = db;
+        _dbName = dbName;
+        _collection = collection;
+        _pkInjector = pki;
+    }
+
+    public BulkLoader setWriters(int writers) {
+        if (writers <= 0) {
+            throw new IllegalArgumentException("writers must be > 0 : " + writers);
+        }
+        _writers = writers;
+        return this;
+    }
+
+    public BulkLoader setMaxPendingBatches(int maxPendingBatches) {
+        if (maxPendingBatches <= 0) {
+            throw new IllegalArgumentException("max pending batches must be > 0 : " + maxPendingBatches);
+        }
+        _maxPendingBatches = maxPendingBatches;
+        return this;
+    }
+
+    public BulkInsertResult load(Stream<Doc> docs) throws MongoDBException {
+        return load(docs.iterator());
+    }
+
+    public BulkInsertResult load(Iterator<Doc> docs) throws MongoDBException {
+        return new Load(_writers, _maxPendingBatches).run(docs);
+    }
+
+    /**
+     *  State of one call to load()
+     */
+    private class Load {
+
+        final int _writerCount;
+        final int _maxPending;
+
+        final Semaphore _permits;
+        final BlockingQueue<List<DBInsertMessage>> _queue;
+        final CountDownLatch _writersDone;
+        final AtomicReference<Throwable> _failure = new AtomicReference<Throwable>();
+
+        final AtomicLong _encodedDocs = new AtomicLong();
+        final AtomicLong _encodedBytes = new AtomicLong();
+
+        final AtomicInteger _docCount = new AtomicInteger();
+        final AtomicInteger _msgCount = new AtomicInteger();
+        final AtomicLong _byteCount = new AtomicLong();
+
+        Load(int writers, int maxPending) {
+            _writerCount = writers;
+            _maxPending = maxPending;
+            _permits = new Semaphore(maxPending);
+            _queue = new ArrayBlockingQueue<List<DBInsertMessage>>(maxPending + writers);
+            _writersDone = new CountDownLatch(writers);
+        }
+
+        BulkInsertResult run(Iterator<Doc> docs) throws MongoDBException {
+
+            long start = System.nanoTime();
+
+            _db.flush();         // anything held back by write coalescing goes first
+
+            for (int i = 0; i < _writerCount; i++) {
+                _writerExecutor.execute(new Runnable() {
+                    public void run() {
+                        write();
+                    }
+                });
+            }
+
+            try {
+                int batchSize = BulkInserter.INITIAL_RANGE;
+
+                while (_failure.get() == null && docs.hasNext()) {
+
+                    _permits.acquire();
+
+                    boolean submitted = false;
+
+                    try {
+                        List<Doc> batch = new ArrayList<Doc>(batchSize);
+
+                        while (batch.size() < batchSize && docs.hasNext()) {
+                            Doc doc = docs.next();
+
+                            if (_pkInjector != null) {
+                                _pkInjector.injectPK(doc);
+                            }
+                            batch.add(doc);
+                        }
+
+                        encode(batch.toArray(new Doc[batch.size()]));
+                        submitted = true;
+                    }
+                    finally {
+                        if (!submitted) {
+                            _permits.release();
+                        }
+                    }
+
+                    long bytes = _encodedBytes.get();
+
+                    if (bytes > 0) {
+                        batchSize = (int) Math.max(1, Math.min(BulkInserter.MAX_RANGE,
+                                BulkInserter.MESSAGE_SIZE * _encodedDocs.get() / bytes));
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _failure.compareAndSet(null, new MongoDBException("Interrupted loading documents", e));
+            }
+            catch (RuntimeException e) {
+                _failure.compareAndSet(null, e);
+            }
+            finally {
+                finish();
+            }
+
+            Throwable t = _failure.get();
+
+            if (t != null) {
+                if (t instanceof MongoDBException) {
+                    throw (MongoDBException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new MongoDBException("Error loading documents : ", t);
+            }
+
+            return new BulkInsertResult(_docCount.get(), _msgCount.get(), _byteCount.get(), System.nanoTime() - start);
+        }
+
+        private void encode(final Doc[] batch) {
+
+            ForkJoinPool.commonPool().execute(new Runnable() {
+                public void run() {
+                    try {
+                        List<DBInsertMessage> msgs = BulkInserter.encodeRange(_dbName, _collection, batch, 0, batch.length);
+
+                        for (DBInsertMessage msg : msgs) {
+                            _encodedBytes.addAndGet(msg.getMessageLength());
+                        }
+                        _encodedDocs.addAndGet(batch.length);
+
+                        _queue.add(msgs);
+                    }
+                    catch (Throwable t) {
+                        _failure.compareAndSet(null, t);
+                        _permits.release();
+                    }
+                }
+            });
+        }
+
+        /**
+         *  Waits for every batch to be written or dropped, then stops the writers
+         */
+        private void finish() {
+
+            _permits.acquireUninterruptibly(_maxPending);
+
+            for (int i = 0; i < _writerCount; i++) {
+                _queue.add(END);
+            }
+
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    _writersDone.await();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         *  Writer loop.  Keeps draining after a failure so every permit comes back.
+         */
+        private void write() {
+
+            SocketChannel sc = null;
+            DriverEvent reset = null;
+            Queue<CompletableFuture<DBQueryReplyMessage>> acks = null;
+            boolean ok = true;
+
+            try {
+                if (_db._asyncConnection == null) {
+                    sc = _db.leaseChannel();
+
+                    if (_db.isAcknowledged()) {
+                        reset = _db.beginRun(sc);
+                    }
+                }
+                else if (_db._writeConcern.isAcknowledged()) {
+                    acks = new ArrayDeque<CompletableFuture<DBQueryReplyMessage>>();
+                }
+            }
+            catch (IOException e) {
+                _failure.compareAndSet(null, new MongoDBIOException("IO Error : ", e));
+                ok = false;
+            }
+            catch (MongoDBException e) {
+                _failure.compareAndSet(null, e);
+                ok = false;
+            }
+            catch (MongoDBIOException e) {
+                _failure.compareAndSet(null, e);
+                ok = false;
+            }
+
+            try {
+                while (true) {
+
+                    List<DBInsertMessage> msgs = _queue.take();
+
+                    if (msgs == END) {
+                        if (acks != null) {
+                            try {
+                                DBImpl.awaitAcknowledgements(acks);
+                            }
+                            catch (MongoDBException e) {
+                                _failure.compareAndSet(null, e);
+                            }
+                            catch (MongoDBIOException e) {
+                                _failure.compareAndSet(null, e);
+                            }
+                        }
+
+                        if (ok && sc != null && _db.isAcknowledged()) {
+                            try {
+                                _db.acknowledgeRun(sc, reset);
+                            }
+                            catch (IOException e) {
+                                _failure.compareAndSet(null, new MongoDBIOException("IO Error : ", e));
+                                ok = false;
+                            }
+                            catch (MongoDBException e) {
+                                _failure.compareAndSet(null, e);
+                                ok = e instanceof MongoDBWriteException;
+                            }
+                        }
+                        break;
+                    }
+
+                    try {
+                        if (ok && _failure.get() == null) {
+                            for (DBInsertMessage msg : msgs) {
+                                _docCount.addAndGet(msg.getObjectCount());
+                                _byteCount.addAndGet(msg.getMessageLength());
+                                _msgCount.incrementAndGet();
+
+                                if (acks != null) {
+                                    acks.add(_db.sendAcknowledged(msg));
+                                }
+                                else if (sc == null) {
+                                    _db.sendAsync(msg);
+                                }
+                                else {
+                                    _db.writeMessage(sc, msg);
+                                }
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        _failure.compareAndSet(null, new MongoDBIOException("IO Error : ", e));
+                        ok = false;
+                    }
+                    catch (MongoDBException e) {
+                        _failure.compareAndSet(null, e);
+                        ok = false;
+                    }
+                    catch (RuntimeException e) {
+                        _failure.compareAndSet(null, e);
+                        ok = false;
+                    }
+                    finally {
+                        BulkInserter.release(msgs);
+                        _permits.release();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // only the daemon pool shutting down interrupts us
+                _failure.compareAndSet(null, new MongoDBException("Interrupted writing documents", e));
+            }
+            finally {
+                if (sc != null) {
+                    _db.releaseChannel(sc, ok);
+                }
+                _writersDone.countDown();
+            }
+        }
+    }
+}
@@ -26,6 +26,9 @@ import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.DBQuery;
 import org.mongodb.driver.ts.IndexInfo;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.BulkInsertResult;
+import org.mongodb.driver.ts.BulkLoader;
+import org.mongodb.driver.ts.options.WriteBehindOptions;
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.ts.options.DBCollectionOptions;
 import org.mongodb.driver.util.PKInjector;
@@ -43,6 +46,7 @@ class DBCollectionImpl implements DBCollection {
     protected final DBImpl _db;
     protected final String _collection;
     protected PKInjector _pkInjector = null;
+    protected volatile WriteBehindQueue _writeBehind = null;
 
     protected DBCollectionImpl(DBImpl db, String collection) {
         _db = db;
@@ -50,10 +54,12 @@ class DBCollectionImpl implements DBCollection {
     }
 
     public DBCursor find(String query) throws MongoDBException {
+        flushWriteBehind();
         return _db.queryDB(_collection, new DBQuery(query));
     }
 
     public DBCursor find(DBQuery query) throws MongoDBException {
+        flushWriteBehind();
         return _db.queryDB(_collection, query);
     }
 
@@ -106,7 +112,14 @@ class DBCollectionImpl implements DBCollection {
         if (_pkInjector != null) {
             _pkInjector.injectPK(doc);
         }
-        
+
+        WriteBehindQueue wb = _writeBehind;
+
+        if (wb != null) {
+            wb.add(doc);
+            return true;
+        }
+
         return _db.insertIntoDB(_collection, doc);
     }
 
@@ -118,9 +131,65 @@ class DBCollectionImpl implements DBCollection {
             }
         }
 
+        flushWriteBehind();
         return _db.insertIntoDB(_collection, docs);
     }
 
+    public BulkInsertResult bulkInsert(Doc[] docs) throws MongoDBException {
+
+        if (_pkInjector != null) {
+            for (Doc doc : docs) {
+                _pkInjector.injectPK(doc);
+            }
+        }
+
+        flushWriteBehind();
+        return _db.bulkInsertIntoDB(_collection, docs);
+    }
+
+    public BulkLoader getBulkLoader() {
+        return new BulkLoaderImpl(_db, _db.getName(), _collection, _pkInjector);
+    }
+
+    public void setWriteBehind(WriteBehindOptions options) throws MongoDBException {
+
+        WriteBehindQueue old = _writeBehind;
+        _writeBehind = null;
+
+        if (old != null) {
+            try {
+                old.close();
+            }
+            finally {
+                _db.removeWriteBehind(old);
+            }
+        }
+
+        if (options != null) {
+            WriteBehindQueue wb = new WriteBehindQueue(_db, _collection, options);
+            _db.addWriteBehind(wb);
+            _writeBehind = wb;
+        }
+    }
+
+    public void flush() throws MongoDBException {
+        flushWriteBehind();
+        _db.flush();
+    }
+
+    /**
+     *  Waits for queued inserts to go out, so they come before a write or query that
+     *  doesn't go through the queue
+     */
+    private void flushWriteBehind() throws MongoDBException {
+
+        WriteBehindQueue wb = _writeBehind;
+
+        if (wb != null) {
+            wb.flush();
+        }
+    }
+
     public boolean clear() throws MongoDBException {
         return remove(new MongoSelector());
     }
@@ -131,14 +200,17 @@ class DBCollectionImpl implements DBCollection {
             throw new MongoDBException("Selector is null.");
         }
 
+        flushWriteBehind();
         return _db.removeFromDB(_collection, selector);
     }
 
     public Doc repsert(MongoSelector selector, Doc obj) throws MongoDBException {
+        flushWriteBehind();
         return _db.repsertInDB(_collection, selector, obj);
     }
 
      public boolean replace(MongoSelector selector , Doc obj) throws MongoDBException {
+         flushWriteBehind();
          return _db.replaceInDB(_collection, selector, obj);
      }
 
@@ -156,6 +228,7 @@ class DBCollectionImpl implements DBCollection {
 //            throw new MongoDBException("Modifier object not valid");
 //        }
 
+        flushWriteBehind();
         return _db.modifyInDB(_collection, selector, modifierObj);
     }
 
@@ -191,11 +264,12 @@ class DBCollectionImpl implements DBCollection {
     }
 
     public int getCount(MongoSelector selector) throws MongoDBException {
+        flushWriteBehind();
         return _db.getCount(_collection, selector);
     }
 
     public int getCount() throws MongoDBException {
-        return _db.getCount(_collection, new MongoSelector());
+        return getCount(new MongoSelector());
     }
 
     public DBCollectionOptions getOptions() throws MongoDBException {
@@ -204,6 +278,20 @@ class DBCollectionImpl implements DBCollection {
 
         Doc doc = resp.getNextObject();
 
+        resp.close();
+
+        return toOptions(doc);
+    }
+
+    /**
+     *  Converts an entry from the system.namespaces collection into collection options
+     *
+     * @param doc namespace document
+     * @return read-only options
+     * @throws MongoDBException if the options are invalid
+     */
+    static DBCollectionOptions toOptions(Doc doc) throws MongoDBException {
+
         Doc optionDoc = (Doc) doc.get("options");
 
         DBCollectionOptions options = new DBCollectionOptions();
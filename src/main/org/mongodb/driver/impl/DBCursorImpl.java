@@ -21,6 +21,8 @@ package org.mongodb.driver.impl;
 
 import org.mongodb.driver.ts.DBCursor;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.DriverMetrics;
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.MongoDBQueryException;
 import org.mongodb.driver.impl.msg.DBKillCursorsMessage;
@@ -29,17 +31,39 @@ import org.mongodb.driver.impl.msg.MessageType;
 import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.lang.ref.Cleaner;
+import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
 
 /**
  *   Client-side implementation of the db-side cursor.  The cursor reads the wire and
  *   processes the response from a query to the database.  The DBCursorImpl will iteratively
  *   fetch more data via an OP_GET_MORE if needed.
  *
- *   TODO - this would make me happier if the CTOR took a DBQueryReplyMessage to start, rather than presume the wire is ready.
+ *   The cursor owns the channel its query was sent on until the server-side cursor is
+ *   exhausted or the cursor is closed, and sends its OP_GET_MOREs on that channel, so
+ *   a cursor never waits on anything but its own results.  Clients must close()
+ *   cursors they don't read to the end, or the channel is held until the cursor is
+ *   garbage collected.  As a safeguard, an abandoned cursor that still holds a channel
+ *   or a server-side cursor is cleaned up once it's unreachable : the server-side cursor
+ *   is killed and the channel discarded, as its state is unknown.
+ *
+ *   When the db uses a multiplexed connection, the cursor holds no channel and its
+ *   OP_GET_MOREs are multiplexed like any other request.
+ *
+ *   Each OP_GET_MORE asks for the cursor's batch size (or whatever the db decides, if 0),
+ *   trimmed to what's left of any limit.  With a prefetch watermark set, the next OP_GET_MORE
+ *   is sent as soon as fewer than that many objects are queued, and its reply is read in
+ *   the background, so a scan overlaps the network with the client's processing.  At most
+ *   one batch is in flight at a time.
  *
  */
 class DBCursorImpl implements DBCursor {
@@ -61,104 +85,197 @@ class DBCursorImpl implements DBCursor {
 
     protected boolean _closed = false;
 
+    protected SocketChannel _channel;   // leased channel, or null once released
+
+    protected int _batchSize;           // number of objects to ask for per OP_GET_MORE - 0 means let the db decide
+    protected int _prefetch;            // fetch the next batch when fewer than this many are queued - 0 means don't
+    protected final boolean _lazy;      // deliver LazyDocs rather than decoding each batch as it arrives
+    protected final boolean _primitiveArrays;   // decode numeric arrays as int[] or double[]
+
+    protected CompletableFuture<DBQueryReplyMessage> _pending;  // prefetched batch, if one is in flight
+
+    /*
+     *  reads prefetched replies off pinned channels
+     */
+    private static final ExecutorService _prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mongo-prefetch");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /*
+     *  cleans up after cursors dropped without being closed
+     */
+    private static final Cleaner _cleaner = Cleaner.create();
+
+    private final Abandoned _abandoned;
+    private Cleaner.Cleanable _cleanable;   // registered once there's a server-side cursor
+
 
     /**
-     *  Create a new DBCursor with a limit set.
+     *  Create a new DBCursor with a limit set, reading the query response off the channel
+     *  the query was sent on.
      *
      * @param db db this cursor is associated with
+     * @param sc channel the query was sent on.  The cursor takes over the lease on the channel once
+     *           the response has been read, and the caller must release it if construction fails
      * @param collection collection this cursor is working over
      * @param limit max number of objects that this cursor can deliver to a client.  <= 0 means no limit
      * @throws MongoDBException on network error
      */
-    public DBCursorImpl(DBImpl db, String collection, int limit) throws MongoDBException {
-        
-        _myDB = db;
-        _collection = collection;
+    public DBCursorImpl(DBImpl db, SocketChannel sc, String collection, int limit) throws MongoDBException {
+        this(db, sc, collection, limit, false, false);
+    }
 
-        if (limit <= 0) {
-            limit = 0;
-        }
-        _hardLimit = limit;
-        _objectsReturned = 0;
+    /**
+     *  Create a new DBCursor with a limit set, reading the query response off the channel
+     *  the query was sent on.
+     *
+     * @param db db this cursor is associated with
+     * @param sc channel the query was sent on.  The cursor takes over the lease on the channel once
+     *           the response has been read, and the caller must release it if construction fails
+     * @param collection collection this cursor is working over
+     * @param limit max number of objects that this cursor can deliver to a client.  <= 0 means no limit
+     * @param lazy true to deliver LazyDocs, decoded a field at a time as they're used
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @throws MongoDBException on network error
+     */
+    public DBCursorImpl(DBImpl db, SocketChannel sc, String collection, int limit, boolean lazy,
+                        boolean primitiveArrays) throws MongoDBException {
 
-        readAll();
-    }
+        this(db, collection, limit, lazy, primitiveArrays);
+
+        readAll(sc);
 
+        _channel = sc;
+        _abandoned._channel = sc;
+
+        if (_msg.getCursorID() == 0) {
+            releaseChannel(true);
+        }
+    }
 
     /**
      *  Create a new DBCursor, including reading the objects off the wire - this allows for
      *  result-sets to be inteleaved on the same connection.
      * 
      * @param db db this cursor is associated with
+     * @param sc channel the query was sent on.  The cursor takes over the lease on the channel
      * @param collection collection this cursor is working over
      * @throws MongoDBException on network error
      */
-    public DBCursorImpl(DBImpl db, String collection) throws MongoDBException {
-        this(db,collection, 0);
+    public DBCursorImpl(DBImpl db, SocketChannel sc, String collection) throws MongoDBException {
+        this(db, sc, collection, 0);
     }
 
     /**
-     *  Reads and processes a full DBQueryReplyMessage from the wire
-     * 
-     * @throws MongoDBException in case of problem
+     *  Create a new DBCursor from the reply to a query sent over the db's multiplexed
+     *  connection.  Subsequent batches are fetched over that connection as well.
+     *
+     * @param db db this cursor is associated with
+     * @param reply reply to the query
+     * @param collection collection this cursor is working over
+     * @param limit max number of objects that this cursor can deliver to a client.  <= 0 means no limit
+     * @throws MongoDBException if the reply is an error
      */
-    private void readAll() throws  MongoDBException {
+    public DBCursorImpl(DBImpl db, DBQueryReplyMessage reply, String collection, int limit) throws MongoDBException {
+        this(db, reply, collection, limit, false, false);
+    }
 
-        synchronized(_myDB._dbMonitor) {
+    /**
+     *  Create a new DBCursor from the reply to a query sent over the db's multiplexed
+     *  connection.  Subsequent batches are fetched over that connection as well.
+     *
+     * @param db db this cursor is associated with
+     * @param reply reply to the query
+     * @param collection collection this cursor is working over
+     * @param limit max number of objects that this cursor can deliver to a client.  <= 0 means no limit
+     * @param lazy true to read subsequent batches as LazyDocs - the reply should have been read that way too
+     * @param primitiveArrays true to decode numeric arrays in subsequent batches as int[] or double[]
+     * @throws MongoDBException if the reply is an error
+     */
+    public DBCursorImpl(DBImpl db, DBQueryReplyMessage reply, String collection, int limit, boolean lazy,
+                        boolean primitiveArrays) throws MongoDBException {
 
-            try {
-                ByteBuffer buf = DirectBufferTLS.getThreadLocal().getReadBuffer();
+        this(db, collection, limit, lazy, primitiveArrays);
 
-                DBQueryReplyMessage.fillBufferWithHeaders(buf, _myDB._connection.getReadChannel());
+        processReply(reply);
+    }
 
-                /*
-                 * digest the message up to the objects... no nibbling..
-                 */
-                 _msg = new DBQueryReplyMessage(buf, false);
+    private DBCursorImpl(DBImpl db, String collection, int limit, boolean lazy, boolean primitiveArrays) {
 
-                /*
-                 * now check that it really is a reply message, and that there are no errors
-                 */
+        _myDB = db;
+        _collection = collection;
+        _lazy = lazy;
+        _primitiveArrays = primitiveArrays;
+        _abandoned = new Abandoned(db);
 
-                if (_msg.getMessageType() != MessageType.OP_REPLY) {
-                    throw new MongoDBException("Error : cursor received a [" + _msg.getMessageType() + "] response from server");
-                }
+        if (limit <= 0) {
+            limit = 0;
+        }
+        _hardLimit = limit;
+        _objectsReturned = 0;
+    }
 
-                if (_msg.getFlags() != 0) {
+    /**
+     *  Reads and processes a full DBQueryReplyMessage from the wire
+     *
+     * @param sc channel to read the reply from
+     * @throws MongoDBException in case of problem
+     */
+    private void readAll(SocketChannel sc) throws  MongoDBException {
 
-                    Doc md = DBQueryReplyMessage.readDocument(_myDB._connection.getReadChannel(), buf, false);
+        try {
+            processReply(DBQueryReplyMessage.readReply(sc, _lazy, _primitiveArrays));
+        }
+        catch(IOException ioe) {
+            throw new MongoDBException("Error filling buffer : ", ioe);
+        }
+    }
 
-                    throw new MongoDBQueryException("Error : cursor received am error response from server.  Flags = [ " + _msg.getFlags()
-                            + "] Error msg :  " + md);
-                }
+    /**
+     *  Checks a reply for errors and queues up the objects returned
+     *
+     * @param reply reply from the db
+     * @throws MongoDBException if the reply is an error
+     */
+    protected void processReply(DBQueryReplyMessage reply) throws MongoDBException {
 
-                readObjectsOffWire();
+        checkReply(reply);
 
-                _nRemaining = _msg.getNumberReturned();
-            }
-            catch(IOException ioe) {
-                throw new MongoDBException("Error filling buffer : ", ioe);
-            }
+        _msg = reply;
+
+        _abandoned._cursorID = reply.getCursorID();
+
+        if (_cleanable == null && reply.getCursorID() != 0) {
+            _cleanable = _cleaner.register(this, _abandoned);
         }
+
+        _objects.addAll(_msg.getObjects());
+
+        _nRemaining = _msg.getNumberReturned();
     }
 
     /**
-     *  Reads all objects from the wire.  Assumes that the standard message header and the
-     *  OP_REPLY header have already been read.
-     * 
-     * @throws MongoDBException in case of problem
+     *  Checks that a reply really is a reply message, and that there are no errors
+     *
+     * @param reply reply from the db
+     * @throws MongoDBException if the reply is an error
      */
-    protected void readObjectsOffWire() throws MongoDBException {
+    static void checkReply(DBQueryReplyMessage reply) throws MongoDBException {
 
-        ByteBuffer buf = DirectBufferTLS.getThreadLocal().getReadBuffer();
+        if (reply.getMessageType() != MessageType.OP_REPLY) {
+            throw new MongoDBException("Error : cursor received a [" + reply.getMessageType() + "] response from server");
+        }
 
-        try {
+        if (reply.getFlags() != 0) {
 
-            for (int i=0; i < _msg.getNumberReturned(); i++) {
-                _objects.offer(DBQueryReplyMessage.readDocument(_myDB._connection.getReadChannel(), buf, true));
-            }
-        } catch (IOException e) {
-            throw new MongoDBException("ERROR : socket error ", e);
+            Doc md = reply.getObjects().isEmpty() ? null : reply.getObjects().get(0);
+
+            throw new MongoDBQueryException("Error : cursor received am error response from server.  Flags = [ " + reply.getFlags()
+                    + "] Error msg :  " + md);
         }
     }
 
@@ -178,6 +295,16 @@ class DBCursorImpl implements DBCursor {
 
         if (m != null) {
             _objectsReturned++;
+
+            /*
+             *  don't hold the channel for a server-side cursor we won't read from again
+             */
+            if (_hardLimit > 0 && _objectsReturned >= _hardLimit) {
+                close();
+            }
+            else {
+                prefetch();
+            }
         }
         
         return m;
@@ -213,17 +340,224 @@ class DBCursorImpl implements DBCursor {
         /*
          *  if we don't have a cursor, bail - we're done
          */
+        if (_msg.getCursorID() == 0 || _closed) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        if (_pending != null) {
+            DBQueryReplyMessage reply = awaitPending();
+
+            try {
+                processReply(reply);
+            }
+            catch (MongoDBException e) {
+                releaseChannel(false);
+                throw e;
+            }
+        }
+        else {
+            int n = getMoreSize();
+
+            if (n < 0) {
+                return;
+            }
+
+            DBGetMoreMessage msg = new DBGetMoreMessage(_myDB.getName(), _collection, _msg.getCursorID(), n);
+
+            if (_channel == null) {
+                processReply(_myDB.sendForReply(msg, _lazy, _primitiveArrays));
+            }
+            else {
+                DriverEvent event = null;
+
+                try {
+                    event = _myDB.writeMessage(_channel, msg);
+                    readAll(_channel);
+                    _myDB._events.succeeded(event, _msg);
+                }
+                catch (IOException e) {
+                    releaseChannel(false);
+                    throw new MongoDBException("Error sending getmore : ", e);
+                }
+                catch (MongoDBException e) {
+                    _myDB._events.failed(event, e);
+                    releaseChannel(false);
+                    throw e;
+                }
+            }
+        }
+
+        _myDB.recordOperation(DriverMetrics.Operation.GET_MORE, _collection, start);
+
         if (_msg.getCursorID() == 0) {
+            releaseChannel(true);
+        }
+        else {
+            prefetch();
+        }
+    }
+
+    /**
+     *  Works out how many objects to ask for in the next OP_GET_MORE
+     *
+     * @return batch size for the next OP_GET_MORE, 0 to let the db decide, or -1 if
+     *          the objects already queued satisfy the limit
+     */
+    private int getMoreSize() {
+
+        int n = _batchSize;
+
+        if (_hardLimit > 0) {
+            int wanted = _hardLimit - _objectsReturned - _objects.size();
+
+            if (wanted <= 0) {
+                return -1;
+            }
+
+            if (n <= 0 || n > wanted) {
+                n = wanted;
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     *  Sends the next OP_GET_MORE ahead of need, if prefetching and the queue is below
+     *  the watermark.  A failure is kept in the pending batch, and reported when the client
+     *  gets to it.
+     */
+    private void prefetch() {
+
+        if (_prefetch <= 0 || _pending != null || _closed || _msg.getCursorID() == 0
+                || _objects.size() >= _prefetch) {
+            return;
+        }
+
+        int n = getMoreSize();
+
+        if (n < 0) {
             return;
         }
 
-        // TODO - this is russian routlette - there's no predicting the size of the return
-        // for a getmore right now.  The first response to a query is limited to not hurt those
-        // that don't limit their requests, and the following after that get much bigger.
+        final DriverEvent event;
+
+        try {
+            DBGetMoreMessage msg = new DBGetMoreMessage(_myDB.getName(), _collection, _msg.getCursorID(), n);
+
+            if (_channel == null) {
+                _pending = _myDB.requestReply(msg, _lazy, _primitiveArrays);
+                return;
+            }
+
+            event = _myDB.writeMessage(_channel, msg);
+        }
+        catch (IOException e) {
+            _pending = failed(new MongoDBException("Error sending getmore : ", e));
+            return;
+        }
+        catch (MongoDBException e) {
+            _pending = failed(e);
+            return;
+        }
+
+        final SocketChannel sc = _channel;
+        final EventDispatcher events = _myDB._events;
+        final boolean lazy = _lazy;
+        final boolean primitiveArrays = _primitiveArrays;
+
+        _pending = CompletableFuture.supplyAsync(new Supplier<DBQueryReplyMessage>() {
+            public DBQueryReplyMessage get() {
+                try {
+                    DBQueryReplyMessage reply = DBQueryReplyMessage.readReply(sc, lazy, primitiveArrays);
+                    events.succeeded(event, reply);
+                    return reply;
+                }
+                catch (IOException e) {
+                    events.failed(event, e);
+                    throw new CompletionException(new MongoDBException("Error filling buffer : ", e));
+                }
+                catch (MongoDBException e) {
+                    events.failed(event, e);
+                    throw new CompletionException(e);
+                }
+            }
+        }, _prefetchExecutor);
+    }
+
+    /**
+     *  Waits for the prefetched batch.  Once it's in, the channel is quiet again.
+     *
+     * @return reply to the prefetch
+     * @throws MongoDBException if the prefetch failed, in which case the channel is discarded
+     */
+    private DBQueryReplyMessage awaitPending() throws MongoDBException {
+
+        CompletableFuture<DBQueryReplyMessage> f = _pending;
+        _pending = null;
+
+        try {
+            return DBImpl.await(f);
+        }
+        catch (MongoDBException e) {
+            releaseChannel(false);
+            throw e;
+        }
+        catch (RuntimeException e) {
+            releaseChannel(false);
+            throw e;
+        }
+    }
+
+    private static CompletableFuture<DBQueryReplyMessage> failed(Throwable t) {
+        CompletableFuture<DBQueryReplyMessage> f = new CompletableFuture<DBQueryReplyMessage>();
+        f.completeExceptionally(t);
+        return f;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batch size must be >= 0 : " + batchSize);
+        }
+        _batchSize = batchSize;
+    }
+
+    public void setPrefetch(int watermark) {
+        if (watermark < 0) {
+            throw new IllegalArgumentException("prefetch watermark must be >= 0 : " + watermark);
+        }
+        _prefetch = watermark;
+
+        prefetch();
+    }
 
-        _myDB.sendReadToDB(new DBGetMoreMessage(_myDB.getName(), _collection, _msg.getCursorID() ));
+    /**
+     *  Hands the leased channel back to the db, if we still hold it
+     *
+     * @param reusable false if the channel is in an unknown state
+     */
+    private void releaseChannel(boolean reusable) {
 
-        readAll();        
+        if (_channel != null) {
+            _abandoned._channel = null;
+            _myDB.releaseChannel(_channel, reusable);
+            _channel = null;
+        }
+    }
+
+    /**
+     *  Stops the safeguard, as there's nothing left for it to clean up
+     */
+    private void disarm() {
+
+        _abandoned._cursorID = 0;
+        _abandoned._channel = null;
+
+        if (_cleanable != null) {
+            _cleanable.clean();
+        }
     }
 
     /**
@@ -232,13 +566,100 @@ class DBCursorImpl implements DBCursor {
      */
     public void close() throws MongoDBException {
 
-        if (_msg.getCursorID() != 0) {
-            _myDB.sendReadToDB(new DBKillCursorsMessage(_msg.getCursorID()));
+        if (_closed) {
+            return;
         }
 
+        _closed = true;
         _objects.clear();
 
-        _closed = true;
+        /*
+         *  let any prefetch land, both to quiet the channel and because its reply
+         *  says whether there's still a server-side cursor to kill
+         */
+        if (_pending != null) {
+            try {
+                _msg = awaitPending();
+            }
+            catch (MongoDBException e) {
+                // channel's gone - still kill the cursor below
+            }
+            catch (RuntimeException e) {
+                // ditto
+            }
+        }
+
+        try {
+            if (_channel == null) {
+                if (_msg.getCursorID() != 0) {
+                    _myDB.sendWriteToDB(new DBKillCursorsMessage(_msg.getCursorID()));
+                }
+                return;
+            }
+
+            if (_msg.getCursorID() != 0) {
+                try {
+                    _myDB.writeMessage(_channel, new DBKillCursorsMessage(_msg.getCursorID()));
+                }
+                catch (IOException e) {
+                    releaseChannel(false);
+                    throw new MongoDBException("Error killing cursor : ", e);
+                }
+            }
+
+            releaseChannel(true);
+        }
+        finally {
+            disarm();
+        }
+    }
+
+    /**
+     *  What an abandoned cursor leaves behind.  Must not refer to the cursor, or the
+     *  cursor never becomes unreachable.
+     */
+    private static class Abandoned implements Runnable {
+
+        private final DBImpl _db;
+
+        volatile SocketChannel _channel;    // leased channel, or null once released
+        volatile long _cursorID;            // server-side cursor, or 0 if there's none
+
+        Abandoned(DBImpl db) {
+            _db = db;
+        }
+
+        /**
+         *  Kills the server-side cursor and discards the channel.  Runs on the cleaner's
+         *  thread, or from close() once there's nothing left to do.
+         */
+        public void run() {
+
+            SocketChannel sc = _channel;
+            long id = _cursorID;
+
+            _channel = null;
+            _cursorID = 0;
+
+            try {
+                if (id != 0) {
+                    if (sc != null) {
+                        _db.writeMessage(sc, new DBKillCursorsMessage(id));
+                    }
+                    else {
+                        _db.sendWriteToDB(new DBKillCursorsMessage(id));
+                    }
+                }
+            }
+            catch (Exception e) {
+                // the server times the cursor out eventually
+            }
+            finally {
+                if (sc != null) {
+                    _db.releaseChannel(sc, false);
+                }
+            }
+        }
     }
 
     /* --- Enumeration interface --- */
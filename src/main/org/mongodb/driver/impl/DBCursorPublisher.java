@@ -0,0 +1,335 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *   Publishes the result set of a query, with the subscriber's demand driving the
+ *   traffic to the server.  Each subscription runs the query afresh.  Nothing is sent
+ *   until the subscriber requests documents, and each request to the server asks for
+ *   the demand not yet covered by documents already received, capped at the max batch
+ *   size.  At most one request is in flight per subscription, so the local buffer never
+ *   holds more than the outstanding demand plus one batch.
+ *
+ *   While the subscriber is being handed documents, the next batch is already being
+ *   fetched if the subscriber's demand calls for it.
+ *
+ *   Replies arrive on the connection's event loop thread, which must never run subscriber
+ *   code, so documents that arrive with a reply are handed over on the executor.  Signals
+ *   brought on by request() or cancel() are delivered on the calling thread.  Either way
+ *   only one thread signals the subscriber at a time.
+ */
+class DBCursorPublisher implements Flow.Publisher<Doc> {
+
+    public static final int DEFAULT_MAX_BATCH = 1000;
+
+    /*
+     *  the server takes a number to return of 1 on a query to mean "limit 1", and closes
+     *  the cursor, so never ask for less than this
+     */
+    static final int MIN_BATCH = 2;
+
+    protected final AsyncDBImpl _db;
+    protected final String _collection;
+    protected final DBQuery _query;
+    protected final int _maxBatch;
+    protected final Executor _executor;
+
+    DBCursorPublisher(AsyncDBImpl db, String collection, DBQuery query, int maxBatch) {
+        this(db, collection, query, maxBatch, ForkJoinPool.commonPool());
+    }
+
+    DBCursorPublisher(AsyncDBImpl db, String collection, DBQuery query, int maxBatch, Executor executor) {
+
+        if (maxBatch < MIN_BATCH) {
+            throw new IllegalArgumentException("max batch size must be >= " + MIN_BATCH);
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        }
+
+        _db = db;
+        _collection = collection;
+        _query = query;
+        _maxBatch = maxBatch;
+        _executor = executor;
+    }
+
+    public void subscribe(Flow.Subscriber<? super Doc> subscriber) {
+
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+
+    private class CursorSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Doc> _subscriber;
+
+        private final Queue<Doc> _buffer = new ConcurrentLinkedQueue<Doc>();
+        private final AtomicLong _requested = new AtomicLong();
+        private final AtomicInteger _wip = new AtomicInteger();
+        private final AtomicLong _cursorID = new AtomicLong();
+
+        private final int _hardLimit;
+
+        private volatile int _received = 0;         // objects received from the server
+        private volatile boolean _started = false;
+        private volatile boolean _fetching = false;
+        private volatile boolean _exhausted = false;
+        private volatile boolean _cancelled = false;
+        private volatile Throwable _error = null;
+        private volatile Throwable _badRequest = null;
+
+        private boolean _done = false;              // terminal signal sent.  drain loop only
+
+        CursorSubscription(Flow.Subscriber<? super Doc> subscriber) {
+            _subscriber = subscriber;
+            _hardLimit = Math.max(_query.getNumberToReturn(), 0);
+        }
+
+        public void request(long n) {
+
+            if (n <= 0) {
+                _badRequest = new IllegalArgumentException("Number requested must be > 0 : " + n);
+            }
+            else {
+                long r;
+                do {
+                    r = _requested.get();
+                    if (r == Long.MAX_VALUE) {
+                        break;
+                    }
+                } while (!_requested.compareAndSet(r, r + n < 0 ? Long.MAX_VALUE : r + n));
+            }
+
+            drain();
+        }
+
+        public void cancel() {
+            _cancelled = true;
+            drain();
+        }
+
+        /**
+         *  Runs step() on one thread at a time, and again if anything changed while it ran
+         */
+        private void drain() {
+
+            if (_wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+
+            do {
+                if (!_done) {
+                    step();
+                }
+
+                missed = _wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void step() {
+
+            if (_cancelled) {
+                finish();
+                return;
+            }
+
+            Throwable bad = _badRequest;
+
+            if (bad != null) {
+                finish();
+                _subscriber.onError(bad);
+                return;
+            }
+
+            fetchIfNeeded();
+
+            long r = _requested.get();
+            long e = 0;
+
+            while (e != r) {
+
+                if (_cancelled) {
+                    finish();
+                    return;
+                }
+
+                Doc d = _buffer.poll();
+
+                if (d == null) {
+                    break;
+                }
+
+                _subscriber.onNext(d);
+                e++;
+            }
+
+            if (e != 0 && r != Long.MAX_VALUE) {
+                _requested.addAndGet(-e);
+            }
+
+            if (_cancelled) {
+                finish();
+                return;
+            }
+
+            if (_buffer.isEmpty() && !_fetching) {
+
+                Throwable t = _error;
+
+                if (t != null) {
+                    finish();
+                    _subscriber.onError(t);
+                    return;
+                }
+
+                if (_exhausted) {
+                    _done = true;
+                    _subscriber.onComplete();
+                    return;
+                }
+            }
+
+            fetchIfNeeded();
+        }
+
+        /**
+         *  Sends the query or an OP_GET_MORE if there's unmet demand and nothing in flight
+         */
+        private void fetchIfNeeded() {
+
+            if (_fetching || _exhausted || _error != null) {
+                return;
+            }
+
+            long want = _requested.get() - _buffer.size();
+
+            if (want <= 0) {
+                return;
+            }
+
+            int n = (int) Math.min(Math.max(want, MIN_BATCH), _maxBatch);
+
+            if (_hardLimit > 0) {
+                n = Math.min(n, _hardLimit - _received);
+            }
+
+            _fetching = true;
+
+            CompletableFuture<DBQueryReplyMessage> f;
+
+            if (_started) {
+                f = _db.getMore(_collection, _cursorID.get(), n);
+            }
+            else {
+                _started = true;
+                f = _db.sendQuery(_collection, _query, n);
+            }
+
+            f.whenComplete((reply, t) -> onReply(reply, t));
+        }
+
+        /**
+         *  Takes in a reply.  Runs on the event loop thread, so leaves the subscriber to drain()
+         *  on the executor.
+         */
+        private void onReply(DBQueryReplyMessage reply, Throwable t) {
+
+            if (t != null) {
+                _error = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+                _exhausted = true;
+            }
+            else {
+                List<Doc> objects = reply.getObjects();
+
+                if (_hardLimit > 0 && _received + objects.size() > _hardLimit) {
+                    objects = objects.subList(0, _hardLimit - _received);
+                }
+
+                _buffer.addAll(objects);
+                _received += objects.size();
+                _cursorID.set(reply.getCursorID());
+
+                if (reply.getCursorID() == 0 || (_hardLimit > 0 && _received >= _hardLimit)) {
+                    _exhausted = true;
+                    killCursor();
+                }
+            }
+
+            _fetching = false;
+
+            if (_cancelled) {
+                killCursor();
+            }
+
+            try {
+                _executor.execute(this::drain);
+            }
+            catch (RejectedExecutionException e) {
+                drain();            // better late on the wrong thread than never
+            }
+        }
+
+        /**
+         *  Drops everything and releases the server-side cursor.  If a request is in flight,
+         *  the cursor is released when it returns.
+         */
+        private void finish() {
+
+            _done = true;
+            _buffer.clear();
+
+            if (!_fetching) {
+                killCursor();
+            }
+        }
+
+        private void killCursor() {
+
+            long id = _cursorID.getAndSet(0);
+
+            if (id != 0) {
+                _db.killCursor(id);
+            }
+        }
+    }
+}
@@ -21,23 +21,31 @@ package org.mongodb.driver.impl;
 
 import org.mongodb.driver.ts.DB;
 import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.DriverMetrics;
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.MongoDBIOException;
+import org.mongodb.driver.MongoDBWriteException;
 import org.mongodb.driver.ts.DBCursor;
 import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.DBQuery;
 import org.mongodb.driver.ts.IndexInfo;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.BulkInsertResult;
 import org.mongodb.driver.ts.commands.DBCommand;
 import org.mongodb.driver.ts.options.DBOptions;
 import org.mongodb.driver.ts.options.DBCollectionOptions;
+import org.mongodb.driver.ts.options.WriteConcern;
 import org.mongodb.driver.admin.DBAdmin;
 import org.mongodb.driver.impl.msg.DBInsertMessage;
 import org.mongodb.driver.impl.msg.DBMessage;
 import org.mongodb.driver.impl.msg.DBMsgMessage;
 import org.mongodb.driver.impl.msg.DBQueryMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
 import org.mongodb.driver.impl.msg.DBRemoveMessage;
 import org.mongodb.driver.impl.msg.DBUpdateMessage;
+import org.mongodb.driver.impl.msg.MessageType;
+import org.mongodb.driver.impl.connection.AsyncConnection;
 import org.mongodb.driver.impl.connection.Connection;
 import org.mongodb.mql.MQL;
 
@@ -46,6 +54,14 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  Implementation of the DB class
@@ -63,29 +79,59 @@ public class DBImpl implements DB {
 
     protected Connection _connection;
 
-//    protected SocketChannel _socketChannel;
+    /*
+     *  when set, all operations are multiplexed over this rather than leasing from _connection
+     */
+    protected AsyncConnection _asyncConnection;
+
+    /*
+     *  when set, fire-and-forget writes are gathered here rather than written one by one
+     */
+    protected volatile WriteCoalescer _coalescer;
 
-    protected final Object _dbMonitor = new Object();
+    /*
+     *  failure sending writes held back when the options changed, for the next write or flush
+     */
+    protected volatile MongoDBException _deferredFailure;
+
+    protected volatile WriteConcern _writeConcern = WriteConcern.NONE;
+
+    /*
+     *  getlasterror replies for acknowledged writes sent over _asyncConnection, not yet checked
+     */
+    protected final Queue<CompletableFuture<DBQueryReplyMessage>> _pendingAcks
+            = new ConcurrentLinkedQueue<CompletableFuture<DBQueryReplyMessage>>();
+    protected final AtomicInteger _pendingAckCount = new AtomicInteger();
+
+    /*
+     *  write-behind queues of this database's collection objects, closed along with it
+     */
+    protected final Set<WriteBehindQueue> _writeBehindQueues = ConcurrentHashMap.newKeySet();
 
     protected final MongoImpl _myMongoServer;
 
+    protected final DriverMetrics _metrics;
+
+    protected final EventDispatcher _events;
+
     public DBImpl(MongoImpl mongo, Connection c, String dbName) throws MongoDBException {
         checkDBName(dbName);
 
         _myMongoServer = mongo;
         _dbName = dbName;
+        _metrics = (mongo != null ? mongo.getMetrics() : new DriverMetrics());
+        _events = (mongo != null ? mongo.getEventDispatcher() : new EventDispatcher());
 
         try {
 
             _connection = c;
             _connection.connect();
-            
-            /*
-             *  set the TLS for our direct ByteBuffers.  Gets us out of needing to pool, since
-             *  each DBImplis *NOT* threadsafe, so this should work just fine.
-             */
-            DirectBufferTLS tls = new DirectBufferTLS();
-            tls.set();
+
+            _asyncConnection = (mongo != null && mongo.isMultiplexed() ? mongo.getAsyncConnection() : null);
+
+            if (_asyncConnection != null) {
+                _asyncConnection.connect();
+            }
         }
         catch (IOException e) {
             throw new MongoDBException("Error connecting.", e);
@@ -318,20 +364,51 @@ public class DBImpl implements DB {
 
     /**
      * Closes the connection to the database.  After this method is called,
-     * this DB object is useless.
+     * this DB object is useless.  Write-behind queues are sent and stopped first.
+     * The connections are closed even if that, or sending buffered writes, fails.
      *
-     * @throws Exception if a problem
+     * @throws Exception the first problem, once everything is closed
      */
     public void close() throws Exception {
-        _connection.close();
 
-        DirectBufferTLS tls = DirectBufferTLS.getThreadLocal();
+        MongoDBException failure = null;
+
+        try {
+            for (WriteBehindQueue wb : _writeBehindQueues) {
+                try {
+                    wb.close();
+                }
+                catch (MongoDBException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            _writeBehindQueues.clear();
+
+            if (failure != null) {
+                throw failure;
+            }
 
-        if (tls != null) {
-            tls.unset();
+            flush();
+        }
+        finally {
+            _connection.close();
+
+            if (_asyncConnection != null) {
+                _asyncConnection.close();
+            }
         }
     }
 
+    void addWriteBehind(WriteBehindQueue wb) {
+        _writeBehindQueues.add(wb);
+    }
+
+    void removeWriteBehind(WriteBehindQueue wb) {
+        _writeBehindQueues.remove(wb);
+    }
+
     /**
      *  Sends a message to the database
      *
@@ -366,10 +443,58 @@ public class DBImpl implements DB {
         }
 
         _strictCollections = dbOptions.isStrictCollectionMode();
+
+        _writeConcern = dbOptions.getWriteConcern();
+
+        /*
+         *  the multiplexed connection gathers writes itself, and acknowledges them as it goes
+         */
+        if (_asyncConnection == null && (dbOptions.isWriteCoalescing() || _writeConcern.isAcknowledged())) {
+            _coalescer = new WriteCoalescer(this, dbOptions.getFlushThreshold(), dbOptions.getFlushInterval(),
+                    dbOptions.getWriteConcern().getBatchSize());
+        }
     }
 
     public void resetDBOptions() {
         _strictCollections = DEFAULT_COLLECTION_MODE;
+        _writeConcern = WriteConcern.NONE;
+
+        try {
+            awaitAcknowledgements(_pendingAcks);
+        }
+        catch (MongoDBException e) {
+            _deferredFailure = e;
+        }
+
+        WriteCoalescer wc = _coalescer;
+        _coalescer = null;
+
+        if (wc != null) {
+            try {
+                wc.flush();
+            }
+            catch (MongoDBException e) {
+                _deferredFailure = e;
+            }
+        }
+    }
+
+    /**
+     *  Sends any writes held back by write coalescing or batched acknowledgement
+     *
+     * @throws MongoDBException if the writes can't be sent, or weren't acknowledged
+     */
+    public void flush() throws MongoDBException {
+
+        checkDeferredFailure();
+
+        WriteCoalescer wc = _coalescer;
+
+        if (wc != null) {
+            wc.flush();
+        }
+
+        awaitAcknowledgements(_pendingAcks);
     }
 
     public boolean isStrictCollections() {
@@ -387,43 +512,90 @@ public class DBImpl implements DB {
 
     protected DBCursor queryDB(String collection, DBQuery q) throws MongoDBException {
 
-        synchronized(_dbMonitor) {
-            sendReadToDB(new DBQueryMessage(_dbName, collection, q));
+        long start = System.nanoTime();
+        DriverMetrics.Operation op = SYSTEM_COMMAND_COLLECTION.equals(collection)
+                ? DriverMetrics.Operation.COMMAND : DriverMetrics.Operation.QUERY;
+
+        flush();
+
+        DBQueryMessage msg = new DBQueryMessage(_dbName, collection, q);
+
+        if (_asyncConnection != null) {
+            DBCursor cursor = new DBCursorImpl(this, sendForReply(msg, q.isLazy(), q.isPrimitiveArrays()), collection,
+                    q.getNumberToReturn(), q.isLazy(), q.isPrimitiveArrays());
+            recordOperation(op, collection, start);
+
+            return withQueryOptions(cursor, q);
+        }
+
+        /*
+         *  the cursor takes over the channel, and releases it when exhausted or closed
+         */
+        SocketChannel sc = leaseChannel();
+        boolean ok = false;
+
+        try {
+            DriverEvent event = writeMessage(sc, msg);
+            DBCursorImpl cursor;
+
+            try {
+                cursor = new DBCursorImpl(this, sc, collection, q.getNumberToReturn(), q.isLazy(), q.isPrimitiveArrays());
+            }
+            catch (MongoDBException e) {
+                _events.failed(event, e);
+                throw e;
+            }
+
+            _events.succeeded(event, cursor._msg);
+            ok = true;
+
+            recordOperation(op, collection, start);
 
-            return new DBCursorImpl(this, collection, q.getNumberToReturn());
+            return withQueryOptions(cursor, q);
+        }
+        catch (IOException e) {
+            throw new MongoDBIOException("IO Error : ", e);
+        }
+        finally {
+            if (!ok) {
+                releaseChannel(sc, false);
+            }
         }
     }
 
+    /**
+     *  Carries the query's batch size and prefetch watermark over to its cursor
+     */
+    private static DBCursor withQueryOptions(DBCursor cursor, DBQuery q) {
+
+        cursor.setBatchSize(q.getBatchSize());
+        cursor.setPrefetch(q.getPrefetch());
+
+        return cursor;
+    }
+
     protected boolean removeFromDB(String collection, MongoSelector selector) throws MongoDBException {
 
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBRemoveMessage(_dbName, collection, selector));
-            return true;
-        }
+        sendWriteToDB(new DBRemoveMessage(_dbName, collection, selector));
+        return true;
     }
 
     protected boolean replaceInDB(String collection, MongoSelector selector, Doc obj) throws MongoDBException {
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, false));
-            return true;
-        }
+        sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, false));
+        return true;
     }
 
     protected Doc repsertInDB(String collection, MongoSelector selector, Doc obj) throws MongoDBException {
 
         // TODO - if  PKInjector, inject
 
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, true));
-            return obj;
-        }
+        sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, true));
+        return obj;
     }
 
     protected boolean modifyInDB(String collection, MongoSelector selector, Doc obj) throws MongoDBException {
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, false));
-            return true;
-        }
+        sendWriteToDB(new DBUpdateMessage(_dbName, collection, selector, obj, false));
+        return true;
     }
 
     protected int getCount(String collection, MongoSelector query) throws MongoDBException {
@@ -432,7 +604,17 @@ public class DBImpl implements DB {
         sel.put("count", collection);
         sel.put("query", query);
 
-        Doc doc = dbCommand(sel);
+        return countFromResult(dbCommand(sel));
+    }
+
+    /**
+     *  Extracts the count from the result of a count command
+     *
+     * @param doc result of count command
+     * @return count
+     * @throws MongoDBException if the command failed
+     */
+    static int countFromResult(Doc doc) throws MongoDBException {
 
         // first check return code
 
@@ -464,10 +646,8 @@ public class DBImpl implements DB {
 
     protected Doc dbCommand(MongoSelector command) throws MongoDBException {
         
-        synchronized(_dbMonitor) {
-            DBCursor cursor = queryDB(SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(command));
-            return cursor.getNextObject();
-        }
+        DBCursor cursor = queryDB(SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(command));
+        return cursor.getNextObject();
     }
 
     protected List<IndexInfo> getIndexInformation(String collection) throws MongoDBException {
@@ -478,47 +658,59 @@ public class DBImpl implements DB {
 
         DBQuery q = new DBQuery(sel);
 
-        synchronized(_dbMonitor) {
-            DBCursor cursor = queryDB(SYSTEM_INDEX_COLLECTION, q);
+        DBCursor cursor = queryDB(SYSTEM_INDEX_COLLECTION, q);
 
-            List<IndexInfo> list = new ArrayList<IndexInfo>();
+        List<IndexInfo> list = new ArrayList<IndexInfo>();
 
-            Doc d;
-            while((d = cursor.getNextObject()) != null) {
+        Doc d;
+        while((d = cursor.getNextObject()) != null) {
 
-                String name = (String) d.get("name");
+            list.add(toIndexInfo(d, _dbName, collection));
+        }
 
-                if (name == null) {
-                    throw new MongoDBException("Name of index on return from db was null. Coll = " + this._dbName + "." + collection);
-                }
+        return list;
+    }
 
-                IndexInfo ii = new IndexInfo(name);
+    /**
+     *  Converts an entry from the system.indexes collection into an IndexInfo
+     *
+     * @param d index document
+     * @param dbName name of database the index is in
+     * @param collection collection the index is on
+     * @return index information
+     * @throws MongoDBException if the index document is incomplete
+     */
+    static IndexInfo toIndexInfo(Doc d, String dbName, String collection) throws MongoDBException {
 
-                Doc keys = (Doc) d.get("key");
+        String name = (String) d.get("name");
 
-                if (keys == null) {
-                    throw new MongoDBException("Keys for index on return from db was null. Coll = " + this._dbName + "." + collection);
-                }
+        if (name == null) {
+            throw new MongoDBException("Name of index on return from db was null. Coll = " + dbName + "." + collection);
+        }
 
-                for (Map.Entry<String, Object> e : keys.entrySet()) {
-                    ii.addField(e.getKey());
-                }
+        IndexInfo ii = new IndexInfo(name);
 
-                String ns = (String) d.get("ns");
+        Doc keys = (Doc) d.get("key");
 
-                if (ns == null) {
-                    throw new MongoDBException("Namespace for index on return from db was null. Coll = " + this._dbName + "." + collection);
-                }
+        if (keys == null) {
+            throw new MongoDBException("Keys for index on return from db was null. Coll = " + dbName + "." + collection);
+        }
 
-                ns = ns.substring(ns.indexOf(".") + 1);
-                assert(ns.equals(collection));
+        for (Map.Entry<String, Object> e : keys.entrySet()) {
+            ii.addField(e.getKey());
+        }
 
-                ii.setCollectionName(ns);
-                list.add(ii);
-            }
+        String ns = (String) d.get("ns");
 
-            return list;
+        if (ns == null) {
+            throw new MongoDBException("Namespace for index on return from db was null. Coll = " + dbName + "." + collection);
         }
+
+        ns = ns.substring(ns.indexOf(".") + 1);
+        assert(ns.equals(collection));
+
+        ii.setCollectionName(ns);
+        return ii;
     }
 
     protected boolean createIndex(String collection, IndexInfo info) throws MongoDBException {
@@ -536,63 +728,547 @@ public class DBImpl implements DB {
 
         doc.put("key", selector);
 
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBInsertMessage(_dbName, SYSTEM_INDEX_COLLECTION, doc));
-            return true;
-        }
+        sendWriteToDB(new DBInsertMessage(_dbName, SYSTEM_INDEX_COLLECTION, doc));
+        return true;
     }
 
     protected boolean insertIntoDB(String collection, Doc object) throws MongoDBException {
 
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBInsertMessage(_dbName, collection, object));
-            return true;
-        }
+        sendWriteToDB(new DBInsertMessage(_dbName, collection, object));
+        return true;
     }
 
     protected boolean insertIntoDB(String collection, Doc[] objects) throws MongoDBException {
 
-        synchronized(_dbMonitor) {
-            sendWriteToDB(new DBInsertMessage(_dbName, collection, objects));
-            return true;
+        bulkInsertIntoDB(collection, objects);
+        return true;
+    }
+
+    /**
+     *  Inserts the objects as a run of insert messages, each of a size the db will take,
+     *  encoded in parallel and written back to back.
+     *
+     * @param collection collection to insert into
+     * @param objects objects to insert
+     * @return counts and timing of the insert
+     * @throws MongoDBException if an object can't be encoded or sent
+     */
+    protected BulkInsertResult bulkInsertIntoDB(String collection, Doc[] objects) throws MongoDBException {
+
+        long start = System.nanoTime();
+
+        BulkInsertResult result = new BulkInserter(this, _dbName, collection).insert(objects);
+
+        recordOperation(DriverMetrics.Operation.INSERT, collection, start);
+
+        return result;
+    }
+
+    protected void sendWriteToDB(DBMessage msg) throws MongoDBException {
+
+        long start = System.nanoTime();
+
+        DriverMetrics.Operation op = writeOperation(msg.getMessageType());
+        String collection = msg.getCollection();
+
+        checkDeferredFailure();
+
+        if (_asyncConnection != null) {
+            if (_writeConcern.isAcknowledged()) {
+                acknowledgeAsync(sendAcknowledged(msg));
+            }
+            else {
+                sendAsync(msg);
+            }
+
+            recordOperation(op, collection, start);
+            return;
+        }
+
+        WriteCoalescer wc = _coalescer;
+
+        if (wc != null) {
+            wc.write(msg);
+            recordOperation(op, collection, start);
+            return;
+        }
+
+        SocketChannel sc = leaseChannel();
+        boolean ok = false;
+
+        try {
+            writeMessage(sc, msg);
+            ok = true;
+        }
+        catch (IOException e) {
+            throw new MongoDBIOException("IO Error : ", e);
+        }
+        finally {
+            releaseChannel(sc, ok);
+        }
+
+        recordOperation(op, collection, start);
+    }
+
+    /**
+     *  Sends a message with no reply over the multiplexed connection.  If it can't be
+     *  written, the next write or flush reports it.
+     *
+     * @param msg message to send
+     * @return future completed once the message is written
+     */
+    protected CompletableFuture<Void> sendAsync(DBMessage msg) {
+        DriverEvent event = _events.started(msg);
+        return deferFailure(_events.track(event, _asyncConnection.send(msg)));
+    }
+
+    /**
+     *  Sends a write over the multiplexed connection with a getlasterror right behind it on
+     *  the same socket, so the reply describes this write and no other
+     *
+     * @param msg message to send
+     * @return future for the getlasterror reply, to check with awaitAcknowledgements()
+     * @throws MongoDBException if the getlasterror can't be made
+     */
+    protected CompletableFuture<DBQueryReplyMessage> sendAcknowledged(DBMessage msg) throws MongoDBException {
+
+        DBQueryMessage gle = newLastErrorMessage();
+
+        DriverEvent event = _events.started(msg);
+        DriverEvent gleEvent = _events.started(gle);
+
+        CompletableFuture<DBQueryReplyMessage> reply = _asyncConnection.sendForReply(msg, gle);
+
+        if (event != null) {
+            _events.track(event, reply.thenApply(r -> (Void) null));
         }
+
+        return _events.track(gleEvent, reply);
     }
 
-    protected void sendWriteToDB(DBMessage msg) throws MongoDBIOException {
+    /**
+     *  Holds on to the acknowledgement of a write sent over the multiplexed connection, and
+     *  checks those held once there's a batch of them
+     *
+     * @param ack future for the getlasterror reply
+     * @throws MongoDBException if a write in the batch failed
+     */
+    private void acknowledgeAsync(CompletableFuture<DBQueryReplyMessage> ack) throws MongoDBException {
+
+        _pendingAcks.add(ack);
+
+        /*
+         *  exactly one write in every batch's worth lands on a multiple, however many
+         *  threads are counting, so no count is lost to a reset
+         */
+        if (_pendingAckCount.incrementAndGet() % _writeConcern.getBatchSize() == 0) {
+            awaitAcknowledgements(_pendingAcks);
+        }
+    }
+
+    /**
+     *  Waits for and checks the getlasterror replies in the queue, emptying it
+     *
+     * @param acks futures for getlasterror replies
+     * @throws MongoDBException if any write failed - the first failure is thrown
+     * @throws MongoDBIOException if a reply couldn't be read, and no write failed
+     */
+    protected static void awaitAcknowledgements(Queue<CompletableFuture<DBQueryReplyMessage>> acks) throws MongoDBException {
+
+        MongoDBException failure = null;
+        MongoDBIOException ioFailure = null;
 
-        synchronized(_dbMonitor) {
+        CompletableFuture<DBQueryReplyMessage> f;
+
+        while ((f = acks.poll()) != null) {
             try {
-                ByteBuffer buf = msg.getInternalByteBuffer();
+                checkLastError(await(f));
+            }
+            catch (MongoDBException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            catch (MongoDBIOException e) {
+                if (ioFailure == null) {
+                    ioFailure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
 
-                buf.flip();
+        if (ioFailure != null) {
+            throw ioFailure;
+        }
+    }
 
-                _connection.getWriteChannel().write(buf);
-//                _socketChannel.write(buf);
-                
-            } catch (IOException e) {
-                throw new MongoDBIOException("IO Error : ", e);
+    /**
+     *  Keeps the failure of a fire-and-forget write over the multiplexed connection, for the
+     *  next write or flush to report
+     */
+    private CompletableFuture<Void> deferFailure(CompletableFuture<Void> written) {
+
+        written.whenComplete((v, t) -> {
+            if (t != null) {
+                _deferredFailure = new MongoDBException("Error sending write : ", t);
             }
+        });
+
+        return written;
+    }
+
+    /**
+     * @return kind of operation a write message is, or null if it's not one the metrics record
+     */
+    static DriverMetrics.Operation writeOperation(MessageType type) {
+
+        switch (type) {
+            case OP_INSERT:
+                return DriverMetrics.Operation.INSERT;
+            case OP_UPDATE:
+                return DriverMetrics.Operation.UPDATE;
+            case OP_DELETE:
+                return DriverMetrics.Operation.REMOVE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *  Records the latency of an operation that started at the given time
+     *
+     * @param op kind of operation, or null to record nothing
+     * @param collection collection operated on
+     * @param start System.nanoTime() when the operation started
+     */
+    protected void recordOperation(DriverMetrics.Operation op, String collection, long start) {
+
+        if (op != null) {
+            _metrics.record(op, _dbName, collection, System.nanoTime() - start);
         }
     }
 
-    protected void sendReadToDB(DBMessage msg) throws MongoDBIOException {
+    /**
+     * @return true if writes sent on a leased channel must be followed by a getlasterror.
+     *         Writes over the multiplexed connection use sendAcknowledged() instead
+     */
+    protected boolean isAcknowledged() {
+        return _writeConcern.isAcknowledged() && _asyncConnection == null;
+    }
 
-        synchronized(_dbMonitor) {
-            try {
-                ByteBuffer buf = msg.getInternalByteBuffer();
+    /**
+     * @return getlasterror command for acknowledging writes
+     * @throws MongoDBException if the message can't be made
+     */
+    protected DBQueryMessage newLastErrorMessage() throws MongoDBException {
+        return new DBQueryMessage(_dbName, SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(new MongoSelector("getlasterror", 1)));
+    }
+
+    /**
+     * @return reseterror command, which starts a run of writes acknowledged by getpreverror
+     * @throws MongoDBException if the message can't be made
+     */
+    protected DBQueryMessage newResetErrorMessage() throws MongoDBException {
+        return new DBQueryMessage(_dbName, SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(new MongoSelector("reseterror", 1)));
+    }
+
+    /**
+     * @return getpreverror command, which reports an error from any write since the last reseterror
+     * @throws MongoDBException if the message can't be made
+     */
+    protected DBQueryMessage newPrevErrorMessage() throws MongoDBException {
+        return new DBQueryMessage(_dbName, SYSTEM_COMMAND_COLLECTION, new DBCommandQuery(new MongoSelector("getpreverror", 1)));
+    }
+
+    /**
+     *  Reads the reply to a getlasterror, getpreverror or reseterror sent on the channel
+     *
+     * @param sc channel the command was sent on
+     * @param event event for the command, or null
+     * @throws IOException if the reply can't be read
+     * @throws MongoDBWriteException if the server reports an error for the writes on this channel
+     * @throws MongoDBException if the reply can't be understood
+     */
+    protected void readLastError(SocketChannel sc, DriverEvent event) throws IOException, MongoDBException {
+
+        DBQueryReplyMessage reply;
+
+        try {
+            reply = DBQueryReplyMessage.readReply(sc);
+        }
+        catch (IOException e) {
+            _events.failed(event, e);
+            throw e;
+        }
+        catch (MongoDBException e) {
+            _events.failed(event, e);
+            throw e;
+        }
+
+        _events.succeeded(event, reply);
+
+        checkLastError(reply);
+    }
+
+    /**
+     *  Checks the reply to a getlasterror, getpreverror or reseterror
+     *
+     * @param reply reply from the server
+     * @throws MongoDBWriteException if the server reports an error
+     * @throws MongoDBException if the reply can't be understood
+     */
+    protected static void checkLastError(DBQueryReplyMessage reply) throws MongoDBException {
+
+        List<Doc> docs = reply.getObjects();
+
+        if (docs.isEmpty()) {
+            throw new MongoDBException("No reply to error check");
+        }
+
+        Object err = docs.get(0).get("err");
+
+        if (err != null) {
+            throw new MongoDBWriteException(err.toString());
+        }
+    }
+
+    /**
+     *  Sends a getlasterror on the channel, and reads the reply
+     *
+     * @param sc channel the writes were sent on
+     * @throws IOException if the getlasterror can't be sent, or the reply read
+     * @throws MongoDBException if the server reports an error, or the reply can't be understood
+     */
+    protected void acknowledge(SocketChannel sc) throws IOException, MongoDBException {
+        readLastError(sc, writeMessage(sc, newLastErrorMessage()));
+    }
+
+    /**
+     *  Starts a run of writes on the channel that's acknowledged as a whole.  getlasterror
+     *  only describes the last write on a connection, so the run begins by clearing the
+     *  connection's error, and ends with a getpreverror, which reports an error from any
+     *  write since.
+     *
+     * @param sc channel the writes will be sent on
+     * @return event for the reseterror, to pass to acknowledgeRun()
+     * @throws IOException if the reseterror can't be sent
+     * @throws MongoDBException if the message can't be made
+     */
+    protected DriverEvent beginRun(SocketChannel sc) throws IOException, MongoDBException {
+        return writeMessage(sc, newResetErrorMessage());
+    }
+
+    /**
+     *  Ends a run of writes started with beginRun() : sends a getpreverror, and reads the
+     *  replies to it and the reseterror
+     *
+     * @param sc channel the writes were sent on
+     * @param reset event returned by beginRun()
+     * @throws IOException if the getpreverror can't be sent, or the replies read
+     * @throws MongoDBException if the server reports an error, or the replies can't be understood
+     */
+    protected void acknowledgeRun(SocketChannel sc, DriverEvent reset) throws IOException, MongoDBException {
+
+        DriverEvent prev = writeMessage(sc, newPrevErrorMessage());
+
+        readLastError(sc, reset);
+        readLastError(sc, prev);
+    }
+
+    private void checkDeferredFailure() throws MongoDBException {
 
-                buf.flip();
+        MongoDBException e = _deferredFailure;
 
-                _connection.getReadChannel().write(buf);
-//                _socketChannel.write(buf);
+        if (e != null) {
+            _deferredFailure = null;
+            throw e;
+        }
+    }
+
+    /**
+     *  Sends a message over the multiplexed connection and waits for the reply
+     *
+     * @param msg message to send
+     * @return reply from the server
+     * @throws MongoDBException if the reply can't be read
+     */
+    protected DBQueryReplyMessage sendForReply(DBMessage msg) throws MongoDBException {
+        return await(requestReply(msg, false, false));
+    }
+
+    /**
+     *  Sends a message over the multiplexed connection and waits for the reply
+     *
+     * @param msg message to send
+     * @param lazy true to read the objects in the reply as LazyDocs
+     * @param primitiveArrays true to decode numeric arrays in the reply as int[] or double[]
+     * @return reply from the server
+     * @throws MongoDBException if the reply can't be read
+     */
+    protected DBQueryReplyMessage sendForReply(DBMessage msg, boolean lazy, boolean primitiveArrays) throws MongoDBException {
+        return await(requestReply(msg, lazy, primitiveArrays));
+    }
+
+    /**
+     *  Sends a message over the multiplexed connection without waiting for the reply
+     *
+     * @param msg message to send
+     * @return future for the reply from the server
+     */
+    protected CompletableFuture<DBQueryReplyMessage> requestReply(DBMessage msg) {
+        return requestReply(msg, false, false);
+    }
+
+    /**
+     *  Sends a message over the multiplexed connection without waiting for the reply
+     *
+     * @param msg message to send
+     * @param lazy true to read the objects in the reply as LazyDocs
+     * @param primitiveArrays true to decode numeric arrays in the reply as int[] or double[]
+     * @return future for the reply from the server
+     */
+    protected CompletableFuture<DBQueryReplyMessage> requestReply(DBMessage msg, boolean lazy, boolean primitiveArrays) {
+        DriverEvent event = _events.started(msg);
+        return _events.track(event, _asyncConnection.sendForReply(msg, lazy, primitiveArrays));
+    }
+
+    /**
+     *  Waits for a reply from the multiplexed connection, unwrapping any failure
+     *
+     * @param future future for the reply
+     * @return reply from the server
+     * @throws MongoDBException if the reply can't be read
+     */
+    protected static DBQueryReplyMessage await(CompletableFuture<DBQueryReplyMessage> future) throws MongoDBException {
+
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoDBException("Interrupted waiting for reply", e);
+        }
+        catch (ExecutionException e) {
+
+            Throwable t = e.getCause();
+
+            if (t instanceof MongoDBException) {
+                throw (MongoDBException) t;
+            }
+
+            if (t instanceof IOException) {
+                throw new MongoDBIOException("IO Error : ", t);
+            }
+
+            throw new MongoDBException("Error reading reply : ", t);
+        }
+    }
+
+    /**
+     *  Leases a channel from the connection for the duration of an operation.  Must be
+     *  returned via releaseChannel()
+     *
+     * @return channel for the exclusive use of the caller
+     * @throws MongoDBIOException if no channel can be had
+     */
+    protected SocketChannel leaseChannel() throws MongoDBIOException {
+        try {
+            return _connection.checkout();
+        }
+        catch (IOException e) {
+            throw new MongoDBIOException("Unable to get connection : ", e);
+        }
+    }
+
+    /**
+     *  Leases a channel, preferring the given one, for sending on behalf of the thread
+     *  that last used it
+     *
+     * @param preferred channel from lastChannel(), or null
+     * @return channel to use
+     * @throws MongoDBIOException if no channel can be had
+     */
+    protected SocketChannel leaseChannel(SocketChannel preferred) throws MongoDBIOException {
+        try {
+            return _connection.checkout(preferred);
+        }
+        catch (IOException e) {
+            throw new MongoDBIOException("Unable to get connection : ", e);
+        }
+    }
+
+    /**
+     * @return the channel the calling thread leased last, or null
+     */
+    protected SocketChannel lastChannel() {
+        return _connection.getLastUsed();
+    }
+
+    /**
+     *  Returns a leased channel to the connection
+     *
+     * @param sc channel obtained from leaseChannel()
+     * @param reusable false if the operation failed and the channel is in an unknown state
+     */
+    protected void releaseChannel(SocketChannel sc, boolean reusable) {
+        if (reusable) {
+            _connection.checkin(sc);
+        }
+        else {
+            _connection.discard(sc);
+        }
+    }
 
-            } catch (IOException e) {
-                throw new MongoDBIOException("IO Error : ", e);
+    /**
+     *  Writes a complete message to the channel, and releases the message's buffers.
+     *  A message in several buffers goes out with a gathering write.
+     *
+     *  Listeners hear of the message going out, and for a message with no reply, of it
+     *  succeeding or failing.  For a query or getMore, whoever reads the reply reports
+     *  how it went, with the event returned.
+     *
+     * @param sc channel to write to
+     * @param msg message to write
+     * @return event for the message, or null if nobody's listening
+     * @throws IOException in case of problem
+     */
+    protected DriverEvent writeMessage(SocketChannel sc, DBMessage msg) throws IOException {
+
+        DriverEvent event = _events.started(msg);
+
+        try {
+            ByteBuffer[] bufs = msg.getMessageBuffers();
+
+            if (bufs.length == 1) {
+                while (bufs[0].hasRemaining()) {
+                    sc.write(bufs[0]);
+                }
+            }
+            else {
+                long remaining = msg.getMessageLength();
+
+                while (remaining > 0) {
+                    remaining -= sc.write(bufs);
+                }
             }
         }
+        catch (IOException e) {
+            _events.failed(event, e);
+            throw e;
+        }
+        finally {
+            msg.release();
+        }
+
+        _events.written(event);
+
+        return event;
     }
 
-    private void checkDBName(String s) throws MongoDBException {
+    static void checkDBName(String s) throws MongoDBException {
 
         if (s != null) {
             if (s.length() > 0) {
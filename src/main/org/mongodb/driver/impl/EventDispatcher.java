@@ -0,0 +1,224 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.DriverEventListener;
+import org.mongodb.driver.impl.msg.DBMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+import org.mongodb.driver.impl.msg.MessageType;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  Hands driver events to a server's listeners.  Events go on a bounded queue that a
+ *  thread of the dispatcher's own drains into the listeners, so the I/O path never
+ *  waits on a listener - when the queue is full, events are dropped and counted.
+ *
+ *  With no listeners registered nothing is made or queued, and started() returns null,
+ *  which the other methods take as nothing to report.
+ */
+class EventDispatcher {
+
+    static final int QUEUE_SIZE = 8192;
+
+    private final List<DriverEventListener> _listeners = new CopyOnWriteArrayList<DriverEventListener>();
+    private final BlockingQueue<DriverEvent> _queue = new ArrayBlockingQueue<DriverEvent>(QUEUE_SIZE);
+    private final AtomicLong _dropped = new AtomicLong();
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private Thread _thread;                    // started with the first listener
+
+    private volatile boolean _active;
+
+    void addListener(DriverEventListener listener) {
+
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can't be null");
+        }
+
+        _lock.lock();
+        try {
+            _listeners.add(listener);
+            _active = true;
+
+            if (_thread == null) {
+                _thread = new Thread(new Runnable() {
+                    public void run() {
+                        dispatch();
+                    }
+                }, "mongo-events");
+                _thread.setDaemon(true);
+                _thread.start();
+            }
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    void removeListener(DriverEventListener listener) {
+
+        _lock.lock();
+        try {
+            _listeners.remove(listener);
+            _active = !_listeners.isEmpty();
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of events dropped because the queue was full
+     */
+    long getDroppedEvents() {
+        return _dropped.get();
+    }
+
+    /**
+     *  Reports a message as sent.  Call before the message is written, while its
+     *  buffers are still good.
+     *
+     * @param msg message being sent
+     * @return event to pass to succeeded() or failed(), or null if nobody's listening
+     */
+    DriverEvent started(DBMessage msg) {
+
+        if (!_active) {
+            return null;
+        }
+
+        DriverEvent e = new DriverEvent(msg.getRequestID(), msg.getMessageType(), msg.getDBName(),
+                msg.getCollection(), msg.getMessageLength());
+        post(e);
+
+        return e;
+    }
+
+    /**
+     *  Reports a message as written.  A message with no reply has succeeded; for one
+     *  with a reply, this does nothing, and the reader calls succeeded().
+     *
+     * @param started event from started(), or null
+     */
+    void written(DriverEvent started) {
+
+        if (started != null && !hasReply(started.getOperation())) {
+            post(started.succeeded(0, 0));
+        }
+    }
+
+    /**
+     * @param started event from started(), or null
+     * @param reply reply read, or null if there isn't one
+     */
+    void succeeded(DriverEvent started, DBQueryReplyMessage reply) {
+
+        if (started != null) {
+            post(reply == null ? started.succeeded(0, 0)
+                    : started.succeeded(reply.getMessageLength(), reply.getNumberReturned()));
+        }
+    }
+
+    /**
+     * @param started event from started(), or null
+     * @param failure what went wrong
+     */
+    void failed(DriverEvent started, Throwable failure) {
+
+        if (started != null) {
+            post(started.failed(failure));
+        }
+    }
+
+    /**
+     *  Reports the message as succeeded or failed once a future for its sending or
+     *  its reply completes
+     *
+     * @param started event from started(), or null
+     * @param f future for the write or the reply
+     * @return the future
+     */
+    <T> CompletableFuture<T> track(final DriverEvent started, CompletableFuture<T> f) {
+
+        if (started == null) {
+            return f;
+        }
+
+        f.whenComplete((r, t) -> {
+            if (t != null) {
+                failed(started, t);
+            }
+            else {
+                succeeded(started, r instanceof DBQueryReplyMessage ? (DBQueryReplyMessage) r : null);
+            }
+        });
+
+        return f;
+    }
+
+    static boolean hasReply(MessageType op) {
+        return op == MessageType.OP_QUERY || op == MessageType.OP_GET_MORE;
+    }
+
+    private void post(DriverEvent e) {
+        if (!_queue.offer(e)) {
+            _dropped.incrementAndGet();
+        }
+    }
+
+    private void dispatch() {
+
+        while (true) {
+            DriverEvent e;
+
+            try {
+                e = _queue.take();
+            }
+            catch (InterruptedException ie) {
+                return;
+            }
+
+            for (DriverEventListener l : _listeners) {
+                try {
+                    switch (e.getKind()) {
+                        case STARTED:
+                            l.started(e);
+                            break;
+                        case SUCCEEDED:
+                            l.succeeded(e);
+                            break;
+                        default:
+                            l.failed(e);
+                    }
+                }
+                catch (RuntimeException re) {
+                    // a listener's problem isn't the driver's
+                }
+            }
+        }
+    }
+}
@@ -19,10 +19,14 @@
 
 package org.mongodb.driver.impl;
 
+import org.mongodb.driver.DriverEventListener;
+import org.mongodb.driver.DriverMetrics;
 import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.impl.connection.AsyncConnection;
 import org.mongodb.driver.impl.connection.Connection;
-import org.mongodb.driver.impl.connection.SimpleConnection;
+import org.mongodb.driver.impl.connection.PooledConnection;
 import org.mongodb.driver.ts.options.DBOptions;
+import org.mongodb.driver.ts.options.MongoOptions;
 
 import java.net.InetSocketAddress;
 
@@ -40,8 +44,20 @@ public abstract class MongoImpl {
 
     protected final Connection _connection;
 
+    protected final int _multiplexedConnections;
+
+    protected final long _replyTimeoutMillis;
+
+    protected AsyncConnection _asyncConnection = null;
+
+    protected final DriverMetrics _metrics = new DriverMetrics();
+
+    protected final EventDispatcher _events = new EventDispatcher();
+
     protected MongoImpl() {
-        _connection = new SimpleConnection(_addr);
+        _connection = new PooledConnection(_addr);
+        _multiplexedConnections = 0;
+        _replyTimeoutMillis = MongoOptions.DEFAULT_REPLY_TIMEOUT_MILLIS;
     }
 
     protected MongoImpl(String host) throws MongoDBException {
@@ -49,9 +65,15 @@ public abstract class MongoImpl {
     }
 
     protected MongoImpl(String host, int port) throws MongoDBException {
+        this(host, port, new MongoOptions());
+    }
+
+    protected MongoImpl(String host, int port, MongoOptions options) throws MongoDBException {
         try {
             _addr = new InetSocketAddress(host, port);
-            _connection = new SimpleConnection(_addr);
+            _connection = new PooledConnection(_addr, options);
+            _multiplexedConnections = options.getMultiplexedConnections();
+            _replyTimeoutMillis = options.getReplyTimeoutMillis();
         }
         catch (IllegalArgumentException iae) {
             throw new MongoDBException("Invalid address : ",  iae);
@@ -62,6 +84,59 @@ public abstract class MongoImpl {
         return _connection;
     }
 
+    /**
+     * @return true if all operations are to be multiplexed over the async connection
+     */
+    public boolean isMultiplexed() {
+        return _multiplexedConnections > 0;
+    }
+
+    /**
+     *  Returns the multiplexed connection used by asynchronous databases, and by all
+     *  databases if isMultiplexed().  Created on first use.
+     *
+     * @return the multiplexed connection
+     */
+    public synchronized AsyncConnection getAsyncConnection() {
+
+        if (_asyncConnection == null) {
+            _asyncConnection = new AsyncConnection(_addr, Math.max(_multiplexedConnections, 1), _replyTimeoutMillis);
+        }
+
+        return _asyncConnection;
+    }
+
+    /**
+     * @return latency histograms for the operations sent by this server's databases
+     */
+    public DriverMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     *  Registers a listener for the messages sent by this server's databases
+     *
+     * @param listener listener to add
+     */
+    public void addEventListener(DriverEventListener listener) {
+        _events.addListener(listener);
+    }
+
+    public void removeEventListener(DriverEventListener listener) {
+        _events.removeListener(listener);
+    }
+
+    /**
+     * @return number of events dropped because the listeners fell behind
+     */
+    public long getDroppedEventCount() {
+        return _events.getDroppedEvents();
+    }
+
+    EventDispatcher getEventDispatcher() {
+        return _events;
+    }
+
     public InetSocketAddress getServerAddress() {
         return _addr;
     }
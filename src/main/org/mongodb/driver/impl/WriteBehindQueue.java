@@ -0,0 +1,582 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.MongoDBIOException;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.options.WriteBehindOptions;
+import org.mongodb.driver.impl.msg.DBMessage;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.LazyDoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *   Queue of inserts for a collection, sent to the server in batches by a background
+ *   thread.  A batch goes out once batchSize documents are waiting, once the oldest has
+ *   waited maxAge, and on flush().  A full queue makes add() wait, or fail, as configured.
+ *
+ *   With a journal, each document is also appended to a memory-mapped file before add()
+ *   returns, and the file's header records how far the journal has been sent.  Whatever
+ *   is past that point when the queue is set up again, e.g. after a crash, is queued ahead
+ *   of anything new.  Once everything journaled has been sent the journal starts over from
+ *   the top.  Journal layout :
+ *
+ *     long : offset of the first record not yet sent
+ *     records : int length, followed by that many bytes of BSON
+ *     int  : 0 after the last record
+ *
+ *   A record's length is written last, after the terminator following it, so a record
+ *   cut short by a crash reads as the end of the journal.
+ *
+ *   add() encodes the document there and then, so a document that can't be encoded is
+ *   refused by add() rather than jamming the queue, and what's queued is a LazyDoc over the
+ *   encoded bytes - a snapshot of the document, which the sender writes out as is.
+ *
+ *   A batch that fails to send for an IO error goes back to the front of the queue and is
+ *   retried after RETRY_MILLIS.  flush() reports a failure that happens while it's waiting.
+ *   A batch the server refuses would only be refused again, so it's dropped, and the next
+ *   flush() reports it.
+ */
+class WriteBehindQueue {
+
+    static final int JOURNAL_HEADER = 8;
+    static final long RETRY_MILLIS = 1000;
+
+    private final DBImpl _db;
+    private final String _collection;
+    private final int _capacity;
+    private final int _batchSize;
+    private final long _maxAgeNanos;
+    private final boolean _blockWhenFull;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _changed = _lock.newCondition();
+
+    private final ArrayDeque<Entry> _queue = new ArrayDeque<Entry>();
+    private int _sending;             // taken by the sender, not yet sent
+    private int _flushers;            // threads waiting in flush()
+    private boolean _closed;
+    private MongoDBException _failure;
+    private long _failures;
+    private MongoDBException _dropped;  // batch dropped since the last flush() reported one
+
+    private FileChannel _journalChannel;
+    private MappedByteBuffer _journal;
+    private int _writePos;
+
+    private final Thread _sender;
+
+    WriteBehindQueue(DBImpl db, String collection, WriteBehindOptions options) throws MongoDBException {
+        _db = db;
+        _collection = collection;
+        _capacity = options.getCapacity();
+        _batchSize = options.getBatchSize();
+        _maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(options.getMaxAgeMillis());
+        _blockWhenFull = options.isBlockWhenFull();
+
+        if (options.getJournal() != null) {
+            openJournal(options.getJournal(), options.getJournalSize());
+        }
+
+        _sender = new Thread(new Runnable() {
+            public void run() {
+                send();
+            }
+        }, "mongo-write-behind");
+        _sender.setDaemon(true);
+        _sender.start();
+    }
+
+    /**
+     *  Queues a document, and journals it if there's a journal
+     *
+     * @param doc document to insert
+     * @throws MongoDBException if the document can't be encoded, or the queue is full and
+     *         not blocking, or closed
+     */
+    void add(Doc doc) throws MongoDBException {
+
+        byte[] bytes = encode(doc);
+
+        _lock.lock();
+        try {
+            while (true) {
+
+                if (_closed) {
+                    throw new MongoDBException("Write-behind queue is closed");
+                }
+
+                if (_queue.size() + _sending < _capacity) {
+
+                    int end = journal(bytes);
+
+                    if (end >= 0) {
+                        _queue.add(new Entry(new LazyDoc(bytes), end));
+                        _changed.signalAll();
+                        return;
+                    }
+                }
+
+                if (!_blockWhenFull) {
+                    throw new MongoDBException("Write-behind queue is full");
+                }
+
+                _changed.await();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoDBException("Interrupted waiting for room in write-behind queue", e);
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Waits until everything queued so far has been sent
+     *
+     * @throws MongoDBException if a send fails while waiting, or a batch has been dropped
+     *         since the last flush()
+     */
+    void flush() throws MongoDBException {
+
+        _lock.lock();
+        try {
+            long failures = _failures;
+
+            _flushers++;
+            _changed.signalAll();
+
+            try {
+                while (true) {
+
+                    if (_dropped != null) {
+                        MongoDBException e = _dropped;
+                        _dropped = null;
+                        throw e;
+                    }
+
+                    if (_queue.isEmpty() && _sending == 0) {
+                        break;
+                    }
+
+                    if (_failures != failures) {
+                        throw _failure;
+                    }
+
+                    _changed.await();
+                }
+            }
+            finally {
+                _flushers--;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoDBException("Interrupted flushing write-behind queue", e);
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Sends what's queued and stops the sender.  Anything that can't be sent stays in the
+     *  journal, if there is one.  Does nothing if already closed.
+     *
+     * @throws MongoDBException if what's queued can't be sent
+     */
+    void close() throws MongoDBException {
+
+        _lock.lock();
+        try {
+            if (_closed) {
+                return;
+            }
+        }
+        finally {
+            _lock.unlock();
+        }
+
+        try {
+            flush();
+        }
+        finally {
+            _lock.lock();
+            try {
+                _closed = true;
+                _changed.signalAll();
+            }
+            finally {
+                _lock.unlock();
+            }
+
+            try {
+                _sender.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            closeJournal();
+        }
+    }
+
+    int size() {
+        _lock.lock();
+        try {
+            return _queue.size() + _sending;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Sender loop
+     */
+    private void send() {
+
+        try {
+            while (true) {
+
+                List<Entry> batch = nextBatch();
+
+                if (batch == null) {
+                    return;
+                }
+
+                Doc[] docs = new Doc[batch.size()];
+
+                for (int i = 0; i < docs.length; i++) {
+                    docs[i] = batch.get(i)._doc;
+                }
+
+                try {
+                    _db.bulkInsertIntoDB(_collection, docs);
+                    sent(batch, null);
+                }
+                catch (MongoDBException e) {
+                    sent(batch, e);
+                }
+                catch (MongoDBIOException e) {
+                    if (!failed(batch, new MongoDBException("Error sending write-behind batch : ", e))) {
+                        return;
+                    }
+                    Thread.sleep(RETRY_MILLIS);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // only on shutdown of the JVM
+        }
+    }
+
+    /**
+     *  Waits for a batch to be due and takes it from the queue
+     *
+     * @return the batch, or null once closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private List<Entry> nextBatch() throws InterruptedException {
+
+        _lock.lock();
+        try {
+            while (true) {
+
+                if (_queue.isEmpty()) {
+                    if (_closed) {
+                        return null;
+                    }
+                    _changed.await();
+                    continue;
+                }
+
+                long age = System.nanoTime() - _queue.peek()._queued;
+
+                if (_queue.size() >= _batchSize || age >= _maxAgeNanos || _flushers > 0 || _closed) {
+                    break;
+                }
+
+                _changed.awaitNanos(_maxAgeNanos - age);
+            }
+
+            List<Entry> batch = new ArrayList<Entry>(Math.min(_batchSize, _queue.size()));
+
+            while (batch.size() < _batchSize && !_queue.isEmpty()) {
+                batch.add(_queue.poll());
+            }
+
+            _sending = batch.size();
+
+            return batch;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Takes a batch off the books, whether it went out or was refused
+     *
+     * @param refused why the server refused the batch, or null if it was sent
+     */
+    private void sent(List<Entry> batch, MongoDBException refused) {
+
+        _lock.lock();
+        try {
+            _sending = 0;
+
+            if (refused != null) {
+                _dropped = new MongoDBException("Write-behind batch of " + batch.size() + " dropped : ", refused);
+                _failure = _dropped;
+                _failures++;
+            }
+
+            if (_journal != null) {
+                _journal.putLong(0, batch.get(batch.size() - 1)._journalEnd);
+
+                if (_queue.isEmpty()) {
+                    rewindJournal();
+                }
+            }
+
+            _changed.signalAll();
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Puts a batch that couldn't be sent back at the front of the queue
+     *
+     * @return false if closed, so the sender should give up
+     */
+    private boolean failed(List<Entry> batch, MongoDBException e) {
+
+        _lock.lock();
+        try {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                _queue.addFirst(batch.get(i));
+            }
+
+            _sending = 0;
+            _failure = e;
+            _failures++;
+            _changed.signalAll();
+
+            return !_closed;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Maps the journal, and queues anything in it that wasn't sent
+     */
+    private void openJournal(File file, int size) throws MongoDBException {
+
+        try {
+            _journalChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            size = (int) Math.max(size, Math.min(_journalChannel.size(), Integer.MAX_VALUE));
+
+            _journal = _journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            _journal.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            closeJournal();
+            throw new MongoDBException("Unable to open write-behind journal " + file, e);
+        }
+
+        try {
+            replayJournal(size);
+        }
+        catch (MongoDBException e) {
+            closeJournal();
+            throw e;
+        }
+    }
+
+    /**
+     *  Queues the records from the sent offset on, and leaves the write position after them
+     */
+    private void replayJournal(int size) throws MongoDBException {
+
+        long start = _journal.getLong(0);
+        int pos = (start < JOURNAL_HEADER || start > size) ? JOURNAL_HEADER : (int) start;
+
+        _journal.putLong(0, pos);
+
+        while (pos + 4 <= size) {
+
+            int len = _journal.getInt(pos);
+
+            if (len <= 0 || pos + 4 + len > size) {
+                break;
+            }
+
+            ByteBuffer buf = _journal.duplicate();
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.position(pos + 4);
+            buf.limit(pos + 4 + len);
+
+            Doc doc = BSONObject.deserializeObjectData(buf);
+
+            pos += 4 + len;
+            _queue.add(new Entry(doc, pos));
+        }
+
+        _writePos = pos;
+
+        if (_queue.isEmpty()) {
+            rewindJournal();
+        }
+    }
+
+    /**
+     *  Encodes a document, in a pooled buffer that grows until the document fits
+     *
+     * @return the document's BSON
+     * @throws MongoDBException if the document can't be encoded, or is too large
+     */
+    static byte[] encode(Doc doc) throws MongoDBException {
+
+        BufferPool pool = BufferPool.getShared();
+        int size = 4 * 1024;
+
+        while (true) {
+
+            ByteBuffer buf = pool.get(size);
+
+            try {
+                new BSONObject(buf).serializeInBuffer(doc);
+
+                byte[] bytes = new byte[buf.position()];
+                buf.flip();
+                buf.get(bytes);
+
+                return bytes;
+            }
+            catch (BufferOverflowException e) {
+
+                if (size >= DBMessage.MAX_DOC_SIZE) {
+                    throw new MongoDBException("Error : document too large to encode");
+                }
+                size *= 2;
+            }
+            finally {
+                pool.release(buf);
+            }
+        }
+    }
+
+    /**
+     *  Appends a document to the journal.  Called with the lock held.
+     *
+     * @param bytes the document's BSON
+     * @return journal offset after the document, 0 if there's no journal, or -1 if
+     *         the journal has no room for it now
+     * @throws MongoDBException if the document can't ever fit
+     */
+    private int journal(byte[] bytes) throws MongoDBException {
+
+        if (_journal == null) {
+            return 0;
+        }
+
+        if (_writePos + 4 + bytes.length + 4 > _journal.capacity()) {
+
+            if (_writePos == JOURNAL_HEADER) {
+                throw new MongoDBException("Document too large for write-behind journal");
+            }
+            return -1;
+        }
+
+        ByteBuffer buf = _journal.duplicate();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.position(_writePos + 4);
+        buf.put(bytes);
+        buf.putInt(0);                              // new end of the journal
+
+        _journal.putInt(_writePos, bytes.length);
+        _writePos += 4 + bytes.length;
+
+        return _writePos;
+    }
+
+    /**
+     *  Starts the journal over from the top.  Called with the lock held, once everything
+     *  journaled has been sent.
+     */
+    private void rewindJournal() {
+        _journal.putInt(JOURNAL_HEADER, 0);
+        _journal.putLong(0, JOURNAL_HEADER);
+        _writePos = JOURNAL_HEADER;
+    }
+
+    private void closeJournal() {
+
+        if (_journal != null) {
+            _journal.force();
+        }
+
+        if (_journalChannel != null) {
+            try {
+                _journalChannel.close();
+            }
+            catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final Doc _doc;
+        final int _journalEnd;
+        final long _queued = System.nanoTime();
+
+        Entry(Doc doc, int journalEnd) {
+            _doc = doc;
+            _journalEnd = journalEnd;
+        }
+    }
+}
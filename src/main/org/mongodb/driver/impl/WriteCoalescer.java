@@ -0,0 +1,389 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.mongodb.driver.DriverEvent;
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.MongoDBIOException;
+import org.mongodb.driver.MongoDBWriteException;
+import org.mongodb.driver.impl.msg.DBMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *   Gathers the fire-and-forget writes of a database into one outbound buffer, so that
+ *   a run of small inserts, updates and removes goes out in a few large socket writes
+ *   rather than one each.
+ *
+ *   The buffer is sent once it holds the flush threshold, once the flush interval has
+ *   passed since the first message went in, and whenever flush() is called - the database
+ *   calls it before every query and command so reads see earlier writes.  Messages bigger
+ *   than the threshold skip the buffer.
+ *
+ *   A flush by a thread goes out on that thread's socket, like any other operation.  A
+ *   timed flush goes out on the socket last used by the thread whose write started the
+ *   buffer, so that thread's next query follows its writes on the same socket, as it
+ *   would without coalescing.  Writes from other threads in the same buffer get no such
+ *   guarantee.
+ *
+ *   For acknowledged writes the buffer is also sent once it holds ackEvery writes, and the
+ *   server's answer is checked before the send returns.  A lone write is followed by a
+ *   getlasterror.  getlasterror only describes the last write on a connection though, so
+ *   a buffer of several acknowledged writes starts with a reseterror and ends with a
+ *   getpreverror, which reports an error from any write in the batch.
+ *
+ *   A failed background flush is reported by the next write or flush.
+ *
+ *   Listeners hear of a buffered write starting when it goes in the buffer, but only hear
+ *   it succeeded or failed once the buffer has been written to the socket, and for
+ *   acknowledged writes, once the server has answered for the batch.  An error for the
+ *   batch fails all of its writes, as there's no telling which one it was.
+ */
+class WriteCoalescer {
+
+    private static final ScheduledExecutorService _flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mongo-flush");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final DBImpl _db;
+    private final int _threshold;
+    private final long _interval;
+    private final int _ackEvery;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private ByteBuffer _buf;                       // leased when the first message goes in
+    private int _writes;                           // messages in the buffer
+    private boolean _reset;                        // buffer starts with a reseterror
+    private DriverEvent _resetEvent;
+    private List<DriverEvent> _pending;            // events of the buffered writes, or null if none
+    private SocketChannel _owner;                  // last channel of the thread that started the buffer
+    private boolean _flushScheduled;
+    private Exception _failure;
+
+    /**
+     * @param db database whose channels the writes go out on
+     * @param threshold buffered bytes at which to send
+     * @param interval milliseconds a message may wait in the buffer
+     * @param ackEvery writes per getlasterror, or 0 for unacknowledged writes
+     */
+    WriteCoalescer(DBImpl db, int threshold, long interval, int ackEvery) {
+        _db = db;
+        _threshold = threshold;
+        _interval = interval;
+        _ackEvery = ackEvery;
+    }
+
+    /**
+     *  Adds a message to the buffer.  The message's own buffers are released.
+     *
+     * @param msg message to send
+     * @throws MongoDBException if this or an earlier send failed, or the server reports
+     *         an error for the batch this write completed
+     */
+    void write(DBMessage msg) throws MongoDBException {
+
+        _lock.lock();
+        try {
+            checkFailure();
+
+            int len = msg.getMessageLength();
+
+            if (_buf != null && len > _buf.remaining()) {
+                send(null);
+            }
+
+            if (len > _threshold) {
+                send(msg);
+                return;
+            }
+
+            if (_buf == null) {
+                _buf = BufferPool.getShared().get(_threshold);
+                _owner = _db.lastChannel();
+
+                if (_ackEvery > 1) {
+                    startBatch();
+
+                    if (len > _buf.remaining()) {
+                        send(msg);          // the reseterror took the room it needed
+                        return;
+                    }
+                }
+            }
+
+            DriverEvent event = _db._events.started(msg);
+
+            try {
+                for (ByteBuffer b : msg.getMessageBuffers()) {
+                    _buf.put(b);
+                }
+                _writes++;
+            }
+            finally {
+                msg.release();
+            }
+
+            if (event != null) {
+                if (_pending == null) {
+                    _pending = new ArrayList<DriverEvent>();
+                }
+                _pending.add(event);
+            }
+
+            if (_buf.position() >= _threshold || (_ackEvery > 0 && _writes >= _ackEvery)) {
+                send(null);
+            }
+            else if (!_flushScheduled) {
+                _flushScheduled = true;
+                _flushTimer.schedule(new Runnable() {
+                    public void run() {
+                        timedFlush();
+                    }
+                }, _interval, TimeUnit.MILLISECONDS);
+            }
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Sends whatever is buffered
+     *
+     * @throws MongoDBException if this or an earlier send failed, or the server reports
+     *         an error for the writes sent
+     */
+    void flush() throws MongoDBException {
+
+        _lock.lock();
+        try {
+            checkFailure();
+            send(null);
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    private void timedFlush() {
+
+        _lock.lock();
+        try {
+            _flushScheduled = false;
+            send(null, _owner);
+        }
+        catch (MongoDBException e) {
+            _failure = e;
+        }
+        catch (MongoDBIOException e) {
+            _failure = e;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     *  Puts a reseterror at the head of the new buffer, so the getpreverror that ends the
+     *  batch covers only its writes
+     */
+    private void startBatch() throws MongoDBException {
+
+        DBMessage reset = _db.newResetErrorMessage();
+
+        try {
+            _resetEvent = _db._events.started(reset);
+
+            for (ByteBuffer b : reset.getMessageBuffers()) {
+                _buf.put(b);
+            }
+            _reset = true;
+        }
+        finally {
+            reset.release();
+        }
+
+        _db._events.written(_resetEvent);
+    }
+
+    private void checkFailure() throws MongoDBException {
+
+        Exception e = _failure;
+
+        if (e != null) {
+            _failure = null;
+
+            if (e instanceof MongoDBException) {
+                throw (MongoDBException) e;
+            }
+            throw (MongoDBIOException) e;
+        }
+    }
+
+    private void send(DBMessage last) throws MongoDBException {
+        send(last, null);
+    }
+
+    /**
+     *  Writes out and releases the buffer, followed by the given message if any, and for
+     *  acknowledged writes, a getlasterror, or a getpreverror if the buffer started with a
+     *  reseterror.  Called with the lock held.  If the write fails the buffered messages
+     *  are lost.  The buffered writes are reported as succeeded or failed once it's known.
+     *
+     * @param last message to send after the buffer, or null
+     * @param preferred channel to send on if it's free, or null for the calling thread's
+     */
+    private void send(DBMessage last, SocketChannel preferred) throws MongoDBException {
+
+        if (_buf == null && last == null) {
+            return;
+        }
+
+        ByteBuffer buf = _buf;
+        boolean reset = _reset;
+        DriverEvent resetEvent = _resetEvent;
+        List<DriverEvent> pending = _pending;
+
+        _buf = null;
+        _pending = null;
+        _writes = 0;
+        _reset = false;
+        _resetEvent = null;
+        _owner = null;
+
+        DBMessage gle = null;
+        DriverEvent gleEvent = null;
+        SocketChannel sc = null;
+        boolean ok = false;
+        Exception failure = null;
+
+        try {
+            if (_ackEvery > 0) {
+                gle = reset ? _db.newPrevErrorMessage() : _db.newLastErrorMessage();
+
+                /*
+                 *  in the same write as the batch if it can be
+                 */
+                if (buf != null && last == null && gle.getMessageLength() <= buf.remaining()) {
+                    gleEvent = _db._events.started(gle);
+
+                    for (ByteBuffer b : gle.getMessageBuffers()) {
+                        buf.put(b);
+                    }
+                    gle.release();
+                    gle = null;
+                }
+            }
+
+            sc = preferred != null ? _db.leaseChannel(preferred) : _db.leaseChannel();
+
+            if (buf != null) {
+                buf.flip();
+
+                while (buf.hasRemaining()) {
+                    sc.write(buf);
+                }
+            }
+
+            if (last != null) {
+                _db.writeMessage(sc, last);
+            }
+
+            if (gle != null) {
+                gleEvent = _db.writeMessage(sc, gle);
+            }
+
+            if (_ackEvery > 0) {
+                try {
+                    if (reset) {
+                        _db.readLastError(sc, resetEvent);
+                    }
+                    _db.readLastError(sc, gleEvent);
+                }
+                catch (MongoDBWriteException e) {
+                    ok = true;          // the channel's fine, it was the writes that failed
+                    throw e;
+                }
+            }
+
+            ok = true;
+        }
+        catch (IOException e) {
+            failure = e;
+            throw new MongoDBIOException("IO Error : ", e);
+        }
+        catch (MongoDBException e) {
+            failure = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+        finally {
+            if (sc != null) {
+                _db.releaseChannel(sc, ok);
+            }
+            if (pending != null && (ok || failure != null)) {
+                report(pending, failure);
+            }
+            if (buf != null) {
+                BufferPool.getShared().release(buf);
+            }
+            if (last != null) {
+                last.release();
+            }
+            if (gle != null) {
+                gle.release();
+            }
+        }
+    }
+
+    /**
+     *  Reports the buffered writes as succeeded, or as failed if there's a failure
+     *
+     * @param events events of the buffered writes
+     * @param failure why the send failed, or null if it didn't
+     */
+    private void report(List<DriverEvent> events, Exception failure) {
+
+        for (DriverEvent e : events) {
+            if (failure == null) {
+                _db._events.succeeded(e, null);
+            }
+            else {
+                _db._events.failed(e, failure);
+            }
+        }
+    }
+}
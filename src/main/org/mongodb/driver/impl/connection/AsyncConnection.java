@@ -0,0 +1,830 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl.connection;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.impl.BufferPool;
+import org.mongodb.driver.impl.msg.DBMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+import org.mongodb.driver.impl.msg.MessageType;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *   Multiplexed connection to a single mongo server.  A single event-loop thread owns a
+ *   small number of non-blocking sockets.  Any thread may queue a message for sending, and
+ *   replies are matched to their request by the responseTo field of the reply header, so
+ *   many requests can be in flight on one socket at once.
+ *
+ *   Messages from a given thread always go out on the same socket, in order, so a
+ *   fire-and-forget write is seen by a later query from the same thread.
+ *
+ *   Futures are completed on the event-loop thread : code chained onto them must not
+ *   block waiting on another reply from this connection.  While a future is completed the
+ *   loop thread takes on the socket of the thread that queued the request, so a message
+ *   sent by code chained onto it (other than by the *Async methods, which run elsewhere)
+ *   follows the request on the same socket, and a chain of operations stays in order.
+ *
+ *   If the loop dies, everything queued or waiting on it fails, and the next send starts a
+ *   new one.  With a reply timeout set, a socket whose oldest outstanding request has gone
+ *   unanswered that long is closed, failing everything on it.
+ *
+ *   Starting, stopping and opening sockets are guarded by a ReentrantLock rather than a
+ *   monitor, so a virtual thread blocked opening a socket doesn't pin its carrier.
+ */
+public class AsyncConnection {
+
+    public static final int READ_BUFFER_SIZE = 1024*64;
+
+    private static final int MAX_GATHER = 64;
+
+    /*
+     *  threads are spread over the sockets in the order they first send
+     */
+    private static final AtomicInteger _nextSlot = new AtomicInteger();
+    private static final ThreadLocal<Integer> _slot = ThreadLocal.withInitial(() -> _nextSlot.getAndIncrement() & Integer.MAX_VALUE);
+
+    private final InetSocketAddress _inetAddr;
+    private final AtomicReferenceArray<ChannelState> _channels;
+    private final long _replyTimeout;               // nanoseconds, 0 for none
+
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private volatile Selector _selector;
+    private volatile Thread _loop;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+
+    public AsyncConnection(InetSocketAddress addr, int nChannels) {
+        this(addr, nChannels, 0);
+    }
+
+    /**
+     * @param addr address of the server
+     * @param nChannels number of sockets
+     * @param replyTimeoutMillis time to wait for a reply before giving up on its socket.  0 waits forever
+     */
+    public AsyncConnection(InetSocketAddress addr, int nChannels, long replyTimeoutMillis) {
+
+        if (nChannels <= 0) {
+            throw new IllegalArgumentException("nChannels must be > 0");
+        }
+
+        if (replyTimeoutMillis < 0) {
+            throw new IllegalArgumentException("replyTimeoutMillis must be >= 0");
+        }
+
+        _inetAddr = addr;
+        _channels = new AtomicReferenceArray<ChannelState>(nChannels);
+        _replyTimeout = TimeUnit.MILLISECONDS.toNanos(replyTimeoutMillis);
+    }
+
+    /**
+     *  Starts the event loop.  Sockets are opened on first use.
+     *
+     * @throws IOException if the selector can't be opened
+     */
+    public void connect() throws IOException {
+
+        _lock.lock();
+
+        try {
+            if (_loop != null) {
+                return;
+            }
+
+            final Selector selector = Selector.open();
+
+            _selector = selector;
+            _loop = new Thread("mongo-io-" + _inetAddr) {
+                public void run() {
+                    runLoop(selector);
+                }
+            };
+            _loop.setDaemon(true);
+            _loop.start();
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    public boolean isConnected() {
+        return _loop != null;
+    }
+
+    /**
+     *  Stops the event loop and closes all sockets.  Anything still in flight fails.  A
+     *  subsequent send restarts the loop.
+     */
+    public void close() {
+        stop(null, new IOException("Connection closed"));
+    }
+
+    /**
+     *  Stops an event loop, closes all sockets and fails everything queued or waiting on them
+     *
+     * @param selector selector of the loop to stop, or null for whichever is running
+     * @param failure what to fail things with
+     */
+    private void stop(Selector selector, IOException failure) {
+
+        Selector sel;
+
+        _lock.lock();
+
+        try {
+            sel = _selector;
+
+            if (sel == null || (selector != null && sel != selector)) {
+                return;         // already stopped, and maybe restarted
+            }
+
+            _loop = null;
+            _selector = null;
+            _tasks.clear();
+        }
+        finally {
+            _lock.unlock();
+        }
+
+        try {
+            sel.close();
+        }
+        catch (IOException e) {
+            // nothing to do
+        }
+
+        for (int i = 0; i < _channels.length(); i++) {
+            ChannelState st = _channels.getAndSet(i, null);
+
+            if (st != null) {
+                st.fail(failure);
+            }
+        }
+    }
+
+    /**
+     *  Queues a message that expects a reply.  The message is copied and released before
+     *  returning.
+     *
+     * @param msg message to send
+     * @return future completed with the reply, or exceptionally on an IO or decoding error
+     */
+    public CompletableFuture<DBQueryReplyMessage> sendForReply(DBMessage msg) {
+        return sendForReply(msg, false, false);
+    }
+
+    /**
+     *  Queues a message that expects a reply.  The message is copied and released before
+     *  returning.
+     *
+     * @param msg message to send
+     * @param lazy true to read the objects in the reply as LazyDocs
+     * @param primitiveArrays true to decode numeric arrays in the reply as int[] or double[]
+     * @return future completed with the reply, or exceptionally on an IO or decoding error
+     */
+    public CompletableFuture<DBQueryReplyMessage> sendForReply(DBMessage msg, boolean lazy, boolean primitiveArrays) {
+
+        CompletableFuture<DBQueryReplyMessage> reply = new CompletableFuture<DBQueryReplyMessage>();
+
+        submit(copyOf(msg), msg.getRequestID(), reply, new CompletableFuture<Void>(), lazy, primitiveArrays);
+
+        return reply;
+    }
+
+    /**
+     *  Queues a message that has no reply followed by one that does, such as a write and the
+     *  getlasterror that acknowledges it.  The two go out back to back on one socket, with
+     *  nothing from another thread between them.  Both messages are copied and released
+     *  before returning.
+     *
+     * @param write message with no reply
+     * @param msg message to send right after it
+     * @return future completed with the reply to msg, or exceptionally on an IO or decoding error
+     */
+    public CompletableFuture<DBQueryReplyMessage> sendForReply(DBMessage write, DBMessage msg) {
+
+        CompletableFuture<DBQueryReplyMessage> reply = new CompletableFuture<DBQueryReplyMessage>();
+
+        submit(copyOf(write, msg), msg.getRequestID(), reply, new CompletableFuture<Void>(), false, false);
+
+        return reply;
+    }
+
+    /**
+     *  Queues a message that has no reply.  The message is copied and released before
+     *  returning.
+     *
+     * @param msg message to send
+     * @return future completed when the message has been written to the socket
+     */
+    public CompletableFuture<Void> send(DBMessage msg) {
+
+        CompletableFuture<Void> written = new CompletableFuture<Void>();
+
+        submit(copyOf(msg), msg.getRequestID(), null, written, false, false);
+
+        return written;
+    }
+
+    /**
+     * @param bytes message bytes, leased from the pool
+     * @param requestID request id of the message whose reply is wanted
+     */
+    private void submit(ByteBuffer bytes, int requestID, CompletableFuture<DBQueryReplyMessage> reply,
+                        CompletableFuture<Void> written, boolean lazy, boolean primitiveArrays) {
+
+        ChannelState st;
+        int slot = _slot.get();
+
+        try {
+            if (_loop == null) {
+                connect();
+            }
+            st = channelFor(slot);
+        }
+        catch (IOException e) {
+            BufferPool.getShared().release(bytes);
+            written.completeExceptionally(e);
+            if (reply != null) {
+                reply.completeExceptionally(e);
+            }
+            return;
+        }
+
+        if (reply != null) {
+            st._pending.put(requestID, new Pending(reply, lazy, primitiveArrays, slot));
+        }
+
+        st._writes.offer(new Write(bytes, written, slot));
+
+        /*
+         *  if the loop failed the channel under us, make sure nothing we queued is left hanging
+         */
+        if (st._failure != null) {
+            st.fail(st._failure);
+            return;
+        }
+
+        if (st._writeScheduled.compareAndSet(false, true)) {
+            schedule(st);
+        }
+    }
+
+    /**
+     *  Finds the channel for a thread, opening a new socket if there is none or the
+     *  previous one failed.
+     */
+    private ChannelState channelFor(int threadSlot) throws IOException {
+
+        int slot = threadSlot % _channels.length();
+
+        ChannelState st = _channels.get(slot);
+
+        if (st != null && st._failure == null) {
+            return st;
+        }
+
+        _lock.lock();
+
+        try {
+            st = _channels.get(slot);
+
+            if (st != null && st._failure == null) {
+                return st;
+            }
+
+            SocketChannel sc = SocketChannel.open(_inetAddr);
+
+            try {
+                sc.socket().setTcpNoDelay(true);
+                sc.configureBlocking(false);
+            }
+            catch (IOException e) {
+                sc.close();
+                throw e;
+            }
+
+            final ChannelState newState = new ChannelState(sc);
+
+            _channels.set(slot, newState);
+
+            _tasks.offer(new Runnable() {
+                public void run() {
+                    try {
+                        newState._key = newState._channel.register(_selector, SelectionKey.OP_READ, newState);
+                    }
+                    catch (IOException e) {
+                        newState.fail(e);
+                    }
+                }
+            });
+
+            wakeup();
+
+            return newState;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    private void schedule(final ChannelState st) {
+
+        _tasks.offer(new Runnable() {
+            public void run() {
+                try {
+                    if (st._key != null && st._key.isValid()) {
+                        st._key.interestOps(st._key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                catch (CancelledKeyException e) {
+                    // failed under us - everything on it has been failed too
+                }
+            }
+        });
+
+        wakeup();
+    }
+
+    private void wakeup() {
+
+        Selector sel = _selector;
+
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    private void runLoop(Selector selector) {
+
+        ByteBuffer readBuf = BufferPool.getShared().get(READ_BUFFER_SIZE);
+        Throwable cause = null;
+
+        long sweepEvery = TimeUnit.NANOSECONDS.toMillis(_replyTimeout) / 4;
+        long nextSweep = System.nanoTime() + _replyTimeout;
+
+        if (_replyTimeout > 0 && sweepEvery == 0) {
+            sweepEvery = 1;
+        }
+
+        try {
+            while (selector.isOpen()) {
+
+                selector.select(sweepEvery);
+
+                Runnable r;
+                while ((r = _tasks.poll()) != null) {
+                    r.run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    ChannelState st = (ChannelState) key.attachment();
+
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            st.handleWrite();
+                        }
+
+                        if (key.isValid() && key.isReadable()) {
+                            st.handleRead(readBuf);
+                        }
+                    }
+                    catch (IOException e) {
+                        st.failInFlight(e);
+                        st.fail(e);
+                    }
+                    catch (RuntimeException e) {
+                        IOException ioe = new IOException("Error handling socket", e);
+                        st.failInFlight(ioe);
+                        st.fail(ioe);
+                    }
+                }
+
+                if (_replyTimeout > 0 && System.nanoTime() - nextSweep >= 0) {
+                    expireReplies();
+                    nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepEvery);
+                }
+            }
+        }
+        catch (ClosedSelectorException e) {
+            // closed
+        }
+        catch (IOException e) {
+            cause = e;
+        }
+        catch (RuntimeException e) {
+            cause = e;
+        }
+        finally {
+            BufferPool.getShared().release(readBuf);
+
+            /*
+             *  if the loop died rather than being closed, nobody's going to answer what's queued
+             */
+            stop(selector, new IOException("Connection event loop stopped", cause));
+        }
+    }
+
+    /**
+     *  Closes the sockets with a request that has waited longer than the reply timeout.
+     *  Loop thread only.
+     */
+    private void expireReplies() {
+
+        long now = System.nanoTime();
+
+        for (int i = 0; i < _channels.length(); i++) {
+
+            ChannelState st = _channels.get(i);
+
+            if (st == null || st._failure != null) {
+                continue;
+            }
+
+            for (Pending p : st._pending.values()) {
+                if (now - p._queued > _replyTimeout) {
+                    IOException e = new IOException("No reply from server in "
+                            + TimeUnit.NANOSECONDS.toMillis(_replyTimeout) + "ms");
+                    st.failInFlight(e);
+                    st.fail(e);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     *  Copies a message into a single buffer leased from the pool, and releases the message
+     */
+    private static ByteBuffer copyOf(DBMessage msg) {
+
+        ByteBuffer copy = BufferPool.getShared().get(msg.getMessageLength());
+
+        put(copy, msg);
+        copy.flip();
+
+        return copy;
+    }
+
+    /**
+     *  Copies two messages, one after the other, into a single buffer leased from the pool,
+     *  and releases them
+     */
+    private static ByteBuffer copyOf(DBMessage first, DBMessage second) {
+
+        ByteBuffer copy = BufferPool.getShared().get(first.getMessageLength() + second.getMessageLength());
+
+        put(copy, first);
+        put(copy, second);
+        copy.flip();
+
+        return copy;
+    }
+
+    private static void put(ByteBuffer copy, DBMessage msg) {
+
+        for (ByteBuffer buf : msg.getMessageBuffers()) {
+            copy.put(buf);
+        }
+
+        msg.release();
+    }
+
+    /**
+     *  Completes a future as the thread with the given slot, so that anything chained onto
+     *  it sends on that thread's socket
+     */
+    private static <T> void complete(int slot, CompletableFuture<T> f, T value, Throwable t) {
+
+        Integer prev = _slot.get();
+        _slot.set(slot);
+
+        try {
+            if (t == null) {
+                f.complete(value);
+            }
+            else {
+                f.completeExceptionally(t);
+            }
+        }
+        finally {
+            _slot.set(prev);
+        }
+    }
+
+    /**
+     *  A request waiting for its reply
+     */
+    private static class Pending {
+
+        final CompletableFuture<DBQueryReplyMessage> _reply;
+        final boolean _lazy;            // read the objects in the reply as LazyDocs
+        final boolean _primitiveArrays; // decode numeric arrays as int[] or double[]
+        final int _slot;                // of the thread that queued it
+        final long _queued = System.nanoTime();
+
+        Pending(CompletableFuture<DBQueryReplyMessage> reply, boolean lazy, boolean primitiveArrays, int slot) {
+            _reply = reply;
+            _lazy = lazy;
+            _primitiveArrays = primitiveArrays;
+            _slot = slot;
+        }
+
+        void fail(Throwable t) {
+            AsyncConnection.complete(_slot, _reply, null, t);
+        }
+    }
+
+    private static class Write {
+
+        final ByteBuffer _bytes;
+        final CompletableFuture<Void> _written;
+        final int _slot;                // of the thread that queued it
+
+        Write(ByteBuffer bytes, CompletableFuture<Void> written, int slot) {
+            _bytes = bytes;
+            _written = written;
+            _slot = slot;
+        }
+
+        void complete() {
+            BufferPool.getShared().release(_bytes);
+            AsyncConnection.complete(_slot, _written, null, null);
+        }
+
+        void fail(IOException e) {
+            BufferPool.getShared().release(_bytes);
+            AsyncConnection.complete(_slot, _written, null, e);
+        }
+    }
+
+    /**
+     *  State of a single socket.  Queues and the pending reply map are shared with
+     *  submitting threads, everything else is touched only by the loop thread.
+     */
+    private static class ChannelState {
+
+        final SocketChannel _channel;
+        volatile SelectionKey _key;
+
+        final Queue<Write> _writes = new ConcurrentLinkedQueue<Write>();
+        final AtomicBoolean _writeScheduled = new AtomicBoolean(false);
+        final Map<Integer, Pending> _pending = new ConcurrentHashMap<Integer, Pending>();
+
+        volatile IOException _failure;
+
+        final Write[] _inFlight = new Write[MAX_GATHER];
+        final ByteBuffer[] _gather = new ByteBuffer[MAX_GATHER];
+        int _nInFlight = 0;
+
+        ByteBuffer _message;        // reply being assembled, or null if waiting for the next length
+
+        ChannelState(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        /**
+         *  Writes as much of the queue as the socket will take, gathering queued messages
+         *  into a single write
+         */
+        void handleWrite() throws IOException {
+
+            while (true) {
+
+                if (_nInFlight == 0) {
+                    Write w;
+                    while (_nInFlight < MAX_GATHER && (w = _writes.poll()) != null) {
+                        _inFlight[_nInFlight] = w;
+                        _gather[_nInFlight] = w._bytes;
+                        _nInFlight++;
+                    }
+                }
+
+                if (_nInFlight == 0) {
+
+                    _key.interestOps(_key.interestOps() & ~SelectionKey.OP_WRITE);
+                    _writeScheduled.set(false);
+
+                    /*
+                     *  something may have been queued after our last poll - if so, keep going
+                     */
+                    if (_writes.isEmpty() || !_writeScheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+
+                    _key.interestOps(_key.interestOps() | SelectionKey.OP_WRITE);
+                    continue;
+                }
+
+                _channel.write(_gather, 0, _nInFlight);
+
+                if (_gather[_nInFlight - 1].hasRemaining()) {
+                    return;     // socket is full - wait to be writable again
+                }
+
+                for (int i = 0; i < _nInFlight; i++) {
+                    _inFlight[i].complete();
+                    _inFlight[i] = null;
+                    _gather[i] = null;
+                }
+
+                _nInFlight = 0;
+            }
+        }
+
+        /**
+         *  Reads whatever is available and completes the futures for any full replies
+         */
+        void handleRead(ByteBuffer readBuf) throws IOException {
+
+            readBuf.clear();
+
+            int n = _channel.read(readBuf);
+
+            if (n == -1) {
+                throw new IOException("End of stream");
+            }
+
+            readBuf.flip();
+
+            while (readBuf.hasRemaining()) {
+
+                if (_message == null) {
+
+                    if (readBuf.remaining() < 4) {
+                        /*
+                         *  length split across reads - start the message with what we have
+                         */
+                        _message = ByteBuffer.allocate(4);
+                        _message.order(ByteOrder.LITTLE_ENDIAN);
+                        _message.put(readBuf);
+                        return;
+                    }
+
+                    int len = readBuf.getInt(readBuf.position());
+                    _message = allocate(len);
+                }
+                else if (_message.capacity() == 4) {
+
+                    while (_message.hasRemaining() && readBuf.hasRemaining()) {
+                        _message.put(readBuf.get());
+                    }
+
+                    if (_message.hasRemaining()) {
+                        return;
+                    }
+
+                    int len = _message.getInt(0);
+                    _message = allocate(len);
+                    _message.putInt(len);
+                }
+
+                int chunk = Math.min(_message.remaining(), readBuf.remaining());
+
+                ByteBuffer slice = readBuf.duplicate();
+                slice.limit(slice.position() + chunk);
+                _message.put(slice);
+                readBuf.position(readBuf.position() + chunk);
+
+                if (!_message.hasRemaining()) {
+                    _message.flip();
+                    deliver(_message);
+
+                    /*
+                     *  the reply is fully decoded, so the buffer can go back
+                     */
+                    BufferPool.getShared().release(_message);
+                    _message = null;
+                }
+            }
+        }
+
+        private static ByteBuffer allocate(int len) throws IOException {
+
+            if (len < 16) {
+                throw new IOException("Invalid message length from server : " + len);
+            }
+
+            ByteBuffer buf = BufferPool.getShared().get(len);
+            buf.limit(len);
+
+            return buf;
+        }
+
+        private void deliver(ByteBuffer buf) {
+
+            int responseTo = buf.getInt(8);
+            int opCode = buf.getInt(12);
+
+            Pending p = _pending.remove(responseTo);
+
+            if (p == null) {
+                return;
+            }
+
+            if (opCode != MessageType.OP_REPLY.getOpCode()) {
+                p.fail(new MongoDBException("Error : received a [" + opCode + "] response from server"));
+                return;
+            }
+
+            DBQueryReplyMessage reply;
+
+            try {
+                reply = new DBQueryReplyMessage(buf, true, p._lazy, p._primitiveArrays);
+            }
+            catch (Exception e) {
+                p.fail(e);
+                return;
+            }
+
+            complete(p._slot, p._reply, reply, null);
+        }
+
+        /**
+         *  Fails the writes taken off the queue but not yet fully written.  Loop thread only.
+         */
+        void failInFlight(IOException e) {
+
+            for (int i = 0; i < _nInFlight; i++) {
+                _inFlight[i].fail(e);
+                _inFlight[i] = null;
+                _gather[i] = null;
+            }
+
+            _nInFlight = 0;
+        }
+
+        /**
+         *  Marks the channel dead, closes it, and fails everything queued or waiting on it.
+         *  Safe to call from any thread, and more than once.
+         */
+        void fail(IOException e) {
+
+            if (_failure == null) {
+                _failure = e;
+            }
+
+            try {
+                _channel.close();
+            }
+            catch (IOException ioe) {
+                // nothing to do
+            }
+
+            Write w;
+            while ((w = _writes.poll()) != null) {
+                w.fail(e);
+            }
+
+            for (Integer id : _pending.keySet()) {
+                Pending p = _pending.remove(id);
+                if (p != null) {
+                    p.fail(e);
+                }
+            }
+        }
+    }
+}
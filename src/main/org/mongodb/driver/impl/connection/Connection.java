@@ -3,11 +3,54 @@ package org.mongodb.driver.impl.connection;
 import java.nio.channels.SocketChannel;
 import java.io.IOException;
 
+/**
+ *  A source of socket channels to a mongo server.  Callers lease a channel
+ *  for the duration of an operation via checkout(), and must hand it back
+ *  via checkin() - or discard() if the channel is no longer usable - when done.
+ *  While leased, the channel is for the exclusive use of the caller.
+ */
 public interface Connection {
 
     public void close();
     public void connect() throws IOException;
     public boolean isConnected();
-    public SocketChannel getReadChannel() throws IOException;
-    public SocketChannel getWriteChannel() throws IOException;
+
+    /**
+     *  Leases a connected channel for exclusive use.
+     *
+     * @return channel ready for use
+     * @throws IOException if a channel can't be connected or made available
+     */
+    public SocketChannel checkout() throws IOException;
+
+    /**
+     *  Leases a channel, preferring the given one if it's idle, as checkout() prefers
+     *  the calling thread's last channel.  Used to send on behalf of another thread.
+     *
+     * @param preferred channel to take if it's idle, or null for checkout()'s choice
+     * @return channel ready for use
+     * @throws IOException if a channel can't be connected or made available
+     */
+    public SocketChannel checkout(SocketChannel preferred) throws IOException;
+
+    /**
+     * @return the channel the calling thread leased last, or null if there's none, or
+     *         channels aren't kept to threads
+     */
+    public SocketChannel getLastUsed();
+
+    /**
+     *  Returns a leased channel for reuse.
+     *
+     * @param channel channel obtained from checkout()
+     */
+    public void checkin(SocketChannel channel);
+
+    /**
+     *  Returns a leased channel that is in an unknown state (e.g. after an IO error)
+     *  so that it is closed rather than reused.
+     *
+     * @param channel channel obtained from checkout()
+     */
+    public void discard(SocketChannel channel);
 }
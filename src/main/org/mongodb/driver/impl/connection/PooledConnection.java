@@ -0,0 +1,464 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl.connection;
+
+import org.mongodb.driver.ts.options.MongoOptions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *   Pool of sockets to a single mongo server.  Each operation leases a socket
+ *   via checkout() and hands it back when done, so concurrent operations from
+ *   different threads each get their own socket, up to the max size of the pool.
+ *
+ *   A thread is handed the socket it used last when that socket is idle, so that
+ *   a fire-and-forget write followed by a read from the same thread normally
+ *   travels over the same socket and is seen by the read.  This can be turned off
+ *   with MongoOptions.setThreadAffinity().
+ *
+ *   Sockets are never opened or closed while holding the pool lock, and the lock
+ *   is a ReentrantLock, so virtual threads waiting on the pool don't pin a carrier.
+ */
+public class PooledConnection implements Connection {
+
+    private final InetSocketAddress _inetAddr;
+
+    private final int _minConnections;
+    private final int _maxConnections;
+    private final long _maxWaitMillis;
+    private final long _maxIdleMillis;
+    private final boolean _threadAffinity;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _available = _lock.newCondition();
+
+    /*
+     *  idle sockets, most recently used first.  Leased sockets are tracked with the
+     *  generation of the pool they were leased from, so that sockets leased before
+     *  a close() are closed on checkin rather than reused.
+     */
+    private final LinkedList<IdleChannel> _idle = new LinkedList<IdleChannel>();
+    private final Map<SocketChannel, Integer> _leased = new HashMap<SocketChannel, Integer>();
+
+    private int _total = 0;         // sockets open or being opened, leased or idle
+    private int _generation = 0;
+
+    private final ThreadLocal<SocketChannel> _lastUsed = new ThreadLocal<SocketChannel>();
+
+    public PooledConnection(InetSocketAddress addr) {
+        this(addr, new MongoOptions());
+    }
+
+    public PooledConnection(InetSocketAddress addr, MongoOptions options) {
+
+        if (options.getMinConnections() > options.getMaxConnections()) {
+            throw new IllegalArgumentException("minConnections > maxConnections");
+        }
+
+        _inetAddr = addr;
+        _minConnections = options.getMinConnections();
+        _maxConnections = options.getMaxConnections();
+        _maxWaitMillis = options.getMaxWaitMillis();
+        _maxIdleMillis = options.getMaxIdleMillis();
+        _threadAffinity = options.isThreadAffinity();
+    }
+
+    /**
+     *  Opens sockets up to the minimum size of the pool
+     *
+     * @throws IOException if a socket can't be opened
+     */
+    public void connect() throws IOException {
+
+        int needed;
+
+        _lock.lock();
+        try {
+            needed = Math.max(_minConnections - _total, 0);
+            _total += needed;
+        }
+        finally {
+            _lock.unlock();
+        }
+
+        for (int i = 0; i < needed; i++) {
+
+            SocketChannel sc;
+
+            try {
+                sc = openChannel();
+            }
+            catch (IOException e) {
+                release(needed - i);
+                throw e;
+            }
+
+            _lock.lock();
+            try {
+                _idle.addLast(new IdleChannel(sc, System.currentTimeMillis()));
+                _available.signal();
+            }
+            finally {
+                _lock.unlock();
+            }
+        }
+    }
+
+    public boolean isConnected() {
+
+        _lock.lock();
+        try {
+            return _total > 0;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    public SocketChannel checkout() throws IOException {
+        return checkout(getLastUsed());
+    }
+
+    public SocketChannel checkout(SocketChannel preferred) throws IOException {
+
+        List<SocketChannel> toClose = new ArrayList<SocketChannel>();
+        SocketChannel sc = null;
+        int generation;
+
+        _lock.lock();
+        try {
+            evictIdle(toClose);
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(_maxWaitMillis);
+
+            while (true) {
+
+                sc = takeIdle(preferred, toClose);
+
+                if (sc != null || _total < _maxConnections) {
+                    break;
+                }
+
+                if (remaining <= 0) {
+                    throw new IOException("Timed out after " + _maxWaitMillis + "ms waiting for a connection to " + _inetAddr);
+                }
+
+                try {
+                    remaining = _available.awaitNanos(remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a connection to " + _inetAddr);
+                }
+            }
+
+            if (sc == null) {
+                _total++;
+            }
+            else {
+                _leased.put(sc, _generation);
+            }
+
+            generation = _generation;
+        }
+        finally {
+            _lock.unlock();
+            closeAll(toClose);
+        }
+
+        if (sc == null) {
+
+            try {
+                sc = openChannel();
+            }
+            catch (IOException e) {
+                release(1);
+                throw e;
+            }
+
+            _lock.lock();
+            try {
+                _leased.put(sc, generation);
+            }
+            finally {
+                _lock.unlock();
+            }
+        }
+
+        if (_threadAffinity) {
+            _lastUsed.set(sc);
+        }
+
+        return sc;
+    }
+
+    public void checkin(SocketChannel channel) {
+
+        List<SocketChannel> toClose = new ArrayList<SocketChannel>();
+
+        _lock.lock();
+        try {
+            Integer generation = _leased.remove(channel);
+
+            if (generation == null) {
+                return;
+            }
+
+            if (generation != _generation || !channel.isConnected()) {
+                _total--;
+                toClose.add(channel);
+            }
+            else {
+                _idle.addFirst(new IdleChannel(channel, System.currentTimeMillis()));
+            }
+
+            evictIdle(toClose);
+
+            _available.signal();
+        }
+        finally {
+            _lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    public void discard(SocketChannel channel) {
+
+        _lock.lock();
+        try {
+            if (_leased.remove(channel) != null) {
+                _total--;
+                _available.signal();
+            }
+        }
+        finally {
+            _lock.unlock();
+        }
+
+        closeChannel(channel);
+    }
+
+    /**
+     *  Closes all idle sockets.  Sockets currently leased are closed when they are
+     *  returned.  The pool remains usable, and will open new sockets on demand.
+     */
+    public void close() {
+
+        List<SocketChannel> toClose = new ArrayList<SocketChannel>();
+
+        _lock.lock();
+        try {
+            _generation++;
+
+            for (IdleChannel ic : _idle) {
+                toClose.add(ic._channel);
+            }
+
+            _total -= _idle.size();
+            _idle.clear();
+
+            _available.signalAll();
+        }
+        finally {
+            _lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     *  Closes sockets that have been idle for longer than the max idle time, while keeping
+     *  the minimum number of sockets open.  This is also done as part of checkout and checkin,
+     *  so only needs to be called by an application that wants sockets closed while the
+     *  pool is not in use.
+     */
+    public void evictIdleConnections() {
+
+        List<SocketChannel> toClose = new ArrayList<SocketChannel>();
+
+        _lock.lock();
+        try {
+            evictIdle(toClose);
+        }
+        finally {
+            _lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * @return number of sockets open or being opened, leased or idle
+     */
+    public int getTotalCount() {
+
+        _lock.lock();
+        try {
+            return _total;
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of idle sockets
+     */
+    public int getIdleCount() {
+
+        _lock.lock();
+        try {
+            return _idle.size();
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    public InetSocketAddress getServerAddress() {
+        return _inetAddr;
+    }
+
+    public SocketChannel getLastUsed() {
+        return _threadAffinity ? _lastUsed.get() : null;
+    }
+
+    /**
+     *  Takes an idle socket, preferring the given one.  Must be called holding the lock.
+     *  Sockets found to be closed are dropped and added to the close list.
+     */
+    private SocketChannel takeIdle(SocketChannel last, List<SocketChannel> toClose) {
+
+        if (last != null) {
+            for (Iterator<IdleChannel> it = _idle.iterator(); it.hasNext(); ) {
+                IdleChannel ic = it.next();
+
+                if (ic._channel == last) {
+                    it.remove();
+
+                    if (last.isConnected()) {
+                        return last;
+                    }
+
+                    _total--;
+                    toClose.add(last);
+                    break;
+                }
+            }
+        }
+
+        while (!_idle.isEmpty()) {
+            SocketChannel sc = _idle.removeFirst()._channel;
+
+            if (sc.isConnected()) {
+                return sc;
+            }
+
+            _total--;
+            toClose.add(sc);
+        }
+
+        return null;
+    }
+
+    /**
+     *  Drops expired idle sockets, oldest first, down to the min size of the pool.  Must
+     *  be called holding the lock.
+     */
+    private void evictIdle(List<SocketChannel> toClose) {
+
+        if (_maxIdleMillis <= 0) {
+            return;
+        }
+
+        long expiry = System.currentTimeMillis() - _maxIdleMillis;
+
+        while (_total > _minConnections && !_idle.isEmpty() && _idle.getLast()._lastUsed < expiry) {
+            toClose.add(_idle.removeLast()._channel);
+            _total--;
+        }
+    }
+
+    /**
+     *  Gives back reserved slots for sockets that could not be opened
+     */
+    private void release(int count) {
+
+        _lock.lock();
+        try {
+            _total -= count;
+            _available.signalAll();
+        }
+        finally {
+            _lock.unlock();
+        }
+    }
+
+    private SocketChannel openChannel() throws IOException {
+
+        SocketChannel sc = SocketChannel.open(_inetAddr);
+
+        try {
+            sc.socket().setTcpNoDelay(true);
+        }
+        catch (IOException e) {
+            closeChannel(sc);
+            throw e;
+        }
+
+        return sc;
+    }
+
+    private static void closeAll(List<SocketChannel> channels) {
+        for (SocketChannel sc : channels) {
+            closeChannel(sc);
+        }
+    }
+
+    private static void closeChannel(SocketChannel sc) {
+        try {
+            sc.close();
+        }
+        catch (IOException e) {
+            // nothing we can do
+        }
+    }
+
+    private static class IdleChannel {
+
+        final SocketChannel _channel;
+        final long _lastUsed;
+
+        IdleChannel(SocketChannel channel, long lastUsed) {
+            _channel = channel;
+            _lastUsed = lastUsed;
+        }
+    }
+}
@@ -3,14 +3,18 @@ package org.mongodb.driver.impl.connection;
 import java.nio.channels.SocketChannel;
 import java.net.InetSocketAddress;
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- *   Simple connection - connects to a single mongo server
+ *   Simple connection - connects to a single mongo server over a single
+ *   socket.  A lease holds the socket exclusively; leases are reentrant
+ *   for the thread holding them, and must be returned by that thread.
  */
 public class SimpleConnection implements Connection {
 
     private SocketChannel _socketChannel = null;
     private InetSocketAddress _inetAddr;
+    private final ReentrantLock _lock = new ReentrantLock();
 
     public SimpleConnection(InetSocketAddress addr) {
 
@@ -30,17 +34,46 @@ public class SimpleConnection implements Connection {
         _socketChannel.socket().setTcpNoDelay(true);
     }
 
-    
+
     public boolean isConnected() {
         return _socketChannel != null && _socketChannel.isConnected();
     }
 
-    public SocketChannel getReadChannel() throws IOException {
-        return getChannel();
+    public SocketChannel checkout() throws IOException {
+
+        _lock.lock();
+
+        try {
+            return getChannel();
+        }
+        catch (IOException e) {
+            _lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     *  There's only the one socket, so this is checkout()
+     */
+    public SocketChannel checkout(SocketChannel preferred) throws IOException {
+        return checkout();
     }
 
-    public SocketChannel getWriteChannel() throws IOException {
-        return getChannel();
+    public SocketChannel getLastUsed() {
+        return null;
+    }
+
+    public void checkin(SocketChannel channel) {
+        _lock.unlock();
+    }
+
+    public void discard(SocketChannel channel) {
+        try {
+            close();
+        }
+        finally {
+            _lock.unlock();
+        }
     }
 
     private SocketChannel getChannel() throws IOException {
@@ -40,7 +40,7 @@ public class DBGetMoreMessage extends DBMessage {
         readInt(); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
 
         String s = readString();
-        String[] ss = s.split("\\.");
+        String[] ss = s.split("\\.", 2);
         assert(ss.length == 2);
         _dbName = ss[0];
         _collection = ss[1];
@@ -51,12 +51,26 @@ public class DBGetMoreMessage extends DBMessage {
     }
 
     public DBGetMoreMessage(String dbName, String collection, long cursor) throws MongoDBException
+    {
+        this(dbName, collection, cursor, 0);  // 0 leaves it up to the DB
+    }
+
+    /**
+     *  Creates a get more message asking for a specific number of objects
+     *
+     * @param dbName name of database
+     * @param collection name of collection
+     * @param cursor id of server-side cursor
+     * @param numberToReturn max number of objects to return.  0 leaves it up to the db
+     * @throws MongoDBException if something wrong
+     */
+    public DBGetMoreMessage(String dbName, String collection, long cursor, int numberToReturn) throws MongoDBException
     {
         super(MessageType.OP_GET_MORE);
         _dbName = dbName;
         _collection = collection;
         _cursor = cursor;
-        _numberToReturn = 0;  // for now, set to 0 to leave it up to the DB
+        _numberToReturn = numberToReturn;
         init();
     }
 
@@ -69,10 +83,26 @@ public class DBGetMoreMessage extends DBMessage {
     {
         writeInt(0); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
         writeString(_dbName + "." + _collection);
-        writeInt(_numberToReturn); // n toreturn - leave it up to db for now
+        writeInt(_numberToReturn);
         writeLong(_cursor);
     }
 
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    public long getCursorID() {
+        return _cursor;
+    }
+
+    public int getNumberToReturn() {
+        return _numberToReturn;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[GETMORE(");
         sb.append(_dbName);
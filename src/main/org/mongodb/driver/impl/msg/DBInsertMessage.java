@@ -42,7 +42,7 @@ public class DBInsertMessage extends DBMessage {
         readInt(); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
 
         String s = readString();
-        String[] ss = s.split("\\.");
+        String[] ss = s.split("\\.", 2);
         assert(ss.length == 2);
         _dbName = ss[0];
         _collection = ss[1];
@@ -80,6 +80,37 @@ public class DBInsertMessage extends DBMessage {
         init();
     }
 
+    /**
+     *  Creates an insert of as many of objs[from..to) as fit in about maxBytes.  Objects are
+     *  added until the message reaches maxBytes, so the last one may take it over, and there
+     *  is always at least one.  getObjectCount() says how many went in.
+     *
+     * @param dbName name of database
+     * @param collection name of collection
+     * @param objs objects to insert
+     * @param from index of first object to insert
+     * @param to index after the last object that may be inserted
+     * @param maxBytes size at which to stop adding objects
+     * @throws MongoDBException if an object can't be encoded
+     */
+    public DBInsertMessage(String dbName, String collection, Doc[] objs, int from, int to, int maxBytes) throws MongoDBException {
+        super(MessageType.OP_INSERT);
+        _dbName = dbName;
+        _collection = collection;
+
+        writeInt(0); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
+        writeString(_dbName + "." + _collection);
+
+        int i = from;
+
+        do {
+            writeDoc(objs[i++]);
+        } while (i < to && getMessageLength() < maxBytes);
+
+        _objs = new Doc[i - from];
+        System.arraycopy(objs, from, _objs, 0, _objs.length);
+    }
+
     /**
      *   Writes the query out to the underlying message byte buffer
      *
@@ -95,6 +126,24 @@ public class DBInsertMessage extends DBMessage {
         }
     }
 
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    public int getObjectCount() {
+        return _objs.length;
+    }
+
+    public Doc[] getObjects() {
+        Doc[] objs = new Doc[_objs.length];
+        System.arraycopy(_objs, 0, objs, 0, _objs.length);
+        return objs;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[INSERT(");
         sb.append(_dbName);
@@ -82,6 +82,15 @@ public class DBKillCursorsMessage extends DBMessage {
         }
     }
 
+    /**
+     * @return copy of the ids of the cursors to kill
+     */
+    public long[] getCursorIDs() {
+        long[] cursors = new long[_cursors.length];
+        System.arraycopy(_cursors, 0, cursors, 0, _cursors.length);
+        return cursors;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[KILL_CURSORS():");
 
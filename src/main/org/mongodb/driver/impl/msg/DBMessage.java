@@ -23,11 +23,14 @@ import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.Doc;
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.MongoDBIOException;
-import org.mongodb.driver.impl.DirectBufferTLS;
+import org.mongodb.driver.impl.BufferPool;
 import org.mongodb.driver.util.BSONObject;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.List;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
@@ -37,11 +40,19 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 /**
- * Base message class for mongo communications
+ * Base message class for mongo communications.
+ *
+ * An outgoing message is encoded into buffers leased from the shared BufferPool, starting
+ * small.  When a write doesn't fit, the message carries on in a new, bigger buffer -
+ * a document that overflows is re-encoded whole into the next one - so a message is a
+ * chain of buffers that is written out with a gathering write.  Once written, the
+ * message should be release()d to hand its buffers back.
  */
 public abstract class DBMessage {
 
     protected final static int DEFAULT_BUF_SIZE = 1024*100;
+    protected final static int INITIAL_CHUNK_SIZE = 1024*4;
+    public final static int MAX_DOC_SIZE = 1024*1024*16;
 
     private static AtomicInteger _classReqID = new AtomicInteger(1);
 
@@ -51,7 +62,8 @@ public abstract class DBMessage {
     protected int _responseTo = 0;
     protected MessageType _op;
 
-    protected ByteBuffer _buf;
+    protected ByteBuffer _buf;               // buffer being written to, or holding a message read in
+    protected List<ByteBuffer> _chunks;      // buffers of an outgoing message, in order
 
     /**
      *  Creates a DBMessage with correct header written
@@ -60,8 +72,10 @@ public abstract class DBMessage {
      */
     protected DBMessage(MessageType op) {
 
-        _buf = DirectBufferTLS.getThreadLocal().getWriteBuffer();
-        _buf.clear();
+        _buf = getBufferPool().get(INITIAL_CHUNK_SIZE);
+
+        _chunks = new ArrayList<ByteBuffer>(1);
+        _chunks.add(_buf);
 
         //  TODO - fix this - this is too idiotic - use the DBMessageHeader object here...
         
@@ -99,8 +113,17 @@ public abstract class DBMessage {
      * @param s string to write
      */
     protected void writeString(String s) {
-        int i = BSONObject.serializeCSTR(_buf, s);
-        updateMessageLength(i);
+
+        int start = _buf.position();
+
+        try {
+            updateMessageLength(BSONObject.serializeCSTR(_buf, s));
+        }
+        catch (BufferOverflowException e) {
+            _buf.position(start);
+            nextChunk(s.length() * 3 + 1);  // worst case for UTF-8
+            updateMessageLength(BSONObject.serializeCSTR(_buf, s));
+        }
     }
 
     protected String readString() throws MongoDBException {
@@ -109,6 +132,7 @@ public abstract class DBMessage {
 
     protected void writeLong(long i) {
 
+        ensureRoom(8);
         _buf.putLong(i);
         updateMessageLength(8);
     }
@@ -119,6 +143,7 @@ public abstract class DBMessage {
 
     protected void writeInt(int i) {
 
+        ensureRoom(4);
         _buf.putInt(i);
         updateMessageLength(4);
     }    
@@ -128,18 +153,78 @@ public abstract class DBMessage {
     }
 
     protected void writeByte(byte b) {
+        ensureRoom(1);
         _buf.put(b);
         updateMessageLength(1);
     }
 
+    /**
+     *  Writes a document to the message.  A document that overflows the current buffer
+     *  is encoded again from the start in the next one, which grows until it fits.
+     *
+     * @param doc document to write
+     * @throws MongoDBException if the document can't be encoded, or is too large
+     */
     protected void writeDoc(Doc doc) throws MongoDBException {
 
-        long start = _buf.position();
+        while (true) {
+
+            int start = _buf.position();
+
+            try {
+                BSONObject bson = new BSONObject(_buf);
+                bson.serializeInBuffer(doc);
+
+                updateMessageLength(_buf.position() - start);
+                return;
+            }
+            catch (BufferOverflowException e) {
+                _buf.position(start);
+
+                /*
+                 *  didn't even fit in a buffer of its own - needs a bigger one
+                 */
+                int needed = (start == 0) ? _buf.capacity() * 2 : 0;
+
+                if (needed > MAX_DOC_SIZE) {
+                    throw new MongoDBException("Error : document too large to encode");
+                }
+
+                nextChunk(needed);
+            }
+        }
+    }
+
+    private void ensureRoom(int n) {
+        if (_buf.remaining() < n) {
+            nextChunk(n);
+        }
+    }
+
+    /**
+     *  Carries the message on in a new buffer, twice the size of the current one (up to
+     *  the largest pooled size) or the size needed, whichever is bigger.  An empty current
+     *  buffer is swapped out rather than left in the chain.
+     *
+     * @param needed minimum size of the new buffer
+     */
+    private void nextChunk(int needed) {
 
-        BSONObject bson = new BSONObject(_buf);
-        bson.serializeInBuffer(doc);
+        BufferPool pool = getBufferPool();
 
-        updateMessageLength((int) (_buf.position() - start));
+        int size = Math.max(needed, Math.min(_buf.capacity() * 2, BufferPool.MAX_POOLED_SIZE));
+
+        if (_buf.position() == 0) {
+            _chunks.remove(_chunks.size() - 1);
+            pool.release(_buf);
+        }
+
+        _buf = pool.get(size);
+        _chunks.add(_buf);
+    }
+
+    private static BufferPool getBufferPool() {
+        return BufferPool.getShared();
     }
 
     protected MongoSelector readMongoSelector() throws MongoDBException {
@@ -167,7 +252,7 @@ public abstract class DBMessage {
     protected void updateMessageLength(int delta) {
         _messageLength += delta;
 
-        _buf.putInt(0, _messageLength);
+        _chunks.get(0).putInt(0, _messageLength);
     }
 
     protected static int getNextRequestID() {
@@ -175,14 +260,72 @@ public abstract class DBMessage {
     }
 
 
-    public ByteBuffer getInternalByteBuffer() {
-        return _buf;        
+    /**
+     *  Gets the encoded message, ready to be written : one buffer for most messages, and
+     *  a chain of them for large ones.  Each call returns fresh views of the message, so
+     *  it can be written more than once until it's released.
+     *
+     * @return buffers holding the message, in order
+     */
+    public ByteBuffer[] getMessageBuffers() {
+
+        if (_chunks == null) {
+            ByteBuffer b = _buf.duplicate();
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            b.position(0);
+            b.limit(_messageLength);
+
+            return new ByteBuffer[] {b};
+        }
+
+        ByteBuffer[] bufs = new ByteBuffer[_chunks.size()];
+
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = _chunks.get(i).duplicate();
+            bufs[i].order(ByteOrder.LITTLE_ENDIAN);
+            bufs[i].flip();
+        }
+
+        return bufs;
+    }
+
+    /**
+     *  Hands the buffers of an outgoing message back to the pool.  The message
+     *  can't be used afterwards.
+     */
+    public void release() {
+
+        if (_chunks == null) {
+            return;
+        }
+
+        BufferPool pool = getBufferPool();
+
+        for (ByteBuffer b : _chunks) {
+            pool.release(b);
+        }
+
+        _chunks = null;
+        _buf = null;
+    }
+
+    /**
+     * @return total length of the message
+     */
+    public int getMessageLength() {
+        return _messageLength;
     }
 
     public byte[] toByteArray() {
-        _buf.flip();
-        byte[] msg = new byte[_buf.limit()];
-        _buf.get(msg);
+
+        byte[] msg = new byte[_messageLength];
+        int pos = 0;
+
+        for (ByteBuffer b : getMessageBuffers()) {
+            int n = b.remaining();
+            b.get(msg, pos, n);
+            pos += n;
+        }
 
         return msg;
     }
@@ -192,19 +335,21 @@ public abstract class DBMessage {
         try {
             DBMessageHeader msgHeader = DBMessageHeader.readHeader(sc);
 
+            int msgSize = msgHeader.getMessageLength();
+
+            /*
+             *  the message keeps the buffer it's decoded from, so a message too big for the
+             *  one we were given gets one of its own
+             */
+            if (msgSize > buf.capacity()) {
+                buf = getBufferPool().get(msgSize);
+            }
+
             buf.clear();
 
             msgHeader.writeHeader(buf);
             assert(buf.position() == DBMessageHeader.HEADER_SIZE);
 
-            int msgSize = msgHeader.getMessageLength();
-
-            assert(msgSize <= buf.capacity());
-
-            if (msgSize >= buf.capacity()) {
-                throw new MongoDBException("Error : msgsize [" + msgSize + "] larger than buffersize [" + buf.capacity() + "]");
-            }
-
             buf.limit(msgHeader.getMessageLength());
 
             boolean reading = true;
@@ -269,6 +414,24 @@ public abstract class DBMessage {
         }
     }
 
+    /**
+     *  Constructs a message from a buffer holding exactly one whole message, header
+     *  and all, positioned at its start.  The message keeps the buffer.
+     *
+     * @param buf little-endian buffer with the message
+     * @return the message
+     * @throws MongoDBException if the message can't be decoded
+     */
+    public static DBMessage readFromBuffer(ByteBuffer buf) throws MongoDBException {
+
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        DBMessageHeader msgHeader = DBMessageHeader.readHeader(buf);
+        buf.position(buf.position() - DBMessageHeader.HEADER_SIZE);
+
+        return createMessage(msgHeader, buf);
+    }
+
     private static DBMessage createMessage(DBMessageHeader msgHeader, ByteBuffer buf) throws MongoDBException {
 
         switch(msgHeader.getOperation()) {
@@ -297,9 +460,9 @@ public abstract class DBMessage {
         Formatter formatter = new Formatter(w);
         StringBuffer sb = new StringBuffer();
 
-        _buf.flip();
+        byte[] bytes = toByteArray();
 
-        for (int i = 0; i < _buf.limit(); i++) {
+        for (int i = 0; i < bytes.length; i++) {
             if (i % 8 == 0) {
                 if (i != 0) {
                     w.append("    ");
@@ -311,7 +474,7 @@ public abstract class DBMessage {
             } else {
                 w.append(" ");
             }
-            byte b = _buf.get();
+            byte b = bytes[i];
             formatter.format("%02X", b);
             char c = (char) b;
 
@@ -330,6 +493,28 @@ public abstract class DBMessage {
         return _op;
     }
 
+    public int getRequestID() {
+        return _requestID;
+    }
+
+    /**
+     * @return database the message is for, or null if it isn't for one
+     */
+    public String getDBName() {
+        return null;
+    }
+
+    /**
+     * @return collection the message is for, or null if it isn't for one
+     */
+    public String getCollection() {
+        return null;
+    }
+
+    public int getResponseTo() {
+        return _responseTo;
+    }
+
 
     public String headerString() {
         StringBuffer sb = new StringBuffer("(len=[").append(_messageLength).append("]");
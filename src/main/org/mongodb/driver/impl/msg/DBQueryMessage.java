@@ -23,6 +23,8 @@ import org.mongodb.driver.ts.DBQuery;
 import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.Doc;
 import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.impl.DBImpl;
+import org.mongodb.driver.impl.DBCommandQuery;
 
 import java.nio.ByteBuffer;
 
@@ -42,6 +44,7 @@ public class DBQueryMessage extends DBMessage {
     protected final DBQuery _query;
     protected final String _dbName;
     protected final String _collection;
+    protected final int _batchSize;
 
     protected DBQueryMessage(ByteBuffer buf) throws MongoDBException {
         super(buf);
@@ -52,16 +55,30 @@ public class DBQueryMessage extends DBMessage {
 
         // we get in format if <dbname>.<collectionname> so split
         
-        String[] ss = s.split("\\.");
+        String[] ss = s.split("\\.", 2);
 
         assert(ss.length == 2);
         _dbName = ss[0];
         _collection = ss[1];
 
-        _query = new DBQuery();
-        _query.setNumberToSkip(readInt());
-        _query.setNumberToReturn(readInt());
-        _query.setCompleteQuery(readMongoSelector());
+        _batchSize = 0;
+
+        int skip = readInt();
+        int numberToReturn = readInt();
+        MongoSelector sel = readMongoSelector();
+
+        // commands are sent as-is, so don't take them apart like a layered query
+
+        if (DBImpl.SYSTEM_COMMAND_COLLECTION.equals(_collection)) {
+            _query = new DBCommandQuery(sel);
+        }
+        else {
+            _query = new DBQuery();
+            _query.setCompleteQuery(sel);
+        }
+
+        _query.setNumberToSkip(skip);
+        _query.setNumberToReturn(numberToReturn);
 
         if (_buf.position() < _buf.limit()) {
 
@@ -74,14 +91,57 @@ public class DBQueryMessage extends DBMessage {
     }
     
     public DBQueryMessage(String dbName, String collection, DBQuery q) throws MongoDBException {
+        this(dbName, collection, q, q.getBatchSize());
+    }
+
+    /**
+     *  Creates a query message that asks for the first batch of results to be at most
+     *  batchSize objects, leaving the server-side cursor open for the rest.
+     *
+     * @param dbName name of database
+     * @param collection name of collection
+     * @param q query
+     * @param batchSize max number of objects in the first reply.  0 leaves it up to the db
+     * @throws MongoDBException if something wrong w/ the query
+     */
+    public DBQueryMessage(String dbName, String collection, DBQuery q, int batchSize) throws MongoDBException {
         super(MessageType.OP_QUERY);
         _query = q;
         _dbName = dbName;
         _collection = collection;
-        
+        _batchSize = batchSize;
+
         init();
     }
 
+    /**
+     *  Works out the number to return for the wire.  A negative number is a limit - the server
+     *  returns at most that many in one reply and closes the cursor - so the query's limit is only
+     *  sent that way when a single batch can satisfy it.  Otherwise the batch size is sent as a
+     *  positive number, and the client enforces the limit.  The db treats a batch of 1 as a
+     *  limit of 1 too, so the smallest batch that keeps the cursor open is 2.
+     *
+     * @param limit client limit, 0 for none
+     * @param batchSize batch size, <= 0 for server's choice
+     * @return number to return for the wire
+     */
+    public static int wireNumberToReturn(int limit, int batchSize) {
+
+        if (limit < 0 && batchSize <= 0) {
+            return -limit;
+        }
+
+        if (limit > 0 && (batchSize <= 0 || batchSize >= limit)) {
+            return -limit;
+        }
+
+        if (batchSize == 1) {
+            return 2;
+        }
+
+        return batchSize > 0 ? batchSize : 0;
+    }
+
     /**
      *   Writes the query out to the underlying message byte buffer
      *
@@ -92,7 +152,7 @@ public class DBQueryMessage extends DBMessage {
         writeInt(0); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
         writeString(_dbName + "." + _collection);
         writeInt(_query.getNumberToSkip());
-        writeInt(-_query.getNumberToReturn());
+        writeInt(wireNumberToReturn(_query.getNumberToReturn(), _batchSize));
         writeDoc(_query.getCompleteQuery());
 
         if(_query.getReturnFieldsSelector() != null) {
@@ -100,6 +160,18 @@ public class DBQueryMessage extends DBMessage {
         }
     }
 
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    public DBQuery getQuery() {
+        return _query;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[QUERY(");
         sb.append(_dbName);
@@ -21,6 +21,9 @@ package org.mongodb.driver.impl.msg;
 
 import org.mongodb.driver.ts.Doc;
 import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.impl.BufferPool;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.LazyDoc;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -46,14 +49,16 @@ import java.io.IOException;
  *    int  : number returned
  *    bson : the bson objects returned
  *
- *  This class currently isn't used by the driver - it's here for completeness
- *  for reading response messages from server for other purposes.
+ *  The reply is either decoded from a buffer holding the whole message, or read
+ *  off of a channel with readReply().
  *
  */
 public class DBQueryReplyMessage extends DBMessage {
 
     public static final int REPLY_HEADER_SIZE = 20;
 
+    static final int READ_BUFFER_SIZE = 1024*16;   // replies bigger than this lease a bigger buffer
+
     protected int _flags;
     protected long _cursorID;
     protected int _startingFrom;
@@ -65,6 +70,19 @@ public class DBQueryReplyMessage extends DBMessage {
     }
 
     public  DBQueryReplyMessage(ByteBuffer buf, boolean nibbleObjects) throws MongoDBException {
+        this(buf, nibbleObjects, false, false);
+    }
+
+    /**
+     * @param buf buffer holding the whole message
+     * @param nibbleObjects true to read the objects returned
+     * @param lazy true to read the objects as LazyDocs, which keep a copy of their bytes and
+     *             decode fields as they're asked for, rather than decoding them now
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[] - ignored
+     *             for LazyDocs
+     * @throws MongoDBException if the reply can't be decoded
+     */
+    public  DBQueryReplyMessage(ByteBuffer buf, boolean nibbleObjects, boolean lazy, boolean primitiveArrays) throws MongoDBException {
         super(buf);
 
         _flags = readInt();
@@ -72,9 +90,12 @@ public class DBQueryReplyMessage extends DBMessage {
         _startingFrom = readInt();
         _numberReturned = readInt();
 
-        if (nibbleObjects) {
+        if (nibbleObjects && lazy) {
+            _objects.addAll(LazyDoc.readBatch(_buf, _numberReturned));
+        }
+        else if (nibbleObjects) {
             for (int i=0; i < _numberReturned; i++) {
-                _objects.add(readDoc());
+                _objects.add(BSONObject.deserializeObjectData(_buf, primitiveArrays));
             }
         }
     }
@@ -94,6 +115,114 @@ public class DBQueryReplyMessage extends DBMessage {
     }
 
 
+    /**
+     *  Reads a full reply from the wire into a buffer leased from the shared pool, which
+     *  is handed back once the objects are decoded.
+     *
+     * @param sc channel to read from
+     * @return reply message
+     * @throws IOException on error
+     * @throws MongoDBException if the reply can't be decoded
+     */
+    public static DBQueryReplyMessage readReply(SocketChannel sc) throws IOException, MongoDBException {
+        return readReply(sc, false, false);
+    }
+
+    /**
+     *  Reads a full reply from the wire into a buffer leased from the shared pool, which
+     *  is handed back once the objects are read.
+     *
+     * @param sc channel to read from
+     * @param lazy true to read the objects as LazyDocs
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @return reply message
+     * @throws IOException on error
+     * @throws MongoDBException if the reply can't be decoded
+     */
+    public static DBQueryReplyMessage readReply(SocketChannel sc, boolean lazy, boolean primitiveArrays) throws IOException, MongoDBException {
+
+        BufferPool pool = BufferPool.getShared();
+        ByteBuffer buf = pool.get(READ_BUFFER_SIZE);
+
+        try {
+            return readReply(sc, buf, lazy, primitiveArrays);
+        }
+        finally {
+            pool.release(buf);
+        }
+    }
+
+    /**
+     *  Reads a full reply, including the returned objects, from the wire.  The whole
+     *  message is read into the buffer with as few reads as the channel allows - the
+     *  headers, then everything else - and the objects are decoded straight out of
+     *  the buffer.  A reply too big for the buffer is read into a bigger one from the pool.
+     *
+     * @param sc channel to read from
+     * @param buf buffer to use
+     * @return reply message
+     * @throws IOException on error
+     * @throws MongoDBException if the reply can't be decoded
+     */
+    public static DBQueryReplyMessage readReply(SocketChannel sc, ByteBuffer buf) throws IOException, MongoDBException {
+        return readReply(sc, buf, false, false);
+    }
+
+    /**
+     *  Reads a full reply, as readReply(sc, buf) does
+     *
+     * @param sc channel to read from
+     * @param buf buffer to use
+     * @param lazy true to read the objects as LazyDocs
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @return reply message
+     * @throws IOException on error
+     * @throws MongoDBException if the reply can't be decoded
+     */
+    public static DBQueryReplyMessage readReply(SocketChannel sc, ByteBuffer buf, boolean lazy, boolean primitiveArrays) throws IOException, MongoDBException {
+
+        fillBufferWithHeaders(buf, sc);
+
+        int len = buf.getInt(0);
+
+        if (len < DBMessageHeader.HEADER_SIZE + REPLY_HEADER_SIZE) {
+            throw new MongoDBException("Error : bad reply length [" + len + "]");
+        }
+
+        ByteBuffer big = null;
+
+        if (len > buf.capacity()) {
+            big = BufferPool.getShared().get(len);
+            big.put(buf);
+            buf = big;
+        }
+        else {
+            buf.position(buf.limit());
+        }
+
+        try {
+            buf.limit(len);
+
+            while (buf.hasRemaining()) {
+                if (sc.read(buf) == -1) {
+                    throw new IOException("End of stream");
+                }
+            }
+
+            buf.flip();
+
+            return new DBQueryReplyMessage(buf, true, lazy, primitiveArrays);
+        }
+        finally {
+            /*
+             *  the objects are decoded or copied out, so the buffer can go back
+             */
+            if (big != null) {
+                BufferPool.getShared().release(big);
+            }
+        }
+    }
+
     /**
      *  Reads the full headers from  the wire into the buffer.
      *
@@ -111,7 +240,13 @@ public class DBQueryReplyMessage extends DBMessage {
 
         long bytesRead = 0;
         while (bytesRead < readSize) {
-            bytesRead += sc.read(buf);
+            long i = sc.read(buf);
+
+            if (i == -1) {
+                throw new IOException("End of stream");
+            }
+
+            bytesRead += i;
         }
 
         assert(bytesRead == readSize);
@@ -137,6 +272,13 @@ public class DBQueryReplyMessage extends DBMessage {
         return _startingFrom;
     }
 
+    /**
+     * @return the objects returned, in order.
+     */
+    public List<Doc> getObjects() {
+        return _objects;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[REPLY:").append(headerString()).append(":").append(" flags[");
         sb.append(_flags);
@@ -43,7 +43,7 @@ public class DBRemoveMessage extends DBMessage {
 
         // we get in format if <dbname>.<collectionname> so split
 
-        String[] ss = s.split("\\.");
+        String[] ss = s.split("\\.", 2);
 
         assert(ss.length == 2);
         _dbName = ss[0];
@@ -81,6 +81,18 @@ public class DBRemoveMessage extends DBMessage {
         writeDoc(_selector);
     }
 
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    public MongoSelector getSelector() {
+        return _selector;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[DELETE(");
         sb.append(_dbName);
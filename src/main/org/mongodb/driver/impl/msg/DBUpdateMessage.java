@@ -55,7 +55,7 @@ public class DBUpdateMessage extends DBMessage {
         readInt(); // reserved for future use - mongo might call this "options" in the comments.  or it may not.
 
         String s = readString();
-        String[] ss = s.split("\\.");
+        String[] ss = s.split("\\.", 2);
         assert(ss.length == 2);
         _dbName = ss[0];
         _collection = ss[1];
@@ -64,7 +64,7 @@ public class DBUpdateMessage extends DBMessage {
         _repsert = (readInt() == 1);
 
         _selector = readMongoSelector();
-    //$$$ fix me    _obj = readMongoDoc();
+        _obj = readDoc();
     }
 
     /**
@@ -82,6 +82,26 @@ public class DBUpdateMessage extends DBMessage {
         writeDoc(_obj);
     }
 
+    public String getDBName() {
+        return _dbName;
+    }
+
+    public String getCollection() {
+        return _collection;
+    }
+
+    public MongoSelector getSelector() {
+        return _selector;
+    }
+
+    public Doc getObject() {
+        return _obj;
+    }
+
+    public boolean isRepsert() {
+        return _repsert;
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("[UPDATE(");
         sb.append(_dbName);
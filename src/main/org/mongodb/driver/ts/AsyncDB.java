@@ -0,0 +1,102 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts;
+
+import org.mongodb.driver.ts.commands.DBCommand;
+import org.mongodb.driver.ts.options.DBCollectionOptions;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *  Asynchronous version of a Mongo database.  Operations return immediately with a
+ *  future, and don't hold a thread while waiting on the server.
+ *
+ *  Futures are completed on the driver's IO thread.  Code chained onto them
+ *  should not block, and in particular must not wait on another future from this
+ *  database.  An operation started from code chained onto a future (with thenCompose(),
+ *  thenApply() and the like, not their *Async versions) is ordered after the operation
+ *  the future came from, as though both were called on the same thread.
+ */
+public interface AsyncDB {
+
+    /**
+     *  Returns the name of this database
+     *
+     * @return name of database
+     */
+    public String getName();
+
+    /**
+     *  Returns the named collection.  No round trip to the server is made : a collection
+     *  that doesn't exist is created by the server on the first insert.
+     *
+     * @param name name of collection
+     * @return collection
+     */
+    public AsyncDBCollection getCollection(String name);
+
+    /**
+     *  Creates a collection with optional options
+     *
+     * @param name name of collection to create
+     * @param options optional options for creation (e.g. CappedCollection)
+     * @return future for the collection
+     */
+    public CompletableFuture<AsyncDBCollection> createCollection(String name, DBCollectionOptions options);
+
+    /**
+     *  Drops a collection and its indexes
+     *
+     * @param name name of collection to drop
+     * @return future for true if dropped
+     */
+    public CompletableFuture<Boolean> dropCollection(String name);
+
+    /**
+     *    Returns a list of all collections for this database, including indices
+     *
+     * @return future for list of collection names
+     */
+    public CompletableFuture<List<String>> getCollectionNames();
+
+    /**
+     *  Executes a database command
+     *
+     * @param command command to execute
+     * @return future for true if command was successful.  The result document is set on the command
+     */
+    public CompletableFuture<Boolean> executeCommand(DBCommand command);
+
+    /**
+     *  Evaluates a function on the server
+     *
+     * @param function javascript function
+     * @param args arguments for function
+     * @return future for the result document
+     */
+    public CompletableFuture<Doc> eval(String function, Object... args);
+
+    /**
+     * Closes the connection to the database.  After this method is called,
+     * this DB object is useless.
+     */
+    public void close();
+}
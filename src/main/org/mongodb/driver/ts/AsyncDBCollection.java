@@ -0,0 +1,284 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts;
+
+import org.mongodb.driver.ts.options.DBCollectionOptions;
+import org.mongodb.driver.util.PKInjector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ *  Asynchronous version of a collection of Mongo documents.  Each method mirrors the
+ *  method of the same name in DBCollection, but returns a future rather than waiting
+ *  for the server.  Failures complete the future exceptionally with a MongoDBException
+ *  or a MongoDBIOException.
+ *
+ *  Writes are fire-and-forget, as in DBCollection : their futures complete when the
+ *  message has been written, and a later operation on the same thread, or chained onto
+ *  the write's future, will see them.
+ */
+public interface AsyncDBCollection {
+
+    /**
+     *  Finds all documents in the collection
+     *
+     * @return future for a cursor to get documents from the result set
+     */
+    public CompletableFuture<AsyncDBCursor> find();
+
+    /**
+     *  Finds all documents in the collection
+     *
+     * @param selectorMap  selector expressed as a regular <code>java.util.Map</code>
+     * @return future for a cursor to get documents from the result set
+     */
+    public CompletableFuture<AsyncDBCursor> find(Map selectorMap);
+
+    /**
+     *  Finds documents in the collection that match the specified query selector
+     *
+     * @param selector Selector to use to select documents
+     * @return future for a cursor to get documents from the result set
+     */
+    public CompletableFuture<AsyncDBCursor> find(MongoSelector selector);
+
+    /**
+     *  Finds documents in the collection that match the specified query
+     *
+     * @param query query to use to select documents
+     * @return future for a cursor to get documents from the result set
+     */
+    public CompletableFuture<AsyncDBCursor> find(DBQuery query);
+
+    /**
+     *  Finds documents in the collection that match the specified query
+     *
+     * @param whereClause query to use to select documents
+     * @return future for a cursor to get documents from the result set
+     */
+    public CompletableFuture<AsyncDBCursor> find(String whereClause);
+
+    /**
+     *  Publishes the documents in the collection that match the specified query.  Nothing is
+     *  sent to the server until the subscriber requests documents, and the server is asked
+     *  only for as many documents as have been requested and not yet received, so a slow
+     *  subscriber doesn't cause unbounded buffering.  Each subscription runs the query.
+     *
+     *  The subscriber is never called on the connection's event loop thread.  Documents
+     *  that arrive from the server are delivered on ForkJoinPool.commonPool(), while
+     *  anything a call to request() or cancel() can deliver straight away is delivered on
+     *  the calling thread.  Calls to the subscriber never overlap.
+     *
+     * @param query query to use to select documents
+     * @return publisher of the result set
+     */
+    public Flow.Publisher<Doc> publish(DBQuery query);
+
+    /**
+     *  Publishes the documents in the collection that match the specified query, asking
+     *  the server for at most maxBatchSize documents at a time.
+     *
+     * @param query query to use to select documents
+     * @param maxBatchSize max number of documents to ask the server for at once.  Must be >= 2
+     * @return publisher of the result set
+     */
+    public Flow.Publisher<Doc> publish(DBQuery query, int maxBatchSize);
+
+    /**
+     *  Publishes the documents in the collection that match the specified query, delivering
+     *  the documents that arrive from the server on the given executor.  The subscriber
+     *  must not block the executor's threads for long if the executor is shared.
+     *
+     * @param query query to use to select documents
+     * @param maxBatchSize max number of documents to ask the server for at once.  Must be >= 2
+     * @param executor executor to run the subscriber on
+     * @return publisher of the result set
+     */
+    public Flow.Publisher<Doc> publish(DBQuery query, int maxBatchSize, Executor executor);
+
+    /**
+     *  Returns the "first" document in the collection.
+     *
+     * @return future for the document, or null if none
+     */
+    public CompletableFuture<Doc> findOne();
+
+    /**
+     *  Returns the first document in the collection that matches the
+     *  specified selector
+     *
+     * @param selector - query used to select the document to return
+     * @return future for the document, or null if none
+     */
+    public CompletableFuture<Doc> findOne(MongoSelector selector);
+
+    /**
+     *  Returns the first document in the collection that matches the
+     *  specified query
+     *
+     * @param query - query used to select the document to return
+     * @return future for the document, or null if none
+     */
+    public CompletableFuture<Doc> findOne(DBQuery query);
+
+    /**
+     * Inserts (saves) a single document to this collection.
+     *
+     * @param document the document to save
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> insert(Map document);
+
+    /**
+     * Inserts (saves) a single document to this collection.
+     *
+     * @param document the document to save
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> insert(Doc document);
+
+    /**
+     * Inserts (saves) multiple documents to this collection.  Large arrays are sent as
+     * several insert messages.
+     *
+     * @param documents the documents to save
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> insert(Doc[] documents);
+
+    /**
+     * Removes all documents from the collection
+     *
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> clear();
+
+    /**
+     * Removes documents from the database collection that match a specified selector.
+     *
+     * @param selector Selector for documents to remove.  Cannot be null
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> remove(MongoSelector selector);
+
+    /**
+     * Performs an replace operation if the document is found, an insert otherwise.
+     *
+     * @param selector search query for old document to replace
+     * @param obj document with which to replace or insert
+     * @return future for the document once written
+     */
+    public CompletableFuture<Doc> repsert(MongoSelector selector, Doc obj);
+
+    /**
+     *   Replaces documents found with the supplied document.
+     *
+     * @param sel Selector to select documents to be replaced
+     * @param obj document to replace found documents with
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> replace(MongoSelector sel, Doc obj);
+
+    /**
+     *   Modifies documents found with the modifiers in the supplied document.
+     *
+     * @param selector selector that specifies documents to match
+     * @param modifierObj document that has modifier elements
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> modify(MongoSelector selector, Doc modifierObj);
+
+    /**
+     * Creates an index on a set of fields, if one does not already exist.
+     *
+     * @param indexInfo the name and fields of the index
+     * @return future for true once written
+     */
+    public CompletableFuture<Boolean> createIndex(IndexInfo indexInfo);
+
+    /**
+     * Drops an index.
+     *
+     * @param name name of index
+     * @return future for true once done
+     */
+    public CompletableFuture<Boolean> dropIndex(String name);
+
+    /**
+     * Drops all indexes for the collection.
+     *
+     * @return future for true once done
+     */
+    public CompletableFuture<Boolean> dropIndexes();
+
+    /**
+     *  Returns information about each index on the collection
+     *
+     * @return future for list of index information
+     */
+    public CompletableFuture<List<IndexInfo>> getIndexInformation();
+
+    /**
+     * Returns the number of documents in the collection
+     *
+     * @return future for number of documents
+     */
+    public CompletableFuture<Integer> getCount();
+
+    /**
+     * Returns the number of documents in the collection
+     * that match the supplied query selector
+     *
+     * @param selector selector to match documents for counting
+     * @return future for number of documents
+     */
+    public CompletableFuture<Integer> getCount(MongoSelector selector);
+
+    /**
+     * Returns the options the collection was created with
+     *
+     * @return future for the read-only options
+     */
+    public CompletableFuture<DBCollectionOptions> getOptions();
+
+    /**
+     * Returns the database this collection is a member of.
+     *
+     * @return this collection's database
+     */
+    public AsyncDB getDB();
+
+    /**
+     * Returns the name of this collection.
+     *
+     * @return  the name of this collection
+     */
+    public String getName();
+
+    /**
+     *  Sets the 'primary key' injector for this collection
+     *  @param pki injector to use for each insert
+     */
+    public void setPKInjector(PKInjector pki);
+}
@@ -0,0 +1,59 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *  <p>
+ *  Asynchronous cursor for the result set of a Mongo query.  Documents are
+ *  delivered a batch at a time, as the server returns them.
+ *  </p>
+ *
+ *  <p>
+ *  Only one call to nextBatch() may be outstanding at a time.  Callers must
+ *  close() the cursor if they don't read it to the end, otherwise server-side
+ *  leaks may occur.
+ *  </p>
+ */
+public interface AsyncDBCursor {
+
+    /**
+     *  Returns the next batch of documents, fetching it from the server if needed.
+     *
+     * @return future for the next batch.  The batch is empty once the cursor is exhausted
+     */
+    public CompletableFuture<List<Doc>> nextBatch();
+
+    /**
+     *  Determines if more batches may be available.
+     *
+     * @return false once the cursor is exhausted or closed
+     */
+    public boolean hasMore();
+
+    /**
+     *  Closes the cursor, closing any server-side resources being used.
+     *
+     * @return future completed once the close has been sent
+     */
+    public CompletableFuture<Void> close();
+}
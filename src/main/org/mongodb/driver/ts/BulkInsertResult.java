@@ -0,0 +1,91 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts;
+
+/**
+ * Outcome of a bulk insert : how much was sent, in how many messages, and how long it took
+ */
+public class BulkInsertResult {
+
+    protected final int _documentCount;
+    protected final int _messageCount;
+    protected final long _byteCount;
+    protected final long _elapsedNanos;
+
+    public BulkInsertResult(int documentCount, int messageCount, long byteCount, long elapsedNanos) {
+        _documentCount = documentCount;
+        _messageCount = messageCount;
+        _byteCount = byteCount;
+        _elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return number of documents sent
+     */
+    public int getDocumentCount() {
+        return _documentCount;
+    }
+
+    /**
+     * @return number of insert messages the documents were split into
+     */
+    public int getMessageCount() {
+        return _messageCount;
+    }
+
+    /**
+     * @return total size of the messages sent, in bytes
+     */
+    public long getByteCount() {
+        return _byteCount;
+    }
+
+    /**
+     * @return time from the start of encoding until the last message was written, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return _elapsedNanos / 1000000;
+    }
+
+    public long getElapsedNanos() {
+        return _elapsedNanos;
+    }
+
+    /**
+     * @return documents sent per second
+     */
+    public double getDocumentsPerSecond() {
+        return _elapsedNanos == 0 ? 0 : _documentCount * 1e9 / _elapsedNanos;
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer("docs[");
+        sb.append(_documentCount);
+        sb.append("] messages[");
+        sb.append(_messageCount);
+        sb.append("] bytes[");
+        sb.append(_byteCount);
+        sb.append("] ms[");
+        sb.append(getElapsedMillis());
+        sb.append("]");
+
+        return sb.toString();
+    }
+}
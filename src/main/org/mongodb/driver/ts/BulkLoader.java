@@ -0,0 +1,76 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts;
+
+import org.mongodb.driver.MongoDBException;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ *  Loads a stream of documents of any length into a collection.  The documents are read in
+ *  batches on the calling thread, which also gives them their primary keys if the collection
+ *  has a PKInjector.  Batches are encoded on the fork/join pool and handed through a bounded
+ *  queue to one or more writers, each with its own connection, so the number of documents in
+ *  memory at once is limited by the queue, not by the source.
+ *
+ *  Documents on different writers may reach the db out of order.  Get one from
+ *  DBCollection.getBulkLoader().
+ */
+public interface BulkLoader {
+
+    public static final int DEFAULT_WRITERS = 2;
+
+    /**
+     *  Sets the number of connections the encoded documents are written on
+     *
+     * @param writers number of writers, > 0
+     * @return this object for setter chaining
+     */
+    public BulkLoader setWriters(int writers);
+
+    /**
+     *  Sets the most batches that may be encoding or waiting for a writer at once
+     *
+     * @param maxPendingBatches batches, > 0
+     * @return this object for setter chaining
+     */
+    public BulkLoader setMaxPendingBatches(int maxPendingBatches);
+
+    /**
+     *  Inserts every document from the iterator
+     *
+     * @param docs documents to insert
+     * @return counts and timing of the load
+     * @throws MongoDBException if a document can't be encoded or sent, in which case some of the
+     *         documents may have been inserted
+     */
+    public BulkInsertResult load(Iterator<Doc> docs) throws MongoDBException;
+
+    /**
+     *  Inserts every document from the stream
+     *
+     * @param docs documents to insert
+     * @return counts and timing of the load
+     * @throws MongoDBException if a document can't be encoded or sent, in which case some of the
+     *         documents may have been inserted
+     */
+    public BulkInsertResult load(Stream<Doc> docs) throws MongoDBException;
+}
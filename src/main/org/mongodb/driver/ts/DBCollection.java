@@ -20,6 +20,7 @@
 package org.mongodb.driver.ts;
 
 import org.mongodb.driver.ts.options.DBCollectionOptions;
+import org.mongodb.driver.ts.options.WriteBehindOptions;
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.util.PKInjector;
 
@@ -34,7 +35,7 @@ public interface DBCollection {
     /**
      *  Finds all documents in the collection
      *
-     * @return cursor to get documents from the result set
+     * @return cursor to get documents from the result set.  Must be closed unless read to the end
      * @throws MongoDBException if something goes wrong
      */
     public DBCursor find() throws MongoDBException;
@@ -51,7 +52,7 @@ public interface DBCollection {
      *  Finds all documents in the collection
      *
      * @param selectorMap  selector expressed as a regular <code>java.util.Map</code>
-     * @return cursor to get documents from the result set
+     * @return cursor to get documents from the result set.  Must be closed unless read to the end
      * @throws MongoDBException if something goes wrong
      */
     public DBCursor find(Map selectorMap) throws MongoDBException;
@@ -60,7 +61,7 @@ public interface DBCollection {
      *  Finds documents in the collection that match the specified query selector
      *
      * @param selector Selector to use to select documents
-     * @return cursor to get documents from the result set
+     * @return cursor to get documents from the result set.  Must be closed unless read to the end
      * @throws MongoDBException if something goes wrong
      */
     public DBCursor find(MongoSelector selector) throws MongoDBException;
@@ -79,7 +80,7 @@ public interface DBCollection {
      *  Finds documents in the collection that match the specified query
      *
      * @param query query to use to select documents
-     * @return cursor to get documents from the result set
+     * @return cursor to get documents from the result set.  Must be closed unless read to the end
      * @throws MongoDBException if something goes wrong
      */
     public DBCursor find(DBQuery query) throws MongoDBException;
@@ -98,7 +99,7 @@ public interface DBCollection {
      *  Finds documents in the collection that match the specified query
      *
      * @param whereClause query to use to select documents
-     * @return cursor to get documents from the result set
+     * @return cursor to get documents from the result set.  Must be closed unless read to the end
      * @throws MongoDBException if something goes wrong
      */
     public DBCursor find(String whereClause) throws MongoDBException;
@@ -130,6 +131,50 @@ public interface DBCollection {
      */
     public boolean insert(Doc[] documents) throws MongoDBException;
 
+    /**
+     * Inserts (saves) a large number of documents to this collection.  The documents are
+     * split into as many insert messages as their size needs, which are encoded in
+     * parallel and sent back to back.  insert(Doc[]) does the same, but doesn't report.
+     *
+     * @param documents the documents to save
+     * @return number of documents and messages sent, and time taken
+     * @throws MongoDBException if something goes wrong
+     */
+    public BulkInsertResult bulkInsert(Doc[] documents) throws MongoDBException;
+
+    /**
+     * Returns a loader for inserting documents from an iterator or stream too large to hold
+     * in memory.  The loader uses this collection's PKInjector, if any.
+     *
+     * @return new loader for this collection
+     */
+    public BulkLoader getBulkLoader();
+
+    /**
+     * Puts a write-behind queue in front of insert(Doc) and insert(Map) on this collection
+     * object : inserts are queued in memory, and optionally journaled to a local file, and
+     * sent in batches in the background.  Replaces any queue set before, once it has been
+     * flushed.  Inserts of arrays and other writes don't go through the queue.
+     * <p>
+     * The queue belongs to this collection object, not the collection : other writes and
+     * queries through this object wait for the queue to be sent first, but those made through
+     * another object for the same collection, e.g. a later DB.getCollection(), don't.
+     * DB.close() sends and stops every queue of the database.  Without a journal, queued
+     * inserts are lost if the process exits before then.
+     *
+     * @param options queue settings, or null to go back to sending each insert directly
+     * @throws MongoDBException if the journal can't be opened, or the previous queue can't be sent
+     */
+    public void setWriteBehind(WriteBehindOptions options) throws MongoDBException;
+
+    /**
+     * Waits until everything in the write-behind queue has been sent, and sends any writes
+     * held back by the database's write coalescing.
+     *
+     * @throws MongoDBException if something goes wrong
+     */
+    public void flush() throws MongoDBException;
+
     /**
      * Removes all documents from the collection
      *
@@ -35,6 +35,13 @@ import java.util.Enumeration;
  *  so callers must close() the cursor when complete, otherwise
  *  server-side leaks may occur.
  *  </p>
+ *
+ *  <p>
+ *  A cursor holds a database connection until its results are read to the
+ *  end or it is closed, so a cursor that isn't read to the end must be
+ *  closed.  One that is simply dropped keeps its connection until it is
+ *  garbage collected, at which point the connection is discarded.
+ *  </p>
  * 
  */
 public interface DBCursor extends Iterable<Doc>, Enumeration {
@@ -58,4 +65,21 @@ public interface DBCursor extends Iterable<Doc>, Enumeration {
 
 
     public Doc getOne() throws MongoDBException;
+
+    /**
+     *  Sets the number of objects to ask the db for in each subsequent OP_GET_MORE.
+     *
+     * @param batchSize number of objects per batch, or 0 to let the db decide
+     */
+    public void setBatchSize(int batchSize);
+
+    /**
+     *  Sets the watermark for fetching the next batch in the background : once fewer
+     *  than this many objects remain queued in the cursor, the next OP_GET_MORE is sent,
+     *  and its reply read, while the client works through the rest.
+     *
+     * @param watermark queued objects below which the next batch is fetched, or 0 to
+     *                  only fetch when the cursor runs dry
+     */
+    public void setPrefetch(int watermark);
 }
@@ -36,6 +36,11 @@ public class DBQuery  {
 
     protected String _indexHint;
 
+    protected int _batchSize;         // number of elements to ask for in each response - 0 means let the db decide
+    protected int _prefetch;          // fetch the next batch when fewer than this many elements are queued - 0 means don't
+    protected boolean _lazy;          // return LazyDocs, decoded a field at a time
+    protected boolean _primitiveArrays;   // decode numeric arrays as int[] or double[]
+
     public DBQuery() {
         this(new MongoSelector(), null, 0, 0);
     }
@@ -97,6 +102,72 @@ public class DBQuery  {
         _numberToReturn = nReturn;
     }
 
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    /**
+     *  Sets the number of elements the db should return in each response, both to the query
+     *  and to each subsequent OP_GET_MORE.  A limit set via setNumberToReturn() still applies.
+     *
+     * @param batchSize number of elements per response, or 0 to let the db decide
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batch size must be >= 0 : " + batchSize);
+        }
+        _batchSize = batchSize;
+    }
+
+    public int getPrefetch() {
+        return _prefetch;
+    }
+
+    /**
+     *  Sets the watermark for fetching the next batch in the background : once fewer than
+     *  this many elements remain queued in the cursor, the next batch is requested from the db
+     *  while the client works through the rest.
+     *
+     * @param watermark queued elements below which the next batch is fetched, or 0 to only
+     *                  fetch when the cursor runs dry
+     */
+    public void setPrefetch(int watermark) {
+        if (watermark < 0) {
+            throw new IllegalArgumentException("prefetch watermark must be >= 0 : " + watermark);
+        }
+        _prefetch = watermark;
+    }
+
+    public boolean isLazy() {
+        return _lazy;
+    }
+
+    /**
+     *  Has the cursor return LazyDocs, which keep the bytes of the reply and decode a field
+     *  only when it's asked for, rather than decoding every document as it arrives.  Worth
+     *  it when only a few fields of each document are read.
+     *
+     * @param lazy true to return LazyDocs
+     */
+    public void setLazy(boolean lazy) {
+        _lazy = lazy;
+    }
+
+    public boolean isPrimitiveArrays() {
+        return _primitiveArrays;
+    }
+
+    /**
+     *  Has the cursor decode arrays all of NUMBER_INT as int[], and all of NUMBER as
+     *  double[], rather than as lists of boxed numbers.  LazyDocs decode arrays as lists
+     *  either way, so this has no effect along with setLazy(true).
+     *
+     * @param primitiveArrays true to decode numeric arrays as primitive arrays
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        _primitiveArrays = primitiveArrays;
+    }
+
     public void setCompleteQuery(Doc doc) throws MongoDBException {
 
         if (doc.get("query") != null) {
@@ -174,6 +245,8 @@ public class DBQuery  {
         sb.append(_numberToSkip);
         sb.append("] return[");
         sb.append(_numberToReturn);
+        sb.append("] batch[");
+        sb.append(_batchSize);
         sb.append("] query[");
         sb.append(_querySelector);
         sb.append("] fields[");
@@ -21,7 +21,9 @@ package org.mongodb.driver.ts;
 
 import org.mongodb.driver.MongoDBException;
 import org.mongodb.driver.impl.MongoImpl;
+import org.mongodb.driver.ts.options.MongoOptions;
 import org.mongodb.driver.impl.DBImpl;
+import org.mongodb.driver.impl.AsyncDBImpl;
 
 /**
  *  Mongo database server.  This is the top level class of the typsafe driver.
@@ -55,6 +57,17 @@ public class Mongo extends MongoImpl {
         super(host, port);
     }
 
+    /**
+     * Creates a server instance connected to the specified host/IP and port
+     * @param host host to connect to
+     * @param port port number to connect to
+     * @param options connection options, e.g. size of the connection pool
+     * @throws MongoDBException in case of problem
+     */
+    public Mongo(String host, int port, MongoOptions options) throws MongoDBException {
+        super(host, port, options);
+    }
+
     /**
      *   Gets the named DB object.  The DB will be created if it doesn't exist.
      * 
@@ -65,4 +78,16 @@ public class Mongo extends MongoImpl {
     public DB getDB(String dbName) throws MongoDBException {
         return new DBImpl(this, _connection, dbName);
     }
+
+    /**
+     *   Gets the named database for asynchronous use.  All asynchronous databases share a
+     *   multiplexed connection to the server.
+     *
+     * @param dbName name of database.  Will be created if it doesn't exist.
+     * @return AsyncDB object
+     * @throws MongoDBException in case of problem
+     */
+    public AsyncDB getAsyncDB(String dbName) throws MongoDBException {
+        return new AsyncDBImpl(this, getAsyncConnection(), dbName);
+    }
 }
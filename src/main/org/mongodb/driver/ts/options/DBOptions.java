@@ -23,7 +23,15 @@ package org.mongodb.driver.ts.options;
  * Represents the options for a Mongo Database
  */
 public class DBOptions {
+
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1024 * 64;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1;
+
     private boolean _strictCollectionMode = false;
+    private boolean _writeCoalescing = false;
+    private int _flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private long _flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private WriteConcern _writeConcern = WriteConcern.NONE;
 
     /**
      *   Strict collection mode doesn't allow creation of collections if the collection
@@ -44,4 +52,86 @@ public class DBOptions {
         _strictCollectionMode = strictCollectionMode;
         return this;
     }
+
+    /**
+     *   Write coalescing gathers inserts, updates and removes into one outbound buffer
+     *   rather than writing each to the socket on its own.  The buffer goes out when it
+     *   reaches the flush threshold, when the flush interval has passed since the
+     *   first write in it, before any query or command from the database, and on
+     *   DB.flush() or close().  A timed send goes out on the socket the thread whose
+     *   write started the buffer last used, so with thread affinity that thread's reads
+     *   still see its writes.  A multiplexed database gathers writes on its own sockets
+     *   already, and ignores this.
+     *
+     * @return true if writes are coalesced
+     */
+    public boolean isWriteCoalescing() {
+        return _writeCoalescing;
+    }
+
+    /**
+     *   Sets write coalescing.
+     * @param writeCoalescing true to coalesce writes, false to send each on its own
+     * @return this object for setter chaining
+     */
+    public DBOptions setWriteCoalescing(boolean writeCoalescing) {
+        _writeCoalescing = writeCoalescing;
+        return this;
+    }
+
+    public int getFlushThreshold() {
+        return _flushThreshold;
+    }
+
+    /**
+     *   Sets the number of buffered bytes at which coalesced writes are sent.
+     * @param flushThreshold size in bytes, > 0
+     * @return this object for setter chaining
+     */
+    public DBOptions setFlushThreshold(int flushThreshold) {
+        if (flushThreshold <= 0) {
+            throw new IllegalArgumentException("flush threshold must be > 0 : " + flushThreshold);
+        }
+        _flushThreshold = flushThreshold;
+        return this;
+    }
+
+    public long getFlushInterval() {
+        return _flushInterval;
+    }
+
+    /**
+     *   Sets how long coalesced writes may wait in the buffer.
+     * @param flushInterval time in milliseconds, > 0
+     * @return this object for setter chaining
+     */
+    public DBOptions setFlushInterval(long flushInterval) {
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("flush interval must be > 0 : " + flushInterval);
+        }
+        _flushInterval = flushInterval;
+        return this;
+    }
+
+    public WriteConcern getWriteConcern() {
+        return _writeConcern;
+    }
+
+    /**
+     *   Sets how writes are acknowledged.  Acknowledged writes are held back like coalesced
+     *   writes, using the same flush threshold and interval, until they're sent with their
+     *   getlasterror.  Over a multiplexed connection each write goes out at once with a
+     *   getlasterror right behind it, and the replies are checked once per batch, and on
+     *   DB.flush(), close() and any query.
+     *
+     * @param writeConcern write concern
+     * @return this object for setter chaining
+     */
+    public DBOptions setWriteConcern(WriteConcern writeConcern) {
+        if (writeConcern == null) {
+            throw new IllegalArgumentException("writeConcern must not be null");
+        }
+        _writeConcern = writeConcern;
+        return this;
+    }
 }
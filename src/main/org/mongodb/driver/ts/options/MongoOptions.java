@@ -0,0 +1,209 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts.options;
+
+/**
+ * Represents the options for a connection to a Mongo server, e.g. the
+ * sizing of the pool of sockets shared by all databases of that server.
+ */
+public class MongoOptions {
+
+    public static final int DEFAULT_MIN_CONNECTIONS = 1;
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 300000;
+    public static final int DEFAULT_MULTIPLEXED_CONNECTIONS = 0;
+    public static final boolean DEFAULT_THREAD_AFFINITY = true;
+    public static final long DEFAULT_REPLY_TIMEOUT_MILLIS = 0;
+
+    private int _minConnections = DEFAULT_MIN_CONNECTIONS;
+    private int _maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long _maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private long _maxIdleMillis = DEFAULT_MAX_IDLE_MILLIS;
+    private int _multiplexedConnections = DEFAULT_MULTIPLEXED_CONNECTIONS;
+    private boolean _threadAffinity = DEFAULT_THREAD_AFFINITY;
+    private long _replyTimeoutMillis = DEFAULT_REPLY_TIMEOUT_MILLIS;
+
+    /**
+     *   Number of sockets that are kept open even when idle.
+     *
+     * @return minimum number of sockets
+     */
+    public int getMinConnections() {
+        return _minConnections;
+    }
+
+    /**
+     *   Sets the number of sockets that are kept open even when idle.
+     *
+     * @param minConnections minimum number of sockets.  Must be >= 0
+     * @return this object for setter chaining
+     */
+    public MongoOptions setMinConnections(int minConnections) {
+        if (minConnections < 0) {
+            throw new IllegalArgumentException("minConnections must be >= 0");
+        }
+        _minConnections = minConnections;
+        return this;
+    }
+
+    /**
+     *   Maximum number of sockets that will be opened to the server.
+     *
+     * @return maximum number of sockets
+     */
+    public int getMaxConnections() {
+        return _maxConnections;
+    }
+
+    /**
+     *   Sets the maximum number of sockets that will be opened to the server.  Operations
+     *   that need a socket when all are in use wait for one to be returned.
+     *
+     * @param maxConnections maximum number of sockets.  Must be > 0
+     * @return this object for setter chaining
+     */
+    public MongoOptions setMaxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be > 0");
+        }
+        _maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     *   Time an operation will wait for a socket when all are in use.
+     *
+     * @return wait limit in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return _maxWaitMillis;
+    }
+
+    /**
+     *   Sets the time an operation will wait for a socket when all are in use
+     *   before failing.
+     *
+     * @param maxWaitMillis wait limit in milliseconds.  0 means fail immediately
+     * @return this object for setter chaining
+     */
+    public MongoOptions setMaxWaitMillis(long maxWaitMillis) {
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must be >= 0");
+        }
+        _maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     *   Time a socket may sit unused before it is closed, as long as
+     *   the minimum number of sockets remain open.
+     *
+     * @return idle limit in milliseconds
+     */
+    public long getMaxIdleMillis() {
+        return _maxIdleMillis;
+    }
+
+    /**
+     *   Sets the time a socket may sit unused before it is closed.
+     *
+     * @param maxIdleMillis idle limit in milliseconds.  <= 0 means never evict
+     * @return this object for setter chaining
+     */
+    public MongoOptions setMaxIdleMillis(long maxIdleMillis) {
+        _maxIdleMillis = maxIdleMillis;
+        return this;
+    }
+
+    /**
+     *   Number of sockets shared by all threads through a single asynchronous IO thread,
+     *   where replies are matched to requests so many requests can be in flight on a
+     *   socket at once.
+     *
+     * @return number of multiplexed sockets.  0 means each operation leases a socket from the pool
+     */
+    public int getMultiplexedConnections() {
+        return _multiplexedConnections;
+    }
+
+    /**
+     *   Sets the number of sockets used for multiplexed, asynchronous IO.  When > 0,
+     *   all operations go through these sockets instead of the connection pool.
+     *
+     * @param multiplexedConnections number of multiplexed sockets.  0 to disable
+     * @return this object for setter chaining
+     */
+    public MongoOptions setMultiplexedConnections(int multiplexedConnections) {
+        if (multiplexedConnections < 0) {
+            throw new IllegalArgumentException("multiplexedConnections must be >= 0");
+        }
+        _multiplexedConnections = multiplexedConnections;
+        return this;
+    }
+
+    /**
+     *   Whether a thread is handed the socket it used last, when that socket is idle.
+     *
+     * @return true if pooled sockets have thread affinity
+     */
+    public boolean isThreadAffinity() {
+        return _threadAffinity;
+    }
+
+    /**
+     *   Sets whether a thread is handed the socket it used last, when that socket is idle, so
+     *   that a fire-and-forget write followed by a read from the same thread is normally seen
+     *   by the read.  Tracking this takes a thread-local per thread, which is wasted when each
+     *   operation runs on a fresh, short-lived thread - e.g. a virtual thread per task.
+     *
+     * @param threadAffinity false to hand out any idle socket
+     * @return this object for setter chaining
+     */
+    public MongoOptions setThreadAffinity(boolean threadAffinity) {
+        _threadAffinity = threadAffinity;
+        return this;
+    }
+
+    /**
+     *   Time a request on a multiplexed socket waits for its reply.
+     *
+     * @return reply timeout in milliseconds.  0 means wait forever
+     */
+    public long getReplyTimeoutMillis() {
+        return _replyTimeoutMillis;
+    }
+
+    /**
+     *   Sets the time a request on a multiplexed socket waits for its reply.  Once a request
+     *   has waited that long the socket is closed, and everything waiting on it fails, as a
+     *   socket that dropped would.  The next request opens a new socket.
+     *
+     * @param replyTimeoutMillis reply timeout in milliseconds.  0 to wait forever
+     * @return this object for setter chaining
+     */
+    public MongoOptions setReplyTimeoutMillis(long replyTimeoutMillis) {
+        if (replyTimeoutMillis < 0) {
+            throw new IllegalArgumentException("replyTimeoutMillis must be >= 0");
+        }
+        _replyTimeoutMillis = replyTimeoutMillis;
+        return this;
+    }
+}
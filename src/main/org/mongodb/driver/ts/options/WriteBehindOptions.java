@@ -0,0 +1,179 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts.options;
+
+import java.io.File;
+
+/**
+ * Represents the options for the write-behind queue of a collection, which holds inserts
+ * in memory and sends them to the server in the background.
+ */
+public class WriteBehindOptions {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 10;
+    public static final boolean DEFAULT_BLOCK_WHEN_FULL = true;
+    public static final int DEFAULT_JOURNAL_SIZE = 64 * 1024 * 1024;
+
+    private int _capacity = DEFAULT_CAPACITY;
+    private int _batchSize = DEFAULT_BATCH_SIZE;
+    private long _maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private boolean _blockWhenFull = DEFAULT_BLOCK_WHEN_FULL;
+    private File _journal = null;
+    private int _journalSize = DEFAULT_JOURNAL_SIZE;
+
+    /**
+     *   Most documents that may wait in the queue.
+     *
+     * @return queue capacity
+     */
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     *   Sets the most documents that may wait in the queue.
+     *
+     * @param capacity queue capacity.  Must be > 0
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        _capacity = capacity;
+        return this;
+    }
+
+    /**
+     *   Number of queued documents that are sent without waiting for them to age.
+     *
+     * @return documents per batch
+     */
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    /**
+     *   Sets the number of queued documents that are sent without waiting for them to age,
+     *   and the most that are sent at once.
+     *
+     * @param batchSize documents per batch.  Must be > 0
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        _batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     *   Time a document may wait in the queue for a batch to fill.
+     *
+     * @return age limit in milliseconds
+     */
+    public long getMaxAgeMillis() {
+        return _maxAgeMillis;
+    }
+
+    /**
+     *   Sets the time a document may wait in the queue for a batch to fill.
+     *
+     * @param maxAgeMillis age limit in milliseconds.  Must be > 0
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setMaxAgeMillis(long maxAgeMillis) {
+        if (maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("maxAgeMillis must be > 0");
+        }
+        _maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     *   Whether an insert into a full queue waits for room, or fails.
+     *
+     * @return true if inserts wait
+     */
+    public boolean isBlockWhenFull() {
+        return _blockWhenFull;
+    }
+
+    /**
+     *   Sets whether an insert into a full queue waits for room, or fails with a
+     *   MongoDBException.
+     *
+     * @param blockWhenFull true to wait, false to fail
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setBlockWhenFull(boolean blockWhenFull) {
+        _blockWhenFull = blockWhenFull;
+        return this;
+    }
+
+    /**
+     *   File in which queued documents are journaled.
+     *
+     * @return journal file, or null for none
+     */
+    public File getJournal() {
+        return _journal;
+    }
+
+    /**
+     *   Sets a file in which queued documents are journaled until they've been sent, so
+     *   they survive the JVM going away.  Documents left in the journal are queued again
+     *   when a queue is next set up with the same file.  The journal is memory-mapped, and
+     *   counts as full, like the queue, when it runs out of room.
+     *
+     * @param journal journal file, or null for none
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setJournal(File journal) {
+        _journal = journal;
+        return this;
+    }
+
+    /**
+     *   Size of the journal file.
+     *
+     * @return journal size in bytes
+     */
+    public int getJournalSize() {
+        return _journalSize;
+    }
+
+    /**
+     *   Sets the size of the journal file.
+     *
+     * @param journalSize journal size in bytes.  Must be > 1024
+     * @return this object for setter chaining
+     */
+    public WriteBehindOptions setJournalSize(int journalSize) {
+        if (journalSize <= 1024) {
+            throw new IllegalArgumentException("journalSize must be > 1024");
+        }
+        _journalSize = journalSize;
+        return this;
+    }
+}
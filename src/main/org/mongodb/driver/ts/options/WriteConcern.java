@@ -0,0 +1,77 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.ts.options;
+
+/**
+ * How a database's writes are acknowledged by the server.  Unacknowledged writes are
+ * sent and forgotten.  Acknowledged writes are checked on the same socket, either after
+ * each write or once for a batch of them.  A batch goes out between a reseterror and a
+ * getpreverror, so a failure of any write in it is reported for the batch.  Writes in a
+ * batch aren't undone when another fails, and the error doesn't say which write it was.
+ */
+public class WriteConcern {
+
+    /**
+     *  Writes aren't acknowledged
+     */
+    public static final WriteConcern NONE = new WriteConcern(0);
+
+    /**
+     *  Each write is acknowledged before it returns
+     */
+    public static final WriteConcern SAFE = new WriteConcern(1);
+
+    private final int _batchSize;
+
+    private WriteConcern(int batchSize) {
+        _batchSize = batchSize;
+    }
+
+    /**
+     *  Writes are acknowledged once per batch.  A batch goes out when it has the given
+     *  number of writes, when it has waited the database's flush interval, and before
+     *  any query.  A failure is reported to the write or flush that sends the batch,
+     *  or, for a batch sent when the interval is up, to the next write or flush.
+     *
+     * @param writes writes per acknowledgement.  Must be > 0
+     * @return write concern
+     */
+    public static WriteConcern batch(int writes) {
+        if (writes <= 0) {
+            throw new IllegalArgumentException("writes must be > 0");
+        }
+        return writes == 1 ? SAFE : new WriteConcern(writes);
+    }
+
+    public boolean isAcknowledged() {
+        return _batchSize > 0;
+    }
+
+    /**
+     * @return writes per acknowledgement, 0 if not acknowledged
+     */
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public String toString() {
+        return _batchSize == 0 ? "NONE" : _batchSize == 1 ? "SAFE" : "BATCH(" + _batchSize + ")";
+    }
+}
@@ -28,7 +28,6 @@ import org.mongodb.driver.util.types.BSONBytes;
 import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.Doc;
 import org.mongodb.driver.MongoDBException;
-import org.mongodb.driver.impl.DirectBufferTLS;
 
 import java.lang.StringBuilder;
 import java.util.Formatter;
@@ -39,12 +38,10 @@ import java.util.Map;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.CharBuffer;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.CharsetEncoder;
-import java.io.UnsupportedEncodingException;
 import java.io.IOException;
 
 /**
@@ -54,6 +51,8 @@ import java.io.IOException;
  */
 public class BSONObject {
 
+    private static final KeyCache _keys = new KeyCache();
+
     static final byte EOO = 0;      // x
     static final byte MAXKEY = -1;  // x
     static final byte NUMBER = 1;   // x t
@@ -78,9 +77,9 @@ public class BSONObject {
 
     private static final int _DEFAULT_BYTEBUF_SIZE = 1024 * 100;
 
-    private byte[] _privateBuff = new byte[1024];
     private ByteBuffer _buf;
     private BSONObjectCallback _callback = null;
+    private boolean _primitiveArrays;
 
     public BSONObject() {
         this(_DEFAULT_BYTEBUF_SIZE);
@@ -99,6 +98,16 @@ public class BSONObject {
         _callback = boc;
     }
 
+    /**
+     *  Has deserialize() decode arrays all of NUMBER_INT as int[], and all of NUMBER as
+     *  double[], rather than as lists of boxed numbers.  Off by default.
+     *
+     * @param primitiveArrays true to decode numeric arrays as primitive arrays
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        _primitiveArrays = primitiveArrays;
+    }
+
     /**
      *  Extracts a copy of the document as a byte array
      * @return array of bytes containing the BSON document
@@ -168,6 +177,10 @@ public class BSONObject {
             throw new MongoDBException("Document was null");
         }
 
+        if (m instanceof LazyDoc && ((LazyDoc) m).writeTo(_buf)) {
+            return;
+        }
+
         int start = _buf.position();
 
         int messageSize = 0;
@@ -290,39 +303,336 @@ public class BSONObject {
 
     public Doc deserialize() throws MongoDBException {
 
-        Doc doc = new Doc();
-        
         _buf.position(0);
 
-        /*
-         *  eat the message size
-         */
-        int totalSize = _buf.getInt();
+        Doc doc = decode(_buf, _callback, _primitiveArrays);
+
+        _buf.flip();
+
+        return doc;
+    }
+
+    /**
+     *  Decodes the document at the buffer's position, leaving the buffer positioned after
+     *  it.  The whole tree comes out of one pass over the buffer : nested documents and
+     *  arrays are decoded where they lie, each bounded by its end offset, so nothing is
+     *  copied, wrapped or sliced per level however deep the nesting goes.
+     *
+     * @param buf buffer to decode from, in any byte order
+     * @param callback callback for the document's own keys, or null
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @return decoded doc
+     * @throws MongoDBException if the document is malformed
+     */
+    private static Doc decode(ByteBuffer buf, BSONObjectCallback callback, boolean primitiveArrays) throws MongoDBException {
+
+        ByteOrder order = buf.order();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            return decodeDocument(buf, callback, primitiveArrays);
+        }
+        catch (BufferUnderflowException e) {
+            throw new MongoDBException("Error : truncated document", e);
+        }
+        finally {
+            buf.order(order);
+        }
+    }
+
+    /**
+     *  Decodes a document and everything in it.  The buffer must be little endian.
+     *
+     * @param buf buffer positioned at the document's size
+     * @param callback callback for this document's keys, or null - nested documents
+     *        are always decoded
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @return decoded doc
+     * @throws MongoDBException if the document is malformed
+     */
+    private static Doc decodeDocument(ByteBuffer buf, BSONObjectCallback callback, boolean primitiveArrays) throws MongoDBException {
+
+        int start = buf.position();
+        int end = documentEnd(buf, start);
+
+        buf.position(start + 4);
+
+        Doc doc = new Doc();
 
         /*
-         * now process the elements elements :   <element> -> <element_type> <element_name> <element_data>
+         * now process the elements :   <element> -> <element_type> <element_name> <element_data>
          */
-        while (_buf.hasRemaining()) {
+        while (true) {
+
+            if (buf.position() >= end) {
+                throw new MongoDBException("Error : document at [" + start + "] runs past its size");
+            }
 
-            byte type = _buf.get();
+            byte type = buf.get();
 
             if (type == EOO) {
                 break;
             }
 
-            String key = deserializeCSTR(_buf);
+            String key = deserializeCSTR(buf);
 
-            Object o = _deserializeObjectByType(key, type, _buf, totalSize);
-
-            doc.put(key, o);
+            doc.put(key, decodeValue(buf, type, key, callback, primitiveArrays));
         }
 
-        _buf.flip();
+        checkEnd(buf, start, end);
 
         return doc;
     }
 
-    protected Object _deserializeObjectByType(String key, byte type, ByteBuffer buf, int totalSize) throws MongoDBException  {
+    private static void checkEnd(ByteBuffer buf, int start, int end) throws MongoDBException {
+
+        if (buf.position() != end) {
+            throw new MongoDBException("Error : document at [" + start + "] ends before its size");
+        }
+    }
+
+    /**
+     *  Decodes an array straight into a list, sized from the first element.  The index
+     *  keys are skipped unread, as the elements are in order.  When asked, an array that's
+     *  all NUMBER_INT or all NUMBER comes back as an int[] or double[] instead - the
+     *  decoder starts out that way on seeing the first element, and carries on as a list
+     *  if another type turns up.
+     *
+     * @param buf buffer positioned at the array's size
+     * @param primitiveArrays true to decode numeric arrays as int[] or double[]
+     * @return List, or int[] or double[]
+     * @throws MongoDBException if the array is malformed
+     */
+    private static Object decodeArray(ByteBuffer buf, boolean primitiveArrays) throws MongoDBException {
+
+        int start = buf.position();
+        int end = documentEnd(buf, start);
+
+        buf.position(start + 4);
+
+        int bytes = end - start - 5;
+        byte type = nextElement(buf, start, end);
+        List<Object> l = null;
+
+        if (type == EOO) {
+            checkEnd(buf, start, end);
+            return new ArrayList<Object>(0);
+        }
+
+        if (primitiveArrays && type == NUMBER_INT) {
+
+            int[] arr = new int[estimateLength(bytes, 4)];
+            int n = 0;
+
+            do {
+                if (n == arr.length) {
+                    arr = Arrays.copyOf(arr, n * 2);
+                }
+                arr[n++] = buf.getInt();
+                type = nextElement(buf, start, end);
+            } while (type == NUMBER_INT);
+
+            if (type == EOO) {
+                checkEnd(buf, start, end);
+                return n == arr.length ? arr : Arrays.copyOf(arr, n);
+            }
+
+            l = new ArrayList<Object>(arr.length);
+
+            for (int i = 0; i < n; i++) {
+                l.add(arr[i]);
+            }
+        }
+        else if (primitiveArrays && type == NUMBER) {
+
+            double[] arr = new double[estimateLength(bytes, 8)];
+            int n = 0;
+
+            do {
+                if (n == arr.length) {
+                    arr = Arrays.copyOf(arr, n * 2);
+                }
+                arr[n++] = buf.getDouble();
+                type = nextElement(buf, start, end);
+            } while (type == NUMBER);
+
+            if (type == EOO) {
+                checkEnd(buf, start, end);
+                return n == arr.length ? arr : Arrays.copyOf(arr, n);
+            }
+
+            l = new ArrayList<Object>(arr.length);
+
+            for (int i = 0; i < n; i++) {
+                l.add(arr[i]);
+            }
+        }
+        else {
+            int pos = buf.position();
+            Object o = decodeValue(buf, type, null, null, primitiveArrays);
+
+            l = new ArrayList<Object>(estimateLength(bytes, buf.position() - pos));
+            l.add(o);
+
+            type = nextElement(buf, start, end);
+        }
+
+        while (type != EOO) {
+            l.add(decodeValue(buf, type, null, null, primitiveArrays));
+            type = nextElement(buf, start, end);
+        }
+
+        checkEnd(buf, start, end);
+
+        return l;
+    }
+
+    /**
+     *  Reads the type of the next array element, and skips its index key
+     *
+     * @return type of the element, or EOO at the end of the array
+     */
+    private static byte nextElement(ByteBuffer buf, int start, int end) throws MongoDBException {
+
+        if (buf.position() >= end) {
+            throw new MongoDBException("Error : document at [" + start + "] runs past its size");
+        }
+
+        byte type = buf.get();
+
+        if (type != EOO) {
+            while (buf.get() != 0) {
+                // the index key - the element's place in the list says the same
+            }
+        }
+
+        return type;
+    }
+
+    /**
+     *  Works out how many elements of the given size fit in an array's bytes, with the
+     *  keys "0", "1", ... taking a byte more per decade.  Exact when the elements are all
+     *  that size.
+     *
+     * @param bytes bytes taken by the array's elements
+     * @param valueSize bytes per element value
+     * @return number of elements
+     */
+    private static int estimateLength(int bytes, int valueSize) {
+
+        int n = 0;
+        int decade = 10;
+
+        for (int digits = 1; bytes > 0; digits++) {
+
+            int elementSize = 1 + digits + 1 + valueSize;      // type, key and its terminator, value
+            int fit = bytes / elementSize;
+
+            if (fit <= decade - n) {
+                return n + fit;
+            }
+
+            bytes -= (decade - n) * elementSize;
+            n = decade;
+            decade *= 10;
+        }
+
+        return n;
+    }
+
+    /**
+     *  Moves the buffer past an element's value without decoding it
+     *
+     * @param buf buffer positioned at the value
+     * @param type type of the element
+     * @throws MongoDBException if the value's size is bad, or the type unknown
+     */
+    static void skipValue(ByteBuffer buf, byte type) throws MongoDBException {
+
+        int start = buf.position();
+        int pos = start;
+
+        switch (type) {
+            case NUMBER :
+            case DATE :
+                pos += 8;
+                break;
+
+            case NUMBER_INT :
+                pos += 4;
+                break;
+
+            case BOOLEAN :
+                pos += 1;
+                break;
+
+            case NULL :
+            case UNDEFINED :
+                break;
+
+            case OID :
+                pos += 12;
+                break;
+
+            case STRING :
+            case CODE :
+            case SYMBOL :
+                pos += 4 + buf.getInt(pos);
+                break;
+
+            case OBJECT :
+            case ARRAY :
+                pos += buf.getInt(pos);
+                break;
+
+            case BINARY :
+                pos += 5 + buf.getInt(pos);     // size, subtype, then the size again and the bytes
+                break;
+
+            case REF :
+                pos += 4 + buf.getInt(pos) + 12;
+                break;
+
+            case REGEX :
+                pos = cstrEnd(buf, cstrEnd(buf, pos) + 1) + 1;
+                break;
+
+            default :
+                throw new MongoDBException("Unknown type " + type);
+        }
+
+        if (pos < start || pos > buf.limit()) {
+            throw new MongoDBException("Error : value at [" + start + "] runs past its document");
+        }
+
+        buf.position(pos);
+    }
+
+    /**
+     * @param buf buffer holding the document
+     * @param start offset of the document's size
+     * @return offset just past the document
+     * @throws MongoDBException if the size doesn't fit the buffer
+     */
+    private static int documentEnd(ByteBuffer buf, int start) throws MongoDBException {
+
+        int remaining = buf.limit() - start;
+
+        if (remaining < 5) {
+            throw new MongoDBException("Error : truncated document");
+        }
+
+        int size = buf.getInt(start);
+
+        if (size < 5 || size > remaining) {
+            throw new MongoDBException("Error : bad document size [" + size + "] with [" + remaining + "] bytes remaining");
+        }
+
+        return start + size;
+    }
+
+    static Object decodeValue(ByteBuffer buf, byte type, String key, BSONObjectCallback callback,
+                              boolean primitiveArrays) throws MongoDBException  {
 
         switch (type) {
             case STRING:
@@ -333,45 +643,42 @@ public class BSONObject {
                 return new BSONSymbol(deserializeSTRINGData(buf));
 
             case NUMBER :
-                return deserializeNumberData(buf);
+                return buf.getDouble();
 
             case NUMBER_INT :
-                return deserializeNumberIntData(buf);
+                return buf.getInt();
 
             case OID :
                 return deserializeOIDData(buf);
 
             case OBJECT :
-                if (_callback != null && _callback.deserializeObjectAsBSON(key)) {
-
-                    int pos = _buf.position();
-                    int size = _buf.getInt();
-                    _buf.position(pos);
+                if (callback != null && callback.deserializeObjectAsBSON(key)) {
 
-                    byte[] arr = new byte[size];
-                    _buf.get(arr);
+                    int pos = buf.position();
+                    byte[] arr = new byte[documentEnd(buf, pos) - pos];
+                    buf.get(arr);
 
                     return new BSONBytes(arr);
                 }
                 else {
-                    return  _deserializeObjectData(buf);
+                    return decodeDocument(buf, null, primitiveArrays);
                 }
 
             case BOOLEAN :
-                return deserializeBooleanData(buf);
+                return (buf.get() == (byte) 1);
 
             case DATE :
-                return deserializeDateData(buf);
+                return new Date(buf.getLong());
 
             case NULL :
             case UNDEFINED :
                 return null;
 
             case ARRAY :
-                return deserializeArrayData(buf);
+                return decodeArray(buf, primitiveArrays);
 
             case REGEX :
-                return deserializeRegexData(buf, totalSize);
+                return deserializeRegexData(buf);
 
             case BINARY :
                 return deserializeBinary(buf);
@@ -411,48 +718,6 @@ public class BSONObject {
         return to_return.toString();
     }
 
-    /**
-     *  Deserializes the data for a Date element type.
-     *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     */
-    protected Date deserializeDateData(ByteBuffer buf) {
-
-        return new Date(buf.getLong());
-    }
-
-    /**
-     *  Deserializes the data for a Boolean element type.
-     *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     */
-    protected Boolean deserializeBooleanData(ByteBuffer buf) {
-
-        return (buf.get() == (byte) 1);
-    }
-
-    /**
-     *  Deserializes the data for a NUMBER element type.
-     *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     */
-    protected Double deserializeNumberData(ByteBuffer buf) {
-        return buf.getDouble();
-    }
-
-    /**
-     *  Deserializes the data for a NUMBER_INT element type.
-     *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     */
-    protected Integer deserializeNumberIntData(ByteBuffer buf) {
-        return buf.getInt();
-    }
-
 
     private static byte[] deserializeBinary(ByteBuffer buf) throws MongoDBException{
 
@@ -472,7 +737,11 @@ public class BSONObject {
          *   now the real length
          */
         int len = buf.getInt();
-        
+
+        if (len < 0 || len > buf.remaining()) {
+            throw new MongoDBException("Error : bad binary length [" + len + "]");
+        }
+
         byte[] woogie = new byte[len];
 
         buf.get(woogie);
@@ -480,10 +749,9 @@ public class BSONObject {
         return woogie;
     }
 
-    private BSONRef deserializeRef(ByteBuffer buf) throws MongoDBException {
+    private static BSONRef deserializeRef(ByteBuffer buf) throws MongoDBException {
 
-               
-        String ns = this.deserializeSTRINGData(buf);
+        String ns = deserializeSTRINGData(buf);
 
         /*
          *  now read the 12 byte OID
@@ -495,51 +763,31 @@ public class BSONObject {
     }
 
     /**
-     *  Deserializes the data for a OBJECT element type.
+     *  Deserializes the data for a OBJECT element type, in place, leaving the buffer
+     *  positioned after it.
      *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
+     * @param buf buffer in which next sequence of bytes is an OBJECT element
+     * @return deserialized doc
      * @throws MongoDBException on error
      */
     public static Doc deserializeObjectData(ByteBuffer buf) throws MongoDBException {
 
-        return _deserializeObjectData(buf);
+        return decode(buf, null, false);
     }
 
     /**
-     *  THis is foolish.... we should just be able to call deserialize()
-     * @param buf buffer to deserialize from
-     * @return object deserialized as a doc
-     * @throws MongoDBException in case of error
+     *  Deserializes the data for a OBJECT element type, in place, leaving the buffer
+     *  positioned after it.
+     *
+     * @param buf buffer in which next sequence of bytes is an OBJECT element
+     * @param primitiveArrays true to decode arrays all of NUMBER_INT as int[], and all of
+     *        NUMBER as double[]
+     * @return deserialized doc
+     * @throws MongoDBException on error
      */
-    private static Doc _deserializeObjectData(ByteBuffer buf) throws MongoDBException{
-
-        /*
-         * read the first 4 bytes (size) into a ByteBuf, and get that
-         */
-        ByteBuffer tempBuf  = ByteBuffer.allocate(4);
-        tempBuf.order(ByteOrder.LITTLE_ENDIAN);
+    public static Doc deserializeObjectData(ByteBuffer buf, boolean primitiveArrays) throws MongoDBException {
 
-        buf.get(tempBuf.array());
-
-        int size = tempBuf.getInt();
-
-        tempBuf.position(0);
-
-        /**
-         *   get the remaining bytes of the mongodoc
-         */
-        byte[] arr = new byte[size];
-
-        buf.get(arr, 4, size-4);
-
-        System.arraycopy(tempBuf.array(), 0, arr, 0, 4);
-
-        //TODO - fix this
-
-        BSONObject o = new BSONObject();
-
-        return o.deserialize(arr);
+        return decode(buf, null, primitiveArrays);
     }
 
     /**
@@ -594,74 +842,40 @@ public class BSONObject {
      */
     public static MongoSelector deserializeSelector(ByteBuffer buf) throws MongoDBException {
 
-        Doc md = _deserializeObjectData(buf);
+        Doc md = deserializeObjectData(buf);
 
         return new MongoSelector(md);  // TODO - clean this mess up
     }
 
-    /**
-     *  Deserializes the data for a OBJECT element type.
-     *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     * @throws MongoDBException on error
-     */
-    protected List deserializeArrayData(ByteBuffer buf) throws MongoDBException {
-
-        Doc doc = deserializeObjectData(buf);
-
-        Object[] arr = new Object[doc.size()];
-
-        for (Object o : doc.entrySet()) {
-
-            Map.Entry e = (Map.Entry) o;
-
-            int loc = Integer.valueOf(e.getKey().toString());
-
-            if (loc > doc.size() - 1) {
-                throw new MongoDBException ("ERROR - key value out of range of index for array" + loc);
-            }
-
-            arr[loc] = e.getValue();
-        }
-
-        List<Object> l = new ArrayList<Object>();
-
-        l.addAll(Arrays.asList(arr));
-        return l;
-    }
-
-
     /**
      *  Deserializes the data for a STRING element type.
      *
      * @param buf buffer in which next sequence of bytes is an STRING element
      * @return deserialized String
-     * @throws MongoDBException if an encoding problem
+     * @throws MongoDBException if the length is bad
      */
-    protected String deserializeSTRINGData(ByteBuffer buf) throws MongoDBException {
+    private static String deserializeSTRINGData(ByteBuffer buf) throws MongoDBException {
 
         int len = buf.getInt();  // the buffers size includes the null terminator
 
-        byte[] bytes = new byte[len];
+        if (len < 1 || len > buf.remaining()) {
+            throw new MongoDBException("Error : bad string length [" + len + "]");
+        }
 
-        buf.get(bytes, 0, len);
+        int start = buf.position();
 
-        try {
-            return new String(bytes, 0, len-1, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new MongoDBException("Encoding exception", e);
-        }
+        buf.position(start + len);
+
+        return UTF8Codec.decode(buf, start, len - 1);
     }
 
     /**
      *  Deserializes the data for a OID element type.
      *
-     * @param buf buffer in which next sequence of bytes is an STRING element
-     * @return deserialized String
-     * @throws MongoDBException if an encoding problem
+     * @param buf buffer in which next sequence of bytes is an OID element
+     * @return deserialized OID
      */
-    protected BabbleOID deserializeOIDData(ByteBuffer buf) throws MongoDBException {
+    private static BabbleOID deserializeOIDData(ByteBuffer buf) {
 
         byte[] bytes = new byte[12];
 
@@ -671,74 +885,30 @@ public class BSONObject {
     }
 
     /**
-     *  Deserializes the data for a REGEX element type.
+     *  Deserializes the data for a REGEX element type : the pattern and then the
+     *  options, each a cstring.
      *
      * @param buf buffer in which next sequence of bytes is an REGEX element
-     * @param totalSize - total size of message just to have a safety
-     * @return deserialized String
+     * @return deserialized Pattern
      * @throws MongoDBException if an encoding problem
      */
-    protected Pattern deserializeRegexData(ByteBuffer buf, int totalSize) throws MongoDBException {
-
-        /*
-         * there is no sizing info - need to just search for nulls
-         */
-
-        try {
+    private static Pattern deserializeRegexData(ByteBuffer buf) throws MongoDBException {
 
-            String pattern = "";
-            String flagString;
-            int i = 0;
-            int loc = 0;
+        String pattern = readCSTR(buf);
+        String flagString = readCSTR(buf);
 
-            /*
-             *   first go find the null for the pattern and save that string
-             */
-            for (; i < totalSize; i++, loc++) {
-                _privateBuff[loc] = buf.get();
+        int flags = 0;
 
-                if (_privateBuff[loc] == 0) {
-                    pattern =  new String(_privateBuff, 0, loc, "UTF-8");
-                    break;
-                }
-            }
-
-            if ( i == totalSize) {
-                throw new MongoDBException("ERROR - can't find null boundaries in a regex object");
-            }
-
-            /*
-             *  next go find the null for the options and save *that* string
-             */
-            i++;
-
-            for (loc = 0; i < totalSize; i++, loc++) {
-                _privateBuff[loc] = buf.get();
-
-                if (_privateBuff[loc] == 0) {
-                    flagString =  new String(_privateBuff, 0, loc, "UTF-8");
-
-                    int flags = 0;
-
-                    if (flagString.contains("i")) {
-                        flags |= Pattern.CASE_INSENSITIVE;
-                    }
-
-                    if (flagString.contains("m")) {
-                        flags |= Pattern.MULTILINE;
-                    }
-
-                    return Pattern.compile(pattern, flags);
-                }
-            }
+        if (flagString.contains("i")) {
+            flags |= Pattern.CASE_INSENSITIVE;
+        }
 
-            throw new MongoDBException("ERROR - can't find null boundaries in a regex object");
-            
-        } catch (UnsupportedEncodingException e) {
-            throw new MongoDBException("Encoding exception", e);
+        if (flagString.contains("m")) {
+            flags |= Pattern.MULTILINE;
         }
-    }
 
+        return Pattern.compile(pattern, flags);
+    }
 
     /**
      *
@@ -1079,7 +1249,19 @@ public class BSONObject {
          *   I guess we should be nice and take Lists as well
          */
 
-        if (v.getClass().isArray()) {
+        if (v instanceof int[]) {
+            l = new ArrayList<Object>();
+            for (int x : (int[]) v) {
+                l.add(x);
+            }
+        }
+        else if (v instanceof double[]) {
+            l = new ArrayList<Object>();
+            for (double x : (double[]) v) {
+                l.add(x);
+            }
+        }
+        else if (v.getClass().isArray()) {
             l = Arrays.asList((Object[]) v);
         }
         else if (v instanceof List) {
@@ -1223,47 +1405,63 @@ public class BSONObject {
 
 
     /**
-     *   Reads the element name.  Unlike a STRING, this isn't prefixed with a size so we have to do
-     *   it byte by byte
+     *   Reads the element name.  Unlike a STRING, this isn't prefixed with a size so we have to
+     *   scan for its end, hashing it as we go, and the hash finds it in the key cache - in
+     *   steady state nothing is allocated.
      *
      * @param buf buffer to read from
      * @return element name
-     * @throws MongoDBException if an encoding problem
+     * @throws MongoDBException if the name isn't terminated
      */
     public static String deserializeCSTR(ByteBuffer buf) throws MongoDBException {
 
-        int i = 0;
+        int start = buf.position();
+        int limit = buf.limit();
+        int hash = 0;
+        int end = start;
 
-        StringBuffer sb = new StringBuffer();
-        byte[] arr = new byte[256];
+        for (byte b; end < limit && (b = buf.get(end)) != 0; end++) {
+            hash = KeyCache.hash(hash, b);
+        }
 
-        try {
+        if (end == limit) {
+            throw new MongoDBException("Error : cstring at [" + start + "] isn't terminated");
+        }
 
-            while(true) {
-                byte b = buf.get();
+        String s = _keys.get(buf, start, end - start, hash);
 
-                /*
-                 *  cstrings are terminated by a 0 byte
-                 */
-                if (b == 0) {
-                    break;
-                }
+        buf.position(end + 1);
 
-                arr[i++] = b;
-                
-                if (i == arr.length) {
-                    sb.append(new String(arr, 0, i, "UTF-8"));
-                    i = 0;
-                }
-             }
+        return s;
+    }
+
+    /**
+     *  Reads a cstring that isn't a name, so isn't worth caching
+     */
+    private static String readCSTR(ByteBuffer buf) throws MongoDBException {
 
-            sb.append(new String(arr, 0, i, "UTF-8"));
+        int start = buf.position();
+        int end = cstrEnd(buf, start);
 
-            return sb.toString();
-        }
-        catch (UnsupportedEncodingException e) {
-            throw new MongoDBException("Encoding exception : ", e);
+        buf.position(end + 1);
+
+        return UTF8Codec.decode(buf, start, end - start);
+    }
+
+    /**
+     * @return offset of the cstring's terminator
+     */
+    private static int cstrEnd(ByteBuffer buf, int start) throws MongoDBException {
+
+        int limit = buf.limit();
+
+        for (int i = start; i < limit; i++) {
+            if (buf.get(i) == 0) {
+                return i;
+            }
         }
+
+        throw new MongoDBException("Error : cstring at [" + start + "] isn't terminated");
     }
 
     /**
@@ -1277,23 +1475,9 @@ public class BSONObject {
      */
     public static int serializeCSTR(ByteBuffer buf, String val) {
 
-        //  serialize the str into a char buffer, UTF-8 encoding
-
         int start = buf.position();
 
-        DirectBufferTLS tls = DirectBufferTLS.getThreadLocal();
-
-        if (tls == null) {
-            tls = new DirectBufferTLS();
-        }
-
-        CharBuffer cbuf = tls.getCharBuffer(val.length());
-
-        cbuf.append(val);
-        cbuf.flip();
-        
-        CharsetEncoder encoder = tls.getEncoder();
-        encoder.encode(cbuf, buf, false);
+        UTF8Codec.encode(buf, val);
 
         // string terminator
         buf.put((byte) 0);
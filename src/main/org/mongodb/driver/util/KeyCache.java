@@ -0,0 +1,155 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ *  Canonical strings for document keys, looked up by their UTF-8 bytes.  Result sets
+ *  repeat the same few keys in every document, so once a key's been seen, decoding it
+ *  again costs a compare and no allocation - and every doc decoded holds the one
+ *  String instance.
+ *
+ *  The cache is a fixed table, with each key probed in two slots picked by its hash,
+ *  the first holding the more recently used.  A hit in the second slot swaps the two,
+ *  and a miss goes in the first, moving what was there to the second and dropping what
+ *  was in the second - so of two keys contending for the slots, the one used least
+ *  recently goes, hot keys stay, and the table never grows.  Keys longer than
+ *  MAX_KEY_LENGTH aren't cached.
+ *
+ *  Threads share the table without locking.  Entries are immutable and read through
+ *  final fields, so a racing reader sees either a whole entry or an older one, and the
+ *  worst a race does is lose an entry that gets made again.
+ */
+final class KeyCache {
+
+    static final int SIZE = 4096;              // slots - a power of two
+    static final int MAX_KEY_LENGTH = 64;      // bytes
+
+    private static final class Entry {
+
+        final int _hash;
+        final byte[] _bytes;
+        final String _key;
+
+        Entry(int hash, byte[] bytes, String key) {
+            _hash = hash;
+            _bytes = bytes;
+            _key = key;
+        }
+    }
+
+    private final Entry[] _slots = new Entry[SIZE];
+
+    /**
+     *  Hash of a key's bytes, as computed a byte at a time while scanning for its end :
+     *  h = 31 * h + b, starting from 0
+     *
+     * @param h hash of the bytes so far
+     * @param b next byte
+     * @return hash including b
+     */
+    static int hash(int h, byte b) {
+        return 31 * h + b;
+    }
+
+    /**
+     *  Gets the key for the bytes, from the cache or decoded and added to it.  The
+     *  buffer's position isn't moved.
+     *
+     * @param buf buffer holding the key
+     * @param start offset of the key's first byte
+     * @param len length of the key in bytes, not counting its terminator
+     * @param hash hash of the key's bytes, from hash()
+     * @return the key
+     */
+    String get(ByteBuffer buf, int start, int len, int hash) {
+
+        if (len > MAX_KEY_LENGTH) {
+            return UTF8Codec.decode(buf, start, len);
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        int other = (slot + 1) & (SIZE - 1);
+
+        Entry first = _slots[slot];
+
+        if (first != null && matches(first, buf, start, len, hash)) {
+            return first._key;
+        }
+
+        Entry second = _slots[other];
+
+        if (second != null && matches(second, buf, start, len, hash)) {
+            _slots[slot] = second;
+            _slots[other] = first;
+            return second._key;
+        }
+
+        byte[] bytes = copy(buf, start, len);
+        String key = UTF8Codec.decode(bytes, 0, len);
+
+        if (first != null) {
+            _slots[other] = first;
+        }
+        _slots[slot] = new Entry(hash, bytes, key);
+
+        return key;
+    }
+
+    private static boolean matches(Entry e, ByteBuffer buf, int start, int len, int hash) {
+
+        byte[] bytes = e._bytes;
+
+        if (e._hash != hash || bytes.length != len) {
+            return false;
+        }
+
+        if (buf.hasArray()) {
+            int off = buf.arrayOffset() + start;
+            return Arrays.equals(bytes, 0, len, buf.array(), off, off + len);
+        }
+
+        for (int i = 0; i < len; i++) {
+            if (bytes[i] != buf.get(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] copy(ByteBuffer buf, int start, int len) {
+
+        byte[] bytes = new byte[len];
+
+        if (buf.hasArray()) {
+            System.arraycopy(buf.array(), buf.arrayOffset() + start, bytes, 0, len);
+        }
+        else {
+            for (int i = 0; i < len; i++) {
+                bytes[i] = buf.get(start + i);
+            }
+        }
+
+        return bytes;
+    }
+}
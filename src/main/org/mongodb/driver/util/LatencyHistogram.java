@@ -0,0 +1,216 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Histogram of latencies in nanoseconds that many threads can record into at once,
+ *  without locks or allocation.
+ *
+ *  Buckets are log-linear, as in HdrHistogram : values below 32 get a bucket each, and
+ *  above that each power of two is split into 32 buckets, so a recorded value is off by
+ *  at most 1/32 (about 3%).  Values above MAX_VALUE (about 18 minutes) are counted as
+ *  MAX_VALUE.  The whole histogram is a little over 9KB.
+ *
+ *  Snapshots and resets don't stop recording, so a snapshot taken under load may be a
+ *  few samples out between its counts and its total.
+ */
+public class LatencyHistogram {
+
+    public static final long MAX_VALUE = 1L << 40;
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     *  Records a value
+     *
+     * @param nanos latency, in nanoseconds.  Negative values count as 0
+     */
+    public void record(long nanos) {
+
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        else if (nanos > MAX_VALUE) {
+            nanos = MAX_VALUE;
+        }
+
+        _counts.incrementAndGet(index(nanos));
+        _sum.addAndGet(nanos);
+
+        long max = _max.get();
+
+        while (nanos > max && !_max.compareAndSet(max, nanos)) {
+            max = _max.get();
+        }
+    }
+
+    /**
+     * @return copy of the histogram as it stands
+     */
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     *  Takes a snapshot and empties the histogram in one pass, so that no sample
+     *  recorded meanwhile is in neither.  For interval reporting.
+     *
+     * @return copy of the histogram up to the reset
+     */
+    public Snapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    public void reset() {
+        snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean reset) {
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = reset ? _counts.getAndSet(i, 0) : _counts.get(i);
+            total += counts[i];
+        }
+
+        long sum = reset ? _sum.getAndSet(0) : _sum.get();
+        long max = reset ? _max.getAndSet(0) : _max.get();
+
+        return new Snapshot(counts, total, sum, max);
+    }
+
+    /**
+     * @return bucket for a value between 0 and MAX_VALUE
+     */
+    static int index(long v) {
+
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+
+        return SUB_BUCKETS + (shift << SUB_BUCKET_BITS) + (int) (v >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return highest value that goes in a bucket
+     */
+    static long highestValue(int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKETS) >>> SUB_BUCKET_BITS;
+        long sub = (index - SUB_BUCKETS) & (SUB_BUCKETS - 1);
+
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    /**
+     *  Unchanging copy of a histogram's counts
+     */
+    public static class Snapshot {
+
+        private final long[] _counts;
+        private final long _count;
+        private final long _sum;
+        private final long _max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            _counts = counts;
+            _count = count;
+            _sum = sum;
+            _max = max;
+        }
+
+        /**
+         * @return number of values recorded
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * @return mean value in nanoseconds, or 0 if there are none
+         */
+        public double getMean() {
+            return _count == 0 ? 0 : (double) _sum / _count;
+        }
+
+        /**
+         * @return largest value recorded, in nanoseconds
+         */
+        public long getMax() {
+            return _max;
+        }
+
+        /**
+         *  Returns the value at a percentile, to the histogram's precision.  The value is
+         *  the top of the bucket the percentile falls in, but never more than the max.
+         *
+         * @param percentile percentile, from 0 to 100
+         * @return value in nanoseconds, or 0 if there are none
+         */
+        public long getValueAtPercentile(double percentile) {
+
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100 : " + percentile);
+            }
+
+            if (_count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * _count));
+            long seen = 0;
+
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), _max);
+                }
+            }
+
+            return _max;
+        }
+
+        public String toString() {
+            return "count=" + _count
+                    + " mean=" + Math.round(getMean()) + "ns"
+                    + " p50=" + getValueAtPercentile(50) + "ns"
+                    + " p99=" + getValueAtPercentile(99) + "ns"
+                    + " p999=" + getValueAtPercentile(99.9) + "ns"
+                    + " max=" + _max + "ns";
+        }
+    }
+}
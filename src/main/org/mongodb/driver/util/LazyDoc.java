@@ -0,0 +1,457 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.util;
+
+import org.mongodb.driver.MongoDBException;
+import org.mongodb.driver.ts.Doc;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ *  A Doc that keeps the BSON it was read as, and decodes a field only when it's asked
+ *  for.  get() and containsKey() scan the element names - which come from the key cache,
+ *  so cost no allocation - skip over the values of the others, and decode just the one
+ *  wanted.  A nested document comes back as another LazyDoc over the same bytes, so it
+ *  isn't decoded until it's used either.  Arrays are decoded whole.
+ *
+ *  Anything that needs the whole document - iterating, size(), equals(), changing it -
+ *  first decodes the rest into the map, keeping the values already handed out, and then
+ *  lets go of the bytes.  A LazyDoc nothing's been read from is written back out as its
+ *  original bytes.
+ *
+ *  The docs of a batch share one array holding the batch's bytes, so holding on to one
+ *  holds the array until that doc has been fully decoded.  As the bytes are only checked
+ *  as far as they're read, a malformed field shows up as an IllegalStateException from
+ *  the method that read it, rather than when the batch arrives.
+ *
+ *  Reading a field changes the doc, as the decoded value is kept in the map, so unlike a
+ *  Doc nobody's changing, a LazyDoc mustn't be read from several threads at once without
+ *  synchronization.
+ */
+public class LazyDoc extends Doc {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] _bytes;          // null once fully decoded
+    private final int _offset;
+    private final int _size;
+
+    /**
+     *  Wraps a document's bytes, which mustn't change afterwards
+     *
+     * @param bytes the document
+     * @throws MongoDBException if the document's size doesn't match the array
+     */
+    public LazyDoc(byte[] bytes) throws MongoDBException {
+
+        this(bytes, 0, bytes.length);
+
+        if (_size != bytes.length) {
+            throw new MongoDBException("Error : bad document size [" + _size + "] for [" + bytes.length + "] bytes");
+        }
+    }
+
+    /**
+     * @param bytes array holding the document
+     * @param offset offset of the document's size
+     * @param limit offset the document must end by
+     * @throws MongoDBException if the document's size doesn't fit
+     */
+    LazyDoc(byte[] bytes, int offset, int limit) throws MongoDBException {
+
+        if (offset + 4 > limit) {
+            throw new MongoDBException("Error : truncated document");
+        }
+
+        int size = (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+
+        if (size < 5 || size > limit - offset) {
+            throw new MongoDBException("Error : bad document size [" + size + "] with [" + (limit - offset) + "] bytes remaining");
+        }
+
+        _bytes = bytes;
+        _offset = offset;
+        _size = size;
+    }
+
+    /**
+     *  Reads a batch of documents, copying their bytes out of the buffer into one array
+     *  they share.  The buffer is left positioned after the last.
+     *
+     * @param buf buffer positioned at the first document
+     * @param count number of documents
+     * @return the documents
+     * @throws MongoDBException if the documents don't fit the buffer
+     */
+    public static List<Doc> readBatch(ByteBuffer buf, int count) throws MongoDBException {
+
+        int start = buf.position();
+        byte[] bytes = new byte[buf.remaining()];
+
+        buf.get(bytes);
+
+        List<Doc> docs = new ArrayList<Doc>(count);
+        int off = 0;
+
+        for (int i = 0; i < count; i++) {
+            LazyDoc d = new LazyDoc(bytes, off, bytes.length);
+            docs.add(d);
+            off += d._size;
+        }
+
+        buf.position(start + off);
+
+        return docs;
+    }
+
+    /**
+     * @return true if the document is still only bytes, with no field decoded yet
+     */
+    public boolean isPristine() {
+        return _bytes != null && super.isEmpty();
+    }
+
+    /**
+     *  Writes the document's original bytes, if nothing's been read from it and so
+     *  nothing could have been changed
+     *
+     * @param buf buffer to write into
+     * @return true if written, false if the document has to be encoded from the map
+     */
+    boolean writeTo(ByteBuffer buf) {
+
+        if (!isPristine()) {
+            return false;
+        }
+
+        buf.put(_bytes, _offset, _size);
+
+        return true;
+    }
+
+    /**
+     * @return a new view of just this document, positioned at its first element
+     */
+    private static ByteBuffer view(byte[] bytes, int offset, int size) {
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes, offset, size);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(offset + 4);
+
+        return buf;
+    }
+
+    /**
+     *  Finds an element, leaving the view at its value
+     *
+     * @param buf view of the document, positioned at its first element
+     * @return the element's type, or EOO if there's no such element
+     */
+    private static byte find(ByteBuffer buf, String key) throws MongoDBException {
+
+        while (true) {
+
+            byte type = buf.get();
+
+            if (type == BSONObject.EOO) {
+                return type;
+            }
+
+            if (key.equals(BSONObject.deserializeCSTR(buf))) {
+                return type;
+            }
+
+            BSONObject.skipValue(buf, type);
+        }
+    }
+
+    /**
+     *  Decodes the value the view is positioned at - a nested document stays lazy
+     */
+    private static Object decodeValue(ByteBuffer buf, byte type) throws MongoDBException {
+
+        if (type == BSONObject.OBJECT) {
+            LazyDoc d = new LazyDoc(buf.array(), buf.position(), buf.limit());
+            buf.position(buf.position() + d._size);
+            return d;
+        }
+
+        return BSONObject.decodeValue(buf, type, null, null, false);
+    }
+
+    private static IllegalStateException malformed(Exception e) {
+        return new IllegalStateException("Error : document can't be decoded", e);
+    }
+
+    /**
+     *  Decodes the rest of the document into the map, in document order, and lets the
+     *  bytes go
+     */
+    private void load() {
+
+        if (_bytes == null) {
+            return;
+        }
+
+        Map<String, Object> decoded = null;
+
+        if (!super.isEmpty()) {
+            decoded = new HashMap<String, Object>();
+
+            for (Map.Entry<String, Object> e : super.entrySet()) {
+                decoded.put(e.getKey(), e.getValue());
+            }
+            super.clear();
+        }
+
+        try {
+            ByteBuffer buf = view(_bytes, _offset, _size);
+
+            while (true) {
+
+                byte type = buf.get();
+
+                if (type == BSONObject.EOO) {
+                    break;
+                }
+
+                String key = BSONObject.deserializeCSTR(buf);
+
+                if (decoded != null && decoded.containsKey(key)) {
+                    super.put(key, decoded.get(key));
+                    BSONObject.skipValue(buf, type);
+                }
+                else {
+                    super.put(key, decodeValue(buf, type));
+                }
+            }
+        }
+        catch (MongoDBException e) {
+            throw malformed(e);
+        }
+        catch (BufferUnderflowException e) {
+            throw malformed(e);
+        }
+
+        _bytes = null;
+    }
+
+    public Object get(String key) {
+
+        if (key == null) {
+            throw new NullPointerException("Null key not allowed");
+        }
+
+        byte[] bytes = _bytes;
+
+        if (bytes == null || super.containsKey(key)) {
+            return super.get(key);
+        }
+
+        try {
+            ByteBuffer buf = view(bytes, _offset, _size);
+            byte type = find(buf, key);
+
+            if (type == BSONObject.EOO) {
+                return null;
+            }
+
+            Object o = decodeValue(buf, type);
+            super.put(key, o);
+
+            return o;
+        }
+        catch (MongoDBException e) {
+            throw malformed(e);
+        }
+        catch (BufferUnderflowException e) {
+            throw malformed(e);
+        }
+    }
+
+    public Object get(Object key) {
+        return key instanceof String ? get((String) key) : null;
+    }
+
+    public Object getOrDefault(Object key, Object defaultValue) {
+        return containsKey(key) ? get(key) : defaultValue;
+    }
+
+    public boolean containsKey(Object key) {
+
+        byte[] bytes = _bytes;
+
+        if (bytes == null || super.containsKey(key)) {
+            return super.containsKey(key);
+        }
+
+        if (!(key instanceof String)) {
+            return false;
+        }
+
+        try {
+            return find(view(bytes, _offset, _size), (String) key) != BSONObject.EOO;
+        }
+        catch (MongoDBException e) {
+            throw malformed(e);
+        }
+        catch (BufferUnderflowException e) {
+            throw malformed(e);
+        }
+    }
+
+    /*
+     *  everything else needs the whole document
+     */
+
+    public int size() {
+        load();
+        return super.size();
+    }
+
+    public boolean isEmpty() {
+        load();
+        return super.isEmpty();
+    }
+
+    public boolean containsValue(Object value) {
+        load();
+        return super.containsValue(value);
+    }
+
+    public Set<String> keySet() {
+        load();
+        return super.keySet();
+    }
+
+    public Collection<Object> values() {
+        load();
+        return super.values();
+    }
+
+    public Set<Map.Entry<String, Object>> entrySet() {
+        load();
+        return super.entrySet();
+    }
+
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        load();
+        super.forEach(action);
+    }
+
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        load();
+        super.replaceAll(function);
+    }
+
+    public Object put(String key, Object value) {
+        load();
+        return super.put(key, value);
+    }
+
+    public void putAll(Map<? extends String, ?> m) {
+        load();
+        super.putAll(m);
+    }
+
+    public Object remove(Object key) {
+        load();
+        return super.remove(key);
+    }
+
+    public boolean remove(Object key, Object value) {
+        load();
+        return super.remove(key, value);
+    }
+
+    public void clear() {
+        _bytes = null;
+        super.clear();
+    }
+
+    public Object putIfAbsent(String key, Object value) {
+        load();
+        return super.putIfAbsent(key, value);
+    }
+
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        load();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    public Object replace(String key, Object value) {
+        load();
+        return super.replace(key, value);
+    }
+
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        load();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        load();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        load();
+        return super.compute(key, remappingFunction);
+    }
+
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        load();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    public boolean equals(Object o) {
+        load();
+        return super.equals(o);
+    }
+
+    public int hashCode() {
+        load();
+        return super.hashCode();
+    }
+
+    public Object clone() {
+        load();
+        return super.clone();
+    }
+
+    /**
+     *  Serializes as a plain, fully decoded Doc
+     */
+    protected Object writeReplace() {
+        return new Doc(this);
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ *  UTF-8 straight between Strings and buffers, heap or direct, with no encoder or
+ *  intermediate copy.  Most strings in documents are pure ASCII, so both directions try
+ *  that first with tight loops the JIT can unroll and vectorize - encoding copies a
+ *  chunk of chars and checks afterwards whether any was wide, decoding ORs the bytes
+ *  together looking for a high bit.  Only what's left after the first wide char takes the
+ *  full UTF-8 path.
+ *
+ *  Direct buffers have no array to work in, so ASCII goes through a small scratch array
+ *  allocated by the call, encoded a chunk at a time and copied in with one bulk put, and
+ *  decoding copies the bytes out with one bulk get.  Nothing is kept per thread.
+ *
+ *  Unpaired surrogates encode as '?', as String's own getBytes() does.  Malformed input
+ *  is rare enough that it's handed to String's constructor as soon as it's seen, so it
+ *  decodes to the same U+FFFDs that would.
+ */
+final class UTF8Codec {
+
+    private static final int CHUNK = 16;       // chars copied before checking for a wide one
+    private static final int SCRATCH = 256;    // bytes moved per bulk put or get on a direct buffer
+
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private UTF8Codec() {
+    }
+
+    /**
+     *  Encodes the string at the buffer's position, and moves the position past it.  No
+     *  terminator is written.
+     *
+     * @param buf buffer to write into
+     * @param s string to encode
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException if the buffer's too small
+     */
+    static int encode(ByteBuffer buf, String s) {
+
+        int n = s.length();
+        int start = buf.position();
+        int i = 0;
+
+        if (buf.hasArray()) {
+            if (buf.remaining() >= n) {
+                i = encodeASCII(s, 0, buf.array(), buf.arrayOffset() + start, n);
+                buf.position(start + i);
+            }
+        }
+        else {
+            i = encodeASCII(s, buf, n);
+        }
+
+        for (; i < n; i++) {
+
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                buf.put((byte) c);
+            }
+            else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isSurrogate(c)) {
+
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+
+                    buf.put((byte) (0xF0 | (cp >> 18)));
+                    buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buf.put((byte) (0x80 | (cp & 0x3F)));
+                }
+                else {
+                    buf.put((byte) '?');
+                }
+            }
+            else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        return buf.position() - start;
+    }
+
+    /**
+     *  Copies n chars, starting at from, into the array a chunk at a time for as long as
+     *  each chunk turns out to be all ASCII.  The array must have room for all n.
+     *
+     * @return number of chars encoded - a chunk that wasn't all ASCII is left for the
+     *         caller to write over
+     */
+    private static int encodeASCII(String s, int from, byte[] a, int off, int n) {
+
+        int i = 0;
+
+        while (i < n) {
+
+            int end = Math.min(i + CHUNK, n);
+            int bits = 0;
+
+            for (int j = i; j < end; j++) {
+                char c = s.charAt(from + j);
+                a[off + j] = (byte) c;
+                bits |= c;
+            }
+
+            if (bits >= 0x80) {
+                break;
+            }
+
+            i = end;
+        }
+
+        return i;
+    }
+
+    /**
+     *  Encodes into a buffer with no array by way of the scratch array, for as long as the
+     *  string is ASCII
+     *
+     * @return number of chars encoded
+     */
+    private static int encodeASCII(String s, ByteBuffer buf, int n) {
+
+        byte[] scratch = new byte[Math.min(SCRATCH, n)];
+        int i = 0;
+
+        while (i < n) {
+
+            int m = Math.min(SCRATCH, n - i);
+            int ascii = encodeASCII(s, i, scratch, 0, m);
+
+            buf.put(scratch, 0, ascii);
+            i += ascii;
+
+            if (ascii < m) {
+                break;
+            }
+        }
+
+        return i;
+    }
+
+    /**
+     *  Decodes bytes from the buffer.  The buffer's position isn't moved.
+     *
+     * @param buf buffer holding the string
+     * @param start offset of the first byte
+     * @param len number of bytes
+     * @return decoded string
+     */
+    static String decode(ByteBuffer buf, int start, int len) {
+
+        if (buf.hasArray()) {
+            return decode(buf.array(), buf.arrayOffset() + start, len);
+        }
+
+        byte[] a = new byte[len];
+
+        ByteBuffer dup = buf.duplicate();
+        dup.position(start);
+        dup.get(a, 0, len);
+
+        return decode(a, 0, len);
+    }
+
+    /**
+     * @param a array holding the string
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @return decoded string
+     */
+    static String decode(byte[] a, int off, int len) {
+
+        int bits = 0;
+
+        for (int i = off, end = off + len; i < end; i++) {
+            bits |= a[i];
+        }
+
+        if (bits >= 0) {
+            return new String(a, off, len, LATIN1);     // all ASCII, which Latin-1 takes as is
+        }
+
+        return decodeUTF8(a, off, len);
+    }
+
+    private static String decodeUTF8(byte[] a, int off, int len) {
+
+        char[] chars = new char[len];                   // never more chars than bytes
+        int n = 0;
+        int i = off;
+        int end = off + len;
+
+        while (i < end) {
+
+            int b = a[i++];
+
+            if (b >= 0) {
+                chars[n++] = (char) b;
+                continue;
+            }
+
+            if ((b & 0xE0) == 0xC0 && i < end && isContinuation(a[i])) {
+
+                int c = ((b & 0x1F) << 6) | (a[i] & 0x3F);
+
+                if (c >= 0x80) {
+                    chars[n++] = (char) c;
+                    i++;
+                    continue;
+                }
+            }
+            else if ((b & 0xF0) == 0xE0 && i + 1 < end && isContinuation(a[i]) && isContinuation(a[i + 1])) {
+
+                int c = ((b & 0x0F) << 12) | ((a[i] & 0x3F) << 6) | (a[i + 1] & 0x3F);
+
+                if (c >= 0x800 && !Character.isSurrogate((char) c)) {
+                    chars[n++] = (char) c;
+                    i += 2;
+                    continue;
+                }
+            }
+            else if ((b & 0xF8) == 0xF0 && i + 2 < end
+                    && isContinuation(a[i]) && isContinuation(a[i + 1]) && isContinuation(a[i + 2])) {
+
+                int cp = ((b & 0x07) << 18) | ((a[i] & 0x3F) << 12) | ((a[i + 1] & 0x3F) << 6) | (a[i + 2] & 0x3F);
+
+                if (cp >= 0x10000 && cp <= Character.MAX_CODE_POINT) {
+                    chars[n++] = Character.highSurrogate(cp);
+                    chars[n++] = Character.lowSurrogate(cp);
+                    i += 3;
+                    continue;
+                }
+            }
+
+            return new String(a, off, len, UTF8);       // malformed - let String decide how many U+FFFDs
+        }
+
+        return new String(chars, 0, n);
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.AsyncDB;
+import org.mongodb.driver.ts.AsyncDBCollection;
+import org.mongodb.driver.ts.AsyncDBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.IndexInfo;
+import org.mongodb.driver.ts.MongoSelector;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the asynchronous API
+ */
+public class AsyncTest {
+
+    AsyncDB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception{
+        _db = new Mongo().getAsyncDB("org_mongo_driver_AsyncTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+    }
+
+    @Test
+    public void testInsertCount() throws Exception {
+
+        _db.dropCollection("count").get();
+
+        AsyncDBCollection c = _db.getCollection("count");
+
+        CompletableFuture<Boolean> last = null;
+
+        for (int i=0; i < 100; i++) {
+            last = c.insert(new Doc("i", i));
+        }
+
+        last.get();
+
+        assert(c.getCount().get() == 100);
+        assert(c.getCount(new MongoSelector("i", 10)).get() == 1);
+
+        c.remove(new MongoSelector("i", 10));
+        assert(c.getCount().get() == 99);
+        assert(_db.getCollectionNames().get().contains("count"));
+    }
+
+    @Test
+    public void testChained() throws Exception {
+
+        _db.dropCollection("chained").get();
+
+        final AsyncDBCollection c = _db.getCollection("chained");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < 1000; i++) {
+            sb.append('x');
+        }
+
+        Doc[] docs = new Doc[3000];
+
+        for (int i=0; i < docs.length; i++) {
+            docs[i] = new Doc("i", i);
+            docs[i].put("pad", sb.toString());
+        }
+
+        /*
+         *  more than fits in one message, and counted from the loop thread
+         */
+        assert(c.insert(docs).thenCompose(b -> c.getCount()).get() == 3000);
+
+        CompletableFuture<Integer> count = c.clear().thenApply(b -> 0);
+        for (int i=0; i < 10; i++) {
+            final int n = i;
+            count = count.thenCompose(b -> c.insert(new Doc("i", n))).thenCompose(b -> c.getCount());
+        }
+
+        assert(count.get() == 10);
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+
+        _db.dropCollection("batches").get();
+
+        AsyncDBCollection c = _db.getCollection("batches");
+
+        for (int i=0; i < 1000; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        AsyncDBCursor cursor = c.find().get();
+
+        int count = 0;
+        int batches = 0;
+
+        while (cursor.hasMore()) {
+            List<Doc> batch = cursor.nextBatch().get();
+            count += batch.size();
+            batches++;
+        }
+
+        assert(count == 1000);
+        assert(batches > 1);
+        assert(cursor.nextBatch().get().isEmpty());
+    }
+
+    @Test
+    public void testFindOneAndLimit() throws Exception {
+
+        _db.dropCollection("findone").get();
+
+        AsyncDBCollection c = _db.getCollection("findone");
+
+        for (int i=0; i < 300; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.findOne(new MongoSelector("i", 123)).get().getInt("i") == 123);
+        assert(c.findOne(new MongoSelector("i", 1000)).get() == null);
+
+        AsyncDBCursor cursor = c.find(new DBQuery(new MongoSelector(), null, 0, 150)).get();
+
+        int count = 0;
+        while (cursor.hasMore()) {
+            count += cursor.nextBatch().get().size();
+        }
+
+        assert(count == 150);
+
+        cursor = c.find().get();
+        assert(cursor.nextBatch().get().size() > 0);
+        cursor.close().get();
+        assert(!cursor.hasMore());
+    }
+
+    @Test
+    public void testIndexes() throws Exception {
+
+        _db.dropCollection("indexes").get();
+
+        AsyncDBCollection c = _db.getCollection("indexes");
+
+        c.insert(new Doc("a", 1));
+        c.createIndex(new IndexInfo("a_1", "a"));
+
+        List<IndexInfo> list = c.getIndexInformation().get();
+
+        assert(list.size() == 1);
+        assert(list.get(0).getIndexName().equals("a_1"));
+
+        c.dropIndexes().get();
+        assert(c.getIndexInformation().get().size() == 0);
+    }
+
+    @Test
+    public void testPublisher() throws Exception {
+
+        _db.dropCollection("publisher").get();
+
+        AsyncDBCollection c = _db.getCollection("publisher");
+
+        for (int i=0; i < 1000; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount().get() == 1000);
+
+        CountingSubscriber all = new CountingSubscriber(7, Long.MAX_VALUE);
+        c.publish(new DBQuery(), 50).subscribe(all);
+
+        assert(all._finished.await(10, TimeUnit.SECONDS));
+        assert(all._count == 1000);
+        assert(all._completed);
+        assert(!all._onLoop);
+
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+
+        try {
+            CountingSubscriber executed = new CountingSubscriber(7, Long.MAX_VALUE);
+            c.publish(new DBQuery(), 50, exec).subscribe(executed);
+
+            assert(executed._finished.await(10, TimeUnit.SECONDS));
+            assert(executed._count == 1000);
+            assert(!executed._onLoop);
+        }
+        finally {
+            exec.shutdown();
+        }
+
+        CountingSubscriber limited = new CountingSubscriber(10, Long.MAX_VALUE);
+        c.publish(new DBQuery(new MongoSelector(), null, 0, 25)).subscribe(limited);
+
+        assert(limited._finished.await(10, TimeUnit.SECONDS));
+        assert(limited._count == 25);
+
+        CountingSubscriber cancelled = new CountingSubscriber(10, 15);
+        c.publish(new DBQuery()).subscribe(cancelled);
+
+        assert(cancelled._finished.await(10, TimeUnit.SECONDS));
+        assert(cancelled._count == 15);
+        assert(!cancelled._completed);
+    }
+
+    /**
+     *  Requests a fixed number at a time, and cancels after a given count
+     */
+    static class CountingSubscriber implements Flow.Subscriber<Doc> {
+
+        final int _chunk;
+        final long _cancelAfter;
+        final CountDownLatch _finished = new CountDownLatch(1);
+
+        Flow.Subscription _subscription;
+        volatile int _count = 0;
+        volatile long _outstanding = 0;
+        volatile boolean _completed = false;
+        volatile boolean _onLoop = false;
+
+        CountingSubscriber(int chunk, long cancelAfter) {
+            _chunk = chunk;
+            _cancelAfter = cancelAfter;
+        }
+
+        public void onSubscribe(Flow.Subscription s) {
+            _subscription = s;
+            _outstanding = _chunk;
+            s.request(_chunk);
+        }
+
+        public void onNext(Doc d) {
+
+            if (Thread.currentThread().getName().startsWith("mongo-io-")) {
+                _onLoop = true;
+            }
+
+            _count++;
+            _outstanding--;
+
+            if (_count == _cancelAfter) {
+                _subscription.cancel();
+                _finished.countDown();
+                return;
+            }
+
+            if (_outstanding == 0) {
+                _outstanding = _chunk;
+                _subscription.request(_chunk);
+            }
+        }
+
+        public void onError(Throwable t) {
+            t.printStackTrace();
+            _finished.countDown();
+        }
+
+        public void onComplete() {
+            _completed = true;
+            _finished.countDown();
+        }
+    }
+}
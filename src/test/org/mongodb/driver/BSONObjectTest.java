@@ -149,6 +149,43 @@ public class BSONObjectTest {
     }
 
 
+    @Test
+    public void testDeserializeInPlace() throws Exception {
+
+        Doc inner = new Doc();
+        inner.put("name", "geir");
+        inner.put("list", new Object[] {"a", 1});
+
+        Doc md = new Doc();
+        md.put("i", 1);
+        md.put("doc", inner);
+
+        BSONObject bo = new BSONObject();
+        bo.serialize(md);
+        byte[] bytes = bo.toArray();
+
+        /*
+         *  two docs back to back, after some junk, in a direct buffer
+         */
+        ByteBuffer buf = ByteBuffer.allocateDirect(3 + bytes.length * 2);
+        buf.put(new byte[] {1, 2, 3});
+        buf.put(bytes);
+        buf.put(bytes);
+        buf.flip();
+        buf.position(3);
+
+        for (int i = 0; i < 2; i++) {
+            Doc out = BSONObject.deserializeObjectData(buf);
+
+            assert(out.getInt("i") == 1);
+            assert("geir".equals(((Doc) out.get("doc")).get("name")));
+            assert(((List) ((Doc) out.get("doc")).get("list")).size() == 2);
+            assert(buf.position() == 3 + bytes.length * (i + 1));
+        }
+
+        assert(!buf.hasRemaining());
+    }
+
     @Test
     public void testNumberEncoding() throws Exception {
 
@@ -529,5 +566,297 @@ public class BSONObjectTest {
 
     }
 
+    @Test
+    public void testDeepNesting() throws Exception {
+
+        Doc md = new Doc("depth", 0);
+        Doc d = md;
+
+        for (int i = 1; i < 200; i++) {
+            Doc inner = new Doc("depth", i);
+            List<Object> l = new ArrayList<Object>();
+            l.add(inner);
+            l.add("s" + i);
+            d.put("list", l);
+            d = inner;
+        }
+
+        BSONObject bo = new BSONObject();
+        bo.serialize(md);
+        byte[] bytes = bo.toArray();
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        Doc out = BSONObject.deserializeObjectData(buf);
+
+        assert(!buf.hasRemaining());
+
+        for (int i = 0; i < 200; i++) {
+            assert(out.getInt("depth") == i);
+
+            if (i < 199) {
+                List l = (List) out.get("list");
+                assert(("s" + (i + 1)).equals(l.get(1)));
+                out = (Doc) l.get(0);
+            }
+        }
+        assert(out.get("list") == null);
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+
+        Doc inner = new Doc("name", "geir");
+        Doc md = new Doc("doc", inner);
+        md.put("i", 1);
 
+        BSONObject bo = new BSONObject();
+        bo.serialize(md);
+        byte[] bytes = bo.toArray();
+
+        /*
+         *  cut short, and an inner size that runs past the outer doc
+         */
+        try {
+            BSONObject.deserializeObjectData(ByteBuffer.wrap(bytes, 0, bytes.length - 3));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+
+        byte[] bad = bytes.clone();
+        bad[4 + 1 + 4] += 20;           // inner doc's size, after the type byte and "doc"
+
+        try {
+            BSONObject.deserializeObjectData(ByteBuffer.wrap(bad));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+
+        assert(BSONObject.deserializeObjectData(ByteBuffer.wrap(bytes)).getInt("i") == 1);
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+
+        List<Object> ints = new ArrayList<Object>();
+        List<Object> doubles = new ArrayList<Object>();
+        List<Object> mixed = new ArrayList<Object>();
+
+        for (int i = 0; i < 1500; i++) {
+            ints.add(i * 7);
+            doubles.add(i / 4.0);
+            mixed.add(i);
+        }
+        mixed.add("end");
+
+        Doc md = new Doc();
+        md.put("ints", ints);
+        md.put("doubles", doubles);
+        md.put("mixed", mixed);
+        md.put("empty", new ArrayList<Object>());
+        md.put("docs", new Object[] {new Doc("a", 1), null, "x"});
+
+        BSONObject bo = new BSONObject();
+        bo.serialize(md);
+        byte[] bytes = bo.toArray();
+
+        /*
+         *  as lists by default
+         */
+        Doc out = BSONObject.deserializeObjectData(ByteBuffer.wrap(bytes));
+
+        assert(out.get("ints").equals(ints));
+        assert(out.get("doubles").equals(doubles));
+        assert(out.get("mixed").equals(mixed));
+        assert(((List) out.get("empty")).isEmpty());
+
+        List docs = (List) out.get("docs");
+        assert(docs.size() == 3);
+        assert(((Doc) docs.get(0)).getInt("a") == 1);
+        assert(docs.get(1) == null);
+        assert("x".equals(docs.get(2)));
+
+        /*
+         *  and as primitive arrays when asked, unless they're mixed
+         */
+        out = BSONObject.deserializeObjectData(ByteBuffer.wrap(bytes), true);
+
+        int[] ia = (int[]) out.get("ints");
+        double[] da = (double[]) out.get("doubles");
+
+        assert(ia.length == 1500 && da.length == 1500);
+
+        for (int i = 0; i < 1500; i++) {
+            assert(ia[i] == i * 7);
+            assert(da[i] == i / 4.0);
+        }
+
+        assert(out.get("mixed").equals(mixed));
+        assert(((List) out.get("empty")).isEmpty());
+
+        /*
+         *  which go back out as arrays
+         */
+        bo = new BSONObject();
+        bo.serialize(out);
+
+        out = bo.deserialize();
+
+        assert(out.get("ints").equals(ints));
+        assert(out.get("doubles").equals(doubles));
+    }
+
+    @Test
+    public void testKeyInterning() throws Exception {
+
+        StringBuilder sb = new StringBuilder("long_");
+
+        while (sb.length() < 100) {
+            sb.append("key_");
+        }
+        String longKey = sb.toString();
+
+        Doc md = new Doc();
+        md.put("name", "geir");
+        md.put("stra\u00dfe_\u540d\u524d", 1);
+        md.put(longKey, 2);
+
+        BSONObject bo = new BSONObject();
+        bo.serialize(md);
+        byte[] bytes = bo.toArray();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+
+        Doc d1 = BSONObject.deserializeObjectData(ByteBuffer.wrap(bytes));
+        Doc d2 = BSONObject.deserializeObjectData(direct);
+
+        assert(d1.equals(md) && d2.equals(md));
+
+        /*
+         *  the same key instances from heap and direct buffers, bar the one too long to cache
+         */
+        List<String> k1 = new ArrayList<String>(d1.keySet());
+        List<String> k2 = new ArrayList<String>(d2.keySet());
+
+        assert(k1.get(0) == k2.get(0));
+        assert(k1.get(1) == k2.get(1));
+        assert(k1.get(2).equals(longKey));
+        assert(k1.get(2) != k2.get(2));
+
+        /*
+         *  an unterminated name
+         */
+        try {
+            BSONObject.deserializeCSTR(ByteBuffer.wrap(new byte[] {'a', 'b'}));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUTF8() throws Exception {
+
+        StringBuilder longer = new StringBuilder();
+
+        for (int i = 0; i < 40; i++) {
+            longer.append((char) ('a' + i % 26));
+        }
+        longer.append("\u00e9\u540d");
+        longer.append("tail after the wide chars");
+
+        /*
+         *  more than one scratch array's worth each side of the wide char
+         */
+        StringBuilder longest = new StringBuilder();
+
+        for (int i = 0; i < 600; i++) {
+            longest.append((char) ('a' + i % 26));
+            if (i == 300) {
+                longest.append("\u540d");
+            }
+        }
+
+        String[] values = {
+                "", "plain ascii", "stra\u00dfe", "\u540d\u524d", "\ud83d\ude00 emoji", longer.toString(), longest.toString(),
+                "lone \ud83d high", "lone \ude00 low", "\u007f\u0080\u07ff\u0800\uffff"
+        };
+
+        for (String v : values) {
+
+            byte[] expected = v.getBytes("UTF-8");
+
+            for (ByteBuffer buf : new ByteBuffer[] {ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024)}) {
+
+                int n = BSONObject.serializeCSTR(buf, v);
+
+                assert(n == expected.length + 1) : v;
+
+                buf.flip();
+
+                for (byte b : expected) {
+                    assert(buf.get() == b) : v;
+                }
+
+                buf.rewind();
+
+                assert(BSONObject.deserializeCSTR(buf).equals(new String(expected, "UTF-8"))) : v;
+                assert(!buf.hasRemaining());
+            }
+
+            Doc md = new Doc("s", v);
+            BSONObject bo = new BSONObject();
+            bo.serialize(md);
+
+            assert(bo.deserialize().get("s").equals(new String(expected, "UTF-8"))) : v;
+        }
+
+        /*
+         *  a full buffer's still an overflow
+         */
+        try {
+            BSONObject.serializeCSTR(ByteBuffer.allocate(4), "\u540d\u524d");
+            assert(false);
+        }
+        catch (java.nio.BufferOverflowException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMalformedUTF8() throws Exception {
+
+        /*
+         *  truncated, overlong, surrogate, stray continuation and out of range sequences
+         *  decode to the same U+FFFDs String gives them
+         */
+        byte[][] values = {
+                {(byte) 0xE2, (byte) 0x82, 'A'},
+                {(byte) 0xC0, (byte) 0x80},
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80, 'z'},
+                {'a', (byte) 0x80, (byte) 0xBF, 'b'},
+                {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xF0, (byte) 0x9F, (byte) 0x98},
+                {(byte) 0xC3, (byte) 0xA9, (byte) 0xFF}
+        };
+
+        for (byte[] v : values) {
+
+            String expected = new String(v, "UTF-8");
+
+            for (ByteBuffer buf : new ByteBuffer[] {ByteBuffer.allocate(16), ByteBuffer.allocateDirect(16)}) {
+
+                buf.put(v).put((byte) 0).flip();
+
+                assert(BSONObject.deserializeCSTR(buf).equals(expected)) : expected;
+                assert(!buf.hasRemaining());
+            }
+        }
+    }
 }
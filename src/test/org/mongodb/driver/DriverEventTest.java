@@ -0,0 +1,271 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.impl.msg.MessageType;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.DBCursor;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.DBOptions;
+import org.mongodb.driver.ts.options.WriteConcern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that listeners hear of every operation sent to the server
+ */
+public class DriverEventTest {
+
+    StandInServer _server;
+    Mongo _mongo;
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer();
+        _mongo = new Mongo("127.0.0.1", _server.getPort());
+        _db = _mongo.getDB("org_mongo_driver_DriverEventTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+        _server.close();
+    }
+
+    /**
+     *  collects events, and lets the test wait for the dispatcher to catch up
+     */
+    static class Recorder implements DriverEventListener {
+
+        final List<DriverEvent> _events = new ArrayList<DriverEvent>();
+
+        public synchronized void started(DriverEvent e) {
+            _events.add(e);
+            notifyAll();
+        }
+
+        public synchronized void succeeded(DriverEvent e) {
+            _events.add(e);
+            notifyAll();
+        }
+
+        public synchronized void failed(DriverEvent e) {
+            _events.add(e);
+            notifyAll();
+        }
+
+        synchronized List<DriverEvent> await(DriverEvent.Kind kind, MessageType op, int n) throws InterruptedException {
+
+            long end = System.currentTimeMillis() + 10000;
+
+            while (true) {
+                List<DriverEvent> found = new ArrayList<DriverEvent>();
+
+                for (DriverEvent e : _events) {
+                    if (e.getKind() == kind && e.getOperation() == op) {
+                        found.add(e);
+                    }
+                }
+
+                long wait = end - System.currentTimeMillis();
+
+                if (found.size() >= n || wait <= 0) {
+                    return found;
+                }
+                wait(wait);
+            }
+        }
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+
+        Recorder r = new Recorder();
+        _mongo.addEventListener(r);
+
+        try {
+            DBCollection c = _db.getCollection("test");
+
+            for (int i = 0; i < 250; i++) {
+                c.insert(new Doc("i", i));
+            }
+
+            DBCursor cur = c.find();
+            cur.setBatchSize(100);
+
+            int n = 0;
+
+            for (Doc d : cur) {
+                n++;
+            }
+            assert(n == 250);
+
+            String ns = "org_mongo_driver_DriverEventTest.test";
+
+            List<DriverEvent> inserts = r.await(DriverEvent.Kind.SUCCEEDED, MessageType.OP_INSERT, 250);
+            assert(inserts.size() == 250);
+
+            for (DriverEvent e : inserts) {
+                assert(ns.equals(e.getNamespace()));
+                assert(e.getRequestSize() > 16);
+                assert(e.getReplySize() == 0);
+                assert(e.getElapsedNanos() >= 0);
+                assert(e.getFailure() == null);
+            }
+
+            /*
+             *  each success matches its start, and the query and getMores bring back the lot
+             */
+            Map<Integer, DriverEvent> started = new HashMap<Integer, DriverEvent>();
+
+            for (DriverEvent e : r.await(DriverEvent.Kind.STARTED, MessageType.OP_GET_MORE, 2)) {
+                started.put(e.getRequestID(), e);
+            }
+            for (DriverEvent e : r.await(DriverEvent.Kind.STARTED, MessageType.OP_QUERY, 1)) {
+                if (ns.equals(e.getNamespace())) {
+                    started.put(e.getRequestID(), e);
+                }
+            }
+
+            int docs = 0;
+
+            List<DriverEvent> done = new ArrayList<DriverEvent>(r.await(DriverEvent.Kind.SUCCEEDED, MessageType.OP_GET_MORE, 2));
+            done.addAll(r.await(DriverEvent.Kind.SUCCEEDED, MessageType.OP_QUERY, 1));
+
+            for (DriverEvent e : done) {
+                if (!ns.equals(e.getNamespace())) {
+                    continue;
+                }
+
+                DriverEvent s = started.get(e.getRequestID());
+                assert(s != null);
+                assert(s.getRequestSize() == e.getRequestSize());
+                assert(e.getReplySize() > 16);
+                docs += e.getDocumentsReturned();
+            }
+            assert(docs == 250) : docs;
+        }
+        finally {
+            _mongo.removeEventListener(r);
+        }
+
+        /*
+         *  nothing's heard once the listener is gone
+         */
+        Thread.sleep(100);
+
+        int before;
+
+        synchronized (r) {
+            before = r._events.size();
+        }
+
+        _db.getCollection("test").insert(new Doc("i", -1));
+        assert(_db.getCollection("test").getCount() == 251);
+
+        Thread.sleep(100);
+
+        synchronized (r) {
+            assert(r._events.size() == before);
+        }
+        assert(_mongo.getDroppedEventCount() == 0);
+    }
+
+    @Test
+    public void testCoalescedEvents() throws Exception {
+
+        Recorder r = new Recorder();
+        _mongo.addEventListener(r);
+
+        _db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.batch(10)).setFlushInterval(60000));
+
+        try {
+            DBCollection c = _db.getCollection("coalesced");
+
+            /*
+             *  buffered writes have started, but haven't succeeded until the batch is answered
+             */
+            for (int i = 0; i < 5; i++) {
+                c.insert(new Doc("_id", i));
+            }
+
+            assert(r.await(DriverEvent.Kind.STARTED, MessageType.OP_INSERT, 5).size() == 5);
+
+            Thread.sleep(100);
+
+            synchronized (r) {
+                for (DriverEvent e : r._events) {
+                    assert(e.getOperation() != MessageType.OP_INSERT || e.getKind() == DriverEvent.Kind.STARTED);
+                }
+            }
+
+            _db.flush();
+
+            assert(r.await(DriverEvent.Kind.SUCCEEDED, MessageType.OP_INSERT, 5).size() == 5);
+
+            /*
+             *  an error for the batch fails all of its writes
+             */
+            c.insert(new Doc("_id", 100));
+            c.insert(new Doc("_id", 3));
+
+            try {
+                _db.flush();
+                assert(false);
+            }
+            catch (MongoDBWriteException e) {
+                // expected
+            }
+
+            List<DriverEvent> failed = r.await(DriverEvent.Kind.FAILED, MessageType.OP_INSERT, 2);
+
+            assert(failed.size() == 2);
+
+            for (DriverEvent e : failed) {
+                assert(e.getFailure() instanceof MongoDBWriteException);
+            }
+
+            synchronized (r) {
+                int succeeded = 0;
+
+                for (DriverEvent e : r._events) {
+                    if (e.getOperation() == MessageType.OP_INSERT && e.getKind() == DriverEvent.Kind.SUCCEEDED) {
+                        succeeded++;
+                    }
+                }
+                assert(succeeded == 5);
+            }
+        }
+        finally {
+            _db.resetDBOptions();
+            _mongo.removeEventListener(r);
+        }
+    }
+}
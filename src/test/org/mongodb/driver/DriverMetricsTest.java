@@ -0,0 +1,140 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.DBCursor;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.util.LatencyHistogram;
+
+/**
+ * Tests the latency histograms, and that the driver records its operations into them
+ */
+public class DriverMetricsTest {
+
+    StandInServer _server;
+    Mongo _mongo;
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer();
+        _mongo = new Mongo("127.0.0.1", _server.getPort());
+        _db = _mongo.getDB("org_mongo_driver_DriverMetricsTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+        _server.close();
+    }
+
+    @Test
+    public void testHistogram() {
+
+        LatencyHistogram h = new LatencyHistogram();
+
+        for (int i = 1; i <= 100000; i++) {
+            h.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot s = h.snapshot();
+
+        assert(s.getCount() == 100000);
+        assert(s.getMax() == 100000000L);
+        assert(Math.abs(s.getMean() - 50000500.0) < 1);
+
+        assertClose(s.getValueAtPercentile(50), 50000000L);
+        assertClose(s.getValueAtPercentile(99), 99000000L);
+        assertClose(s.getValueAtPercentile(99.9), 99900000L);
+        assert(s.getValueAtPercentile(100) == 100000000L);
+
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assert(h.snapshot().getMax() == LatencyHistogram.MAX_VALUE);
+
+        assert(h.snapshotAndReset().getCount() == 100002);
+        assert(h.snapshot().getCount() == 0);
+        assert(h.snapshot().getValueAtPercentile(99) == 0);
+    }
+
+    /**
+     *  within the histogram's precision of 1/32
+     */
+    private static void assertClose(long actual, long expected) {
+        assert(Math.abs(actual - expected) <= expected / 32) : actual + " vs " + expected;
+    }
+
+    @Test
+    public void testRecording() throws MongoDBException {
+
+        DriverMetrics metrics = _mongo.getMetrics();
+        metrics.reset();
+
+        DBCollection c = _db.getCollection("test");
+
+        for (int i = 0; i < 300; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.findOne(new MongoSelector("i", 7)) != null);
+        assert(c.getCount() == 300);
+
+        DBCursor cur = c.find();
+        cur.setBatchSize(100);
+
+        int n = 0;
+
+        for (Doc d : cur) {
+            n++;
+        }
+        assert(n == 300);
+
+        c.remove(new MongoSelector("i", 1));
+
+        DriverMetrics.Snapshot s = metrics.snapshot();
+
+        String ns = "org_mongo_driver_DriverMetricsTest.test";
+
+        assert(s.getCount(DriverMetrics.Operation.INSERT) == 300);
+        assert(s.getCount(DriverMetrics.Operation.QUERY) >= 2);
+        assert(s.getCount(DriverMetrics.Operation.GET_MORE) >= 2);
+        assert(s.getCount(DriverMetrics.Operation.REMOVE) == 1);
+        assert(s.getCount(DriverMetrics.Operation.COMMAND) >= 1);
+
+        assert(s.getNamespaces().contains(ns));
+        assert(s.getLatency(ns, DriverMetrics.Operation.INSERT).getCount() == 300);
+        assert(s.getLatency(ns, DriverMetrics.Operation.QUERY).getCount() == 2);
+        assert(s.getLatency(ns, DriverMetrics.Operation.QUERY).getValueAtPercentile(99) > 0);
+        assert(s.getThroughput(DriverMetrics.Operation.INSERT) > 0);
+
+        metrics.setEnabled(false);
+        c.insert(new Doc("i", -1));
+        metrics.setEnabled(true);
+
+        assert(metrics.snapshotAndReset().getCount(DriverMetrics.Operation.INSERT) == 300);
+        assert(metrics.snapshot().getCount(DriverMetrics.Operation.INSERT) == 0);
+    }
+}
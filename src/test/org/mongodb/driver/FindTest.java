@@ -27,7 +27,9 @@ import org.mongodb.driver.ts.DB;
 import org.mongodb.driver.ts.DBCollection;
 import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.DBCursor;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.options.MongoOptions;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -158,4 +160,56 @@ public class FindTest extends TestBase {
         assert(cursorCount(testColl.find("this.a > 5")) == 4);
     }
 
+    @Test
+    public void testPrimitiveArrays() throws Exception {
+
+        findPrimitiveArrays(new Mongo(), "pinned");
+        findPrimitiveArrays(new Mongo("127.0.0.1", Mongo.DEFAULT_MONGO_PORT,
+                new MongoOptions().setMultiplexedConnections(2)), "multiplexed");
+    }
+
+    private void findPrimitiveArrays(Mongo m, String name) throws Exception {
+
+        DB db = m.getDB("org_mongo_driver_FindTest");
+
+        try {
+            DBCollection c = db.getCollection(name);
+            c.clear();
+
+            for (int i = 0; i < 50; i++) {
+                Doc d = new Doc("_id", i);
+                d.put("ints", new int[] {i, i + 1, i + 2});
+                d.put("doubles", new double[] {i / 2.0, i / 4.0});
+                c.insert(d);
+            }
+
+            /*
+             *  the first batch and every getmore after it
+             */
+            DBQuery q = new DBQuery(new MongoSelector());
+            q.setOrderBy(new MongoSelector("_id", 1));
+            q.setBatchSize(20);
+            q.setPrimitiveArrays(true);
+
+            DBCursor cur = c.find(q);
+            int n = 0;
+
+            for (Doc d : cur) {
+                int[] ia = (int[]) d.get("ints");
+                double[] da = (double[]) d.get("doubles");
+
+                assert(ia.length == 3 && ia[2] == n + 2);
+                assert(da.length == 2 && da[1] == n / 4.0);
+                n++;
+            }
+
+            assert(n == 50);
+
+            assert(!(c.findOne(new MongoSelector("_id", 1)).get("ints") instanceof int[]));
+        }
+        finally {
+            db.close();
+        }
+    }
+
 }
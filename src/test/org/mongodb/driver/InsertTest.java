@@ -26,9 +26,15 @@ import org.mongodb.driver.ts.DB;
 import org.mongodb.driver.ts.DBCollection;
 import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.BulkInsertResult;
+import org.mongodb.driver.util.JSPKInjector;
+import org.mongodb.driver.ts.options.DBOptions;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class InsertTest {
 
@@ -64,6 +70,26 @@ public class InsertTest {
         assert(testColl.getCount(ms) == 1);
     }
 
+    @Test
+    void testInsertLargeBatch() throws MongoDBException {
+        DBCollection testColl = _db.getCollection("largebatch");
+
+        testColl.clear();
+
+        /*
+         *  well past the old 150k message buffer
+         */
+        Doc[] objs = new Doc[5000];
+
+        for (int i = 0; i < objs.length; i++) {
+            objs[i] = new Doc("a", i).add("name", "asasdaspoaspdoiaspdoaisdpoasidpaosidaposdiapsodiaposdiaposdias");
+        }
+
+        testColl.insert(objs);
+
+        assert(testColl.getCount() == objs.length);
+    }
+
     @Test
     void testInsertMulti() throws MongoDBException {
         DBCollection testColl = _db.getCollection("multi");
@@ -162,4 +188,126 @@ public class InsertTest {
         assert(testColl.getCount(ms) == 1);
     }
 
+    @Test
+    void testCoalescedInserts() throws Exception {
+
+        DB db = new Mongo().getDB("org_mongo_driver_InsertTest");
+        db.setDBOptions(new DBOptions().setWriteCoalescing(true).setFlushInterval(5000));
+
+        DBCollection testColl = db.getCollection("coalesced");
+        testColl.clear();
+        db.flush();
+
+        for (int i=0; i < 10; i++) {
+            testColl.insert(new Doc("a", i));
+        }
+
+        // still in the buffer, so not seen from another connection
+
+        assert(_db.getCollection("coalesced").getCount() == 0);
+
+        // queries flush first
+
+        assert(testColl.getCount() == 10);
+
+        for (int i=0; i < 10000; i++) {
+            testColl.insert(new Doc("a", i));
+        }
+
+        db.flush();
+
+        assert(testColl.getCount() == 10010);
+        assert(testColl.getCount(new MongoSelector("a", 9999)) == 1);
+
+        // and the timer sends what's left
+
+        db.setDBOptions(new DBOptions().setWriteCoalescing(true).setFlushInterval(5));
+
+        testColl.insert(new Doc("a", -1));
+
+        Thread.sleep(500);
+
+        assert(_db.getCollection("coalesced").getCount() == 10011);
+
+        db.close();
+    }
+
+    @Test
+    void testBulkInsert() throws MongoDBException {
+        DBCollection testColl = _db.getCollection("bulk");
+        testColl.clear();
+
+        Doc[] docs = new Doc[50000];
+
+        for (int i=0; i < docs.length; i++) {
+            docs[i] = new Doc("a", i).add("name", "asdasdasda0da-0asd-0asd-a0sd-0as-da0s-as-d0koaspdoakspoda-09a-s0da-s0da-s0das");
+        }
+
+        BulkInsertResult result = testColl.bulkInsert(docs);
+
+        assert(result.getDocumentCount() == docs.length);
+        assert(result.getMessageCount() > 1);
+        assert(result.getByteCount() > docs.length * 100);
+
+        assert(testColl.getCount() == docs.length);
+        assert(testColl.getCount(new MongoSelector("a", 0)) == 1);
+        assert(testColl.getCount(new MongoSelector("a", 49999)) == 1);
+
+        assert(testColl.bulkInsert(new Doc[0]).getDocumentCount() == 0);
+    }
+
+    @Test
+    void testBulkLoader() throws Exception {
+        DBCollection testColl = _db.getCollection("loader");
+        testColl.clear();
+        testColl.setPKInjector(new JSPKInjector());
+
+        final int n = 100000;
+
+        Stream<Doc> docs = IntStream.range(0, n).mapToObj(i -> new Doc("a", i).add("name", "asdasdasda0da-0asd-0asd-a0sd-0as-da0s"));
+
+        BulkInsertResult result = testColl.getBulkLoader().setWriters(3).setMaxPendingBatches(4).load(docs);
+
+        assert(result.getDocumentCount() == n);
+        assert(result.getMessageCount() > 1);
+
+        // the writers had connections of their own, so give the db a moment to catch up
+
+        for (int i = 0; i < 50 && testColl.getCount() < n; i++) {
+            Thread.sleep(100);
+        }
+
+        assert(testColl.getCount() == n);
+        assert(testColl.findOne(new MongoSelector("a", n - 1)).get("_id") != null);
+
+        testColl.setPKInjector(null);
+    }
+
+    @Test
+    void testBulkLoaderFailure() throws Exception {
+        DBCollection testColl = _db.getCollection("loader_fail");
+
+        Iterator<Doc> docs = new Iterator<Doc>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Doc next() {
+                if (++i > 5000) {
+                    throw new IllegalStateException("source failed");
+                }
+                return new Doc("a", i);
+            }
+        };
+
+        try {
+            testColl.getBulkLoader().load(docs);
+            assert(false);
+        }
+        catch (IllegalStateException e) {
+            assert(e.getMessage().equals("source failed"));
+        }
+    }
 }
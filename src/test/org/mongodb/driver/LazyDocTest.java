@@ -0,0 +1,243 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.DBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.MongoOptions;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.LazyDoc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests docs that decode their fields as they're used, alone and from cursors
+ */
+public class LazyDocTest {
+
+    StandInServer _server;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer();
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _server.close();
+    }
+
+    private static Doc sample(int i) {
+
+        Doc d = new Doc();
+        d.put("_id", i);
+        d.put("name", "n" + i);
+        d.put("inner", new Doc("a", i).add("b", new Doc("c", "deep")));
+        d.put("list", Arrays.asList((Object) 1, "two", 3.0));
+        d.put("score", i / 2.0);
+
+        return d;
+    }
+
+    private static byte[] encode(Doc d) throws MongoDBException {
+
+        BSONObject bo = new BSONObject();
+        bo.serialize(d);
+
+        return bo.toArray();
+    }
+
+    @Test
+    public void testFields() throws Exception {
+
+        Doc expected = sample(7);
+        LazyDoc d = new LazyDoc(encode(expected));
+
+        assert(d.isPristine());
+
+        assert(d.containsKey("score"));
+        assert(!d.containsKey("nope"));
+        assert(d.get("nope") == null);
+        assert(d.isPristine());
+
+        assert("n7".equals(d.get("name")));
+        assert(!d.isPristine());
+
+        Doc inner = d.getDoc("inner");
+        assert(inner instanceof LazyDoc);
+        assert("deep".equals(inner.getDoc("b").get("c")));
+        assert(d.get("inner") == inner);
+
+        /*
+         *  the whole doc comes out in order, keeping what was handed out
+         */
+        assert(d.size() == 5);
+        assert(new ArrayList<String>(d.keySet()).equals(Arrays.asList("_id", "name", "inner", "list", "score")));
+        assert(d.get("inner") == inner);
+        assert(d.equals(expected) && expected.equals(d));
+        assert(d.hashCode() == expected.hashCode());
+
+        d.put("name", "changed");
+        d.remove("score");
+
+        assert(BSONObject.deserializeObjectData(ByteBuffer.wrap(encode(d))).equals(d));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+
+        final LazyDoc d = new LazyDoc(encode(sample(5)));
+        final boolean[] ok = new boolean[4];
+
+        Thread[] threads = new Thread[ok.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    boolean good = true;
+
+                    for (int j = 0; j < 10000; j++) {
+                        good &= d.containsKey("score") && d.containsKey("list") && !d.containsKey("nope");
+                    }
+                    ok[n] = good;
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (boolean b : ok) {
+            assert(b);
+        }
+
+        assert(d.isPristine());
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+
+        byte[] bytes = encode(sample(3));
+
+        /*
+         *  untouched, it goes back out as it came in - read, it's encoded from the map
+         */
+        Doc outer = new Doc("doc", new LazyDoc(bytes));
+        Doc back = BSONObject.deserializeObjectData(ByteBuffer.wrap(encode(outer)));
+
+        assert(back.getDoc("doc").equals(sample(3)));
+
+        LazyDoc d = new LazyDoc(bytes);
+        d.put("extra", 1);
+
+        Doc expected = sample(3);
+        expected.put("extra", 1);
+
+        assert(BSONObject.deserializeObjectData(ByteBuffer.wrap(encode(d))).equals(expected));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+
+        byte[] bytes = encode(new Doc("s", "string").add("i", 1));
+
+        bytes[4 + 1 + 2] = 100;     // the string's length
+
+        LazyDoc d = new LazyDoc(bytes);
+
+        try {
+            d.get("i");
+            assert(false);
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            new LazyDoc(Arrays.copyOf(bytes, bytes.length - 1));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+
+        readLazily(new Mongo("127.0.0.1", _server.getPort()), "pinned");
+        readLazily(new Mongo("127.0.0.1", _server.getPort(), new MongoOptions().setMultiplexedConnections(2)), "multiplexed");
+    }
+
+    private void readLazily(Mongo m, String name) throws Exception {
+
+        DB db = m.getDB("org_mongo_driver_LazyDocTest");
+
+        try {
+            DBCollection c = db.getCollection(name);
+            c.clear();
+
+            for (int i = 0; i < 250; i++) {
+                c.insert(sample(i));
+            }
+
+            DBQuery q = new DBQuery(new MongoSelector());
+            q.setLazy(true);
+            q.setBatchSize(100);
+            q.setPrefetch(50);
+
+            DBCursor cur = c.find(q);
+            List<Doc> docs = new ArrayList<Doc>();
+
+            for (Doc d : cur) {
+                assert(d instanceof LazyDoc);
+                docs.add(d);
+            }
+
+            assert(docs.size() == 250);
+
+            for (int i = 0; i < 250; i++) {
+                Doc d = docs.get(i);
+                assert(d.getInt("_id") == i);
+                assert(d.equals(sample(i)));
+            }
+
+            assert(!(c.findOne(new MongoSelector("_id", 1)) instanceof LazyDoc));
+        }
+        finally {
+            db.close();
+        }
+    }
+}
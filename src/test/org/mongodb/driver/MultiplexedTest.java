@@ -0,0 +1,153 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.DBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.MongoOptions;
+
+/**
+ * Tests the driver over a multiplexed connection
+ */
+public class MultiplexedTest extends TestBase {
+
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception{
+        Mongo m = new Mongo("127.0.0.1", Mongo.DEFAULT_MONGO_PORT, new MongoOptions().setMultiplexedConnections(2));
+        _db = m.getDB("org_mongo_driver_MultiplexedTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+    }
+
+    @Test
+    public void testInsertFind() throws MongoDBException {
+
+        _db.dropCollection("test");
+
+        DBCollection c = _db.getCollection("test");
+
+        for (int i=0; i < 500; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == 500);
+        assert(cursorCount(c.find()) == 500);
+        assert(c.findOne(new MongoSelector("i", 250)).getInt("i") == 250);
+    }
+
+    @Test
+    public void testConcurrentCursors() throws Exception {
+
+        _db.dropCollection("concurrent");
+
+        final DBCollection c = _db.getCollection("concurrent");
+
+        for (int i=0; i < 1000; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == 1000);
+
+        final int[] counts = new int[8];
+        Thread[] threads = new Thread[counts.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        counts[n] = cursorCount(c.find());
+                    }
+                    catch (MongoDBException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (int count : counts) {
+            assert(count == 1000);
+        }
+    }
+
+    @Test
+    public void testEarlyClose() throws MongoDBException {
+
+        _db.dropCollection("close");
+
+        DBCollection c = _db.getCollection("close");
+
+        for (int i=0; i < 300; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        DBCursor cursor = c.find();
+        assert(cursor.getNextObject() != null);
+        cursor.close();
+
+        assert(c.getCount() == 300);
+    }
+
+    @Test
+    public void testPrefetch() throws MongoDBException {
+
+        _db.dropCollection("prefetch");
+
+        DBCollection c = _db.getCollection("prefetch");
+
+        for (int i=0; i < 500; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == 500);
+
+        DBQuery q = new DBQuery();
+        q.setOrderBy(new MongoSelector("i", 1));
+        q.setBatchSize(30);
+        q.setPrefetch(10);
+
+        int count = 0;
+        for (Doc d : c.find(q)) {
+            assert(d.getInt("i") == count);
+            count++;
+        }
+
+        assert(count == 500);
+    }
+}
@@ -30,6 +30,7 @@ import org.mongodb.driver.ts.MongoSelector;
 import org.mongodb.driver.ts.DBQuery;
 import org.mongodb.driver.ts.IndexInfo;
 import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.options.MongoOptions;
 
 import java.util.HashMap;
 
@@ -94,6 +95,230 @@ public class QueryGetMoreTest extends TestBase{
         assert(count == num);
     }
 
+    @Test
+    public void testInterleavedCursors() throws Exception {
+
+        final DBCollection c = fill("interleaved", 1000);
+
+        DBCursor a = c.find();
+        DBCursor b = c.find();
+
+        int countA = 0;
+        int countB = 0;
+
+        while (a.getNextObject() != null) {
+            countA++;
+
+            if (b.getNextObject() != null) {
+                countB++;
+            }
+        }
+
+        while (b.getNextObject() != null) {
+            countB++;
+        }
+
+        assert(countA == 1000);
+        assert(countB == 1000);
+    }
+
+    @Test
+    public void testParallelCursors() throws Exception {
+
+        final DBCollection c = fill("parallel", 1000);
+
+        final int[] counts = new int[4];
+        Thread[] threads = new Thread[counts.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (Doc d : c.find()) {
+                            counts[n]++;
+                        }
+                    }
+                    catch (MongoDBException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (int count : counts) {
+            assert(count == 1000);
+        }
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+
+        DBCollection c = fill("batchsize", 1000);
+
+        DBQuery q = new DBQuery();
+        q.setOrderBy(new MongoSelector("i", 1));
+        q.setBatchSize(7);
+
+        int count = 0;
+        for (Doc d : c.find(q)) {
+            assert(d.getInt("i") == count);
+            count++;
+        }
+
+        assert(count == 1000);
+
+        /*
+         *  a limit bigger than a batch still takes several batches
+         */
+        q.setNumberToReturn(25);
+
+        count = 0;
+        for (Doc d : c.find(q)) {
+            assert(d.getInt("i") == count);
+            count++;
+        }
+
+        assert(count == 25);
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+
+        DBCollection c = fill("prefetch", 1000);
+
+        DBQuery q = new DBQuery();
+        q.setOrderBy(new MongoSelector("i", 1));
+        q.setBatchSize(50);
+        q.setPrefetch(20);
+
+        int count = 0;
+        for (Doc d : c.find(q)) {
+            assert(d.getInt("i") == count);
+            count++;
+        }
+
+        assert(count == 1000);
+
+        /*
+         *  closing with a batch in flight has to leave the connection usable
+         */
+        for (int i = 0; i < 10; i++) {
+            DBCursor cursor = c.find(q);
+
+            for (int j = 0; j < 40; j++) {
+                assert(cursor.getNextObject() != null);
+            }
+
+            cursor.close();
+        }
+
+        assert(c.getCount() == 1000);
+    }
+
+    @Test
+    public void testLargeReply() throws Exception {
+
+        _db.dropCollection("large");
+
+        DBCollection c = _db.getCollection("large");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+
+        for (int i = 0; i < 300; i++) {
+            c.insert(new Doc("i", i).add("s", sb.toString()));
+        }
+
+        assert(c.getCount() == 300);
+
+        /*
+         *  batches of 100 4k docs are bigger than the read buffer
+         */
+        DBQuery q = new DBQuery();
+        q.setOrderBy(new MongoSelector("i", 1));
+        q.setBatchSize(100);
+
+        int count = 0;
+        for (Doc d : c.find(q)) {
+            assert(d.getInt("i") == count);
+            assert(sb.toString().equals(d.get("s")));
+            count++;
+        }
+
+        assert(count == 300);
+    }
+
+    @Test
+    public void testAbandoned() throws Exception {
+
+        fill("abandoned", 100);
+
+        DB db = new Mongo("127.0.0.1", 27017, new MongoOptions().setMaxConnections(2).setMaxWaitMillis(100))
+                .getDB("org_mongo_driver_QueryGetMoreTest");
+
+        try {
+            DBCollection c = db.getCollection("abandoned");
+
+            /*
+             *  each dropped cursor holds one of the two connections until it's collected
+             */
+            for (int i = 0; i < 10; i++) {
+
+                long giveUp = System.currentTimeMillis() + 10000;
+
+                while (true) {
+                    try {
+                        readOneAndDrop(c);
+                        break;
+                    }
+                    catch (MongoDBIOException e) {
+                        assert(System.currentTimeMillis() < giveUp);
+                        System.gc();
+                    }
+                }
+            }
+        }
+        finally {
+            db.close();
+        }
+    }
+
+    private static void readOneAndDrop(DBCollection c) throws MongoDBException {
+
+        DBQuery q = new DBQuery();
+        q.setBatchSize(10);
+
+        assert(c.find(q).getNextObject() != null);
+    }
+
+    private DBCollection fill(String name, int num) throws MongoDBException {
+
+        _db.dropCollection(name);
+
+        DBCollection c = _db.getCollection(name);
+
+        for (int i=0; i < num; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        /*
+         *  inserts don't wait for a response - the count on the same connection makes sure
+         *  they've all landed before other threads look
+         */
+        assert(c.getCount() == num);
+
+        return c;
+    }
+
     public static void main(String[] args) throws Exception {
 
         QueryGetMoreTest t = new QueryGetMoreTest();
@@ -0,0 +1,1086 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.mongodb.driver.impl.msg.DBGetMoreMessage;
+import org.mongodb.driver.impl.msg.DBInsertMessage;
+import org.mongodb.driver.impl.msg.DBKillCursorsMessage;
+import org.mongodb.driver.impl.msg.DBMessage;
+import org.mongodb.driver.impl.msg.DBQueryMessage;
+import org.mongodb.driver.impl.msg.DBRemoveMessage;
+import org.mongodb.driver.impl.msg.DBUpdateMessage;
+import org.mongodb.driver.impl.msg.MessageType;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.util.BSONObject;
+import org.mongodb.driver.util.types.BabbleOID;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *  In-memory stand-in for the db, for tests and benchmarks that need a server they
+ *  can hammer without one running.  Built on the driver's own message parsers.
+ *
+ *  Connections are spread over a few selector loops, each reading, running and
+ *  answering the messages of its connections in order.  Replies can be held back
+ *  by an injected latency, which is applied per reply so pipelined requests overlap
+ *  the way they would over a slow network.
+ *
+ *  Understands :
+ *  <ul>
+ *  <li>inserts - an _id that's already there is dropped.  As with the db, getlasterror
+ *      reports the error only if it was the connection's last write, and getpreverror
+ *      reports it until the next reseterror</li>
+ *  <li>queries with equality and $gt, $gte, $lt, $lte, $ne, $in, $nin and $exists
+ *      selectors, skip and a single orderby key.  Field selectors are ignored</li>
+ *  <li>batches as the db sends them - numberToReturn negative or 1 is a limit and
+ *      closes the cursor, 0 is the default first batch, and a reply never holds
+ *      more than 4MB of objects</li>
+ *  <li>getMore and killCursors</li>
+ *  <li>whole-document updates, with upsert, and removes</li>
+ *  <li>system.namespaces and the create, drop, dropDatabase, count, getlasterror,
+ *      getpreverror and reseterror commands.  Other commands are answered with {ok : 1}</li>
+ *  </ul>
+ */
+public class StandInServer {
+
+    public static final int DEFAULT_FIRST_BATCH = 101;
+    public static final int MAX_REPLY_BYTES = 4 * 1024 * 1024;
+
+    private static final int CURSOR_NOT_FOUND = 1;          // reply flag
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel _serverChannel;
+    private final Loop[] _loops;
+    private final ScheduledExecutorService _delayer;
+
+    private final Map<String, Coll> _collections = new ConcurrentHashMap<String, Coll>();
+    private final Map<Long, Cursor> _cursors = new ConcurrentHashMap<Long, Cursor>();
+    private final AtomicLong _nextCursorID = new AtomicLong(1);
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicInteger _connections = new AtomicInteger();
+
+    private volatile long _latencyNanos;
+    private volatile boolean _storeInserts = true;
+    private volatile boolean _closed;
+
+    /**
+     *  Starts a server on an ephemeral port with a selector loop per core
+     *
+     * @throws IOException if the server socket can't be opened
+     */
+    public StandInServer() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *  Starts a server on an ephemeral port
+     *
+     * @param loops number of selector loops, and so of threads answering requests
+     * @throws IOException if the server socket can't be opened
+     */
+    public StandInServer(int loops) throws IOException {
+
+        if (loops < 1) {
+            throw new IllegalArgumentException("need at least one loop : " + loops);
+        }
+
+        _serverChannel = ServerSocketChannel.open();
+        _serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 1000);
+
+        _delayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "standin-delay");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        _loops = new Loop[loops];
+
+        for (int i = 0; i < loops; i++) {
+            _loops[i] = new Loop();
+
+            Thread t = new Thread(_loops[i], "standin-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "standin-accept");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public int getPort() {
+        return _serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     *  Sets how long each reply is held back.  Writes that get no reply aren't delayed.
+     *
+     * @param time latency, 0 for none
+     * @param unit unit of time
+     * @return this server
+     */
+    public StandInServer setLatency(long time, TimeUnit unit) {
+
+        if (time < 0) {
+            throw new IllegalArgumentException("latency can't be negative : " + time);
+        }
+
+        _latencyNanos = unit.toNanos(time);
+        return this;
+    }
+
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(_latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     *  Sets whether inserted objects are kept.  Write benchmarks turn this off so
+     *  a long run doesn't fill the heap; inserts are still parsed, but neither stored
+     *  nor checked for duplicate _ids.
+     *
+     * @param storeInserts false to drop inserted objects
+     * @return this server
+     */
+    public StandInServer setStoreInserts(boolean storeInserts) {
+        _storeInserts = storeInserts;
+        return this;
+    }
+
+    public boolean isStoreInserts() {
+        return _storeInserts;
+    }
+
+    /**
+     * @return number of open client connections
+     */
+    public int getConnectionCount() {
+        return _connections.get();
+    }
+
+    /**
+     * @return number of messages received since the server started
+     */
+    public long getRequestCount() {
+        return _requests.get();
+    }
+
+    /**
+     * @return number of server-side cursors still open
+     */
+    public int getOpenCursorCount() {
+        return _cursors.size();
+    }
+
+    public void close() throws IOException {
+        _closed = true;
+        _serverChannel.close();
+
+        for (Loop l : _loops) {
+            l._selector.wakeup();
+        }
+
+        _delayer.shutdownNow();
+    }
+
+    private void accept() {
+
+        int next = 0;
+
+        while (!_closed) {
+            try {
+                SocketChannel sc = _serverChannel.accept();
+                sc.socket().setTcpNoDelay(true);
+                sc.configureBlocking(false);
+
+                _connections.incrementAndGet();
+                _loops[next++ % _loops.length].add(new Conn(sc));
+            }
+            catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    /**
+     *  A selector and the connections registered with it.  Other threads hand it new
+     *  connections and connections with replies waiting to go out through _pending.
+     */
+    private class Loop implements Runnable {
+
+        private final Selector _selector;
+        private final Queue<Conn> _pending = new ConcurrentLinkedQueue<Conn>();
+
+        Loop() throws IOException {
+            _selector = Selector.open();
+        }
+
+        void add(Conn c) {
+            c._loop = this;
+            _pending.add(c);
+            _selector.wakeup();
+        }
+
+        void wantWrite(Conn c) {
+            _pending.add(c);
+            _selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (!_closed) {
+                    _selector.select();
+
+                    Conn c;
+
+                    while ((c = _pending.poll()) != null) {
+                        if (c._key == null) {
+                            c._key = c._sc.register(_selector, SelectionKey.OP_READ, c);
+                        }
+                        else if (c._key.isValid()) {
+                            c._key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+
+                        c = (Conn) key.attachment();
+
+                        if (key.isValid() && key.isWritable()) {
+                            c.writable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            c.readable();
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                // selector's broken - nothing to do but stop
+            }
+            finally {
+                for (SelectionKey key : _selector.keys()) {
+                    ((Conn) key.attachment()).close();
+                }
+
+                try {
+                    _selector.close();
+                }
+                catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     *  A client connection.  Messages are read and run on the loop's thread; replies
+     *  may be written from the delay thread, so the outbound queue is locked.
+     */
+    private class Conn {
+
+        private final SocketChannel _sc;
+        private Loop _loop;
+        private SelectionKey _key;
+
+        private ByteBuffer _in = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private String _lastError;          // error of the last write
+        private String _prevError;          // last error since the last reseterror
+
+        private final ReentrantLock _outLock = new ReentrantLock();
+        private final ArrayDeque<ByteBuffer> _out = new ArrayDeque<ByteBuffer>();
+        private boolean _closedConn;
+
+        Conn(SocketChannel sc) {
+            _sc = sc;
+        }
+
+        void readable() {
+            try {
+                if (_sc.read(_in) == -1) {
+                    close();
+                    return;
+                }
+
+                while (_in.position() >= 4) {
+
+                    int len = _in.getInt(0);
+
+                    if (len > _in.capacity()) {
+                        ByteBuffer b = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+                        _in.flip();
+                        b.put(_in);
+                        _in = b;
+                    }
+
+                    if (_in.position() < len) {
+                        return;
+                    }
+
+                    _in.flip();
+                    int end = _in.limit();
+
+                    ByteBuffer msgBuf = ByteBuffer.allocate(len);
+                    _in.limit(len);
+                    msgBuf.put(_in);
+                    msgBuf.flip();
+
+                    _in.limit(end);
+                    _in.compact();
+
+                    _requests.incrementAndGet();
+
+                    handle(DBMessage.readFromBuffer(msgBuf));
+                }
+            }
+            catch (Exception e) {
+                close();
+            }
+        }
+
+        private void handle(DBMessage msg) throws MongoDBException {
+
+            switch (msg.getMessageType()) {
+
+                case OP_INSERT:
+                    error(insert((DBInsertMessage) msg));
+                    break;
+
+                case OP_UPDATE:
+                    error(update((DBUpdateMessage) msg));
+                    break;
+
+                case OP_DELETE:
+                    remove((DBRemoveMessage) msg);
+                    error(null);
+                    break;
+
+                case OP_KILL_CURSORS:
+                    for (long id : ((DBKillCursorsMessage) msg).getCursorIDs()) {
+                        _cursors.remove(id);
+                    }
+                    break;
+
+                case OP_QUERY:
+                    respond(query(this, (DBQueryMessage) msg));
+                    break;
+
+                case OP_GET_MORE:
+                    respond(getMore((DBGetMoreMessage) msg));
+                    break;
+
+                default:
+                    // nothing to say
+            }
+        }
+
+        private void error(String err) {
+
+            _lastError = err;
+
+            if (err != null) {
+                _prevError = err;
+            }
+        }
+
+        private void respond(final ByteBuffer reply) {
+
+            long delay = _latencyNanos;
+
+            if (delay == 0) {
+                send(reply);
+                return;
+            }
+
+            _delayer.schedule(new Runnable() {
+                public void run() {
+                    send(reply);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void send(ByteBuffer reply) {
+
+            _outLock.lock();
+            try {
+                if (_closedConn) {
+                    return;
+                }
+
+                boolean idle = _out.isEmpty();
+                _out.add(reply);
+
+                if (idle && !drain()) {
+                    _loop.wantWrite(this);
+                }
+            }
+            finally {
+                _outLock.unlock();
+            }
+        }
+
+        void writable() {
+
+            _outLock.lock();
+            try {
+                if (drain()) {
+                    _key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            finally {
+                _outLock.unlock();
+            }
+        }
+
+        /**
+         *  Writes as much of the queue as the socket takes.  Called with the lock held.
+         *
+         * @return true if the queue is empty
+         */
+        private boolean drain() {
+            try {
+                while (!_out.isEmpty()) {
+                    ByteBuffer b = _out.peek();
+                    _sc.write(b);
+
+                    if (b.hasRemaining()) {
+                        return false;
+                    }
+                    _out.poll();
+                }
+            }
+            catch (IOException e) {
+                _out.clear();
+                closeChannel();
+            }
+            return true;
+        }
+
+        void close() {
+            _outLock.lock();
+            try {
+                _out.clear();
+                closeChannel();
+            }
+            finally {
+                _outLock.unlock();
+            }
+        }
+
+        private void closeChannel() {
+
+            if (_closedConn) {
+                return;
+            }
+            _closedConn = true;
+            _connections.decrementAndGet();
+
+            try {
+                _sc.close();
+            }
+            catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     *  An object as stored, with its encoding, so replies don't serialize it again
+     */
+    private static class Entry {
+
+        final Doc _doc;
+        final byte[] _bson;
+
+        Entry(Doc doc) throws MongoDBException {
+            _doc = doc;
+
+            BSONObject bo = new BSONObject();
+            bo.serialize(doc);
+            _bson = bo.toArray();
+        }
+    }
+
+    /**
+     *  A collection, in insertion order, with an _id index
+     */
+    private static class Coll {
+
+        final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+        final List<Entry> _docs = new ArrayList<Entry>();
+        final Map<Object, Entry> _ids = new HashMap<Object, Entry>();
+
+        /**
+         * @return false if there's already an object with its _id
+         */
+        boolean add(Entry e) {
+
+            Object id = e._doc.get("_id");
+
+            _lock.writeLock().lock();
+            try {
+                if (id != null) {
+                    Object key = idKey(id);
+
+                    if (_ids.containsKey(key)) {
+                        return false;
+                    }
+                    _ids.put(key, e);
+                }
+
+                _docs.add(e);
+                return true;
+            }
+            finally {
+                _lock.writeLock().unlock();
+            }
+        }
+
+        List<Entry> find(Doc selector) {
+
+            List<Entry> result = new ArrayList<Entry>();
+
+            _lock.readLock().lock();
+            try {
+                Object id = selector == null || selector.size() != 1 ? null : selector.get("_id");
+
+                if (id != null && !(id instanceof Map)) {
+                    Entry e = _ids.get(idKey(id));
+
+                    if (e != null) {
+                        result.add(e);
+                    }
+                    return result;
+                }
+
+                for (Entry e : _docs) {
+                    if (matches(e._doc, selector)) {
+                        result.add(e);
+                    }
+                }
+            }
+            finally {
+                _lock.readLock().unlock();
+            }
+
+            return result;
+        }
+
+        int size() {
+            _lock.readLock().lock();
+            try {
+                return _docs.size();
+            }
+            finally {
+                _lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     *  Rest of a query's results, waiting for getMore
+     */
+    private static class Cursor {
+
+        final List<Entry> _results;
+        int _pos;
+        long _id;               // 0 until it outlives its first batch
+
+        Cursor(List<Entry> results, int pos) {
+            _results = results;
+            _pos = pos;
+        }
+    }
+
+    private Coll collection(String ns) {
+
+        Coll c = _collections.get(ns);
+
+        if (c == null) {
+            _collections.putIfAbsent(ns, new Coll());
+            c = _collections.get(ns);
+        }
+        return c;
+    }
+
+    /**
+     * @return error for a duplicate _id, or null
+     */
+    private String insert(DBInsertMessage msg) throws MongoDBException {
+
+        if (!_storeInserts) {
+            return null;
+        }
+
+        Coll coll = collection(msg.getDBName() + "." + msg.getCollection());
+        String err = null;
+
+        for (Doc d : msg.getObjects()) {
+            if (!coll.add(new Entry(d))) {
+                err = "E11000 duplicate key error : " + d.get("_id");
+            }
+        }
+
+        return err;
+    }
+
+    /**
+     *  Replaces the first match, or inserts if it's an upsert and nothing matches
+     *
+     * @return error, or null
+     */
+    private String update(DBUpdateMessage msg) throws MongoDBException {
+
+        Doc obj = msg.getObject();
+
+        for (String key : obj.keySet()) {
+            if (key.startsWith("$")) {
+                return "modifier updates not supported : " + key;
+            }
+        }
+
+        Coll coll = collection(msg.getDBName() + "." + msg.getCollection());
+
+        coll._lock.writeLock().lock();
+        try {
+            for (int i = 0; i < coll._docs.size(); i++) {
+
+                Entry old = coll._docs.get(i);
+
+                if (matches(old._doc, msg.getSelector())) {
+
+                    Object id = old._doc.get("_id");
+
+                    if (id != null && obj.get("_id") == null) {
+                        obj.put("_id", id);
+                    }
+
+                    Entry e = new Entry(obj);
+                    coll._docs.set(i, e);
+
+                    if (id != null) {
+                        coll._ids.remove(idKey(id));
+                    }
+                    if (obj.get("_id") != null) {
+                        coll._ids.put(idKey(obj.get("_id")), e);
+                    }
+                    return null;
+                }
+            }
+        }
+        finally {
+            coll._lock.writeLock().unlock();
+        }
+
+        if (msg.isRepsert() && !coll.add(new Entry(obj))) {
+            return "E11000 duplicate key error : " + obj.get("_id");
+        }
+
+        return null;
+    }
+
+    private void remove(DBRemoveMessage msg) {
+
+        Coll coll = _collections.get(msg.getDBName() + "." + msg.getCollection());
+
+        if (coll == null) {
+            return;
+        }
+
+        coll._lock.writeLock().lock();
+        try {
+            Iterator<Entry> it = coll._docs.iterator();
+
+            while (it.hasNext()) {
+                Entry e = it.next();
+
+                if (matches(e._doc, msg.getSelector())) {
+                    it.remove();
+
+                    if (e._doc.get("_id") != null) {
+                        coll._ids.remove(idKey(e._doc.get("_id")));
+                    }
+                }
+            }
+        }
+        finally {
+            coll._lock.writeLock().unlock();
+        }
+    }
+
+    private ByteBuffer query(Conn conn, DBQueryMessage msg) throws MongoDBException {
+
+        String db = msg.getDBName();
+        String collName = msg.getCollection();
+        DBQuery q = msg.getQuery();
+        Doc selector = q.getQuerySelector();
+
+        if ("$cmd".equals(collName)) {
+            return reply(msg.getRequestID(), 0, 0, 0, Collections.singletonList(command(conn, db, selector)));
+        }
+
+        if ("system.namespaces".equals(collName)) {
+            List<byte[]> names = new ArrayList<byte[]>();
+
+            for (String ns : _collections.keySet()) {
+                if (ns.startsWith(db + ".")) {
+                    names.add(new Entry(new Doc("name", ns))._bson);
+                }
+            }
+            return reply(msg.getRequestID(), 0, 0, 0, names);
+        }
+
+        Coll coll = _collections.get(db + "." + collName);
+
+        List<Entry> results = coll == null ? new ArrayList<Entry>() : coll.find(selector);
+
+        if (q.getOrderBy() != null && !q.getOrderBy().isEmpty()) {
+            sort(results, q.getOrderBy());
+        }
+
+        int skip = Math.min(q.getNumberToSkip(), results.size());
+        int n = q.getNumberToReturn();
+
+        if (n < 0 || n == 1) {
+            int end = Math.min(results.size(), skip + Math.abs(n));
+            results = results.subList(0, end);
+            n = end - skip;
+        }
+        else if (n == 0) {
+            n = DEFAULT_FIRST_BATCH;
+        }
+
+        return batch(msg.getRequestID(), new Cursor(results, skip), n);
+    }
+
+    private ByteBuffer getMore(DBGetMoreMessage msg) {
+
+        /*
+         *  take the cursor out while we use it, so another connection can't
+         *  get the same batch
+         */
+        Cursor c = _cursors.remove(msg.getCursorID());
+
+        if (c == null) {
+            return reply(msg.getRequestID(), CURSOR_NOT_FOUND, 0, 0, Collections.<byte[]>emptyList());
+        }
+
+        int n = msg.getNumberToReturn();
+
+        return batch(msg.getRequestID(), c, n == 0 ? Integer.MAX_VALUE : Math.abs(n));
+    }
+
+    /**
+     *  Replies with the next n objects of the cursor, or as many as fit.  Keeps the
+     *  cursor open if there are any left.
+     */
+    private ByteBuffer batch(int responseTo, Cursor c, int n) {
+
+        int start = c._pos;
+        int bytes = 0;
+        List<byte[]> docs = new ArrayList<byte[]>();
+
+        while (c._pos < c._results.size() && docs.size() < n) {
+
+            byte[] b = c._results.get(c._pos)._bson;
+
+            if (bytes + b.length > MAX_REPLY_BYTES && !docs.isEmpty()) {
+                break;
+            }
+
+            docs.add(b);
+            bytes += b.length;
+            c._pos++;
+        }
+
+        long id = 0;
+
+        if (c._pos < c._results.size()) {
+            if (c._id == 0) {
+                c._id = _nextCursorID.getAndIncrement();
+            }
+            id = c._id;
+            _cursors.put(id, c);
+        }
+
+        return reply(responseTo, 0, id, start, docs);
+    }
+
+    private Doc command(Conn conn, String db, Doc cmd) {
+
+        Doc reply = new Doc();
+
+        if (cmd.get("getlasterror") != null) {
+            reply.put("err", conn._lastError);
+            conn._lastError = null;
+        }
+        else if (cmd.get("getpreverror") != null) {
+            reply.put("err", conn._prevError);
+        }
+        else if (cmd.get("reseterror") != null) {
+            conn._lastError = null;
+            conn._prevError = null;
+        }
+        else if (cmd.get("create") != null) {
+            collection(db + "." + cmd.get("create"));
+        }
+        else if (cmd.get("drop") != null) {
+            _collections.remove(db + "." + cmd.get("drop"));
+        }
+        else if (cmd.get("dropDatabase") != null) {
+            Iterator<String> it = _collections.keySet().iterator();
+
+            while (it.hasNext()) {
+                if (it.next().startsWith(db + ".")) {
+                    it.remove();
+                }
+            }
+        }
+        else if (cmd.get("count") != null) {
+            Coll coll = _collections.get(db + "." + cmd.get("count"));
+            Doc selector = (Doc) cmd.get("query");
+            int n = 0;
+
+            if (coll != null) {
+                n = selector == null || selector.isEmpty() ? coll.size() : coll.find(selector).size();
+            }
+            reply.put("n", (double) n);
+        }
+
+        reply.put("ok", 1.0);
+        return reply;
+    }
+
+    /**
+     *  Builds an OP_REPLY
+     */
+    private static ByteBuffer reply(int responseTo, int flags, long cursorID, int startingFrom, List<byte[]> docs) {
+
+        int len = 36;
+
+        for (byte[] b : docs) {
+            len += b.length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(len);
+        buf.putInt(0);
+        buf.putInt(responseTo);
+        buf.putInt(MessageType.OP_REPLY.getOpCode());
+        buf.putInt(flags);
+        buf.putLong(cursorID);
+        buf.putInt(startingFrom);
+        buf.putInt(docs.size());
+
+        for (byte[] b : docs) {
+            buf.put(b);
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer reply(int responseTo, int flags, long cursorID, int startingFrom, Collection<Doc> docs)
+            throws MongoDBException {
+
+        List<byte[]> bson = new ArrayList<byte[]>();
+
+        for (Doc d : docs) {
+            bson.add(new Entry(d)._bson);
+        }
+
+        return reply(responseTo, flags, cursorID, startingFrom, bson);
+    }
+
+    /**
+     *  Key for the _id index.  Numbers of any type are the same id if they have the
+     *  same value, and oids don't have equals() of their own.
+     */
+    private static Object idKey(Object id) {
+
+        if (id instanceof Number) {
+            return ((Number) id).doubleValue();
+        }
+        if (id instanceof BabbleOID) {
+            return "oid:" + id;
+        }
+        return id;
+    }
+
+    private static boolean matches(Doc d, Doc selector) {
+
+        if (selector == null) {
+            return true;
+        }
+
+        for (String key : selector.keySet()) {
+
+            Object v = selector.get(key);
+            Object actual = d.get(key);
+
+            if (v instanceof Map && isOperator((Map) v)) {
+                for (Object o : ((Map) v).entrySet()) {
+                    Map.Entry op = (Map.Entry) o;
+
+                    if (!test(op.getKey().toString(), actual, d.containsKey(key), op.getValue())) {
+                        return false;
+                    }
+                }
+            }
+            else if (!same(v, actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOperator(Map m) {
+        return !m.isEmpty() && m.keySet().iterator().next().toString().startsWith("$");
+    }
+
+    private static boolean test(String op, Object actual, boolean present, Object arg) {
+
+        if ("$exists".equals(op)) {
+            return present == Boolean.TRUE.equals(arg);
+        }
+        if ("$ne".equals(op)) {
+            return !same(arg, actual);
+        }
+        if ("$in".equals(op) || "$nin".equals(op)) {
+            boolean in = false;
+
+            for (Object o : (List) arg) {
+                if (same(o, actual)) {
+                    in = true;
+                    break;
+                }
+            }
+            return in == "$in".equals(op);
+        }
+
+        Integer c = compare(actual, arg);
+
+        if (c == null) {
+            return false;
+        }
+        if ("$gt".equals(op)) {
+            return c > 0;
+        }
+        if ("$gte".equals(op)) {
+            return c >= 0;
+        }
+        if ("$lt".equals(op)) {
+            return c < 0;
+        }
+        if ("$lte".equals(op)) {
+            return c <= 0;
+        }
+        return false;
+    }
+
+    private static boolean same(Object a, Object b) {
+
+        if (a == null || b == null) {
+            return a == b;
+        }
+
+        Integer c = compare(a, b);
+
+        if (c != null) {
+            return c == 0;
+        }
+        return idKey(a).equals(idKey(b));
+    }
+
+    /**
+     * @return comparison of two numbers, or two values of the same comparable type, else null
+     */
+    @SuppressWarnings("unchecked")
+    private static Integer compare(Object a, Object b) {
+
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Comparable && b != null && a.getClass() == b.getClass()) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return null;
+    }
+
+    /**
+     *  Sorts on the first key of the orderby.  Missing and incomparable values go first.
+     */
+    private static void sort(List<Entry> results, Doc orderBy) {
+
+        final String key = orderBy.keySet().iterator().next();
+        Object dir = orderBy.get(key);
+        final int sign = dir instanceof Number && ((Number) dir).intValue() < 0 ? -1 : 1;
+
+        Collections.sort(results, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                Integer c = StandInServer.compare(e1._doc.get(key), e2._doc.get(key));
+
+                if (c == null) {
+                    c = e1._doc.get(key) == null ? (e2._doc.get(key) == null ? 0 : -1) : 1;
+                }
+                return sign * c;
+            }
+        });
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.DBCursor;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the stand-in server itself, through the driver
+ */
+public class StandInServerTest {
+
+    StandInServer _server;
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer(2);
+        _db = new Mongo("127.0.0.1", _server.getPort()).getDB("org_mongo_driver_StandInServerTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+        _server.close();
+    }
+
+    @Test
+    public void testGetMore() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("getmore");
+        c.clear();
+
+        for (int i = 0; i < 1000; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == 1000);
+
+        long before = _server.getRequestCount();
+
+        DBCursor cur = c.find();
+        cur.setBatchSize(100);
+
+        int n = 0;
+
+        for (Doc d : cur) {
+            assert(d.getInt("i") == n);
+            n++;
+        }
+
+        assert(n == 1000);
+        assert(_server.getRequestCount() - before >= 10);
+        assert(_server.getOpenCursorCount() == 0);
+    }
+
+    @Test
+    public void testKillCursors() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("kill");
+        c.clear();
+
+        for (int i = 0; i < 500; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        DBCursor cur = c.find();
+        cur.setBatchSize(10);
+
+        assert(cur.getNextObject() != null);
+        assert(_server.getOpenCursorCount() == 1);
+
+        cur.close();
+
+        c.getCount();          // the kill isn't answered, so wait on something that is
+        assert(_server.getOpenCursorCount() == 0);
+    }
+
+    @Test
+    public void testSelectors() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("selectors");
+        c.clear();
+
+        for (int i = 0; i < 20; i++) {
+            Doc d = new Doc("i", i);
+
+            if (i % 2 == 0) {
+                d.put("even", true);
+            }
+            c.insert(d);
+        }
+
+        assert(c.getCount(new MongoSelector("i", 3)) == 1);
+        assert(c.getCount(new MongoSelector("i", new Doc("$gte", 15))) == 5);
+        assert(c.getCount(new MongoSelector("i", new Doc("$gt", 5).add("$lt", 10))) == 4);
+        assert(c.getCount(new MongoSelector("i", new Doc("$in", Arrays.asList(1, 2, 30)))) == 2);
+        assert(c.getCount(new MongoSelector("even", new Doc("$exists", true))) == 10);
+
+        DBQuery q = new DBQuery(new MongoSelector("i", new Doc("$ne", 0)));
+        q.setOrderBy(new MongoSelector("i", -1));
+        q.setNumberToSkip(2);
+
+        assert(c.find(q).getNextObject().getInt("i") == 17);
+
+        c.remove(new MongoSelector("even", true));
+        assert(c.getCount() == 10);
+    }
+
+    @Test
+    public void testLatency() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("latency");
+        c.insert(new Doc("a", 1));
+
+        _server.setLatency(50, TimeUnit.MILLISECONDS);
+
+        try {
+            long start = System.nanoTime();
+            assert(c.findOne(new MongoSelector("a", 1)) != null);
+            assert(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        finally {
+            _server.setLatency(0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.MongoOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hammers the blocking driver path with far more concurrent callers than there are
+ * connections.  Runs on virtual threads when the JVM has them, and on a big pool of
+ * platform threads otherwise.  Uses a stand-in server, so doesn't need a db.
+ */
+public class VirtualThreadTest {
+
+    static final int DOCS = 1000;
+    static final int CALLS = 10000;
+
+    StandInServer _server;
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer();
+
+        Mongo m = new Mongo("127.0.0.1", _server.getPort(),
+                new MongoOptions().setMaxConnections(50).setThreadAffinity(false));
+        _db = m.getDB("org_mongo_driver_VirtualThreadTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+        _server.close();
+    }
+
+    @Test
+    public void testConcurrentFindOne() throws Exception {
+
+        final DBCollection c = _db.getCollection("test");
+
+        for (int i=0; i < DOCS; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == DOCS);
+
+        ExecutorService exec = newExecutor();
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+            for (int i=0; i < CALLS; i++) {
+                final int k = i % DOCS;
+
+                results.add(exec.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        Doc d = c.findOne(new MongoSelector("i", k));
+                        return d != null && d.getInt("i") == k;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> f : results) {
+                assert(f.get(60, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
+    /**
+     *  Executors.newVirtualThreadPerTaskExecutor() if this JVM has it, else a fixed pool
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e) {
+            return Executors.newFixedThreadPool(200);
+        }
+    }
+}
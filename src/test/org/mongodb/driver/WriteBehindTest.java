@@ -0,0 +1,250 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.MongoSelector;
+import org.mongodb.driver.ts.options.WriteBehindOptions;
+
+import java.io.File;
+
+/**
+ * Tests the write-behind insert queue
+ */
+public class WriteBehindTest {
+
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception{
+        _db = new Mongo().getDB("org_mongo_driver_WriteBehindTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.close();
+    }
+
+    @Test
+    public void testWriteBehind() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("test");
+        c.clear();
+
+        c.setWriteBehind(new WriteBehindOptions().setBatchSize(100).setMaxAgeMillis(5));
+
+        for (int i=0; i < 5000; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        c.flush();
+
+        assert(c.getCount() == 5000);
+
+        /*
+         *  a lone insert goes out once it's old enough - counted through another collection
+         *  object, as this one's count would flush the queue
+         */
+        DBCollection other = _db.getCollection("test");
+
+        c.insert(new Doc("i", -1));
+
+        for (int i = 0; i < 50 && other.getCount() < 5001; i++) {
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        assert(other.getCount() == 5001);
+
+        c.setWriteBehind(null);
+    }
+
+    @Test
+    public void testOrdering() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("ordering");
+        c.clear();
+
+        c.setWriteBehind(new WriteBehindOptions().setBatchSize(1000).setMaxAgeMillis(60000));
+
+        /*
+         *  the remove waits for the queued insert, rather than overtaking it
+         */
+        c.insert(new Doc("i", 1));
+        c.remove(new MongoSelector("i", 1));
+
+        assert(c.getCount() == 0);
+
+        c.insert(new Doc("i", 2));
+        assert(c.findOne(new MongoSelector("i", 2)) != null);
+
+        c.setWriteBehind(null);
+    }
+
+    @Test
+    public void testBadDocument() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("bad");
+        c.clear();
+
+        c.setWriteBehind(new WriteBehindOptions().setBatchSize(1000).setMaxAgeMillis(60000).setCapacity(10));
+
+        /*
+         *  refused by insert() rather than left to jam the queue
+         */
+        try {
+            c.insert(new Doc("o", new Object()));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+
+        for (int i = 0; i < 25; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        c.flush();
+        assert(c.getCount() == 25);
+
+        /*
+         *  what's queued is the document as it was inserted
+         */
+        Doc reused = new Doc("i", 100);
+        c.insert(reused);
+        reused.put("i", 101);
+        c.flush();
+
+        assert(c.getCount(new MongoSelector("i", 100)) == 1);
+
+        c.setWriteBehind(null);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+
+        DB db = new Mongo().getDB("org_mongo_driver_WriteBehindTest");
+
+        DBCollection c = db.getCollection("close");
+        c.clear();
+
+        c.setWriteBehind(new WriteBehindOptions().setBatchSize(1000).setMaxAgeMillis(60000));
+
+        for (int i=0; i < 100; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        /*
+         *  closing the database sends the queue
+         */
+        db.close();
+
+        assert(_db.getCollection("close").getCount() == 100);
+
+        try {
+            c.insert(new Doc("i", 100));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // queue is closed
+        }
+    }
+
+    @Test
+    public void testRejectWhenFull() throws MongoDBException {
+
+        DBCollection c = _db.getCollection("reject");
+        c.clear();
+
+        c.setWriteBehind(new WriteBehindOptions().setCapacity(10).setBatchSize(100)
+                .setMaxAgeMillis(60000).setBlockWhenFull(false));
+
+        for (int i=0; i < 10; i++) {
+            c.insert(new Doc("i", i));
+        }
+
+        try {
+            c.insert(new Doc("i", 10));
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // full
+        }
+
+        c.setWriteBehind(null);
+
+        assert(c.getCount() == 10);
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+
+        File journal = File.createTempFile("writebehind", ".journal");
+        journal.deleteOnExit();
+
+        DBCollection c = _db.getCollection("journal");
+        c.clear();
+
+        /*
+         *  nothing gets sent from this one - as though the process died with it full
+         */
+        WriteBehindOptions options = new WriteBehindOptions().setJournal(journal).setBatchSize(1000)
+                .setMaxAgeMillis(24 * 3600 * 1000L).setJournalSize(1024 * 1024);
+
+        DBCollection crashed = _db.getCollection("journal");
+        crashed.setWriteBehind(options);
+
+        for (int i=0; i < 100; i++) {
+            crashed.insert(new Doc("i", i));
+        }
+
+        assert(c.getCount() == 0);
+
+        /*
+         *  a new queue on the same journal picks them up
+         */
+        c.setWriteBehind(new WriteBehindOptions().setJournal(journal).setJournalSize(1024 * 1024));
+        c.flush();
+
+        assert(c.getCount() == 100);
+        assert(c.getCount(new MongoSelector("i", 99)) == 1);
+
+        /*
+         *  and once sent they're not in the journal any more
+         */
+        c.setWriteBehind(null);
+
+        DBCollection again = _db.getCollection("journal");
+        again.setWriteBehind(new WriteBehindOptions().setJournal(journal).setJournalSize(1024 * 1024));
+        again.setWriteBehind(null);
+
+        assert(c.getCount() == 100);
+    }
+}
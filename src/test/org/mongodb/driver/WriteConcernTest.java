@@ -0,0 +1,281 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Mongo;
+import org.mongodb.driver.ts.DB;
+import org.mongodb.driver.ts.DBCollection;
+import org.mongodb.driver.ts.Doc;
+import org.mongodb.driver.ts.BulkInsertResult;
+import org.mongodb.driver.ts.options.DBOptions;
+import org.mongodb.driver.ts.options.MongoOptions;
+import org.mongodb.driver.ts.options.WriteBehindOptions;
+import org.mongodb.driver.ts.options.WriteConcern;
+
+import java.util.Arrays;
+
+/**
+ * Tests acknowledged writes, against a stand-in server that reports duplicate _ids
+ */
+public class WriteConcernTest {
+
+    StandInServer _server;
+    DB _db;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        _server = new StandInServer();
+        _db = new Mongo("127.0.0.1", _server.getPort()).getDB("org_mongo_driver_WriteConcernTest");
+    }
+
+    @AfterClass
+    public void shutDown() throws Exception {
+        _db.resetDBOptions();
+        _db.close();
+        _server.close();
+    }
+
+    @Test
+    public void testSafe() throws MongoDBException {
+
+        _db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.SAFE));
+
+        DBCollection c = _db.getCollection("safe");
+
+        c.insert(new Doc("_id", 1));
+
+        try {
+            c.insert(new Doc("_id", 1));
+            assert(false);
+        }
+        catch (MongoDBWriteException e) {
+            assert(e.getError().startsWith("E11000"));
+        }
+
+        c.insert(new Doc("_id", 2));
+
+        assert(c.getCount() == 2);
+
+        _db.resetDBOptions();
+    }
+
+    @Test
+    public void testBatch() throws MongoDBException {
+
+        _db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.batch(10)).setFlushInterval(60000));
+
+        DBCollection c = _db.getCollection("batch");
+
+        /*
+         *  clean batches go through
+         */
+        for (int i=0; i < 25; i++) {
+            c.insert(new Doc("_id", i));
+        }
+
+        _db.flush();
+
+        assert(c.getCount() == 25);
+
+        /*
+         *  an error anywhere in a batch is reported when the batch goes out
+         */
+        c.insert(new Doc("_id", 100));
+        c.insert(new Doc("_id", 3));
+        c.insert(new Doc("_id", 101));
+
+        try {
+            _db.flush();
+            assert(false);
+        }
+        catch (MongoDBWriteException e) {
+            assert(e.getError().startsWith("E11000"));
+        }
+
+        assert(c.getCount() == 27);
+
+        /*
+         *  the write that fills a batch of ten sends it, and gets the error
+         */
+        for (int i=200; i < 209; i++) {
+            c.insert(new Doc("_id", i));
+        }
+
+        try {
+            c.insert(new Doc("_id", 0));
+            assert(false);
+        }
+        catch (MongoDBWriteException e) {
+            // expected
+        }
+
+        _db.resetDBOptions();
+    }
+
+    @Test
+    public void testMultiplexed() throws Exception {
+
+        DB db = new Mongo("127.0.0.1", _server.getPort(), new MongoOptions().setMultiplexedConnections(2))
+                .getDB("org_mongo_driver_WriteConcernTest");
+
+        try {
+            db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.SAFE));
+
+            DBCollection c = db.getCollection("multiplexed");
+
+            c.insert(new Doc("_id", 1));
+
+            try {
+                c.insert(new Doc("_id", 1));
+                assert(false);
+            }
+            catch (MongoDBWriteException e) {
+                assert(e.getError().startsWith("E11000"));
+            }
+
+            /*
+             *  each write has its own getlasterror, so an error mid-batch isn't lost
+             */
+            db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.batch(10)));
+
+            c.insert(new Doc("_id", 100));
+            c.insert(new Doc("_id", 1));
+            c.insert(new Doc("_id", 101));
+
+            try {
+                db.flush();
+                assert(false);
+            }
+            catch (MongoDBWriteException e) {
+                assert(e.getError().startsWith("E11000"));
+            }
+
+            try {
+                c.bulkInsert(new Doc[] { new Doc("_id", 1), new Doc("_id", 200) });
+                assert(false);
+            }
+            catch (MongoDBWriteException e) {
+                // expected
+            }
+
+            assert(c.getCount() == 4);
+        }
+        finally {
+            db.resetDBOptions();
+            db.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehindRefused() throws Exception {
+
+        /*
+         *  a server of its own, so the class's connections don't get counted
+         */
+        StandInServer server = new StandInServer();
+
+        DB db = new Mongo("127.0.0.1", server.getPort()).getDB("org_mongo_driver_WriteConcernTest");
+        db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.SAFE));
+
+        DBCollection c = db.getCollection("writebehind");
+        c.setWriteBehind(new WriteBehindOptions().setBatchSize(1000).setMaxAgeMillis(60000));
+
+        /*
+         *  the server refuses the batch, which is dropped rather than retried - and close()
+         *  says so, but still closes the connections
+         */
+        c.insert(new Doc("_id", 1));
+        c.insert(new Doc("_id", 1));
+
+        try {
+            db.close();
+            assert(false);
+        }
+        catch (MongoDBException e) {
+            // expected
+        }
+
+        try {
+            for (int i = 0; i < 100 && server.getConnectionCount() > 0; i++) {
+                Thread.sleep(20);
+            }
+
+            assert(server.getConnectionCount() == 0);
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBulkInsert() throws MongoDBException {
+
+        _db.setDBOptions(new DBOptions().setWriteConcern(WriteConcern.SAFE));
+
+        DBCollection c = _db.getCollection("bulk");
+
+        Doc[] docs = new Doc[1000];
+
+        for (int i=0; i < docs.length; i++) {
+            docs[i] = new Doc("_id", i);
+        }
+
+        c.bulkInsert(docs);
+
+        try {
+            c.bulkInsert(new Doc[] { new Doc("_id", 5000), new Doc("_id", 999) });
+            assert(false);
+        }
+        catch (MongoDBWriteException e) {
+            // expected
+        }
+
+        assert(c.getCount() == 1001);
+
+        /*
+         *  a duplicate in the first message of a run is still reported after later messages succeed
+         */
+        char[] pad = new char[90 * 1024];
+        Arrays.fill(pad, 'x');
+
+        docs = new Doc[25];
+        docs[0] = new Doc("_id", 0);
+
+        for (int i=1; i < docs.length; i++) {
+            docs[i] = new Doc("_id", 6000 + i);
+            docs[i].put("pad", new String(pad));
+        }
+
+        try {
+            BulkInsertResult r = c.bulkInsert(docs);
+            assert(false) : r;
+        }
+        catch (MongoDBWriteException e) {
+            assert(e.getError().startsWith("E11000"));
+        }
+
+        assert(c.getCount() == 1025);
+
+        _db.resetDBOptions();
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.AssertJUnit.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_DIRECT_BYTES);
+
+        ByteBuffer b = pool.get(10);
+        assertEquals(4 * 1024, b.capacity());
+        assertTrue(b.isDirect());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, b.order());
+        assertEquals(0, b.position());
+        assertEquals(b.capacity(), b.limit());
+
+        assertEquals(16 * 1024, pool.get(4 * 1024 + 1).capacity());
+        assertEquals(BufferPool.MAX_POOLED_SIZE, pool.get(BufferPool.MAX_POOLED_SIZE).capacity());
+
+        /*
+         *  too big to pool - gets exactly what was asked for, off the heap
+         */
+        ByteBuffer big = pool.get(BufferPool.MAX_POOLED_SIZE + 1);
+        assertEquals(BufferPool.MAX_POOLED_SIZE + 1, big.capacity());
+        assertFalse(big.isDirect());
+    }
+
+    @Test
+    public void testDirectLimit() {
+
+        BufferPool pool = new BufferPool(BufferPool.SLAB_SIZE);
+
+        /*
+         *  the first slab fits the limit
+         */
+        List<ByteBuffer> leased = new ArrayList<ByteBuffer>();
+
+        for (int i = 0; i < BufferPool.SLAB_SIZE / (4 * 1024); i++) {
+            ByteBuffer b = pool.get(100);
+            assertTrue(b.isDirect());
+            leased.add(b);
+        }
+
+        assertEquals(BufferPool.SLAB_SIZE, pool.getDirectBytes());
+
+        /*
+         *  then everything comes off the heap
+         */
+        ByteBuffer heap = pool.get(100);
+        assertFalse(heap.isDirect());
+        assertFalse(pool.get(16 * 1024).isDirect());
+        assertEquals(BufferPool.SLAB_SIZE, pool.getDirectBytes());
+
+        assertEquals(2, pool.getFallbackCount());
+
+        pool.release(leased.get(0));
+        assertSame(leased.get(0), pool.get(100));
+        assertEquals(2, pool.getFallbackCount());
+
+        /*
+         *  too big to pool isn't a fallback
+         */
+        pool.get(BufferPool.MAX_POOLED_SIZE + 1);
+        assertEquals(2, pool.getFallbackCount());
+    }
+
+    @Test
+    public void testLeakedSlab() throws Exception {
+
+        BufferPool pool = new BufferPool(BufferPool.SLAB_SIZE);
+
+        leaseAll(pool);
+        assertEquals(BufferPool.SLAB_SIZE, pool.getDirectBytes());
+
+        /*
+         *  with every buffer of the slab dropped, the slab stops counting against the limit
+         */
+        long giveUp = System.currentTimeMillis() + 10000;
+
+        while (pool.getDirectBytes() != 0) {
+            assertTrue(System.currentTimeMillis() < giveUp);
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertTrue(pool.get(100).isDirect());
+    }
+
+    /**
+     *  Leases, and drops, every buffer the slab holds
+     */
+    private static void leaseAll(BufferPool pool) {
+
+        for (int i = 0; i < BufferPool.SLAB_SIZE / (4 * 1024); i++) {
+            assertTrue(pool.get(100).isDirect());
+        }
+    }
+
+    @Test
+    public void testConcurrentLeases() throws Exception {
+
+        final BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_DIRECT_BYTES);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        ByteBuffer b = pool.get(100 + (j % 3) * 8 * 1024);
+
+                        /*
+                         *  nobody else may hold the buffer while we do
+                         */
+                        b.putInt(0, id);
+                        b.putInt(4, j);
+                        Thread.yield();
+
+                        if (b.getInt(0) != id || b.getInt(4) != j) {
+                            failed.set(true);
+                        }
+
+                        pool.release(b);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertFalse(failed.get());
+        assertTrue(pool.getDirectBytes() <= 8 * 3 * BufferPool.SLAB_SIZE);
+    }
+
+    @Test
+    public void testReuse() {
+
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_DIRECT_BYTES);
+
+        ByteBuffer a = pool.get(100);
+        a.putInt(42);
+        pool.release(a);
+
+        ByteBuffer b = pool.get(100);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+
+        /*
+         *  slices of a slab don't overlap
+         */
+        ByteBuffer c = pool.get(100);
+        assertNotSame(b, c);
+
+        b.putInt(0, 1);
+        c.putInt(0, 2);
+        assertEquals(1, b.getInt(0));
+        assertEquals(2, c.getInt(0));
+    }
+
+    @Test
+    public void testForeignBuffersDropped() {
+
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_DIRECT_BYTES);
+
+        ByteBuffer heap = ByteBuffer.allocate(4 * 1024);
+        pool.release(heap);
+        assertNotSame(heap, pool.get(4 * 1024));
+
+        ByteBuffer odd = ByteBuffer.allocateDirect(5000);
+        pool.release(odd);
+        assertNotSame(odd, pool.get(5000));
+
+        ByteBuffer big = pool.get(BufferPool.MAX_POOLED_SIZE * 2);
+        pool.release(big);
+        assertNotSame(big, pool.get(BufferPool.MAX_POOLED_SIZE * 2));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl.connection;
+
+import org.testng.annotations.Test;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.mongodb.driver.impl.msg.DBQueryMessage;
+import org.mongodb.driver.impl.msg.DBQueryReplyMessage;
+import org.mongodb.driver.ts.DBQuery;
+import org.mongodb.driver.ts.MongoSelector;
+import static org.testng.AssertJUnit.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Tests the multiplexed connection against a server that accepts and never answers
+ */
+public class AsyncConnectionTest {
+
+    ServerSocketChannel _server;
+    InetSocketAddress _addr;
+    final List<SocketChannel> _accepted = new ArrayList<SocketChannel>();
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        _server = ServerSocketChannel.open();
+        _server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        _addr = new InetSocketAddress("127.0.0.1", _server.socket().getLocalPort());
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        SocketChannel sc = _server.accept();
+                        synchronized(_accepted) {
+                            _accepted.add(sc);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    // server closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @AfterClass
+    public void stopServer() throws Exception {
+        _server.close();
+
+        synchronized(_accepted) {
+            for (SocketChannel sc : _accepted) {
+                sc.close();
+            }
+        }
+    }
+
+    @Test
+    public void testReplyTimeout() throws Exception {
+
+        AsyncConnection ac = new AsyncConnection(_addr, 1, 200);
+        ac.connect();
+
+        try {
+            long start = System.nanoTime();
+
+            assertFailed(ac.sendForReply(query()));
+
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("waited " + waited, waited >= 200 && waited < 5000);
+
+            /*
+             *  the next request gets a new socket, and its own timeout
+             */
+            assertFailed(ac.sendForReply(query()));
+            assertTrue(ac.isConnected());
+        }
+        finally {
+            ac.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+
+        AsyncConnection ac = new AsyncConnection(_addr, 2);
+        ac.connect();
+
+        CompletableFuture<DBQueryReplyMessage> f = ac.sendForReply(query());
+
+        ac.close();
+
+        assertFailed(f);
+        assertFalse(ac.isConnected());
+
+        /*
+         *  sending again restarts the loop
+         */
+        f = ac.sendForReply(query());
+        assertTrue(ac.isConnected());
+
+        ac.close();
+        assertFailed(f);
+    }
+
+    @Test
+    public void testLoopDies() throws Exception {
+
+        AsyncConnection ac = new AsyncConnection(_addr, 2);
+        ac.connect();
+
+        CompletableFuture<DBQueryReplyMessage> f = ac.sendForReply(query());
+
+        /*
+         *  pull the selector out from under the loop
+         */
+        Field sel = AsyncConnection.class.getDeclaredField("_selector");
+        sel.setAccessible(true);
+        ((Selector) sel.get(ac)).close();
+
+        assertFailed(f);
+
+        for (int i = 0; i < 100 && ac.isConnected(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(ac.isConnected());
+
+        f = ac.sendForReply(query());
+        assertTrue(ac.isConnected());
+
+        ac.close();
+        assertFailed(f);
+    }
+
+    private static DBQueryMessage query() throws Exception {
+        return new DBQueryMessage("org_mongo_driver_AsyncConnectionTest", "test", new DBQuery(new MongoSelector()));
+    }
+
+    private static void assertFailed(CompletableFuture<DBQueryReplyMessage> f) throws Exception {
+
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            fail("expected failure");
+        }
+        catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl.connection;
+
+import org.testng.annotations.Test;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.AfterClass;
+import org.mongodb.driver.ts.options.MongoOptions;
+import static org.testng.AssertJUnit.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.ArrayList;
+
+public class PooledConnectionTest {
+
+    ServerSocketChannel _server;
+    InetSocketAddress _addr;
+    final List<SocketChannel> _accepted = new ArrayList<SocketChannel>();
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        _server = ServerSocketChannel.open();
+        _server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        _addr = new InetSocketAddress("127.0.0.1", _server.socket().getLocalPort());
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        SocketChannel sc = _server.accept();
+                        synchronized(_accepted) {
+                            _accepted.add(sc);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    // server closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @AfterClass
+    public void stopServer() throws Exception {
+        _server.close();
+
+        synchronized(_accepted) {
+            for (SocketChannel sc : _accepted) {
+                sc.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMinConnections() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(3).setMaxConnections(5));
+
+        assert(!pc.isConnected());
+
+        pc.connect();
+
+        assert(pc.isConnected());
+        assertEquals(3, pc.getTotalCount());
+        assertEquals(3, pc.getIdleCount());
+
+        pc.close();
+
+        assertEquals(0, pc.getTotalCount());
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(2));
+
+        SocketChannel a = pc.checkout();
+        pc.checkin(a);
+
+        SocketChannel b = pc.checkout();
+        assert(a == b);
+
+        SocketChannel c = pc.checkout();
+        assert(c != b);
+        assertEquals(2, pc.getTotalCount());
+
+        pc.checkin(b);
+        pc.checkin(c);
+        assertEquals(2, pc.getIdleCount());
+
+        pc.close();
+    }
+
+    @Test
+    public void testMaxAndWaitLimit() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(2).setMaxWaitMillis(100));
+
+        SocketChannel a = pc.checkout();
+        SocketChannel b = pc.checkout();
+
+        long start = System.currentTimeMillis();
+
+        try {
+            pc.checkout();
+            fail();
+        }
+        catch (IOException e) {
+            // ok - pool exhausted
+        }
+
+        assert(System.currentTimeMillis() - start >= 90);
+        assertEquals(2, pc.getTotalCount());
+
+        pc.checkin(a);
+        pc.checkin(b);
+        pc.close();
+    }
+
+    @Test
+    public void testWaiterGetsReturnedChannel() throws Exception {
+
+        final PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(1).setMaxWaitMillis(5000));
+
+        final SocketChannel a = pc.checkout();
+        final SocketChannel[] got = new SocketChannel[1];
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    got[0] = pc.checkout();
+                    pc.checkin(got[0]);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+
+        Thread.sleep(100);
+        assert(got[0] == null);
+
+        pc.checkin(a);
+        t.join(5000);
+
+        assert(got[0] == a);
+        assertEquals(1, pc.getTotalCount());
+
+        pc.close();
+    }
+
+    @Test
+    public void testThreadAffinity() throws Exception {
+
+        final PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(2));
+
+        SocketChannel a = pc.checkout();
+        pc.checkin(a);
+
+        final SocketChannel[] other = new SocketChannel[2];
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    other[0] = pc.checkout();
+                    other[1] = pc.checkout();
+                    pc.checkin(other[0]);
+                    pc.checkin(other[1]);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        t.join();
+
+        // the other thread used both channels and returned the new one last, but we get back ours
+
+        assert(other[0] == a);
+        assert(pc.checkout() == a);
+
+        pc.close();
+    }
+
+    @Test
+    public void testPreferred() throws Exception {
+
+        final PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(2));
+
+        SocketChannel a = pc.checkout();
+        SocketChannel b = pc.checkout();
+        pc.checkin(b);
+        pc.checkin(a);
+
+        assert(pc.getLastUsed() == b);
+
+        /*
+         *  another thread can ask for our channel, though its own checkout() prefers its own
+         */
+        final SocketChannel[] got = new SocketChannel[1];
+        final SocketChannel preferred = pc.getLastUsed();
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    got[0] = pc.checkout(preferred);
+                    pc.checkin(got[0]);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        t.join();
+
+        assert(got[0] == b);
+        assert(pc.checkout() == b);
+
+        pc.close();
+
+        assert(new PooledConnection(_addr, new MongoOptions().setThreadAffinity(false)).getLastUsed() == null);
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(1).setMaxWaitMillis(0));
+
+        SocketChannel a = pc.checkout();
+        pc.discard(a);
+
+        assert(!a.isOpen());
+        assertEquals(0, pc.getTotalCount());
+
+        SocketChannel b = pc.checkout();
+        assert(a != b);
+        assert(b.isConnected());
+
+        pc.checkin(b);
+        pc.close();
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(1).setMaxConnections(3).setMaxIdleMillis(50));
+
+        SocketChannel a = pc.checkout();
+        SocketChannel b = pc.checkout();
+        SocketChannel c = pc.checkout();
+
+        pc.checkin(a);
+        pc.checkin(b);
+        pc.checkin(c);
+        assertEquals(3, pc.getIdleCount());
+
+        Thread.sleep(100);
+
+        pc.evictIdleConnections();
+
+        assertEquals(1, pc.getTotalCount());
+        assertEquals(1, pc.getIdleCount());
+
+        pc.close();
+    }
+
+    @Test
+    public void testCloseWithLeasedChannel() throws Exception {
+
+        PooledConnection pc = new PooledConnection(_addr, new MongoOptions().setMinConnections(0).setMaxConnections(2));
+
+        SocketChannel a = pc.checkout();
+
+        pc.close();
+
+        // leased channel is still usable until returned, and is closed when it is
+
+        assert(a.isOpen());
+        pc.checkin(a);
+        assert(!a.isOpen());
+        assertEquals(0, pc.getTotalCount());
+
+        // and the pool reconnects on demand
+
+        SocketChannel b = pc.checkout();
+        assert(b.isConnected());
+        pc.checkin(b);
+        pc.close();
+    }
+}
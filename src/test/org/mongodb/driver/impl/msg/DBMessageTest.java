@@ -0,0 +1,148 @@
+/**
+ *  See the NOTICE.txt file distributed with this work for
+ *  information regarding copyright ownership.
+ *
+ *  The authors license this file to you under the
+ *  Apache License, Version 2.0 (the "License"); you may not use
+ *  this file except in compliance with the License.  You may
+ *  obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mongodb.driver.impl.msg;
+
+import org.testng.annotations.Test;
+import org.mongodb.driver.ts.Doc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static org.testng.AssertJUnit.*;
+
+public class DBMessageTest {
+
+    @Test
+    public void testSmallMessage() throws Exception {
+
+        DBInsertMessage msg = new DBInsertMessage("db", "coll", new Doc("i", 1));
+
+        ByteBuffer[] bufs = msg.getMessageBuffers();
+
+        assertEquals(1, bufs.length);
+        assertEquals(msg.getMessageLength(), bufs[0].remaining());
+        assertEquals(msg.getMessageLength(), bufs[0].getInt(0));
+
+        /*
+         *  views are fresh each time
+         */
+        assertEquals(msg.getMessageLength(), msg.getMessageBuffers()[0].remaining());
+
+        msg.release();
+    }
+
+    @Test
+    public void testChainedMessage() throws Exception {
+
+        Doc[] docs = new Doc[2000];
+
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new Doc("i", i).add("name", "asasdaspoaspdoiaspdoaisdpoasidpaosidaposdiapsodiaposdiaposdias");
+        }
+
+        DBInsertMessage msg = new DBInsertMessage("db", "coll", docs);
+
+        ByteBuffer[] bufs = msg.getMessageBuffers();
+
+        assertTrue(bufs.length > 1);
+
+        int total = 0;
+        for (ByteBuffer b : bufs) {
+            total += b.remaining();
+        }
+
+        assertEquals(msg.getMessageLength(), total);
+
+        DBInsertMessage back = (DBInsertMessage) DBMessage.readFromStream(new ByteArrayInputStream(msg.toByteArray()));
+
+        assertEquals(docs.length, back._objs.length);
+
+        for (int i = 0; i < docs.length; i++) {
+            assertEquals(i, back._objs[i].getInt("i"));
+        }
+
+        msg.release();
+    }
+
+    @Test
+    public void testLargeDocument() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 3 * 1024 * 1024; i++) {
+            sb.append('x');
+        }
+
+        DBInsertMessage msg = new DBInsertMessage("db", "coll", new Doc("s", sb.toString()));
+
+        DBInsertMessage back = (DBInsertMessage) DBMessage.readFromStream(new ByteArrayInputStream(msg.toByteArray()));
+
+        assertEquals(1, back._objs.length);
+        assertEquals(sb.toString(), back._objs[0].get("s"));
+
+        msg.release();
+    }
+
+    @Test
+    public void testInsertChunks() throws Exception {
+
+        Doc[] docs = new Doc[2000];
+
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new Doc("i", i).add("name", "asasdaspoaspdoiaspdoaisdpoasidpaosidaposdiapsodiaposdiaposdias");
+        }
+
+        int from = 0;
+        int chunks = 0;
+
+        while (from < docs.length) {
+
+            DBInsertMessage msg = new DBInsertMessage("db", "coll", docs, from, docs.length, 16 * 1024);
+
+            assertTrue(msg.getObjectCount() > 0);
+
+            /*
+             *  over the limit by no more than the last doc
+             */
+            assertTrue(msg.getMessageLength() < 16 * 1024 + 200);
+
+            DBInsertMessage back = (DBInsertMessage) DBMessage.readFromStream(new ByteArrayInputStream(msg.toByteArray()));
+
+            assertEquals(msg.getObjectCount(), back._objs.length);
+            assertEquals(from, back._objs[0].getInt("i"));
+
+            from += msg.getObjectCount();
+            chunks++;
+
+            msg.release();
+        }
+
+        assertTrue(chunks > 1);
+
+        /*
+         *  a doc bigger than the limit still goes in on its own
+         */
+        DBInsertMessage msg = new DBInsertMessage("db", "coll", docs, 5, 10, 10);
+
+        assertEquals(1, msg.getObjectCount());
+
+        msg.release();
+    }
+}